@@ -0,0 +1,23 @@
+#!/bin/bash
+
+# Runs the JMH benchmarks of the bench module. Extra arguments go to JMH, e.g.
+#   ./bench.sh KnnBenchmark -p impl=manhattan,jk -p size=10000
+# Benchmarks run on random data by default. Recorded queries are opt-in with
+# -p source=random,recorded and are read from the pack given by BENCH_RECORDS (a .drc or .zip).
+
+ROBOCODE_PATH=/home/rsalesc/robocode
+MAVEN_REPOSITORY=$HOME/.m2/repository
+JMH_VERSION=1.19
+
+JMH_CP=$MAVEN_REPOSITORY/org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar
+JMH_CP=$JMH_CP:$MAVEN_REPOSITORY/org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar
+JMH_CP=$JMH_CP:$MAVEN_REPOSITORY/net/sf/jopt-simple/jopt-simple/4.6/jopt-simple-4.6.jar
+JMH_CP=$JMH_CP:$MAVEN_REPOSITORY/org/apache/commons/commons-math3/3.2/commons-math3-3.2.jar
+
+CP=$ROBOCODE_PATH/libs/robocode.jar:$JMH_CP
+
+rm -rf bench/out/
+mkdir -p bench/out
+
+javac -encoding UTF-8 -cp $CP -sourcepath src -d bench/out $(find bench/src -name '*.java') \
+    && java -cp bench/out:$CP org.openjdk.jmh.Main -jvmArgsAppend "-Dbench.records=$BENCH_RECORDS" $*
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.structures;
+
+import rsalesc.baf2.core.utils.Pair;
+import rsalesc.baf2.waves.BreakType;
+import rsalesc.mega.gunning.strategies.dc.GeneralPurposeStrategy;
+import rsalesc.mega.learning.recording.ColumnarDuelRecordFile;
+import rsalesc.mega.learning.recording.DuelRecord;
+import rsalesc.mega.learning.recording.DuelRecordPackage;
+import rsalesc.mega.learning.recording.RecordPack;
+import rsalesc.mega.utils.Strategy;
+import rsalesc.mega.utils.TargetingLog;
+import rsalesc.runner.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Points and queries fed to the benchmarks. "random" draws them uniformly from
+ * the unit cube; "recorded" projects the TargetingLogs of the record pack given
+ * by -Dbench.records (a .drc or .zip pack) the same way the main gun does.
+ */
+class BenchData {
+    public static final String RANDOM = "random";
+    public static final String RECORDED = "recorded";
+
+    private static final long SEED = 42L;
+    private static final Strategy STRATEGY = new GeneralPurposeStrategy();
+
+    private static ArrayList<double[]> recorded;
+
+    public final double[][] points;
+    public final double[][] queries;
+    public final double[] weights;
+
+    private BenchData(double[][] points, double[][] queries, double[] weights) {
+        this.points = points;
+        this.queries = queries;
+        this.weights = weights;
+    }
+
+    public static BenchData create(String source, int dims, int size, int queries) throws IOException {
+        double[] weights = getWeights(dims);
+
+        switch(source) {
+            case RANDOM:
+                return new BenchData(random(dims, size, SEED), random(dims, queries, SEED + 1), weights);
+            case RECORDED:
+                return fromRecords(dims, size, queries, weights);
+            default:
+                throw new IllegalArgumentException("unknown data source " + source);
+        }
+    }
+
+    private static double[] getWeights(int dims) {
+        double[] res = Strategy.unitaryWeight(dims);
+        double[] strategyWeights = STRATEGY.getWeights();
+        System.arraycopy(strategyWeights, 0, res, 0, Math.min(dims, strategyWeights.length));
+        return res;
+    }
+
+    private static double[][] random(int dims, int count, long seed) {
+        Random random = new Random(seed);
+        double[][] res = new double[count][dims];
+        for(double[] point : res) {
+            for(int i = 0; i < dims; i++)
+                point[i] = random.nextDouble();
+        }
+
+        return res;
+    }
+
+    /**
+     * The first points come from the start of the pack and the queries right after them,
+     * wrapping around if the pack is too small.
+     */
+    private static BenchData fromRecords(int dims, int size, int queries, double[] weights) throws IOException {
+        ArrayList<double[]> vectors = getRecordedVectors();
+        if(vectors.isEmpty())
+            throw new IllegalStateException("no logs found in the recorded pack");
+
+        double[][] points = new double[size][];
+        double[][] queryPoints = new double[queries][];
+
+        for(int i = 0; i < size; i++)
+            points[i] = Arrays.copyOf(vectors.get(i % vectors.size()), dims);
+
+        for(int i = 0; i < queries; i++)
+            queryPoints[i] = Arrays.copyOf(vectors.get((size + i) % vectors.size()), dims);
+
+        return new BenchData(points, queryPoints, weights);
+    }
+
+    private static synchronized ArrayList<double[]> getRecordedVectors() throws IOException {
+        if(recorded != null)
+            return recorded;
+
+        String path = System.getProperty("bench.records");
+        if(path == null)
+            throw new IllegalStateException("recorded data needs -Dbench.records=<pack>");
+
+        File file = new File(path);
+        RecordPack pack = path.endsWith(ColumnarDuelRecordFile.EXTENSION)
+                ? new ColumnarDuelRecordFile(file)
+                : new DuelRecordPackage(FileUtils.getZipFs(file.getAbsolutePath()));
+
+        ArrayList<double[]> res = new ArrayList<>();
+        try {
+            for(DuelRecord record : pack) {
+                for(Pair<TargetingLog, BreakType> pair : record.getLogs())
+                    res.add(project(pair.first));
+            }
+        } finally {
+            pack.close();
+        }
+
+        return recorded = res;
+    }
+
+    /**
+     * Strategy features first, then a few raw ones to reach the wider dimensions.
+     */
+    private static double[] project(TargetingLog f) {
+        double[] query = STRATEGY.getQuery(f);
+        double[] extra = new double[]{
+                (f.lateralVelocity + 8) / 16,
+                (f.advancingVelocity + 8) / 16,
+                Math.min(f.distanceToWall / 400, 1),
+                Math.min(f.displaceLast10 / 80, 1),
+                Math.min(f.displaceLast80 / 640, 1)
+        };
+
+        double[] res = Arrays.copyOf(query, query.length + extra.length);
+        System.arraycopy(extra, 0, res, query.length, extra.length);
+        return res;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.structures;
+
+import jk.tree.KDTree;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Common face of the kNN structures under benchmark. Payloads are plain
+ * point indices, so every implementation stores the same data.
+ */
+abstract class BenchTree {
+    public static final String MANHATTAN = "manhattan";
+    public static final String EUCLIDEAN = "euclidean";
+    public static final String JK = "jk";
+    public static final String BRUTE = "brute";
+
+    public static BenchTree create(String impl, double[] weights, Integer limit) {
+        switch(impl) {
+            case MANHATTAN:
+                return new Rsalesc(new WeightedManhattanKdTree<>(weights, limit));
+            case EUCLIDEAN:
+                return new Rsalesc(new WeightedEuclideanKdTree<>(weights, limit));
+            case JK:
+                if(limit != null)
+                    throw new UnsupportedOperationException("jk.tree.KDTree does not evict");
+                return new Jk(weights);
+            case BRUTE:
+                return new Brute(weights, limit);
+            default:
+                throw new IllegalArgumentException("unknown tree implementation " + impl);
+        }
+    }
+
+    public abstract void add(double[] point, int payload);
+
+    /**
+     * Returns some cheap digest of the result so JMH cannot eliminate the query.
+     */
+    public abstract double kNN(double[] query, int K, double alpha);
+
+    public abstract double iterate(double[] query, int K);
+
+    public abstract int size();
+
+    static class Rsalesc extends BenchTree {
+        private final KdTree<Integer> tree;
+
+        Rsalesc(KdTree<Integer> tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        public void add(double[] point, int payload) {
+            tree.add(point, payload);
+        }
+
+        @Override
+        public double kNN(double[] query, int K, double alpha) {
+            List<KdTree.Entry<Integer>> found = tree.kNN(query, K, alpha);
+            return found.isEmpty() ? 0 : found.get(0).distance;
+        }
+
+        @Override
+        public double iterate(double[] query, int K) {
+            Iterator<KdTree.Entry<Integer>> iterator = tree.iterator(query);
+            double res = 0;
+            for(int i = 0; i < K && iterator.hasNext(); i++)
+                res = iterator.next().distance;
+
+            return res;
+        }
+
+        @Override
+        public int size() {
+            return tree.size();
+        }
+    }
+
+    static class Jk extends BenchTree {
+        private final KDTree.WeightedManhattan<Integer> tree;
+
+        Jk(double[] weights) {
+            tree = new KDTree.WeightedManhattan<>(weights.length);
+            tree.setWeights(weights);
+        }
+
+        @Override
+        public void add(double[] point, int payload) {
+            tree.addPoint(point, payload);
+        }
+
+        @Override
+        public double kNN(double[] query, int K, double alpha) {
+            double res = 0;
+            for(KDTree.SearchResult<Integer> result : tree.nearestNeighbours(query, K))
+                res = Math.max(res, result.distance);
+
+            return res;
+        }
+
+        @Override
+        public double iterate(double[] query, int K) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int size() {
+            return tree.size();
+        }
+    }
+
+    /**
+     * Linear scan over a flat ring buffer, weighted manhattan like the default trees.
+     */
+    static class Brute extends BenchTree {
+        private final double[] weights;
+        private final int dim;
+        private final Integer limit;
+
+        private double[] points;
+        private int[] payloads;
+        private int head = 0;
+        private int size = 0;
+
+        private final FloatingHeap.Max<Integer> heap = new FloatingHeap.Max<>();
+
+        Brute(double[] weights, Integer limit) {
+            this.weights = weights;
+            this.dim = weights.length;
+            this.limit = limit;
+
+            int capacity = limit != null ? limit : 1024;
+            points = new double[capacity * dim];
+            payloads = new int[capacity];
+        }
+
+        @Override
+        public void add(double[] point, int payload) {
+            if(limit == null && size == payloads.length) {
+                points = Arrays.copyOf(points, points.length * 2);
+                payloads = Arrays.copyOf(payloads, payloads.length * 2);
+            }
+
+            int slot = (head + size) % payloads.length;
+            if(size == payloads.length) {
+                slot = head;
+                head = (head + 1) % payloads.length;
+            } else {
+                size++;
+            }
+
+            System.arraycopy(point, 0, points, slot * dim, dim);
+            payloads[slot] = payload;
+        }
+
+        private double distance(double[] query, int slot) {
+            double res = 0;
+            int offset = slot * dim;
+            for(int i = 0; i < dim; i++)
+                res += Math.abs(query[i] - points[offset + i]) * weights[i];
+
+            return res;
+        }
+
+        @Override
+        public double kNN(double[] query, int K, double alpha) {
+            heap.clear();
+            for(int i = 0; i < size; i++) {
+                int slot = (head + i) % payloads.length;
+                double dist = distance(query, slot);
+
+                if(heap.size() < K) {
+                    heap.push(dist, payloads[slot]);
+                } else if(dist < heap.topKey()) {
+                    heap.pop();
+                    heap.push(dist, payloads[slot]);
+                }
+            }
+
+            return heap.size() == 0 ? 0 : heap.topKey();
+        }
+
+        @Override
+        public double iterate(double[] query, int K) {
+            return kNN(query, K, 1.0);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
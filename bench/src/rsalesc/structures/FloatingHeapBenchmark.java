@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.structures;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Bounded top-K selection, the inner loop of every kNN query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class FloatingHeapBenchmark {
+    @Param({"10", "50", "200"})
+    public int K;
+
+    @Param({"10000"})
+    public int size;
+
+    private double[] keys;
+    private final FloatingHeap.Max<Integer> heap = new FloatingHeap.Max<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42L);
+        keys = new double[size];
+        for(int i = 0; i < size; i++)
+            keys[i] = random.nextDouble();
+    }
+
+    @Benchmark
+    public double topK() {
+        heap.clear();
+        for(int i = 0; i < keys.length; i++) {
+            if(heap.size() < K) {
+                heap.push(keys[i], i);
+            } else if(keys[i] < heap.topKey()) {
+                heap.pop();
+                heap.push(keys[i], i);
+            }
+        }
+
+        return heap.topKey();
+    }
+}
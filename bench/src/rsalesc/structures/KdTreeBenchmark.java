@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.structures;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Features jk.tree.KDTree lacks: FIFO eviction, approximate (alpha) and lazy
+ * iterator queries. The brute force baseline answers them exactly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class KdTreeBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({BenchTree.MANHATTAN, BenchTree.EUCLIDEAN, BenchTree.BRUTE})
+    public String impl;
+
+    // recorded data needs -Dbench.records, opt in with -p source=random,recorded
+    @Param({BenchData.RANDOM})
+    public String source;
+
+    @Param({"10", "15"})
+    public int dims;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"50"})
+    public int K;
+
+    @Param({"0.8"})
+    public double alpha;
+
+    private BenchData data;
+    private BenchTree tree;
+    private BenchTree fifo;
+    private int cursor;
+    private int added;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        data = BenchData.create(source, dims, size, QUERIES);
+
+        tree = BenchTree.create(impl, data.weights, null);
+        for(int i = 0; i < data.points.length; i++)
+            tree.add(data.points[i], i);
+
+        // a full tree holding half of the points, so every add evicts
+        fifo = BenchTree.create(impl, data.weights, Math.max(size / 2, 1));
+        for(added = 0; added < data.points.length; added++)
+            fifo.add(data.points[added], added);
+    }
+
+    private double[] nextQuery() {
+        double[] res = data.queries[cursor];
+        cursor = (cursor + 1) % data.queries.length;
+        return res;
+    }
+
+    @Benchmark
+    public int fifoAdd() {
+        int i = added++ % data.points.length;
+        fifo.add(data.points[i], i);
+        return fifo.size();
+    }
+
+    @Benchmark
+    public double approxKnn() {
+        return tree.kNN(nextQuery(), K, alpha);
+    }
+
+    @Benchmark
+    public double iterator() {
+        return tree.iterate(nextQuery(), K);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.structures;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Building and exact kNN queries, on every implementation including jk.tree.KDTree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class KnnBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({BenchTree.MANHATTAN, BenchTree.EUCLIDEAN, BenchTree.JK, BenchTree.BRUTE})
+    public String impl;
+
+    // recorded data needs -Dbench.records, opt in with -p source=random,recorded
+    @Param({BenchData.RANDOM})
+    public String source;
+
+    @Param({"10", "15"})
+    public int dims;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"50"})
+    public int K;
+
+    private BenchData data;
+    private BenchTree tree;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        data = BenchData.create(source, dims, size, QUERIES);
+        tree = build();
+    }
+
+    private BenchTree build() {
+        BenchTree res = BenchTree.create(impl, data.weights, null);
+        for(int i = 0; i < data.points.length; i++)
+            res.add(data.points[i], i);
+
+        return res;
+    }
+
+    private double[] nextQuery() {
+        double[] res = data.queries[cursor];
+        cursor = (cursor + 1) % data.queries.length;
+        return res;
+    }
+
+    /**
+     * Time to insert all points into an empty structure, reported per tree.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public int add() {
+        return build().size();
+    }
+
+    @Benchmark
+    public double exactKnn() {
+        return tree.kNN(nextQuery(), K, 1.0);
+    }
+}
@@ -25,8 +25,10 @@ package rsalesc.baf2;
 
 import robocode.*;
 import rsalesc.baf2.core.Component;
+import rsalesc.baf2.core.ComponentDispatcher;
 import rsalesc.baf2.core.KeyHandler;
 import rsalesc.baf2.core.RobotMediator;
+import rsalesc.baf2.core.TickEvents;
 import rsalesc.baf2.core.benchmark.Benchmark;
 import rsalesc.baf2.core.listeners.*;
 import rsalesc.baf2.painting.PaintManager;
@@ -38,17 +40,22 @@ import java.util.ArrayList;
 /**
  * Created by Roberto Sales on 22/07/17.
  */
-public abstract class BackAsFrontRobot2 extends OldBackAsFrontRobot {
+public abstract class BackAsFrontRobot2 extends OldBackAsFrontRobot implements TickEvents {
+    private static final int RUN_PROBE = Benchmark.getInstance().register("run()");
+    private static final int HANDLE_EVENTS_PROBE = Benchmark.getInstance().register("handleEvents()");
     private ArrayList<Component> components;
+    private ComponentDispatcher dispatcher;
     private RobotMediator mediator;
     private PaintManager paintManager;
     private int skippedTurns = 0;
     private int bulletsFired = 0;
     private boolean hasEnded = false;
+    private String offlineName;
 
     @Override
     public void onSkippedTurn(SkippedTurnEvent event) {
         skippedTurns++;
+        Benchmark.getInstance().count("skipped turns");
     }
 
     public abstract void initialize();
@@ -78,13 +85,41 @@ public abstract class BackAsFrontRobot2 extends OldBackAsFrontRobot {
         return paintManager;
     }
 
+    /**
+     * Creates this round's components without touching the robot peer.
+     */
+    public void assemble() {
+        components = new ArrayList<>();
+        dispatcher = new ComponentDispatcher(components);
+        initialize();
+        initializeDefault();
+    }
+
     protected void build() {
-        mediator = new RobotMediator(this, paintManager);
+        build(new RobotMediator(this, paintManager));
+    }
+
+    public void build(RobotMediator mediator) {
+        this.mediator = mediator;
         for (Component component : components) {
             component.init(mediator);
         }
     }
 
+    /**
+     * Name reported while the robot runs without a peer, e.g. under ReplayHarness.
+     */
+    public void setOfflineName(String name) {
+        offlineName = name;
+    }
+
+    @Override
+    public String getName() {
+        if(offlineName != null)
+            return offlineName;
+        return super.getName();
+    }
+
     public ArrayList<Component> getComponents() {
         ArrayList<Component> res = new ArrayList<>();
         res.addAll(components);
@@ -95,105 +130,16 @@ public abstract class BackAsFrontRobot2 extends OldBackAsFrontRobot {
     @Override
     public void run() {
         while (true) {
-            Benchmark.getInstance().start("run()");
-            for (Component component : components) {
-                if (!component.isVirtual()) component.beforeRun();
-            }
-
-            for (Component component : components) {
-                if (!component.isVirtual()) component.run();
-            }
-
-            for (int i = components.size() - 1; i >= 0; i--) {
-                Component component = components.get(i);
-                if (!component.isVirtual()) component.afterRun();
-            }
-
+            Benchmark.getInstance().start(RUN_PROBE);
+            dispatcher.run();
             Benchmark.getInstance().stop();
             execute();
         }
     }
 
     public void handleEvents() {
-        Benchmark.getInstance().start("handleEvents()");
-
-        for (Component component : components) {
-            if (component instanceof RobotDeathListener) {
-                RobotDeathListener listener = (RobotDeathListener) component;
-                for (RobotDeathEvent e : getRobotDeathEvents()) {
-                    listener.onRobotDeath(e);
-                }
-            }
-        }
-
-        for (Component component : components) {
-            if (component instanceof BulletListener) {
-                BulletListener listener = (BulletListener) component;
-                for (BulletMissedEvent e : getBulletMissedEvents()) {
-                    listener.onBulletMissed(e);
-                }
-            }
-        }
-
-        for (Component component : components) {
-            if (component instanceof BulletListener) {
-                BulletListener listener = (BulletListener) component;
-                for (BulletHitBulletEvent e : getBulletHitBulletEvents()) {
-                    listener.onBulletHitBullet(e);
-                }
-            }
-        }
-
-        for (Component component : components) {
-            if (component instanceof BulletListener) {
-                BulletListener listener = (BulletListener) component;
-                for (BulletHitEvent e : getBulletHitEvents()) {
-                    listener.onBulletHit(e);
-                }
-            }
-        }
-
-        for (Component component : components) {
-            if (component instanceof HitListener) {
-                HitListener listener = (HitListener) component;
-                for (HitByBulletEvent e : getHitByBulletEvents()) {
-                    listener.onHitByBullet(e);
-                }
-            }
-        }
-
-        for (Component component : components) {
-            if (component instanceof HitListener) {
-                HitListener listener = (HitListener) component;
-                for (HitWallEvent e : getHitWallEvents()) {
-                    listener.onHitWall(e);
-                }
-            }
-        }
-
-        for (Component component : components) {
-            if (component instanceof HitListener) {
-                HitListener listener = (HitListener) component;
-                for (HitRobotEvent e : getHitRobotEvents()) {
-                    listener.onHitRobot(e);
-                }
-            }
-        }
-
-        for (Component component : components) {
-            if (component instanceof BatchScannedRobotListener) {
-                BatchScannedRobotListener listener = (BatchScannedRobotListener) component;
-                listener.onBatchScannedRobot(getScannedRobotEvents());
-            }
-
-            if (component instanceof ScannedRobotListener) {
-                ScannedRobotListener listener = (ScannedRobotListener) component;
-                for (ScannedRobotEvent e : getScannedRobotEvents()) {
-                    listener.onScannedRobot(e);
-                }
-            }
-        }
-
+        Benchmark.getInstance().start(HANDLE_EVENTS_PROBE);
+        dispatcher.handleEvents(this);
         Benchmark.getInstance().stop();
     }
 
@@ -213,9 +159,7 @@ public abstract class BackAsFrontRobot2 extends OldBackAsFrontRobot {
 
         if (e.getTime() == 0) {
             dissociate();
-            components = new ArrayList<>();
-            initialize();
-            initializeDefault();
+            assemble();
             build();
         }
 
@@ -225,28 +169,12 @@ public abstract class BackAsFrontRobot2 extends OldBackAsFrontRobot {
         if (e.getTime() == 0)
             _onRoundStarted(e.getStatus().getRoundNum());
 
-        for (Component component : components) {
-            if (component instanceof StatusListener) {
-                StatusListener listener = (StatusListener) component;
-                listener.onStatus(e);
-            }
-        }
-
-        for (Component component : components) {
-            if (component instanceof TickListener) {
-                TickListener listener = (TickListener) component;
-                listener.onTick(e.getTime());
-            }
-        }
+        dispatcher.onStatus(e);
+        dispatcher.onTick(e.getTime());
     }
 
     public void _onBattleStarted() {
-        for (Component component : components) {
-            if (component instanceof BattleStartedListener) {
-                BattleStartedListener listener = (BattleStartedListener) component;
-                listener.onBattleStarted();
-            }
-        }
+        dispatcher.onBattleStarted();
     }
 
     public void _onRoundStarted(int round) {
@@ -257,12 +185,7 @@ public abstract class BackAsFrontRobot2 extends OldBackAsFrontRobot {
             }
         });
 
-        for (Component component : components) {
-            if (component instanceof RoundStartedListener) {
-                RoundStartedListener listener = (RoundStartedListener) component;
-                listener.onRoundStarted(round);
-            }
-        }
+        dispatcher.onRoundStarted(round);
     }
 
     public void onCustomEvent(CustomEvent e) {
@@ -352,12 +275,7 @@ public abstract class BackAsFrontRobot2 extends OldBackAsFrontRobot {
     @Override
     public void onWin(WinEvent event) {
         super.onWin(event);
-        for (Component component : components) {
-            if (component instanceof WinListener) {
-                WinListener listener = (WinListener) component;
-                listener.onWin(event);
-            }
-        }
+        dispatcher.onWin(event);
     }
 
     public void onEnded() {
@@ -366,12 +284,7 @@ public abstract class BackAsFrontRobot2 extends OldBackAsFrontRobot {
 
         hasEnded = true;
 
-        for (Component component : components) {
-            if (component instanceof LastBreathListener) {
-                LastBreathListener listener = (LastBreathListener) component;
-                listener.onLastBreath();
-            }
-        }
+        dispatcher.onLastBreath();
 
         if(skippedTurns > 0) {
             warn(getName() + " skipped " + skippedTurns + " turn(s) this round!");
@@ -27,7 +27,9 @@ import robocode.Condition;
 import rsalesc.baf2.painting.PaintManager;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.function.Consumer;
 
 /**
  * Created by Roberto Sales on 11/09/17.
@@ -36,6 +38,7 @@ public abstract class Component {
     private RobotMediator mediator;
     private boolean virtual = false;
     private ArrayList<ConditionedListener> listeners = new ArrayList<>();
+    private HashMap<Class<?>, TypedListeners> typedListeners = new HashMap<>();
     private boolean inited = false;
 
     public void init(RobotMediator mediator) {
@@ -95,17 +98,112 @@ public abstract class Component {
         return filtered;
     }
 
-    public void addListener(Object listener) {
-        listeners.add(new ConditionedListener(listener, new Condition() {
-            @Override
-            public boolean test() {
+    /**
+     * Calls action on each listener of the given type whose condition holds, once per
+     * listener and in registration order, like getListeners(). The typed listeners are
+     * resolved once per registration, so no list is built here.
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> void forEachListener(Class<T> type, Consumer<? super T> action) {
+        TypedListeners typed = getTypedListeners(type);
+        ConditionedListener[] matching = typed.listeners;
+
+        for(int i = 0; i < matching.length; i++) {
+            if(matching[i].test() && typed.isFirstPassing(i))
+                action.accept((T) matching[i].getListener());
+        }
+    }
+
+    /**
+     * Whether forEachListener(type, ...) would call anything right now.
+     */
+    protected boolean hasListener(Class<?> type) {
+        for(ConditionedListener cl : getTypedListeners(type).listeners) {
+            if(cl.test())
                 return true;
+        }
+
+        return false;
+    }
+
+    private TypedListeners getTypedListeners(Class<?> type) {
+        TypedListeners typed = typedListeners.get(type);
+        if(typed == null) {
+            ArrayList<ConditionedListener> matching = new ArrayList<>();
+            for(ConditionedListener cl : listeners) {
+                if(type.isInstance(cl.getListener()))
+                    matching.add(cl);
             }
-        }));
+
+            typed = new TypedListeners(matching.toArray(new ConditionedListener[0]));
+            typedListeners.put(type, typed);
+        }
+
+        return typed;
+    }
+
+    public void addListener(Object listener) {
+        listeners.add(new ConditionedListener(listener, ALWAYS));
+        typedListeners.clear();
     }
 
     public void addListener(Object listener, Condition condition) {
         listeners.add(new ConditionedListener(listener, condition));
+        typedListeners.clear();
+    }
+
+    private static final Condition ALWAYS = new Condition() {
+        @Override
+        public boolean test() {
+            return true;
+        }
+    };
+
+    private static class TypedListeners {
+        public final ConditionedListener[] listeners;
+
+        // for each entry, the earlier entries of the same listener, or null if none repeats
+        private final int[][] earlier;
+
+        private TypedListeners(ConditionedListener[] listeners) {
+            this.listeners = listeners;
+
+            int[][] earlier = new int[listeners.length][];
+            boolean repeated = false;
+
+            for(int i = 0; i < listeners.length; i++) {
+                int count = 0;
+                for(int j = 0; j < i; j++) {
+                    if(listeners[j].getListener().equals(listeners[i].getListener()))
+                        count++;
+                }
+
+                earlier[i] = new int[count];
+                repeated |= count > 0;
+
+                for(int j = 0, k = 0; j < i; j++) {
+                    if(listeners[j].getListener().equals(listeners[i].getListener()))
+                        earlier[i][k++] = j;
+                }
+            }
+
+            this.earlier = repeated ? earlier : null;
+        }
+
+        /**
+         * Whether no earlier registration of the same listener passes its condition.
+         */
+        private boolean isFirstPassing(int i) {
+            if(earlier == null)
+                return true;
+
+            for(int j : earlier[i]) {
+                if(listeners[j].test())
+                    return false;
+            }
+
+            return true;
+        }
     }
 
     private static class ConditionedListener {
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+
+package rsalesc.baf2.core;
+
+import robocode.*;
+import rsalesc.baf2.core.listeners.*;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Drives the components of a robot through a tick, in the order BackAsFrontRobot2 relies on.
+ * Virtual components hear every event but are never run. When a clock is given, the time
+ * spent in each call is charged to the index of the component that took it.
+ */
+public class ComponentDispatcher {
+    private final List<Component> components;
+    private final Clock clock;
+
+    public ComponentDispatcher(List<Component> components) {
+        this(components, null);
+    }
+
+    public ComponentDispatcher(List<Component> components, Clock clock) {
+        this.components = components;
+        this.clock = clock;
+    }
+
+    public void onBattleStarted() {
+        dispatch(BattleStartedListener.class, false, BattleStartedListener::onBattleStarted);
+    }
+
+    public void onRoundStarted(int round) {
+        dispatch(RoundStartedListener.class, false, listener -> listener.onRoundStarted(round));
+    }
+
+    public void onStatus(StatusEvent e) {
+        dispatch(StatusListener.class, false, listener -> listener.onStatus(e));
+    }
+
+    public void onTick(long time) {
+        dispatch(TickListener.class, false, listener -> listener.onTick(time));
+    }
+
+    public void handleEvents(TickEvents events) {
+        List<RobotDeathEvent> deaths = events.getRobotDeathEvents();
+        List<BulletMissedEvent> misses = events.getBulletMissedEvents();
+        List<BulletHitBulletEvent> bulletHits = events.getBulletHitBulletEvents();
+        List<BulletHitEvent> hits = events.getBulletHitEvents();
+        List<HitByBulletEvent> hitsBy = events.getHitByBulletEvents();
+        List<HitWallEvent> walls = events.getHitWallEvents();
+        List<HitRobotEvent> rams = events.getHitRobotEvents();
+        List<ScannedRobotEvent> scans = events.getScannedRobotEvents();
+
+        dispatch(RobotDeathListener.class, false, listener -> {
+            for(RobotDeathEvent e : deaths) listener.onRobotDeath(e);
+        });
+
+        dispatch(BulletListener.class, false, listener -> {
+            for(BulletMissedEvent e : misses) listener.onBulletMissed(e);
+        });
+
+        dispatch(BulletListener.class, false, listener -> {
+            for(BulletHitBulletEvent e : bulletHits) listener.onBulletHitBullet(e);
+        });
+
+        dispatch(BulletListener.class, false, listener -> {
+            for(BulletHitEvent e : hits) listener.onBulletHit(e);
+        });
+
+        dispatch(HitListener.class, false, listener -> {
+            for(HitByBulletEvent e : hitsBy) listener.onHitByBullet(e);
+        });
+
+        dispatch(HitListener.class, false, listener -> {
+            for(HitWallEvent e : walls) listener.onHitWall(e);
+        });
+
+        dispatch(HitListener.class, false, listener -> {
+            for(HitRobotEvent e : rams) listener.onHitRobot(e);
+        });
+
+        // a component may take the batch and the single scans, in this order
+        dispatch(Component.class, false, component -> {
+            if(component instanceof BatchScannedRobotListener)
+                ((BatchScannedRobotListener) component).onBatchScannedRobot(scans);
+
+            if(component instanceof ScannedRobotListener) {
+                for(ScannedRobotEvent e : scans)
+                    ((ScannedRobotListener) component).onScannedRobot(e);
+            }
+        });
+    }
+
+    /**
+     * beforeRun and run in component order, then afterRun in reverse order.
+     */
+    public void run() {
+        dispatch(Component.class, true, Component::beforeRun);
+        dispatch(Component.class, true, Component::run);
+
+        for(int i = components.size() - 1; i >= 0; i--) {
+            Component component = components.get(i);
+            if(!component.isVirtual())
+                call(i, component, Component::afterRun);
+        }
+    }
+
+    public void onWin(WinEvent e) {
+        dispatch(WinListener.class, false, listener -> listener.onWin(e));
+    }
+
+    public void onLastBreath() {
+        dispatch(LastBreathListener.class, false, LastBreathListener::onLastBreath);
+    }
+
+    private <T> void dispatch(Class<T> type, boolean skipVirtual, Consumer<? super T> fn) {
+        for(int i = 0; i < components.size(); i++) {
+            Component component = components.get(i);
+            if(type.isInstance(component) && !(skipVirtual && component.isVirtual()))
+                call(i, type.cast(component), fn);
+        }
+    }
+
+    private <T> void call(int index, T listener, Consumer<? super T> fn) {
+        if(clock == null) {
+            fn.accept(listener);
+            return;
+        }
+
+        long start = System.nanoTime();
+        fn.accept(listener);
+        clock.charge(index, System.nanoTime() - start);
+    }
+
+    public interface Clock {
+        void charge(int index, long nanos);
+    }
+}
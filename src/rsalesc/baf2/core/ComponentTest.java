@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.core;
+
+import org.junit.jupiter.api.Test;
+import robocode.Condition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class ComponentTest {
+    private static class Switch extends Condition {
+        private boolean on;
+
+        private Switch(boolean on) {
+            this.on = on;
+        }
+
+        @Override
+        public boolean test() {
+            return on;
+        }
+    }
+
+    private static class Named implements Runnable {
+        private final String name;
+
+        private Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {}
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static class Host extends Component {}
+
+    private static ArrayList<String> runnables(Component component) {
+        ArrayList<String> res = new ArrayList<>();
+        component.forEachListener(Runnable.class, listener -> res.add(listener.toString()));
+        return res;
+    }
+
+    @Test
+    public void forEachListenerMatchesGetListeners() {
+        Host host = new Host();
+        Named a = new Named("a");
+        Named b = new Named("b");
+        Switch aFirst = new Switch(false);
+        Switch bSwitch = new Switch(true);
+
+        host.addListener(a, aFirst);
+        host.addListener("not a runnable");
+        host.addListener(b, bSwitch);
+        host.addListener(a);
+
+        // a is reached through its second registration only
+        assertEquals(Arrays.asList("b", "a"), runnables(host));
+
+        // and through its first one once that holds, without repeating
+        aFirst.on = true;
+        assertEquals(Arrays.asList("a", "b"), runnables(host));
+
+        ArrayList<String> untyped = new ArrayList<>();
+        for(Object listener : host.getListeners()) {
+            if(listener instanceof Runnable)
+                untyped.add(listener.toString());
+        }
+
+        assertEquals(untyped, runnables(host));
+
+        bSwitch.on = false;
+        assertEquals(Arrays.asList("a"), runnables(host));
+        assertTrue(host.hasListener(Runnable.class));
+        assertTrue(host.hasListener(String.class));
+        assertFalse(host.hasListener(Number.class));
+
+        // new registrations are seen
+        host.addListener(new Named("c"));
+        assertEquals(Arrays.asList("a", "c"), runnables(host));
+    }
+}
@@ -24,40 +24,93 @@
 package rsalesc.baf2.core;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Created by Roberto Sales on 11/09/17.
+ * Paths are interned JVM-wide into slot indexes, and each storage keeps its
+ * values in an array indexed by them. A StorageSlot resolved once can then
+ * be read from any storage without building or hashing its path again.
+ * Values live in an AtomicReferenceArray, so a put is seen by readers on
+ * other threads (offline replays) without them taking the lock.
  */
 public class GlobalStorage {
+    private static final ConcurrentHashMap<String, Integer> indexes = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextIndex = new AtomicInteger();
+
     private static final GlobalStorage SINGLETON = new GlobalStorage();
 
-    ConcurrentHashMap<String, Object> hash;
+    private final ConcurrentHashMap<String, StorageNamespace> namespaces = new ConcurrentHashMap<>();
+    private volatile AtomicReferenceArray<Object> values;
 
     private GlobalStorage() {
-        hash = new ConcurrentHashMap<>();
+        values = new AtomicReferenceArray<>(Math.max(nextIndex.get(), 64));
     }
 
-    public void clear() {
-        hash.clear();
+    public synchronized void clear() {
+        values = new AtomicReferenceArray<>(values.length());
     }
 
     public static GlobalStorage getInstance() {
         return SINGLETON;
     }
 
+    /**
+     * Create a storage which is not shared with the singleton,
+     * so components running offline (like battle replays sharing
+     * the same JVM) do not see each other's data.
+     *
+     * @return a new, empty storage
+     */
+    public static GlobalStorage isolated() {
+        return new GlobalStorage();
+    }
+
+    static int indexOf(String path) {
+        Integer index = indexes.get(path);
+        if(index == null)
+            index = indexes.computeIfAbsent(path, k -> nextIndex.getAndIncrement());
+
+        return index;
+    }
+
+    Object get(int index) {
+        AtomicReferenceArray<Object> current = values;
+        return index < current.length() ? current.get(index) : null;
+    }
+
+    synchronized void put(int index, Object object) {
+        AtomicReferenceArray<Object> current = values;
+        if(index >= current.length()) {
+            AtomicReferenceArray<Object> grown = new AtomicReferenceArray<>(Math.max(index + 1, current.length() * 2));
+            for(int i = 0; i < current.length(); i++)
+                grown.set(i, current.get(i));
+
+            values = current = grown;
+        }
+
+        current.set(index, object);
+    }
+
     public void put(String name, Object object) {
-        hash.put(name, object);
+        put(indexOf(name), object);
     }
 
     public Object get(String name) {
-        return hash.get(name);
+        Integer index = indexes.get(name);
+        return index == null ? null : get(index);
     }
 
     public StorageNamespace namespace(String name) {
-        return new StorageNamespace("/" + name + "/", this);
+        StorageNamespace ns = namespaces.get(name);
+        if(ns == null)
+            ns = namespaces.computeIfAbsent(name, k -> new StorageNamespace("/" + k + "/", this));
+
+        return ns;
     }
 
     public boolean contains(String name) {
-        return hash.containsKey(name);
+        return get(name) != null;
     }
 }
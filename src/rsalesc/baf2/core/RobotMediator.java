@@ -32,6 +32,7 @@ import rsalesc.baf2.painting.PaintManager;
 
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by Roberto Sales on 11/09/17.
@@ -47,6 +48,16 @@ public class RobotMediator {
         controlManager = new ControlManager(robot);
     }
 
+    /**
+     * Builds a mediator not backed by a live robot. Subclasses must override
+     * every robot-dependent method, see ReplayMediator.
+     */
+    protected RobotMediator(ControlManager controlManager, PaintManager paintManager) {
+        this.robot = null;
+        this.paintManager = paintManager;
+        this.controlManager = controlManager;
+    }
+
     public int getBulletsFired() {
         return robot.getBulletsFired();
     }
@@ -63,6 +74,14 @@ public class RobotMediator {
         return robot.getName().endsWith("*");
     }
 
+    /**
+     * Pool components may use to spread heavy computations. Only offline mediators
+     * provide one, since robots in a battle are not allowed to spawn threads.
+     */
+    public ForkJoinPool getComputePool() {
+        return null;
+    }
+
     public ArrayList<Component> getComponents() {
         return robot.getComponents();
     }
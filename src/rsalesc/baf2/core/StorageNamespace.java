@@ -23,13 +23,21 @@
 
 package rsalesc.baf2.core;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Created by Roberto Sales on 11/09/17.
+ * Child namespaces, concatenations and slots are interned on first use,
+ * so repeated lookups don't build path strings.
  */
 public class StorageNamespace {
     String path;
     GlobalStorage storage;
 
+    private final ConcurrentHashMap<String, StorageNamespace> children = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, StorageNamespace> concats = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, StorageSlot<?>> slots = new ConcurrentHashMap<>();
+
     public StorageNamespace(String path, GlobalStorage storage) {
         this.path = path;
         this.storage = storage;
@@ -39,24 +47,45 @@ public class StorageNamespace {
         return path;
     }
 
+    public GlobalStorage getGlobalStorage() {
+        return storage;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> StorageSlot<T> slot(String name) {
+        StorageSlot<?> slot = slots.get(name);
+        if(slot == null)
+            slot = slots.computeIfAbsent(name, k -> new StorageSlot<>(path + k, storage));
+
+        return (StorageSlot<T>) slot;
+    }
+
     public void put(String name, Object object) {
-        storage.put(path + name, object);
+        slot(name).put(object);
     }
 
     public Object get(String name) {
-        return storage.get(path + name);
+        return slot(name).get();
     }
 
     public StorageNamespace namespace(String name) {
-        return new StorageNamespace(path + "/" + name + "/", storage);
+        StorageNamespace ns = children.get(name);
+        if(ns == null)
+            ns = children.computeIfAbsent(name, k -> new StorageNamespace(path + "/" + k + "/", storage));
+
+        return ns;
     }
 
     public boolean contains(String name) {
-        return storage.contains(path + name);
+        return slot(name).contains();
     }
 
     public StorageNamespace concat(StorageNamespace rhs) {
-        return new StorageNamespace(path + rhs.path, storage);
+        StorageNamespace ns = concats.get(rhs.path);
+        if(ns == null)
+            ns = concats.computeIfAbsent(rhs.path, k -> new StorageNamespace(path + k, storage));
+
+        return ns;
     }
 
     @Override
@@ -65,4 +94,9 @@ public class StorageNamespace {
             return false;
         return path.equals(((StorageNamespace) obj).getPath());
     }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
 }
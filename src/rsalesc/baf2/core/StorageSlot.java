@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.core;
+
+import java.util.function.Supplier;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Typed handle to a single storage path. The slot index is the same in every
+ * GlobalStorage, so one handle serves isolated storages as well.
+ */
+public class StorageSlot<T> {
+    private final String path;
+    private final int index;
+    private final GlobalStorage storage;
+
+    StorageSlot(String path, GlobalStorage storage) {
+        this.path = path;
+        this.index = GlobalStorage.indexOf(path);
+        this.storage = storage;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public T get() {
+        return get(storage);
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(GlobalStorage storage) {
+        return (T) storage.get(index);
+    }
+
+    public void put(T value) {
+        put(storage, value);
+    }
+
+    public void put(GlobalStorage storage, T value) {
+        storage.put(index, value);
+    }
+
+    public boolean contains() {
+        return get() != null;
+    }
+
+    public T getOrCreate(Supplier<T> supplier) {
+        T value = get();
+        if(value == null) {
+            value = supplier.get();
+            put(value);
+        }
+
+        return value;
+    }
+}
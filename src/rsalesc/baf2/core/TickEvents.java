@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+
+package rsalesc.baf2.core;
+
+import robocode.*;
+
+import java.util.List;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Events of a single tick, as AdvancedRobot exposes them.
+ */
+public interface TickEvents {
+    List<RobotDeathEvent> getRobotDeathEvents();
+
+    List<BulletMissedEvent> getBulletMissedEvents();
+
+    List<BulletHitBulletEvent> getBulletHitBulletEvents();
+
+    List<BulletHitEvent> getBulletHitEvents();
+
+    List<HitByBulletEvent> getHitByBulletEvents();
+
+    List<HitWallEvent> getHitWallEvents();
+
+    List<HitRobotEvent> getHitRobotEvents();
+
+    List<ScannedRobotEvent> getScannedRobotEvents();
+}
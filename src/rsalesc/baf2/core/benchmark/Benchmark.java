@@ -23,27 +23,51 @@
 
 package rsalesc.baf2.core.benchmark;
 
+import rsalesc.baf2.BackAsFrontRobot2;
 import rsalesc.baf2.core.Component;
 import rsalesc.baf2.core.listeners.LastBreathListener;
-import rsalesc.baf2.core.utils.Pair;
-import rsalesc.baf2.core.utils.PredictedHashMap;
+import rsalesc.baf2.core.listeners.RoundStartedListener;
 import rsalesc.baf2.core.utils.R;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.*;
-import java.util.function.Function;
 
 /**
  * Created by Roberto Sales on 12/10/17.
  */
-public class Benchmark extends Component implements LastBreathListener {
+public class Benchmark extends Component implements LastBreathListener, RoundStartedListener {
     private static final String SEP = "|";
     private static final int COL_SIZE = 11;
 
     private static final Benchmark SINGLETON = new Benchmark();
-    private static final HashMap<Pair<BenchmarkNode, Integer>, BenchmarkAccumulator> results = new PredictedHashMap<>(30);
+
+    private final HashMap<String, Integer> groupIds = new HashMap<>();
+    private final ArrayList<String> groups = new ArrayList<>();
+
+    private final HashMap<String, Integer> counterIds = new HashMap<>();
+    private final ArrayList<String> counterNames = new ArrayList<>();
+    // replaced, never shrunk, under the lock; count() reads it without one
+    private volatile long[] counters = new long[16];
+
+    private BenchmarkNode root;
+    private BenchmarkNode[] stack = new BenchmarkNode[16];
+    private long[] startedAt = new long[16];
+    private int depth = 0;
+
+    private final LatencyHistogram roundTicks = new LatencyHistogram();
+    private final LatencyHistogram battleTicks = new LatencyHistogram();
+    private long turnBudget = 0;
+    private long tickNanos = 0;
+    private long tickTime = -1;
+    private int roundOverBudget = 0;
+    private int battleOverBudget = 0;
 
     private boolean enabled = false;
-    private BenchmarkNode lastParent;
+    private File exportFile;
+    private boolean exported = false;
 
     private Benchmark() {}
 
@@ -55,116 +79,164 @@ public class Benchmark extends Component implements LastBreathListener {
         enabled = true;
     }
 
-    public BenchmarkAccumulator getResult(String group) {
-        return results.get(new Pair<>(group, getMediator().getRoundNum()));
+    /**
+     * Per-tick budget, usually the CPU constant of the machine. Ticks whose root-level
+     * probes add up to more than this are counted as would-be skipped turns.
+     */
+    public void setTurnBudget(double ms) {
+        turnBudget = (long) (ms * 1e6);
     }
 
-    public Set<Map.Entry<Pair<BenchmarkNode, Integer>, BenchmarkAccumulator>> getResults() {
-        return results.entrySet();
+    /**
+     * Appends every round's results as CSV to file. Robots inside the engine can't
+     * write through plain streams, so this is meant for offline runs like ReplayHarness.
+     */
+    public void setExport(File file) {
+        exportFile = file;
+        exported = false;
     }
 
-    public List<Pair<BenchmarkNode, BenchmarkAccumulator>> getRoundResults() {
-        Set<Map.Entry<Pair<BenchmarkNode, Integer>, BenchmarkAccumulator>> st = getResults();
-        ArrayList<Pair<BenchmarkNode, BenchmarkAccumulator>> res = new ArrayList<>();
-
-        for(Map.Entry<Pair<BenchmarkNode, Integer>, BenchmarkAccumulator> entry : st) {
-            if(entry.getKey().second == getMediator().getRoundNum())
-                res.add(new Pair<>(entry.getKey().first, entry.getValue()));
+    /**
+     * Resolves the id of a group once, so hot paths can call start(int) with it.
+     */
+    public synchronized int register(String group) {
+        Integer id = groupIds.get(group);
+        if(id == null) {
+            id = groups.size();
+            groups.add(group);
+            groupIds.put(group, id);
         }
 
-        Comparator<Pair<BenchmarkNode, BenchmarkAccumulator>> comparator = new Comparator<Pair<BenchmarkNode, BenchmarkAccumulator>>() {
-            @Override
-            public int compare(Pair<BenchmarkNode, BenchmarkAccumulator> o1, Pair<BenchmarkNode, BenchmarkAccumulator> o2) {
-                return o1.first.compareTo(o2.first);
-            }
-        };
+        return id;
+    }
 
-        res.sort(comparator);
+    private synchronized String groupName(int group) {
+        return groups.get(group);
+    }
 
-        TreeMap<BenchmarkNode, List<Pair<BenchmarkNode, BenchmarkAccumulator>>> adj = new TreeMap<>();
+    public BenchmarkNode getRoot() {
+        return root;
+    }
 
-        for(Pair<BenchmarkNode, BenchmarkAccumulator> pair : res) {
-            BenchmarkNode ptr = pair.first;
+    public void start(String group) {
+        if(enabled)
+            start(register(group));
+    }
 
-            outerWhile:
-            while(ptr.parent != null) {
-                ptr = ptr.parent;
+    public void start(int group) {
+        if(!enabled)
+            return;
 
-                for(Pair<BenchmarkNode, BenchmarkAccumulator> pair2 : res) {
-                    if(pair2.first.equals(ptr)) {
-                        if(!adj.containsKey(ptr)) {
-                            adj.put(ptr, new ArrayList<>());
-                        }
+        if(root == null)
+            root = new BenchmarkNode(null, -1, null, getMediator());
 
-                        adj.get(ptr).add(pair);
-                        break outerWhile;
-                    }
-                }
-            }
-        }
+        BenchmarkNode parent = depth == 0 ? root : stack[depth - 1];
 
-        for(Map.Entry<BenchmarkNode, List<Pair<BenchmarkNode, BenchmarkAccumulator>>> entry : adj.entrySet()) {
-            entry.getValue().sort(comparator);
+        if(depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+            startedAt = Arrays.copyOf(startedAt, depth * 2);
         }
 
-        ArrayList<Pair<BenchmarkNode, BenchmarkAccumulator>> actualRes = new ArrayList<>();
+        stack[depth] = parent.getChild(group, groupName(group), getMediator());
+        startedAt[depth++] = System.nanoTime();
+    }
 
-        Function<Pair<BenchmarkNode, BenchmarkAccumulator>, Object> dfs = new Function<Pair<BenchmarkNode, BenchmarkAccumulator>, Object>() {
-            @Override
-            public Object apply(Pair<BenchmarkNode, BenchmarkAccumulator> pair) {
-                actualRes.add(pair);
+    public void stop() {
+        if(!enabled || depth == 0)
+            return;
 
-                if(adj.containsKey(pair.first)) {
-                    for (Pair<BenchmarkNode, BenchmarkAccumulator> child : adj.get(pair.first)) {
-                        this.apply(child);
-                    }
-                }
+        long delta = System.nanoTime() - startedAt[--depth];
+        stack[depth].log(delta);
 
-                return null;
-            }
-        };
+        if(depth == 0)
+            logTick(delta);
+    }
+
+    private void logTick(long delta) {
+        long time = getMediator().getTime();
+        if(time != tickTime)
+            flushTick();
+
+        tickTime = time;
+        tickNanos += delta;
+    }
+
+    private void flushTick() {
+        if(tickTime == -1)
+            return;
+
+        roundTicks.record(tickNanos);
+        battleTicks.record(tickNanos);
+
+        if(turnBudget > 0 && tickNanos > turnBudget) {
+            roundOverBudget++;
+            battleOverBudget++;
+        }
+
+        tickNanos = 0;
+        tickTime = -1;
+    }
 
-        for(Pair<BenchmarkNode, BenchmarkAccumulator> pair : res) {
-            if(pair.first.parent == null)
-                dfs.apply(pair);
+    /**
+     * Resolves the id of a battle-wide event counter (cache hits and so on) once,
+     * so hot paths can call count(int) with it. Counters are printed after the timings.
+     * Caches register from pool threads too, hence the lock.
+     */
+    public synchronized int registerCounter(String counter) {
+        Integer id = counterIds.get(counter);
+        if(id == null) {
+            id = counterNames.size();
+            counterNames.add(counter);
+            counterIds.put(counter, id);
+
+            if(id == counters.length)
+                counters = Arrays.copyOf(counters, 2 * id);
         }
 
-        return actualRes;
+        return id;
     }
 
-    public BenchmarkAccumulator ensure(BenchmarkNode node) {
-        Pair<BenchmarkNode, Integer> key = new Pair<>(node, getMediator().getRoundNum());
-        if(!results.containsKey(key))
-            results.put(key, new BenchmarkAccumulator(getMediator()));
+    public void count(String counter) {
+        count(registerCounter(counter), 1);
+    }
 
-        return results.get(key);
+    public void count(int counter) {
+        count(counter, 1);
     }
 
-    public void start(String group) {
+    /**
+     * Lock-free, so counts racing with another thread or with a registration may be lost.
+     */
+    public void count(int counter, long delta) {
         if(!enabled)
             return;
 
-        lastParent = new BenchmarkNode(this, group, lastParent);
-        lastParent.start();
+        long[] current = counters;
+        if(counter < current.length)
+            current[counter] += delta;
     }
 
-    public void stop() {
-        if(!enabled || lastParent == null)
-            return;
+    public synchronized long getCount(String counter) {
+        Integer id = counterIds.get(counter);
+        return id == null ? 0 : counters[id];
+    }
 
-        lastParent.stop();
-        lastParent = lastParent.parent;
+    public LatencyHistogram getRoundTicks() {
+        return roundTicks;
     }
 
-    public void log(BenchmarkNode node, double delta) {
-        if(enabled)
-            ensure(node).log(delta);
+    public LatencyHistogram getBattleTicks() {
+        return battleTicks;
     }
 
     public String formattedTime(double ms) {
         return R.formattedDouble(ms) + " ms";
     }
 
+    public String formattedNanos(long nanos) {
+        return formattedTime(nanos / 1e6);
+    }
+
     public String getColumn(String x) {
         return " " + String.format("%" + Math.max(x.length(), COL_SIZE) + "s", x) + " ";
     }
@@ -177,48 +249,125 @@ public class Benchmark extends Component implements LastBreathListener {
         return res.toString();
     }
 
+    @Override
+    public void onRoundStarted(int round) {
+        depth = 0;
+        tickNanos = 0;
+        tickTime = -1;
+        roundOverBudget = 0;
+        roundTicks.reset();
+
+        if(root != null)
+            root.resetRound(getMediator());
+    }
+
+    private void printNode(BenchmarkNode node, int level) {
+        BenchmarkAccumulator acc = node.getAccumulator();
+        LatencyHistogram histogram = node.getRoundHistogram();
+
+        if(acc.getExperiments() > 0) {
+            System.out.print(getColumn(formattedTime(acc.getAverageTime()))
+                    + SEP + getColumn(formattedTime(acc.getWorstTime()))
+                    + SEP + getColumn(formattedTime(acc.getError()))
+                    + SEP + getColumn(String.valueOf(acc.getExperiments()))
+                    + SEP + getColumn(formattedNanos(histogram.getPercentile(0.5)))
+                    + SEP + getColumn(formattedNanos(histogram.getPercentile(0.99)))
+                    + SEP + getColumn(formattedNanos(histogram.getPercentile(0.999))));
+
+            acc = acc.getTickAccumulator();
+
+            System.out.print(SEP + getColumn(formattedTime(acc.getAverageTime())) + SEP + getColumn(formattedTime(acc.getWorstTime())));
+            System.out.println(SEP + getPadding(level) + node.getGroup());
+        }
+
+        for(BenchmarkNode child : node.getChildren())
+            printNode(child, level + 1);
+    }
+
     @Override
     public void onLastBreath() {
         if(!enabled)
             return;
 
+        flushTick();
+
         System.out.println("Profiling -----------------------------");
 
         System.out.println(getColumn("avg.") + SEP + getColumn("worst") + SEP + getColumn("error") + SEP
-            + getColumn("execs.") + SEP + getColumn("tick avg.") + SEP + getColumn("tick worst") + SEP + " group");
+            + getColumn("execs.") + SEP + getColumn("p50") + SEP + getColumn("p99") + SEP + getColumn("p999") + SEP
+            + getColumn("tick avg.") + SEP + getColumn("tick worst") + SEP + " group");
 
-        BenchmarkNode last = null;
-        int level = 0;
+        if(root != null) {
+            for(BenchmarkNode child : root.getChildren())
+                printNode(child, 1);
+        }
 
-        for(Pair<BenchmarkNode, BenchmarkAccumulator> entry : getRoundResults()) {
-            while(last != null && !last.equals(entry.first.parent)) {
-                last = last.parent;
-                level--;
-            }
+        System.out.println("Ticks ---------------------------------");
+        System.out.println(getColumn(formattedNanos(roundTicks.getPercentile(0.5)))
+                + SEP + getColumn(formattedNanos(roundTicks.getPercentile(0.99)))
+                + SEP + getColumn(formattedNanos(roundTicks.getPercentile(0.999)))
+                + SEP + getColumn(formattedNanos(roundTicks.getMax()))
+                + SEP + " p50, p99, p999 and worst of " + roundTicks.getCount() + " tick(s)");
 
-            level++;
-            last = entry.first;
+        if(turnBudget > 0) {
+            System.out.println(getColumn(String.valueOf(roundOverBudget)) + SEP + " tick(s) over "
+                    + formattedNanos(turnBudget) + " this round, " + battleOverBudget + " in the battle");
+        }
 
-            BenchmarkAccumulator acc = entry.second;
-//            System.out.println(entry.first + ": " + R.formattedDouble(acc.getAverageTime()) +  " ms avg., "
-//                + R.formattedDouble(acc.getWorstTime()) + " ms worst, " + R.formattedDouble(acc.getError()) + " ms error.");
+        if(exportFile != null)
+            export();
 
-            System.out.print(getColumn(formattedTime(acc.getAverageTime()))
-                + SEP + getColumn(formattedTime(acc.getWorstTime()))
-                + SEP + getColumn(formattedTime(acc.getError()))
-                + SEP + getColumn(String.valueOf(acc.getExperiments())));
+        printCounters();
+    }
 
-            BenchmarkAccumulator execAcc = acc.getTickExecutionAccumulator();
-            acc = acc.getTickAccumulator();
-//
-//            System.out.println("\t Tick work: " + R.formattedDouble(acc.getAverageTime()) +  " ms avg., "
-//                    + R.formattedDouble(acc.getWorstTime()) + " ms worst, " + R.formattedDouble(acc.getError()) + " ms error, "
-//                    + R.formattedDouble(execAcc.getAverageTime()) + " execution(s) avg, "
-//                    + (long) (execAcc.getWorstTime()) + " execution(s) worst.");
+    private synchronized void printCounters() {
+        if(counterNames.isEmpty())
+            return;
 
-            System.out.print(SEP + getColumn(formattedTime(acc.getAverageTime())) + SEP + getColumn(formattedTime(acc.getWorstTime())));
+        System.out.println("Counters ------------------------------");
+
+        long[] current = counters;
+        TreeMap<String, Integer> sorted = new TreeMap<>(counterIds);
+        for(Map.Entry<String, Integer> entry : sorted.entrySet()) {
+            System.out.println(getColumn(String.valueOf(current[entry.getValue()])) + SEP + " " + entry.getKey());
+        }
+    }
 
-            System.out.println(SEP + getPadding(level) + entry.first.getGroup());
+    private void export() {
+        try(PrintWriter writer = new PrintWriter(new FileWriter(exportFile, exported))) {
+            if(!exported)
+                writer.println("round,scope,group,count,mean_ns,p50_ns,p99_ns,p999_ns,max_ns,over_budget");
+
+            int round = getMediator().getRoundNum();
+            exportHistogram(writer, round, "round", "tick", roundTicks, roundOverBudget);
+            exportHistogram(writer, round, "battle", "tick", battleTicks, battleOverBudget);
+
+            if(root != null) {
+                for(BenchmarkNode child : root.getChildren())
+                    exportNode(writer, round, child);
+            }
+
+            exported = true;
+        } catch(IOException | SecurityException e) {
+            BackAsFrontRobot2.warn("could not export benchmark to " + exportFile + ": " + e.getMessage());
+            exportFile = null;
         }
     }
+
+    private void exportNode(PrintWriter writer, int round, BenchmarkNode node) {
+        String path = "\"" + node.getPath().replace("\"", "\"\"") + "\"";
+        exportHistogram(writer, round, "round", path, node.getRoundHistogram(), 0);
+        exportHistogram(writer, round, "battle", path, node.getBattleHistogram(), 0);
+
+        for(BenchmarkNode child : node.getChildren())
+            exportNode(writer, round, child);
+    }
+
+    private void exportHistogram(PrintWriter writer, int round, String scope, String group,
+                                 LatencyHistogram histogram, int overBudget) {
+        writer.println(round + "," + scope + "," + group + "," + histogram.getCount() + ","
+                + (long) histogram.getMean() + "," + histogram.getPercentile(0.5) + ","
+                + histogram.getPercentile(0.99) + "," + histogram.getPercentile(0.999) + ","
+                + histogram.getMax() + "," + overBudget);
+    }
 }
@@ -24,7 +24,6 @@
 package rsalesc.baf2.core.benchmark;
 
 import rsalesc.baf2.core.RobotMediator;
-import rsalesc.baf2.core.utils.BattleTime;
 import rsalesc.baf2.core.utils.R;
 
 /**
@@ -39,7 +38,8 @@ public class BenchmarkAccumulator {
     private final RobotMediator mediator;
     private BenchmarkAccumulator tickAccumulator;
     private BenchmarkAccumulator execAccumulator;
-    private BattleTime lastTime;
+    private long lastTime = -1;
+    private int lastRound = -1;
 
     private double tickTotalTime = 0;
     private long tickExperiments = 0;
@@ -54,7 +54,10 @@ public class BenchmarkAccumulator {
 
     public void log(double delta) {
         if(mediator != null) {
-            if (lastTime != null && !mediator.getBattleTime().equals(lastTime)) {
+            long time = mediator.getTime();
+            int round = mediator.getRoundNum();
+
+            if (lastTime != -1 && (time != lastTime || round != lastRound)) {
                 tickAccumulator.log(tickTotalTime); // TODO: maybe it will lose last tick
                 execAccumulator.log(tickExperiments);
 
@@ -62,7 +65,8 @@ public class BenchmarkAccumulator {
                 tickExperiments = 0;
             }
 
-            lastTime = mediator.getBattleTime();
+            lastTime = time;
+            lastRound = round;
             tickTotalTime += delta;
             tickExperiments++;
         }
@@ -23,76 +23,99 @@
 
 package rsalesc.baf2.core.benchmark;
 
-import rsalesc.baf2.core.utils.Timer;
+import rsalesc.baf2.core.RobotMediator;
 
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by Roberto Sales on 12/10/17.
+ * A profiled group under a given parent. Children are indexed by group id,
+ * so descending the tree from a probe doesn't allocate once the node exists.
  */
 public class BenchmarkNode implements Comparable<BenchmarkNode> {
-    private final Benchmark benchmark;
     private final String group;
+    private final int id;
     public final BenchmarkNode parent;
 
-    private Timer timer;
+    private BenchmarkNode[] children = new BenchmarkNode[0];
+    private BenchmarkAccumulator accumulator;
+    private final LatencyHistogram roundHistogram = new LatencyHistogram();
+    private final LatencyHistogram battleHistogram = new LatencyHistogram();
 
-    public BenchmarkNode(Benchmark benchmark, String group, BenchmarkNode parent) {
-        this.benchmark = benchmark;
+    public BenchmarkNode(String group, int id, BenchmarkNode parent, RobotMediator mediator) {
         this.group = group;
-        this.timer = new Timer();
+        this.id = id;
         this.parent = parent;
+        this.accumulator = new BenchmarkAccumulator(mediator);
     }
 
     public String getGroup() {
         return group;
     }
 
-    @Override
-    public int hashCode() {
-        if(parent == null)
-            return group.hashCode();
+    public int getId() {
+        return id;
+    }
 
-        return Objects.hash(parent, group);
+    public String getPath() {
+        if(parent == null || parent.group == null)
+            return group;
+        return parent.getPath() + "/" + group;
     }
 
-    @Override
-    public boolean equals(Object obj) {
-        if(!(obj instanceof BenchmarkNode))
-            return false;
+    public BenchmarkNode getChild(int id, String group, RobotMediator mediator) {
+        if(id >= children.length)
+            children = Arrays.copyOf(children, Math.max(id + 1, children.length * 2));
+
+        if(children[id] == null)
+            children[id] = new BenchmarkNode(group, id, this, mediator);
+
+        return children[id];
+    }
+
+    public List<BenchmarkNode> getChildren() {
+        ArrayList<BenchmarkNode> res = new ArrayList<>();
+        for(BenchmarkNode child : children) {
+            if(child != null)
+                res.add(child);
+        }
 
-        BenchmarkNode rhs = (BenchmarkNode) obj;
+        res.sort(null);
+        return res;
+    }
+
+    public void resetRound(RobotMediator mediator) {
+        accumulator = new BenchmarkAccumulator(mediator);
+        roundHistogram.reset();
+
+        for(BenchmarkNode child : children) {
+            if(child != null)
+                child.resetRound(mediator);
+        }
+    }
+
+    public void log(long nanos) {
+        accumulator.log(nanos / 1e6);
+        roundHistogram.record(nanos);
+        battleHistogram.record(nanos);
+    }
 
-        return group.equals(rhs.group) && (parent == null && rhs.parent == null || parent != null && rhs.parent != null && parent.equals(rhs.parent));
+    public BenchmarkAccumulator getAccumulator() {
+        return accumulator;
     }
 
-    public void start() {
-        timer.start();
+    public LatencyHistogram getRoundHistogram() {
+        return roundHistogram;
     }
 
-    public void stop() {
-        benchmark.log(this, (double) timer.stop() / 1e6);
+    public LatencyHistogram getBattleHistogram() {
+        return battleHistogram;
     }
 
     @Override
     public int compareTo(BenchmarkNode o) {
-        if(parent != null && o.parent != null) {
-            int res = parent.compareTo(o.parent);
-            if(res != 0)
-                return res;
-
-            return group.compareTo(o.group);
-        } else {
-            int res = group.compareTo(o.group);
-            if(res != 0)
-                return res;
-
-            if(parent != null)
-                return +1;
-            if(o.parent != null)
-                return -1;
-
-            return 0;
-        }
+        return group.compareTo(o.group);
     }
 }
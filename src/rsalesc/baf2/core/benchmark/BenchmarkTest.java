@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.core.benchmark;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class BenchmarkTest {
+    private static final int THREADS = 8;
+    private static final int NAMES = 200;
+
+    @Test
+    public void concurrentRegistrationAgrees() throws Exception {
+        Benchmark benchmark = Benchmark.getInstance();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            ArrayList<Callable<int[]>> tasks = new ArrayList<>();
+            for(int t = 0; t < THREADS; t++) {
+                tasks.add(() -> {
+                    int[] ids = new int[NAMES];
+                    for(int i = 0; i < NAMES; i++) {
+                        ids[i] = benchmark.registerCounter("BenchmarkTest.counter" + i);
+                        benchmark.count(ids[i]);
+                    }
+
+                    return ids;
+                });
+            }
+
+            ArrayList<int[]> results = new ArrayList<>();
+            for(Future<int[]> future : pool.invokeAll(tasks))
+                results.add(future.get());
+
+            HashSet<Integer> distinct = new HashSet<>();
+            for(int i = 0; i < NAMES; i++) {
+                for(int[] ids : results)
+                    assertEquals(results.get(0)[i], ids[i]);
+
+                assertTrue(distinct.add(results.get(0)[i]), "two counters share an id");
+            }
+
+            assertEquals(results.get(0)[NAMES - 1], benchmark.registerCounter("BenchmarkTest.counter" + (NAMES - 1)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.core.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Log-linear histogram of nanosecond latencies, in the spirit of HdrHistogram:
+ * values below 64 are exact, larger ones fall into one of 32 linear sub-buckets
+ * of their power of two, which bounds the relative error of any percentile by ~3%.
+ * Recording never allocates.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int EXACT = SUB_COUNT << 1;
+    private static final int BUCKETS = EXACT + (64 - SUB_BITS - 1) * SUB_COUNT;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total = 0;
+    private long max = 0;
+    private long sum = 0;
+
+    private static int indexOf(long value) {
+        if(value < EXACT)
+            return (int) Math.max(value, 0);
+
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS - 1;
+        return EXACT + (shift - 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+    }
+
+    private static long valueOf(int index) {
+        if(index < EXACT)
+            return index;
+
+        int shift = (index - EXACT) / SUB_COUNT + 1;
+        long sub = (index - EXACT) % SUB_COUNT + SUB_COUNT;
+        return (sub << shift) + (1L << (shift - 1));
+    }
+
+    public void record(long value) {
+        counts[indexOf(value)]++;
+        total++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    public void add(LatencyHistogram rhs) {
+        for(int i = 0; i < BUCKETS; i++)
+            counts[i] += rhs.counts[i];
+
+        total += rhs.total;
+        sum += rhs.sum;
+        max = Math.max(max, rhs.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    /**
+     * Value below which a fraction q of the recorded values lie, with q in [0, 1].
+     */
+    public long getPercentile(double q) {
+        if(total == 0)
+            return 0;
+
+        long rank = Math.max((long) Math.ceil(q * total), 1);
+        if(rank >= total)
+            return max;
+
+        long seen = 0;
+
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if(seen >= rank)
+                return Math.min(valueOf(i), max);
+        }
+
+        return max;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.core.utils;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Kernel density over a set of weighted angles, each with its own bandwidth. Candidates
+ * are swept in angular order and only the neighbours within the kernel cutoff of the
+ * widest bandwidth are visited, wrapping around the circle. Contributions are the same
+ * as comparing every pair with normalRelativeAngle, but skip the pairs the kernel zeroes.
+ */
+public class AngularDensity {
+    public static final Kernel GAUSS = new Kernel() {
+        @Override
+        public double get(double x) {
+            return R.gaussKernel(x);
+        }
+
+        @Override
+        public double getCutoff() {
+            // 2^-26 of the peak, nothing that changes an argmax
+            return 6;
+        }
+    };
+
+    public static final Kernel CUBIC = new Kernel() {
+        @Override
+        public double get(double x) {
+            return R.cubicKernel(x);
+        }
+
+        @Override
+        public double getCutoff() {
+            return 1;
+        }
+    };
+
+    private static final IntPredicate ALL = i -> true;
+
+    /**
+     * Density at each of the angles, or NaN for the ones not accepted by eligible.
+     * Candidate j contributes weights[j] * kernel(normalRelativeAngle(angles[j] - angles[i]) / bandwidths[j]).
+     */
+    public static double[] getDensities(double[] angles, double[] weights, double[] bandwidths,
+                                        Kernel kernel, IntPredicate eligible) {
+        int n = angles.length;
+        double[] res = new double[n];
+        double cutoff = kernel.getCutoff();
+
+        double maxBandwidth = 0;
+        for(double bandwidth : bandwidths)
+            maxBandwidth = Math.max(maxBandwidth, bandwidth);
+
+        // slightly wider so the exact test below is the one deciding at the border
+        double reach = cutoff * maxBandwidth * (1 + 1e-9) + 1e-12;
+
+        if(!(reach < R.PI)) {
+            for(int i = 0; i < n; i++) {
+                res[i] = eligible.test(i) ? getDensity(angles, weights, bandwidths, kernel, i, 0, n, null) : Double.NaN;
+            }
+
+            return res;
+        }
+
+        int[] order = sortedOrder(angles);
+        double[] sorted = new double[n];
+        for(int k = 0; k < n; k++)
+            sorted[k] = R.normalAbsoluteAngle(angles[order[k]]);
+
+        int lo = -n, hi = -n;
+        for(int k = 0; k < n; k++) {
+            double center = sorted[k];
+
+            while(position(sorted, lo) < center - reach)
+                lo++;
+            while(hi < k + n && position(sorted, hi) <= center + reach)
+                hi++;
+
+            int i = order[k];
+            res[i] = eligible.test(i) ? getDensity(angles, weights, bandwidths, kernel, i, lo, hi, order) : Double.NaN;
+        }
+
+        return res;
+    }
+
+    public static double[] getDensities(double[] angles, double[] weights, double[] bandwidths, Kernel kernel) {
+        return getDensities(angles, weights, bandwidths, kernel, ALL);
+    }
+
+    /**
+     * Index of the eligible angle with the highest density, the first one on ties, or -1.
+     */
+    public static int argmax(double[] angles, double[] weights, double[] bandwidths,
+                             Kernel kernel, IntPredicate eligible) {
+        double[] densities = getDensities(angles, weights, bandwidths, kernel, eligible);
+
+        int best = -1;
+        for(int i = 0; i < densities.length; i++) {
+            if(densities[i] > (best == -1 ? Double.NEGATIVE_INFINITY : densities[best]))
+                best = i;
+        }
+
+        return best;
+    }
+
+    public static int argmax(double[] angles, double[] weights, double[] bandwidths, Kernel kernel) {
+        return argmax(angles, weights, bandwidths, kernel, ALL);
+    }
+
+    private static double getDensity(double[] angles, double[] weights, double[] bandwidths, Kernel kernel,
+                                     int i, int from, int to, int[] order) {
+        int n = angles.length;
+        double cutoff = kernel.getCutoff();
+        double density = 0;
+
+        for(int k = from; k < to; k++) {
+            int j = order == null ? k : order[Math.floorMod(k, n)];
+            double x = R.normalRelativeAngle(angles[j] - angles[i]) / bandwidths[j];
+
+            if(Math.abs(x) < cutoff)
+                density += weights[j] * kernel.get(x);
+        }
+
+        return density;
+    }
+
+    private static double position(double[] sorted, int k) {
+        int n = sorted.length;
+        return sorted[Math.floorMod(k, n)] + R.DOUBLE_PI * Math.floorDiv(k, n);
+    }
+
+    private static int[] sortedOrder(double[] angles) {
+        int n = angles.length;
+
+        double[] normal = new double[n];
+        for(int i = 0; i < n; i++)
+            normal[i] = R.normalAbsoluteAngle(angles[i]);
+
+        Integer[] boxed = new Integer[n];
+        for(int i = 0; i < n; i++)
+            boxed[i] = i;
+
+        Arrays.sort(boxed, (a, b) -> Double.compare(normal[a], normal[b]));
+
+        int[] res = new int[n];
+        for(int i = 0; i < n; i++)
+            res[i] = boxed[i];
+
+        return res;
+    }
+
+    public interface Kernel {
+        double get(double x);
+
+        /**
+         * The kernel is zero, or negligible, for |x| >= getCutoff().
+         */
+        double getCutoff();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.core.utils;
+
+import rsalesc.baf2.core.benchmark.Benchmark;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * LRU cache with a hard entry cap. Owners evict entries explicitly when they know
+ * they became unreachable (e.g. when a wave passes); the cap is the safety net.
+ * Hits, misses and evictions are reported to the Benchmark counters as "name.hit" etc.
+ *
+ * Not thread-safe: get reorders entries, so owners shared between threads must lock.
+ */
+public class BoundedCache<K, V> {
+    private final int capacity;
+    private final LruMap<K, V> map;
+
+    private final int hitCounter;
+    private final int missCounter;
+    private final int evictionCounter;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public BoundedCache(String name, int capacity) {
+        Benchmark benchmark = Benchmark.getInstance();
+
+        this.capacity = capacity;
+        this.hitCounter = benchmark.registerCounter(name + ".hit");
+        this.missCounter = benchmark.registerCounter(name + ".miss");
+        this.evictionCounter = benchmark.registerCounter(name + ".eviction");
+        this.map = new LruMap<>(this);
+    }
+
+    public V get(K key) {
+        V res = map.get(key);
+        if(res != null) {
+            hits++;
+            Benchmark.getInstance().count(hitCounter);
+        } else {
+            misses++;
+            Benchmark.getInstance().count(missCounter);
+        }
+
+        return res;
+    }
+
+    public void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    public int evictIf(Predicate<? super K> predicate) {
+        int res = 0;
+        Iterator<K> iterator = map.keySet().iterator();
+        while(iterator.hasNext()) {
+            if(predicate.test(iterator.next())) {
+                iterator.remove();
+                res++;
+            }
+        }
+
+        evicted(res);
+        return res;
+    }
+
+    public void clear() {
+        evicted(map.size());
+        map.clear();
+    }
+
+    private void evicted(int count) {
+        if(count == 0)
+            return;
+
+        evictions += count;
+        Benchmark.getInstance().count(evictionCounter, count);
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient BoundedCache<K, V> owner;
+
+        private LruMap(BoundedCache<K, V> owner) {
+            super((int) Math.ceil(owner.capacity / 0.75) + 1, 0.75f, true);
+            this.owner = owner;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if(size() > owner.capacity) {
+                owner.evicted(1);
+                return true;
+            }
+
+            return false;
+        }
+    }
+}
@@ -40,6 +40,10 @@ public abstract class Physics {
         return new Point(source, dest).absoluteBearing();
     }
 
+    public static double absoluteBearing(double sourceX, double sourceY, double destX, double destY) {
+        return R.normalAbsoluteAngle(R.atan2(destX - sourceX, destY - sourceY));
+    }
+
     /**
      * Returns lateral velocity relative to robot, but
      * assuming it as a stationary bot.
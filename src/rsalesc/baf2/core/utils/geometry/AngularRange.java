@@ -46,6 +46,10 @@ public class AngularRange extends Range implements Serializable {
         this.reference = reference;
     }
 
+    public double getReference() {
+        return reference;
+    }
+
     public double getAngle(double offset) {
         return R.normalAbsoluteAngle(reference + offset);
     }
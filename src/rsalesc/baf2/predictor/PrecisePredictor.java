@@ -34,20 +34,33 @@ import rsalesc.baf2.waves.Wave;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Function;
 
 /**
  * This class has methods to support precise movement prediction.
  * Note that all methods assume that you are using a BackAsFrontRobot-like robot.
  */
 public abstract class PrecisePredictor {
-    public static List<PredictedPoint> lastEscape = null;
     private static boolean MEA_PASS = false;
 
-    public static List<PredictedPoint> predictOnWaveImpact(AxisRectangle field, Point center, double stick,
-                                                           PredictedPoint initialPoint, Wave wave,
-                                                           int direction, Function<PredictedPoint, Double> perpendiculator,
-                                                           boolean hasToPass, boolean brake) {
+    private static final ThreadLocal<PredictionBuffer[]> MEA_BUFFERS = new ThreadLocal<PredictionBuffer[]>() {
+        @Override
+        protected PredictionBuffer[] initialValue() {
+            return new PredictionBuffer[]{new PredictionBuffer(), new PredictionBuffer()};
+        }
+    };
+
+    /**
+     * Primitive replacement for a Function&lt;PredictedPoint, Double&gt;, gives the
+     * angle to be added to the orbit bearing when the bot is at (x, y).
+     */
+    public interface Perpendiculator {
+        double get(double x, double y);
+    }
+
+    public static void predictOnWaveImpact(PredictionBuffer out, AxisRectangle field, Point center, double stick,
+                                           PredictedPoint initialPoint, Wave wave,
+                                           int direction, Perpendiculator perpendiculator,
+                                           boolean hasToPass, boolean brake) {
 
         if (direction == 0 && !brake)
             throw new IllegalStateException();
@@ -59,48 +72,122 @@ public abstract class PrecisePredictor {
             direction = +1;
 
         AxisRectangle shrinkedField = field.shrink(18, 18);
-        List<PredictedPoint> res = new ArrayList<PredictedPoint>();
-        res.add(initialPoint);
+        out.clear();
+        out.push(initialPoint);
 
-        PredictedPoint cur = initialPoint;
-        while (hasToPass && !wave.hasPassedRobot(cur, cur.time) || !wave.hasPassed(cur, cur.time)) {
-            double perp = perpendiculator.apply(cur);
-            double pointingAngle = Physics.absoluteBearing(center, cur) + perp * direction;
-            double angle = R.normalAbsoluteAngle(WallSmoothing.smooth(shrinkedField, stick, cur,
-                    pointingAngle, direction));
-            cur = tick(cur, angle, brake ? 0 : Rules.MAX_VELOCITY, Double.POSITIVE_INFINITY);
-            res.add(cur);
-        }
+        while (orbit(out, shrinkedField, center, stick, wave, direction, perpendiculator, hasToPass, brake));
+    }
 
-        return res;
+    /**
+     * Predicts the clockwise, counter-clockwise and stop paths of a surfing decision
+     * in lockstep, sharing the shrinked field and the wave checks setup.
+     */
+    public static void predictOnWaveImpact(PredictionBuffer clockwise, PredictionBuffer counter, PredictionBuffer stop,
+                                           AxisRectangle field, Point center, double stick,
+                                           PredictedPoint initialPoint, Wave wave,
+                                           Perpendiculator perpendiculator, boolean hasToPass) {
+        int stopDirection = initialPoint.getDirection(center);
+        if (stopDirection == 0)
+            stopDirection = +1;
+
+        AxisRectangle shrinkedField = field.shrink(18, 18);
+        clockwise.clear();
+        counter.clear();
+        stop.clear();
+        clockwise.push(initialPoint);
+        counter.push(initialPoint);
+        stop.push(initialPoint);
+
+        boolean clockwiseAlive = true, counterAlive = true, stopAlive = true;
+        while (clockwiseAlive || counterAlive || stopAlive) {
+            if (clockwiseAlive)
+                clockwiseAlive = orbit(clockwise, shrinkedField, center, stick, wave, +1, perpendiculator, hasToPass, false);
+            if (counterAlive)
+                counterAlive = orbit(counter, shrinkedField, center, stick, wave, -1, perpendiculator, hasToPass, false);
+            if (stopAlive)
+                stopAlive = orbit(stop, shrinkedField, center, stick, wave, stopDirection, perpendiculator, hasToPass, true);
+        }
     }
 
     public static List<PredictedPoint> predictOnWaveImpact(AxisRectangle field, double stick, PredictedPoint initialPoint, Wave wave,
                                                            int direction, double perpendiculator, boolean hasToPass, boolean brake) {
-        return predictOnWaveImpact(field, wave.getSource(), stick, initialPoint, wave,
-                direction, new Function<PredictedPoint, Double>() {
-                    @Override
-                    public Double apply(PredictedPoint predictedPoint) {
-                        return perpendiculator;
-                    }
-                }, hasToPass, brake);
+        PredictionBuffer res = new PredictionBuffer();
+        predictOnWaveImpact(res, field, wave.getSource(), stick, initialPoint, wave,
+                direction, (x, y) -> perpendiculator, hasToPass, brake);
+        return res;
+    }
+
+    public static void predictOnWaveImpact(PredictionBuffer out, PredictedPoint initialPoint, Wave wave,
+                                           Point dest, boolean hasToPass) {
+        out.clear();
+        out.push(initialPoint);
+
+        int last;
+        while (!hasPassed(out, last = out.size() - 1, wave, hasToPass)) {
+            double x = out.getX(last);
+            double y = out.getY(last);
+            double distance = R.sqrt((x - dest.x) * (x - dest.x) + (y - dest.y) * (y - dest.y));
+            double angle = R.isNear(distance, 0) ? out.getHeading(last) : Physics.absoluteBearing(x, y, dest.x, dest.y);
+            tick(out, angle, Rules.MAX_VELOCITY, distance);
+        }
     }
 
     public static List<PredictedPoint> predictOnWaveImpact(PredictedPoint initialPoint, Wave wave,
                                                            Point dest, boolean hasToPass) {
-        List<PredictedPoint> res = new ArrayList<PredictedPoint>();
+        PredictionBuffer res = new PredictionBuffer();
+        predictOnWaveImpact(res, initialPoint, wave, dest, hasToPass);
+        return res;
+    }
 
-        PredictedPoint cur = initialPoint;
-        res.add(initialPoint);
+    private static boolean orbit(PredictionBuffer out, AxisRectangle shrinkedField, Point center, double stick,
+                                 Wave wave, int direction, Perpendiculator perpendiculator,
+                                 boolean hasToPass, boolean brake) {
+        int last = out.size() - 1;
+        if (hasPassed(out, last, wave, hasToPass))
+            return false;
+
+        double x = out.getX(last);
+        double y = out.getY(last);
+        double pointingAngle = Physics.absoluteBearing(center.x, center.y, x, y) + perpendiculator.get(x, y) * direction;
+        double angle = R.normalAbsoluteAngle(WallSmoothing.smooth(shrinkedField, stick, x, y,
+                pointingAngle, direction));
+        tick(out, angle, brake ? 0 : Rules.MAX_VELOCITY, Double.POSITIVE_INFINITY);
+        return true;
+    }
 
-        while (hasToPass && !wave.hasPassedRobot(cur, cur.time) || !wave.hasPassed(cur, cur.time)) {
-            double distance = cur.distance(dest);
-            double angle = R.isNear(distance, 0) ? cur.heading : Physics.absoluteBearing(cur, dest);
-            cur = tick(cur, angle, Rules.MAX_VELOCITY, distance);
-            res.add(cur);
-        }
+    private static boolean hasPassed(PredictionBuffer path, int i, Wave wave, boolean hasToPass) {
+        Point source = wave.getSource();
+        double dx = path.getX(i) - source.x;
+        double dy = path.getY(i) - source.y;
+        double distance = R.sqrt(dx * dx + dy * dy);
+        double traveled = wave.getDistanceTraveled(path.getTime(i));
 
-        return res;
+        return !(hasToPass && !(distance + Physics.BOT_WIDTH < traveled) || !(distance < traveled));
+    }
+
+    /**
+     * Same as tick(PredictedPoint, ...), but reads the last point of the path
+     * and appends the new one to it.
+     */
+    private static void tick(PredictionBuffer path, double angle, double maxVelocity, double remaining) {
+        int last = path.size() - 1;
+        double heading = path.getHeading(last);
+        double velocity = path.getVelocity(last);
+
+        double offset = R.normalRelativeAngle(angle - heading);
+        double turn = BackAsFrontRobot2.getQuickestTurn(offset);
+        int ahead = offset == turn ? +1 : -1;
+
+        double newHeading = getNewHeading(heading, turn, velocity);
+        double newVelocity = getTickVelocity(velocity, maxVelocity, ahead, remaining);
+
+        int newAhead = newVelocity == 0 && velocity != 0 || newVelocity * velocity > 0
+                ? path.getAhead(last)
+                : (int) Math.signum(newVelocity);
+
+        path.push(path.getX(last) + R.sin(newHeading) * newVelocity,
+                path.getY(last) + R.cos(newHeading) * newVelocity,
+                newHeading, newVelocity, path.getTime(last) + 1, newAhead);
     }
 
     public static List<PredictedPoint> generateOnWaveImpact(AxisRectangle field, double stick, PredictedPoint initialPoint, Wave wave,
@@ -129,79 +216,56 @@ public abstract class PrecisePredictor {
             direction = 1;
 
         AxisRectangle shrinkedField = field.shrink(18, 18);
+        PredictionBuffer[] buffers = MEA_BUFFERS.get();
+        PredictionBuffer posList = buffers[0], negList = buffers[1];
 
-        List<PredictedPoint> posList = predictOnWaveImpact(field, stick, initialPoint, wave, direction, R.HALF_PI, MEA_PASS, false);
-        List<PredictedPoint> negList = predictOnWaveImpact(field, stick, initialPoint, wave, -direction, R.HALF_PI, MEA_PASS, false);
+        predictOnWaveImpact(posList, field, wave.getSource(), stick, initialPoint, wave, direction,
+                (x, y) -> R.HALF_PI, MEA_PASS, false);
+        predictOnWaveImpact(negList, field, wave.getSource(), stick, initialPoint, wave, -direction,
+                (x, y) -> R.HALF_PI, MEA_PASS, false);
 
         double absBearing = Physics.absoluteBearing(wave.getSource(), initialPoint);
         Range res = new Range(-1e-8, +1e-8);
 
-        lastEscape = new ArrayList<>();
-        for (PredictedPoint pos : posList) {
-            if(!shrinkedField.contains(pos))
-                break;
-
-            res.push(R.normalRelativeAngle(Physics.absoluteBearing(wave.getSource(), pos) - absBearing) * direction);
-            lastEscape.add(pos);
-        }
-
-        for (PredictedPoint neg : negList) {
-            if(!shrinkedField.contains(neg))
-                break;
-
-            lastEscape.add(neg);
-            res.push(R.normalRelativeAngle(Physics.absoluteBearing(wave.getSource(), neg) - absBearing) * direction);
-        }
+        pushEscape(res, posList, shrinkedField, wave.getSource(), absBearing, direction);
+        pushEscape(res, negList, shrinkedField, wave.getSource(), absBearing, direction);
 
         return res;
     }
 
     public static Range getBetterPreciseMEA(AxisRectangle field, double stick, PredictedPoint initialPoint, Wave wave,
                                       int direction) {
+        Range res = getPreciseMEA(field, stick, initialPoint, wave, direction);
+
         if (direction == 0)
             direction = 1;
 
         AxisRectangle shrinkedField = field.shrink(18, 18);
+        PredictionBuffer[] buffers = MEA_BUFFERS.get();
+        PredictionBuffer posList = buffers[0], negList = buffers[1];
 
-        List<PredictedPoint> posList = predictOnWaveImpact(field, stick, initialPoint, wave, direction, R.HALF_PI, MEA_PASS, false);
-        List<PredictedPoint> negList = predictOnWaveImpact(field, stick, initialPoint, wave, -direction, R.HALF_PI, MEA_PASS, false);
+        PredictedPoint posEnd = posList.getLast(), negEnd = negList.getLast();
+        predictOnWaveImpact(posList, initialPoint, wave, posEnd, MEA_PASS);
+        predictOnWaveImpact(negList, initialPoint, wave, negEnd, MEA_PASS);
 
         double absBearing = Physics.absoluteBearing(wave.getSource(), initialPoint);
-        Range res = new Range(-1e-8, +1e-8);
-
-        lastEscape = new ArrayList<>();
-        for (PredictedPoint pos : posList) {
-            if(!shrinkedField.contains(pos))
-                break;
-
-            res.push(R.normalRelativeAngle(Physics.absoluteBearing(wave.getSource(), pos) - absBearing) * direction);
-        }
-
-        for (PredictedPoint neg : negList) {
-            if(!shrinkedField.contains(neg))
-                break;
-
-            res.push(R.normalRelativeAngle(Physics.absoluteBearing(wave.getSource(), neg) - absBearing) * direction);
-        }
-
-        posList = predictOnWaveImpact(initialPoint, wave, R.getLast(posList), MEA_PASS);
-        negList = predictOnWaveImpact(initialPoint, wave, R.getLast(negList), MEA_PASS);
+        pushEscape(res, posList, shrinkedField, wave.getSource(), absBearing, direction);
+        pushEscape(res, negList, shrinkedField, wave.getSource(), absBearing, direction);
 
-        for (PredictedPoint pos : posList) {
-            if(!shrinkedField.contains(pos))
-                break;
-
-            res.push(R.normalRelativeAngle(Physics.absoluteBearing(wave.getSource(), pos) - absBearing) * direction);
-        }
+        return res;
+    }
 
-        for (PredictedPoint neg : negList) {
-            if(!shrinkedField.contains(neg))
+    private static void pushEscape(Range res, PredictionBuffer path, AxisRectangle shrinkedField, Point source,
+                                   double absBearing, int direction) {
+        for (int i = 0; i < path.size(); i++) {
+            double x = path.getX(i);
+            double y = path.getY(i);
+            if (!R.nearOrBetween(shrinkedField.minx, x, shrinkedField.maxx)
+                    || !R.nearOrBetween(shrinkedField.miny, y, shrinkedField.maxy))
                 break;
 
-            res.push(R.normalRelativeAngle(Physics.absoluteBearing(wave.getSource(), neg) - absBearing) * direction);
+            res.push(R.normalRelativeAngle(Physics.absoluteBearing(source.x, source.y, x, y) - absBearing) * direction);
         }
-
-        return res;
     }
 
     public static PredictedPoint predictStop(PredictedPoint initialPoint, double angle) {
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.predictor;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Struct-of-arrays storage for a predicted path. Buffers are reused across
+ * predictions, PredictedPoint views are only built when read through get().
+ */
+public class PredictionBuffer extends AbstractList<PredictedPoint> implements RandomAccess {
+    private static final int DEFAULT_CAPACITY = 128;
+
+    private double[] x;
+    private double[] y;
+    private double[] heading;
+    private double[] velocity;
+    private long[] time;
+    private int[] ahead;
+    private PredictedPoint[] views;
+    private int size;
+
+    public PredictionBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PredictionBuffer(int capacity) {
+        capacity = Math.max(capacity, 1);
+        x = new double[capacity];
+        y = new double[capacity];
+        heading = new double[capacity];
+        velocity = new double[capacity];
+        time = new long[capacity];
+        ahead = new int[capacity];
+        views = new PredictedPoint[capacity];
+    }
+
+    @Override
+    public void clear() {
+        // GC
+        Arrays.fill(views, 0, size, null);
+        size = 0;
+    }
+
+    public void push(double x, double y, double heading, double velocity, long time, int ahead) {
+        if(size == this.x.length)
+            grow();
+
+        this.x[size] = x;
+        this.y[size] = y;
+        this.heading[size] = heading;
+        this.velocity[size] = velocity;
+        this.time[size] = time;
+        this.ahead[size] = ahead;
+        size++;
+    }
+
+    public void push(PredictedPoint point) {
+        push(point.x, point.y, point.heading, point.velocity, point.time, point.ahead);
+        views[size - 1] = point;
+    }
+
+    @Override
+    public boolean add(PredictedPoint point) {
+        push(point);
+        return true;
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        heading = Arrays.copyOf(heading, capacity);
+        velocity = Arrays.copyOf(velocity, capacity);
+        time = Arrays.copyOf(time, capacity);
+        ahead = Arrays.copyOf(ahead, capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public PredictedPoint get(int i) {
+        if(i < 0 || i >= size)
+            throw new IndexOutOfBoundsException(Integer.toString(i));
+
+        PredictedPoint res = views[i];
+        if(res == null)
+            views[i] = res = new PredictedPoint(x[i], y[i], heading[i], velocity[i], time[i], ahead[i]);
+
+        return res;
+    }
+
+    public PredictedPoint getLast() {
+        return get(size - 1);
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    public double getHeading(int i) {
+        return heading[i];
+    }
+
+    public double getVelocity(int i) {
+        return velocity[i];
+    }
+
+    public long getTime(int i) {
+        return time[i];
+    }
+
+    public int getAhead(int i) {
+        return ahead[i];
+    }
+}
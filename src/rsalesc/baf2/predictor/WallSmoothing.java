@@ -48,32 +48,42 @@ public abstract class WallSmoothing {
         return cb(shrinkedField, stick, source, angle, direction);
     }
 
+    public static double smooth(AxisRectangle shrinkedField, double stick, double x, double y, double angle, int direction) {
+        return cb(shrinkedField, stick, x, y, angle, direction);
+    }
+
     /**
      * Fast Exact Wall Smoothing by Cb.
      */
     public static double cb(AxisRectangle field, double wallStick, Point location, double angle, int circleDirection) {
-        Point p = location.project(angle, wallStick);
-        for (int i = 0; !field.contains(p) && i < 4; i++) {
-            if (p.x < field.minx) {
-                p.x = field.minx;
-                double a = location.x - field.minx;
-                p.y = location.y + circleDirection * Math.sqrt(wallStick * wallStick - a * a);
-            } else if (p.y > field.maxy) {
-                p.y = field.maxy;
-                double a = field.maxy - location.y;
-                p.x = location.x + circleDirection * Math.sqrt(wallStick * wallStick - a * a);
-            } else if (p.x > field.maxx) {
-                p.x = field.maxx;
-                double a = field.maxx - location.x;
-                p.y = location.y - circleDirection * Math.sqrt(wallStick * wallStick - a * a);
-            } else if (p.y < field.miny) {
-                p.y = field.miny;
-                double a = location.y - field.miny;
-                p.x = location.x - circleDirection * Math.sqrt(wallStick * wallStick - a * a);
+        return cb(field, wallStick, location.x, location.y, angle, circleDirection);
+    }
+
+    public static double cb(AxisRectangle field, double wallStick, double x, double y, double angle, int circleDirection) {
+        double px = x + R.sin(angle) * wallStick;
+        double py = y + R.cos(angle) * wallStick;
+        for (int i = 0; !(R.nearOrBetween(field.minx, px, field.maxx)
+                && R.nearOrBetween(field.miny, py, field.maxy)) && i < 4; i++) {
+            if (px < field.minx) {
+                px = field.minx;
+                double a = x - field.minx;
+                py = y + circleDirection * Math.sqrt(wallStick * wallStick - a * a);
+            } else if (py > field.maxy) {
+                py = field.maxy;
+                double a = field.maxy - y;
+                px = x + circleDirection * Math.sqrt(wallStick * wallStick - a * a);
+            } else if (px > field.maxx) {
+                px = field.maxx;
+                double a = field.maxx - x;
+                py = y - circleDirection * Math.sqrt(wallStick * wallStick - a * a);
+            } else if (py < field.miny) {
+                py = field.miny;
+                double a = y - field.miny;
+                px = x - circleDirection * Math.sqrt(wallStick * wallStick - a * a);
             }
         }
 
-        return Physics.absoluteBearing(location, p);
+        return Physics.absoluteBearing(x, y, px, py);
     }
 
     public static double weirdSmoothing(AxisRectangle shrinkedField, Point source, Point cur, double angle, double stick) {
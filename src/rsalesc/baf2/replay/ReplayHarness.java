@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.replay;
+
+import robocode.*;
+import rsalesc.baf2.BackAsFrontRobot2;
+import rsalesc.baf2.core.Component;
+import rsalesc.baf2.core.ComponentDispatcher;
+import rsalesc.baf2.core.GlobalStorage;
+import rsalesc.baf2.core.TickEvents;
+import rsalesc.baf2.core.benchmark.Benchmark;
+import rsalesc.baf2.core.utils.R;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Drives the components of a BackAsFrontRobot2 through a ReplayLog without a Robocode engine,
+ * following the lifecycle of BackAsFrontRobot2 and dispatching through the same ComponentDispatcher,
+ * and times every component.
+ * StatusListeners are not notified, since a StatusEvent can't be built outside the engine.
+ */
+public class ReplayHarness {
+    private static final int RUN_PROBE = Benchmark.getInstance().register("run()");
+    private static final int HANDLE_EVENTS_PROBE = Benchmark.getInstance().register("handleEvents()");
+
+    private final BackAsFrontRobot2 robot;
+    private long turnBudget = 0;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    private ComponentDispatcher dispatcher;
+    private long[] spent;
+    private Timing[] slots;
+
+    public ReplayHarness(BackAsFrontRobot2 robot) {
+        this.robot = robot;
+    }
+
+    /**
+     * Ticks that take longer than budget are counted as would-be skipped turns.
+     */
+    public ReplayHarness setTurnBudget(long nanos) {
+        turnBudget = nanos;
+        return this;
+    }
+
+    /**
+     * Pool handed to components through the mediator, or null to keep them sequential
+     * as they are in a battle.
+     */
+    public ReplayHarness setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    public Report run(ReplayLog log) {
+        List<ReplayTick> ticks = log.getTicks();
+        LinkedHashMap<String, Timing> timings = new LinkedHashMap<>();
+        Report report = new Report(timings.values());
+
+        if(ticks.isEmpty())
+            return report;
+
+        robot.setOfflineName(log.getName());
+
+        ReplayMediator mediator = null;
+        int round = -1;
+        long started = System.nanoTime();
+
+        for(ReplayTick tick : ticks) {
+            if(tick.getRound() != round) {
+                if(mediator != null)
+                    report.endRound(mediator, lastBreath());
+
+                robot.assemble();
+                mediator = new ReplayMediator(robot);
+                mediator.setComputePool(pool);
+                mediator.setTick(tick);
+                robot.build(mediator);
+                bind(timings);
+            } else {
+                mediator.setTick(tick);
+            }
+
+            for(int i = 0; i < spent.length; i++)
+                spent[i] = 0;
+
+            long tickStart = System.nanoTime();
+
+            if(tick.getRound() != round) {
+                final int current = tick.getRound();
+                if(round == -1)
+                    dispatcher.onBattleStarted();
+                dispatcher.onRoundStarted(current);
+                round = current;
+            }
+
+            dispatcher.onTick(tick.getTime());
+
+            Benchmark.getInstance().start(HANDLE_EVENTS_PROBE);
+            List<Event> events = tick.getEvents();
+            dispatcher.handleEvents(new ReplayEvents(events));
+            for(WinEvent e : filter(events, WinEvent.class))
+                dispatcher.onWin(e);
+            Benchmark.getInstance().stop();
+
+            Benchmark.getInstance().start(RUN_PROBE);
+            dispatcher.run();
+            Benchmark.getInstance().stop();
+
+            report.endTick(System.nanoTime() - tickStart, turnBudget);
+            for(int i = 0; i < spent.length; i++)
+                slots[i].push(spent[i]);
+        }
+
+        report.endRound(mediator, lastBreath());
+        report.wallNanos = System.nanoTime() - started;
+
+        return report;
+    }
+
+    private void bind(LinkedHashMap<String, Timing> timings) {
+        List<Component> components = robot.getComponents();
+        spent = new long[components.size()];
+        dispatcher = new ComponentDispatcher(components, (index, nanos) -> spent[index] += nanos);
+        slots = new Timing[components.size()];
+
+        for(int i = 0; i < slots.length; i++) {
+            String name = components.get(i).getClass().getName();
+            Timing timing = timings.get(name);
+            if(timing == null) {
+                timing = new Timing(name);
+                timings.put(name, timing);
+            }
+
+            slots[i] = timing;
+        }
+    }
+
+    private long lastBreath() {
+        long start = System.nanoTime();
+        dispatcher.onLastBreath();
+        return System.nanoTime() - start;
+    }
+
+    private static <T extends Event> List<T> filter(List<Event> events, Class<T> type) {
+        ArrayList<T> res = new ArrayList<>();
+        for(Event e : events) {
+            if(type.isInstance(e))
+                res.add(type.cast(e));
+        }
+
+        return res;
+    }
+
+    /**
+     * Splits the events of a replayed tick the way AdvancedRobot hands them out.
+     */
+    private static class ReplayEvents implements TickEvents {
+        private final List<Event> events;
+
+        private ReplayEvents(List<Event> events) {
+            this.events = events;
+        }
+
+        @Override
+        public List<RobotDeathEvent> getRobotDeathEvents() {
+            return filter(events, RobotDeathEvent.class);
+        }
+
+        @Override
+        public List<BulletMissedEvent> getBulletMissedEvents() {
+            return filter(events, BulletMissedEvent.class);
+        }
+
+        @Override
+        public List<BulletHitBulletEvent> getBulletHitBulletEvents() {
+            return filter(events, BulletHitBulletEvent.class);
+        }
+
+        @Override
+        public List<BulletHitEvent> getBulletHitEvents() {
+            return filter(events, BulletHitEvent.class);
+        }
+
+        @Override
+        public List<HitByBulletEvent> getHitByBulletEvents() {
+            return filter(events, HitByBulletEvent.class);
+        }
+
+        @Override
+        public List<HitWallEvent> getHitWallEvents() {
+            return filter(events, HitWallEvent.class);
+        }
+
+        @Override
+        public List<HitRobotEvent> getHitRobotEvents() {
+            return filter(events, HitRobotEvent.class);
+        }
+
+        @Override
+        public List<ScannedRobotEvent> getScannedRobotEvents() {
+            return filter(events, ScannedRobotEvent.class);
+        }
+    }
+
+    public static class Timing {
+        private final String name;
+        private long total = 0;
+        private long max = 0;
+        private long ticks = 0;
+
+        private Timing(String name) {
+            this.name = name;
+        }
+
+        private void push(long nanos) {
+            total += nanos;
+            max = Math.max(max, nanos);
+            ticks++;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getTotalNanos() {
+            return total;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+
+        public double getMeanNanos() {
+            return ticks == 0 ? 0 : (double) total / ticks;
+        }
+    }
+
+    public static class Report {
+        private final Iterable<Timing> timings;
+        private long wallNanos = 0;
+        private long tickNanos = 0;
+        private long maxTickNanos = 0;
+        private long lastBreathNanos = 0;
+        private int ticks = 0;
+        private int overBudget = 0;
+        private int rounds = 0;
+        private long commands = 0;
+        private long digest = 0;
+
+        private Report(Iterable<Timing> timings) {
+            this.timings = timings;
+        }
+
+        private void endTick(long nanos, long budget) {
+            ticks++;
+            tickNanos += nanos;
+            maxTickNanos = Math.max(maxTickNanos, nanos);
+            if(budget > 0 && nanos > budget)
+                overBudget++;
+        }
+
+        private void endRound(ReplayMediator mediator, long lastBreath) {
+            rounds++;
+            lastBreathNanos += lastBreath;
+            commands += mediator.getCommandCount();
+            digest = digest * 31 + mediator.getCommandDigest();
+        }
+
+        public List<Timing> getTimings() {
+            ArrayList<Timing> res = new ArrayList<>();
+            for(Timing timing : timings)
+                res.add(timing);
+
+            res.sort((a, b) -> Long.compare(b.getTotalNanos(), a.getTotalNanos()));
+            return res;
+        }
+
+        public int getTicks() {
+            return ticks;
+        }
+
+        public int getRounds() {
+            return rounds;
+        }
+
+        public int getTicksOverBudget() {
+            return overBudget;
+        }
+
+        public long getMaxTickNanos() {
+            return maxTickNanos;
+        }
+
+        public double getTicksPerSecond() {
+            return tickNanos == 0 ? 0 : ticks * 1e9 / tickNanos;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public long getCommandCount() {
+            return commands;
+        }
+
+        /**
+         * Digest of every command issued during the replay. Equal logs and code should give equal digests.
+         */
+        public long getCommandDigest() {
+            return digest;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Replayed ").append(ticks).append(" ticks in ").append(rounds).append(" round(s), ")
+                    .append(R.formattedDouble(getTicksPerSecond())).append(" ticks/s\n");
+            builder.append("Max tick: ").append(R.formattedDouble(maxTickNanos / 1e6)).append(" ms, over budget: ")
+                    .append(overBudget).append(", last breath: ")
+                    .append(R.formattedDouble(lastBreathNanos / 1e6)).append(" ms\n");
+            builder.append("Commands: ").append(commands).append(", digest: ")
+                    .append(Long.toHexString(digest)).append("\n");
+
+            for(Timing timing : getTimings()) {
+                builder.append(String.format("%-64s total %12s ms  mean %10s us  max %10s ms%n", timing.getName(),
+                        R.formattedDouble(timing.getTotalNanos() / 1e6),
+                        R.formattedDouble(timing.getMeanNanos() / 1e3),
+                        R.formattedDouble(timing.getMaxNanos() / 1e6)));
+            }
+
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Usage: ReplayHarness robot-class replay-log [turn-budget-ms] [passes]
+     * Passes after the first one run on a warm JVM and must reproduce the same command digest.
+     */
+    public static void main(String[] args) throws IOException, ReflectiveOperationException {
+        if(args.length < 2) {
+            System.out.println("Usage: ReplayHarness <robot class> <replay log> [turn budget ms] [passes]");
+            System.exit(1);
+        }
+
+        Class<?> robotClass = Class.forName(args[0]);
+        ReplayLog log = ReplayLog.load(new File(args[1]));
+        long budget = args.length > 2 ? (long) (Double.parseDouble(args[2]) * 1e6) : 0;
+        int passes = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        Long digest = null;
+        for(int i = 0; i < passes; i++) {
+            GlobalStorage.getInstance().clear();
+            BackAsFrontRobot2 robot = (BackAsFrontRobot2) robotClass.getConstructor().newInstance();
+            Report report = new ReplayHarness(robot).setTurnBudget(budget).run(log);
+
+            System.out.println("Pass " + (i + 1) + "/" + passes);
+            System.out.println(report);
+
+            if(digest == null)
+                digest = report.getCommandDigest();
+            else if(digest != report.getCommandDigest())
+                System.out.println("WARNING: pass " + (i + 1) + " diverged from the first one");
+        }
+    }
+}
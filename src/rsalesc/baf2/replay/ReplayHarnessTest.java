@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+
+package rsalesc.baf2.replay;
+
+import org.junit.jupiter.api.Test;
+import robocode.HitByBulletEvent;
+import robocode.HitRobotEvent;
+import robocode.HitWallEvent;
+import robocode.ScannedRobotEvent;
+import rsalesc.baf2.BackAsFrontRobot2;
+import rsalesc.baf2.core.Component;
+import rsalesc.baf2.core.ControlManager;
+import rsalesc.baf2.core.RobotMediator;
+import rsalesc.baf2.core.listeners.*;
+import rsalesc.baf2.core.utils.geometry.AxisRectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class ReplayHarnessTest {
+    private static class Recorder extends Component implements BattleStartedListener, RoundStartedListener,
+            TickListener, HitListener, BatchScannedRobotListener, ScannedRobotListener, LastBreathListener {
+        private final String name;
+        private final List<String> log;
+
+        private Recorder(String name, List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        private void log(String what) {
+            log.add(name + " " + what);
+        }
+
+        @Override
+        public void onBattleStarted() {
+            log("battle");
+        }
+
+        @Override
+        public void onRoundStarted(int round) {
+            log("round " + round);
+        }
+
+        @Override
+        public void onTick(long time) {
+            log("tick " + time);
+        }
+
+        @Override
+        public void onHitByBullet(HitByBulletEvent e) {
+            log("hit by bullet");
+        }
+
+        @Override
+        public void onHitRobot(HitRobotEvent e) {
+            log("hit robot");
+        }
+
+        @Override
+        public void onHitWall(HitWallEvent e) {
+            log("hit wall");
+        }
+
+        @Override
+        public void onBatchScannedRobot(List<ScannedRobotEvent> events) {
+            log("batch " + events.size());
+        }
+
+        @Override
+        public void onScannedRobot(ScannedRobotEvent e) {
+            log("scan");
+        }
+
+        @Override
+        public void onLastBreath() {
+            log("breath");
+        }
+
+        @Override
+        public void beforeRun() {
+            log("before");
+        }
+
+        @Override
+        public void run() {
+            log("run");
+        }
+
+        @Override
+        public void afterRun() {
+            log("after");
+        }
+    }
+
+    private static class RecordingRobot extends BackAsFrontRobot2 {
+        private final List<String> log = new ArrayList<>();
+
+        @Override
+        public void initialize() {
+            add(new Recorder("a", log));
+            add(new Recorder("b", log));
+            addListener(new Recorder("v", log));
+        }
+    }
+
+    /**
+     * Just enough of a robot to take ReplayTicks from.
+     */
+    private static class SyntheticMediator extends RobotMediator {
+        private final int round;
+        private final long time;
+
+        private SyntheticMediator(int round, long time) {
+            super(new ControlManager(null), null);
+            this.round = round;
+            this.time = time;
+        }
+
+        @Override
+        public AxisRectangle getBattleField() {
+            return new AxisRectangle(0, 800, 0, 600);
+        }
+
+        @Override
+        public String getName() {
+            return "synthetic";
+        }
+
+        @Override
+        public int getRoundNum() {
+            return round;
+        }
+
+        @Override
+        public int getNumRounds() {
+            return 2;
+        }
+
+        @Override
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public double getX() {
+            return 400;
+        }
+
+        @Override
+        public double getY() {
+            return 300;
+        }
+
+        @Override
+        public double getHeadingRadians() {
+            return 0;
+        }
+
+        @Override
+        public double getVelocity() {
+            return 0;
+        }
+
+        @Override
+        public double getEnergy() {
+            return 100;
+        }
+
+        @Override
+        public int getOthers() {
+            return 1;
+        }
+
+        @Override
+        public double getGunHeat() {
+            return 3;
+        }
+
+        @Override
+        public double getGunHeadingRadians() {
+            return 0;
+        }
+
+        @Override
+        public double getRadarHeadingRadians() {
+            return 0;
+        }
+
+        @Override
+        public double getGunCoolingRate() {
+            return 0.1;
+        }
+
+        @Override
+        public double getMaxVelocity() {
+            return 8;
+        }
+
+        @Override
+        public double getDistanceRemaining() {
+            return 0;
+        }
+
+        @Override
+        public double getTurnRemainingRadians() {
+            return 0;
+        }
+
+        @Override
+        public double getGunTurnRemainingRadians() {
+            return 0;
+        }
+
+        @Override
+        public double getRadarTurnRemainingRadians() {
+            return 0;
+        }
+
+        @Override
+        public int getNumSentries() {
+            return 0;
+        }
+
+        @Override
+        public int getSentryBorderSize() {
+            return 100;
+        }
+    }
+
+    private ReplayLog syntheticLog() {
+        ArrayList<ReplayTick> ticks = new ArrayList<>();
+        for(int round = 0; round < 2; round++) {
+            for(long time = 0; time < 2; time++) {
+                ReplayTick tick = new ReplayTick(new SyntheticMediator(round, time));
+                if(time == 1) {
+                    tick.addEvent(new ScannedRobotEvent("enemy", 100, 0.5, 300, 0, 8, false));
+                    tick.addEvent(new HitWallEvent(0));
+                }
+
+                ticks.add(tick);
+            }
+        }
+
+        return new ReplayLog(ticks);
+    }
+
+    @Test
+    public void replaysInRobotOrder() {
+        RecordingRobot robot = new RecordingRobot();
+        ReplayHarness.Report report = new ReplayHarness(robot).setPool(null).run(syntheticLog());
+
+        List<String> run = Arrays.asList("a before", "b before", "a run", "b run", "b after", "a after");
+
+        List<String> expected = new ArrayList<>();
+        for(int round = 0; round < 2; round++) {
+            if(round == 0)
+                expected.addAll(Arrays.asList("a battle", "b battle", "v battle"));
+            expected.addAll(Arrays.asList("a round " + round, "b round " + round, "v round " + round));
+            expected.addAll(Arrays.asList("a tick 0", "b tick 0", "v tick 0"));
+            expected.addAll(Arrays.asList("a batch 0", "b batch 0", "v batch 0"));
+            expected.addAll(run);
+
+            expected.addAll(Arrays.asList("a tick 1", "b tick 1", "v tick 1"));
+            expected.addAll(Arrays.asList("a hit wall", "b hit wall", "v hit wall"));
+            expected.addAll(Arrays.asList("a batch 1", "a scan", "b batch 1", "b scan", "v batch 1", "v scan"));
+            expected.addAll(run);
+
+            expected.addAll(Arrays.asList("a breath", "b breath", "v breath"));
+        }
+
+        assertEquals(expected, robot.log);
+        assertEquals(4, report.getTicks());
+        assertEquals(2, report.getRounds());
+
+        boolean timed = false;
+        for(ReplayHarness.Timing timing : report.getTimings())
+            timed |= timing.getName().equals(Recorder.class.getName());
+
+        assertTrue(timed);
+    }
+}
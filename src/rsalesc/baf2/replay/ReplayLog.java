@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.replay;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class ReplayLog implements Serializable {
+    private static final long serialVersionUID = 4242018002L;
+
+    private final ArrayList<ReplayTick> ticks;
+
+    public ReplayLog(ArrayList<ReplayTick> ticks) {
+        this.ticks = ticks;
+    }
+
+    public List<ReplayTick> getTicks() {
+        return ticks;
+    }
+
+    public int size() {
+        return ticks.size();
+    }
+
+    public String getName() {
+        return ticks.isEmpty() ? null : ticks.get(0).getName();
+    }
+
+    public void save(File file) throws IOException {
+        try(ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            oos.writeObject(this);
+        }
+    }
+
+    public static ReplayLog load(File file) throws IOException {
+        try(ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (ReplayLog) ois.readObject();
+        } catch(ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
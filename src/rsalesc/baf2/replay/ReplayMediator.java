@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.replay;
+
+import robocode.Bullet;
+import robocode.Rules;
+import rsalesc.baf2.BackAsFrontRobot2;
+import rsalesc.baf2.core.Component;
+import rsalesc.baf2.core.ControlManager;
+import rsalesc.baf2.core.RobotMediator;
+import rsalesc.baf2.core.controllers.AimController;
+import rsalesc.baf2.core.controllers.BodyController;
+import rsalesc.baf2.core.controllers.GunController;
+import rsalesc.baf2.core.controllers.RadarController;
+import rsalesc.baf2.core.listeners.FireEvent;
+import rsalesc.baf2.core.utils.BattleTime;
+import rsalesc.baf2.core.utils.Physics;
+import rsalesc.baf2.core.utils.R;
+import rsalesc.baf2.core.utils.geometry.AxisRectangle;
+import rsalesc.baf2.core.utils.geometry.Point;
+import rsalesc.baf2.predictor.PrecisePredictor;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Stand-in mediator that answers from a recorded tick instead of a live robot.
+ * Commands issued through the controllers are folded into a digest instead of
+ * being executed, which makes two replays of the same log directly comparable.
+ * The replay is open-loop: the next state is always the recorded one.
+ */
+public class ReplayMediator extends RobotMediator {
+    private static final int TURN_GUN = 1;
+    private static final int GUN_TO = 2;
+    private static final int FIRE = 3;
+    private static final int TURN_RADAR = 4;
+    private static final int RADAR_TO = 5;
+    private static final int TURN_BODY = 6;
+    private static final int MAX_TURN_RATE = 7;
+    private static final int MAX_VELOCITY = 8;
+    private static final int BACK_AS_FRONT = 9;
+    private static final int TURN_TO = 10;
+    private static final int QUICK_TURN_TO = 11;
+    private static final int GO_TO = 12;
+
+    private final BackAsFrontRobot2 robot;
+    private ReplayTick tick;
+    private AxisRectangle field;
+
+    private long firedAt = -1;
+    private int bulletId = 0;
+    private long commands = 0;
+    private long digest = 0;
+    private ForkJoinPool computePool;
+
+    public ReplayMediator(BackAsFrontRobot2 robot) {
+        this(robot, new ReplayControlManager());
+    }
+
+    private ReplayMediator(BackAsFrontRobot2 robot, ReplayControlManager controlManager) {
+        super(controlManager, robot.getPaintManager());
+        this.robot = robot;
+        controlManager.mediator = this;
+    }
+
+    public void setTick(ReplayTick tick) {
+        if(field == null || this.tick.getBattleFieldWidth() != tick.getBattleFieldWidth()
+                || this.tick.getBattleFieldHeight() != tick.getBattleFieldHeight())
+            field = new AxisRectangle(0, tick.getBattleFieldWidth(), 0, tick.getBattleFieldHeight());
+        this.tick = tick;
+    }
+
+    public ReplayTick getTick() {
+        return tick;
+    }
+
+    public void setComputePool(ForkJoinPool computePool) {
+        this.computePool = computePool;
+    }
+
+    @Override
+    public ForkJoinPool getComputePool() {
+        return computePool;
+    }
+
+    public long getCommandCount() {
+        return commands;
+    }
+
+    public long getCommandDigest() {
+        return digest;
+    }
+
+    private void command(int kind, double value) {
+        commands++;
+        digest = (digest * 1000003L + kind) * 1000003L + Double.doubleToLongBits(value);
+    }
+
+    private void command(int kind, double a, double b) {
+        command(kind, a);
+        command(kind, b);
+    }
+
+    /**
+     * Mirrors the engine's firing rules on the recorded state and notifies the fire listeners.
+     */
+    private Bullet fire(double power) {
+        command(FIRE, power);
+        if(tick.getGunHeat() > 0 || tick.getEnergy() <= 0 || firedAt == tick.getTime())
+            return null;
+
+        firedAt = tick.getTime();
+        power = Math.min(tick.getEnergy(), R.constrain(Rules.MIN_BULLET_POWER, power, Rules.MAX_BULLET_POWER));
+
+        Bullet bullet = new Bullet(tick.getGunHeadingRadians(), tick.getX(), tick.getY(), power,
+                tick.getName(), null, true, bulletId++);
+        robot._onFire(new FireEvent(getPoint(), bullet, getTime()));
+
+        return bullet;
+    }
+
+    @Override
+    public int getBulletsFired() {
+        return robot.getBulletsFired();
+    }
+
+    @Override
+    public boolean isDev() {
+        return getName().endsWith("*");
+    }
+
+    @Override
+    public ArrayList<Component> getComponents() {
+        return robot.getComponents();
+    }
+
+    @Override
+    public void setColors(Color bodyColor, Color gunColor, Color radarColor) {
+    }
+
+    @Override
+    public void setDebugProperty(String key, String value) {
+    }
+
+    @Override
+    public void setColors(Color bodyColor, Color gunColor, Color radarColor, Color bulletColor, Color scanArcColor) {
+    }
+
+    @Override
+    public void setAllColors(Color color) {
+    }
+
+    @Override
+    public void setBodyColor(Color color) {
+    }
+
+    @Override
+    public void setGunColor(Color color) {
+    }
+
+    @Override
+    public void setRadarColor(Color color) {
+    }
+
+    @Override
+    public void setBulletColor(Color color) {
+    }
+
+    @Override
+    public void setScanColor(Color color) {
+    }
+
+    @Override
+    public double getX() {
+        return tick.getX();
+    }
+
+    @Override
+    public double getY() {
+        return tick.getY();
+    }
+
+    @Override
+    public double getHeadingRadians() {
+        return tick.getHeadingRadians();
+    }
+
+    @Override
+    public int getRoundNum() {
+        return tick.getRound();
+    }
+
+    @Override
+    public BattleTime getBattleTime() {
+        return new BattleTime(tick.getTime(), tick.getRound());
+    }
+
+    @Override
+    public long getTime() {
+        return tick.getTime();
+    }
+
+    @Override
+    public double getEnergy() {
+        return tick.getEnergy();
+    }
+
+    @Override
+    public double getVelocity() {
+        return tick.getVelocity();
+    }
+
+    @Override
+    public int getOthers() {
+        return tick.getOthers();
+    }
+
+    @Override
+    public double getGunHeat() {
+        return tick.getGunHeat();
+    }
+
+    @Override
+    public double getGunHeadingRadians() {
+        return tick.getGunHeadingRadians();
+    }
+
+    @Override
+    public double getMaxVelocity() {
+        return tick.getMaxVelocity();
+    }
+
+    @Override
+    public Point getPoint() {
+        return new Point(tick.getX(), tick.getY());
+    }
+
+    @Override
+    public AxisRectangle getBattleField() {
+        return field;
+    }
+
+    @Override
+    public double getMaxTurning() {
+        return Physics.maxTurningRate(tick.getVelocity());
+    }
+
+    @Override
+    public AxisRectangle getHitBox() {
+        return new AxisRectangle(getX() - 18, getX() + 18, getY() - 18, getY() + 18);
+    }
+
+    @Override
+    public double getNewVelocity() {
+        return PrecisePredictor.getNewVelocity(getVelocity(), getMaxVelocity(), getDistanceRemaining());
+    }
+
+    @Override
+    public double getNewHeading() {
+        return PrecisePredictor.getNewHeading(getHeadingRadians(), getVelocity(), getTurnRemainingRadians());
+    }
+
+    @Override
+    public Point getNextPosition() {
+        return getPoint().project(getNewHeading(), getNewVelocity());
+    }
+
+    @Override
+    public int getTicksToCool() {
+        return (int) Math.ceil(getGunHeat() / getGunCoolingRate());
+    }
+
+    @Override
+    public double getDistanceRemaining() {
+        return tick.getDistanceRemaining();
+    }
+
+    @Override
+    public boolean isAdjustGunForRobotTurn() {
+        return true;
+    }
+
+    @Override
+    public boolean isAdjustRadarForRobotTurn() {
+        return true;
+    }
+
+    @Override
+    public boolean isAdjustRadarForGunTurn() {
+        return true;
+    }
+
+    @Override
+    public double getRadarHeadingRadians() {
+        return tick.getRadarHeadingRadians();
+    }
+
+    @Override
+    public double getGunTurnRemainingRadians() {
+        return tick.getGunTurnRemainingRadians();
+    }
+
+    @Override
+    public double getRadarTurnRemainingRadians() {
+        return tick.getRadarTurnRemainingRadians();
+    }
+
+    @Override
+    public double getTurnRemainingRadians() {
+        return tick.getTurnRemainingRadians();
+    }
+
+    @Override
+    public String getName() {
+        return tick.getName();
+    }
+
+    @Override
+    public double getGunCoolingRate() {
+        return tick.getGunCoolingRate();
+    }
+
+    @Override
+    public int getNumRounds() {
+        return tick.getNumRounds();
+    }
+
+    @Override
+    public int getSentryBorderSize() {
+        return tick.getSentryBorderSize();
+    }
+
+    @Override
+    public int getNumSentries() {
+        return tick.getNumSentries();
+    }
+
+    /**
+     * Hands out the usual controllers, with their robot calls redirected to the mediator.
+     */
+    private static class ReplayControlManager extends ControlManager {
+        private ReplayMediator mediator;
+
+        private ReplayControlManager() {
+            super(null);
+        }
+
+        @Override
+        public GunController getGunController() {
+            GunController controller = new GunController(null, this) {
+                @Override
+                public void setTurnGunRightRadians(double radians) {
+                    mediator.command(TURN_GUN, radians);
+                }
+
+                @Override
+                public void setGunTo(double radians) {
+                    mediator.command(GUN_TO, radians);
+                }
+
+                @Override
+                public void setFire(double power) {
+                    mediator.fire(power);
+                }
+
+                @Override
+                public Bullet setFireBullet(double power) {
+                    return mediator.fire(power);
+                }
+            };
+
+            if(controller.acquire())
+                return controller;
+            return null;
+        }
+
+        @Override
+        public AimController getAimController() {
+            AimController controller = new AimController(null, this) {
+                @Override
+                public void setTurnGunRightRadians(double radians) {
+                    mediator.command(TURN_GUN, radians);
+                }
+
+                @Override
+                public void setGunTo(double radians) {
+                    mediator.command(GUN_TO, radians);
+                }
+            };
+
+            if(controller.acquire())
+                return controller;
+            return null;
+        }
+
+        @Override
+        public RadarController getRadarController() {
+            RadarController controller = new RadarController(null, this) {
+                @Override
+                public void setTurnRadarRightRadians(double radians) {
+                    mediator.command(TURN_RADAR, radians);
+                }
+
+                @Override
+                public void setRadarTo(double radians) {
+                    mediator.command(RADAR_TO, radians);
+                }
+            };
+
+            if(controller.acquire())
+                return controller;
+            return null;
+        }
+
+        @Override
+        public BodyController getBodyController() {
+            BodyController controller = new BodyController(null, this) {
+                @Override
+                public void setTurnRightRadians(double radians) {
+                    mediator.command(TURN_BODY, radians);
+                }
+
+                @Override
+                public void setMaxTurnRate(double rate) {
+                    mediator.command(MAX_TURN_RATE, rate);
+                }
+
+                @Override
+                public void setMaxVelocity(double velocity) {
+                    mediator.command(MAX_VELOCITY, velocity);
+                }
+
+                @Override
+                public void setBackAsFront(double bearing) {
+                    mediator.command(BACK_AS_FRONT, bearing);
+                }
+
+                @Override
+                public void setBackAsFront(double bearing, double distance) {
+                    mediator.command(BACK_AS_FRONT, bearing, distance);
+                }
+
+                @Override
+                public void setTurnTo(double radians) {
+                    mediator.command(TURN_TO, radians);
+                }
+
+                @Override
+                public void setQuickTurnTo(double radians) {
+                    mediator.command(QUICK_TURN_TO, radians);
+                }
+
+                @Override
+                public void setGoTo(Point dest) {
+                    mediator.command(GO_TO, dest.x, dest.y);
+                }
+            };
+
+            if(controller.acquire())
+                return controller;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.replay;
+
+import robocode.*;
+import rsalesc.baf2.core.Component;
+import rsalesc.baf2.core.listeners.*;
+import rsalesc.runner.SerializeHelper;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Publishes the state and the events of every tick through a debug property,
+ * so ReplayRecorderRunner can build a ReplayLog out of a real battle.
+ * Must be added with add(), not addListener(), since it publishes on afterRun().
+ */
+public class ReplayRecorder extends Component implements TickListener, ScannedRobotListener, BulletListener,
+        HitListener, RobotDeathListener, WinListener {
+    public static final String REPLAY_HINT = "replay-recorder-tick";
+    private ReplayTick tick;
+
+    @Override
+    public void onTick(long time) {
+        tick = new ReplayTick(getMediator());
+    }
+
+    @Override
+    public void afterRun() {
+        if(tick != null)
+            getMediator().setDebugProperty(REPLAY_HINT, SerializeHelper.convertToString(tick).get());
+    }
+
+    private void record(Event e) {
+        if(tick != null)
+            tick.addEvent(e);
+    }
+
+    @Override
+    public void onScannedRobot(ScannedRobotEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void onBulletHitBullet(BulletHitBulletEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void onBulletHit(BulletHitEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void onBulletMissed(BulletMissedEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void onHitByBullet(HitByBulletEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void onHitRobot(HitRobotEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void onHitWall(HitWallEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void onRobotDeath(RobotDeathEvent e) {
+        record(e);
+    }
+
+    @Override
+    public void onWin(WinEvent e) {
+        record(e);
+    }
+}
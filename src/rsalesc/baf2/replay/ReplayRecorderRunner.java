@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.replay;
+
+import robocode.control.RobocodeEngine;
+import robocode.control.events.BattleAdaptor;
+import robocode.control.events.TurnEndedEvent;
+import robocode.control.snapshot.IDebugProperty;
+import robocode.control.snapshot.IRobotSnapshot;
+import robocode.control.snapshot.RobotState;
+import rsalesc.runner.DuelBattleRunner;
+import rsalesc.runner.RobocodeEngineProvider;
+import rsalesc.runner.SerializeHelper;
+
+import java.util.ArrayList;
+import java.util.Optional;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Runs a real duel and collects the ticks published by the ReplayRecorder of yourBot.
+ */
+public class ReplayRecorderRunner {
+    private final RobocodeEngineProvider engineProvider;
+
+    public ReplayRecorderRunner() {
+        this.engineProvider = new RobocodeEngineProvider();
+    }
+
+    public ReplayRecorderRunner(String robocodePath) {
+        this.engineProvider = new RobocodeEngineProvider(robocodePath);
+    }
+
+    public ReplayRecorderRunner(RobocodeEngine engine) {
+        this.engineProvider = new RobocodeEngineProvider(engine);
+    }
+
+    public RobocodeEngine getEngine() {
+        return engineProvider.getEngine();
+    }
+
+    public ReplayLog run(String yourBot, String enemyBot, int rounds) {
+        DuelBattleRunner runner = new DuelBattleRunner(yourBot, enemyBot, rounds);
+        ReplayObserver observer = new ReplayObserver(yourBot);
+        runner.run(getEngine(), observer);
+
+        return new ReplayLog(observer.getTicks());
+    }
+
+    private static class ReplayObserver extends BattleAdaptor {
+        private final String myself;
+        private final ArrayList<ReplayTick> ticks = new ArrayList<>();
+
+        public ReplayObserver(String myself) {
+            this.myself = myself;
+        }
+
+        public ArrayList<ReplayTick> getTicks() {
+            return ticks;
+        }
+
+        @Override
+        public void onTurnEnded(TurnEndedEvent e) {
+            for(IRobotSnapshot robotSnapshot : e.getTurnSnapshot().getRobots()) {
+                if(robotSnapshot.getState() == RobotState.DEAD || !robotSnapshot.getName().startsWith(myself))
+                    continue;
+
+                for(IDebugProperty property : robotSnapshot.getDebugProperties()) {
+                    if(!property.getKey().equals(ReplayRecorder.REPLAY_HINT))
+                        continue;
+
+                    Optional<ReplayTick> data = SerializeHelper.convertFrom(property.getValue());
+                    if(data.isPresent() && !isRepeated(data.get()))
+                        ticks.add(data.get());
+                }
+            }
+        }
+
+        private boolean isRepeated(ReplayTick tick) {
+            if(ticks.isEmpty())
+                return false;
+
+            ReplayTick last = ticks.get(ticks.size() - 1);
+            return last.getRound() == tick.getRound() && last.getTime() == tick.getTime();
+        }
+    }
+}
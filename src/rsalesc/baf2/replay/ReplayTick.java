@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.replay;
+
+import robocode.Event;
+import rsalesc.baf2.core.RobotMediator;
+import rsalesc.baf2.core.utils.geometry.AxisRectangle;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Robot state as seen by the components at the beginning of a tick,
+ * together with the events dispatched to them during that tick.
+ */
+public class ReplayTick implements Serializable {
+    private static final long serialVersionUID = 4242018001L;
+
+    private final String name;
+    private final int round;
+    private final int numRounds;
+    private final long time;
+
+    private final double x;
+    private final double y;
+    private final double heading;
+    private final double velocity;
+    private final double energy;
+    private final int others;
+
+    private final double gunHeat;
+    private final double gunHeading;
+    private final double radarHeading;
+    private final double gunCoolingRate;
+
+    private final double maxVelocity;
+    private final double distanceRemaining;
+    private final double turnRemaining;
+    private final double gunTurnRemaining;
+    private final double radarTurnRemaining;
+
+    private final double fieldWidth;
+    private final double fieldHeight;
+    private final int numSentries;
+    private final int sentryBorderSize;
+
+    private final ArrayList<Event> events = new ArrayList<>();
+
+    public ReplayTick(RobotMediator mediator) {
+        AxisRectangle field = mediator.getBattleField();
+
+        name = mediator.getName();
+        round = mediator.getRoundNum();
+        numRounds = mediator.getNumRounds();
+        time = mediator.getTime();
+        x = mediator.getX();
+        y = mediator.getY();
+        heading = mediator.getHeadingRadians();
+        velocity = mediator.getVelocity();
+        energy = mediator.getEnergy();
+        others = mediator.getOthers();
+        gunHeat = mediator.getGunHeat();
+        gunHeading = mediator.getGunHeadingRadians();
+        radarHeading = mediator.getRadarHeadingRadians();
+        gunCoolingRate = mediator.getGunCoolingRate();
+        maxVelocity = mediator.getMaxVelocity();
+        distanceRemaining = mediator.getDistanceRemaining();
+        turnRemaining = mediator.getTurnRemainingRadians();
+        gunTurnRemaining = mediator.getGunTurnRemainingRadians();
+        radarTurnRemaining = mediator.getRadarTurnRemainingRadians();
+        fieldWidth = field.getWidth();
+        fieldHeight = field.getHeight();
+        numSentries = mediator.getNumSentries();
+        sentryBorderSize = mediator.getSentryBorderSize();
+    }
+
+    public void addEvent(Event event) {
+        events.add(event);
+    }
+
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public int getNumRounds() {
+        return numRounds;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getHeadingRadians() {
+        return heading;
+    }
+
+    public double getVelocity() {
+        return velocity;
+    }
+
+    public double getEnergy() {
+        return energy;
+    }
+
+    public int getOthers() {
+        return others;
+    }
+
+    public double getGunHeat() {
+        return gunHeat;
+    }
+
+    public double getGunHeadingRadians() {
+        return gunHeading;
+    }
+
+    public double getRadarHeadingRadians() {
+        return radarHeading;
+    }
+
+    public double getGunCoolingRate() {
+        return gunCoolingRate;
+    }
+
+    public double getMaxVelocity() {
+        return maxVelocity;
+    }
+
+    public double getDistanceRemaining() {
+        return distanceRemaining;
+    }
+
+    public double getTurnRemainingRadians() {
+        return turnRemaining;
+    }
+
+    public double getGunTurnRemainingRadians() {
+        return gunTurnRemaining;
+    }
+
+    public double getRadarTurnRemainingRadians() {
+        return radarTurnRemaining;
+    }
+
+    public double getBattleFieldWidth() {
+        return fieldWidth;
+    }
+
+    public double getBattleFieldHeight() {
+        return fieldHeight;
+    }
+
+    public int getNumSentries() {
+        return numSentries;
+    }
+
+    public int getSentryBorderSize() {
+        return sentryBorderSize;
+    }
+}
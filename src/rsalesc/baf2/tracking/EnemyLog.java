@@ -221,6 +221,8 @@ public class EnemyLog extends RobotLog {
         distanceSum += enemy.getDistance();
         everLength++;
 
+        getHistory().record(getLatest(), enemy);
+
         log[realAt(length++)] = enemy;
         if (length > LOG_SIZE) {
             length = LOG_SIZE;
@@ -240,6 +242,8 @@ public class EnemyLog extends RobotLog {
         if (length == 0)
             throw new ArrayIndexOutOfBoundsException("popping empty EnemyLog");
 
+        getHistory().reset();
+
         log[removed] = null;
         removed++;
         length--;
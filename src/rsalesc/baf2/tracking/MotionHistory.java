@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.tracking;
+
+import rsalesc.baf2.core.utils.Physics;
+import rsalesc.baf2.core.utils.R;
+import rsalesc.baf2.core.utils.geometry.Point;
+import rsalesc.baf2.predictor.FastPredictor;
+import rsalesc.baf2.predictor.PredictedPoint;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Tick-by-tick motion of a robot in the current round, filled once per scan
+ * with the same interpolation RobotLog.interpolate() would produce. Besides
+ * the ring-buffered positions it keeps running acceleration/deceleration
+ * streaks and velocity change links, so the history features of a
+ * TargetingLog can be read without walking the log.
+ */
+public class MotionHistory {
+    public static final int CAPACITY = 128;
+
+    private final double[] x = new double[CAPACITY];
+    private final double[] y = new double[CAPACITY];
+    private final double[] heading = new double[CAPACITY];
+    private final double[] velocity = new double[CAPACITY];
+    private final int[] ahead = new int[CAPACITY];
+    private final int[] accelRun = new int[CAPACITY];
+    private final int[] decelRun = new int[CAPACITY];
+    private final long[] lastChange = new long[CAPACITY];
+    private final long[] nextChange = new long[CAPACITY];
+
+    private int round = -1;
+    private long first;
+    private long last;
+    private int count = 0;
+    private boolean rooted = false;
+
+    public void reset() {
+        count = 0;
+        rooted = false;
+    }
+
+    /**
+     * Records a scan. {@code previous} is the snapshot pushed to the log right before
+     * {@code current}, or null if there is none.
+     */
+    public void record(RobotSnapshot previous, RobotSnapshot current) {
+        int curRound = current.getBattleTime().getRound();
+        long time = current.getTime();
+
+        if(count == 0 || previous == null || curRound != round || time < last) {
+            boolean newRound = count == 0 || curRound != round;
+            reset();
+            round = curRound;
+            rooted = newRound && (previous == null || previous.getBattleTime().getRound() != curRound);
+            append(time, PredictedPoint.from(current));
+            return;
+        }
+
+        if(time == last) {
+            if(count == 1) {
+                append(time, PredictedPoint.from(current), true);
+                return;
+            }
+
+            drop();
+            append(time, PredictedPoint.from(current));
+            return;
+        }
+
+        if(time > last + 1) {
+            PredictedPoint[] gap = FastPredictor.interpolate(PredictedPoint.from(previous), PredictedPoint.from(current));
+            for(int i = 1; i + 1 < gap.length; i++)
+                append(gap[i].time, gap[i]);
+        }
+
+        append(time, PredictedPoint.from(current));
+    }
+
+    private void append(long time, PredictedPoint point) {
+        append(time, point, false);
+    }
+
+    private void append(long time, PredictedPoint point, boolean replaceRoot) {
+        if(replaceRoot) {
+            count = 0;
+        } else if(count == CAPACITY) {
+            first++;
+            count--;
+            rooted = false;
+        }
+
+        if(count == 0)
+            first = time;
+
+        int i = index(time);
+        x[i] = point.x;
+        y[i] = point.y;
+        heading[i] = point.heading;
+        velocity[i] = point.velocity;
+        ahead[i] = point.ahead;
+        nextChange[i] = Long.MAX_VALUE;
+
+        if(count == 0) {
+            accelRun[i] = decelRun[i] = 0;
+            lastChange[i] = Long.MIN_VALUE;
+        } else {
+            int p = index(time - 1);
+            double stepAccel = (point.velocity - velocity[p]) * Math.signum(point.velocity - 1e-8);
+            accelRun[i] = stepAccel <= 0 ? accelRun[p] + 1 : 0;
+            decelRun[i] = stepAccel >= 0 ? decelRun[p] + 1 : 0;
+
+            if(point.velocity != velocity[p]) {
+                lastChange[i] = time;
+                for(long u = time; u >= first && u > lastChange[p]; u--)
+                    nextChange[index(u)] = time;
+            } else {
+                lastChange[i] = lastChange[p];
+            }
+        }
+
+        last = time;
+        count++;
+    }
+
+    private void drop() {
+        int i = index(last);
+        if(lastChange[i] == last) {
+            for(long u = last - 1; u >= first && nextChange[index(u)] == last; u--)
+                nextChange[index(u)] = Long.MAX_VALUE;
+        }
+
+        last--;
+        count--;
+    }
+
+    private static int index(long time) {
+        return (int) Math.floorMod(time, (long) CAPACITY);
+    }
+
+    public boolean contains(long time) {
+        return count > 0 && time >= first && time <= last;
+    }
+
+    /**
+     * Whether the history features at {@code time} looking {@code backInTime} ticks
+     * back can be answered exactly from this history.
+     */
+    public boolean canServe(long time, int backInTime) {
+        return count > 0 && time >= first && time - 1 <= last && (rooted || time - backInTime >= first);
+    }
+
+    private boolean hasStep(long time) {
+        return time - 1 >= first && time <= last;
+    }
+
+    public double getX(long time) {
+        return x[index(time)];
+    }
+
+    public double getY(long time) {
+        return y[index(time)];
+    }
+
+    public double distance(long time, Point point) {
+        int i = index(time);
+        return R.sqrt((x[i] - point.x) * (x[i] - point.x) + (y[i] - point.y) * (y[i] - point.y));
+    }
+
+    /**
+     * Same as PredictedPoint.getDirection(from) for the sample at {@code time}.
+     */
+    public int getDirection(long time, Point from) {
+        int i = index(time);
+        double head = heading[i];
+        if (ahead[i] < 0)
+            head += R.PI;
+        double absBearing = Physics.absoluteBearing(x[i], y[i], from.x, from.y);
+        double off = R.normalRelativeAngle(head - absBearing);
+        if (off > 0) return -1;
+        else if (off < 0) return 1;
+        else return 0;
+    }
+
+    public long getTimeAccel(long time, int backInTime, long initial) {
+        if(initial == 0)
+            return 0;
+        int streak = hasStep(time - 1) ? accelRun[index(time - 1)] : 0;
+        return 1 + Math.min(streak, backInTime - 1);
+    }
+
+    public long getTimeDecel(long time, int backInTime, long initial) {
+        if(initial == 0)
+            return 0;
+        int streak = hasStep(time - 1) ? decelRun[index(time - 1)] : 0;
+        return 1 + Math.min(streak, backInTime - 1);
+    }
+
+    public long getRun(long time, int backInTime, long initial) {
+        if(initial != backInTime || !hasStep(time - 1))
+            return initial;
+
+        long change = lastChange[index(time - 1)];
+        if(change == Long.MIN_VALUE || time - change >= backInTime)
+            return initial;
+
+        return time - change;
+    }
+
+    public long getLastRun(long time, int backInTime, long run) {
+        long from = Math.max(time - backInTime + 1, first);
+        if(from > time - 1 || !contains(from))
+            return backInTime;
+
+        long change = nextChange[index(from)];
+        if(change > time - 1)
+            return backInTime;
+
+        return time - change - run;
+    }
+
+    public long getTimeRevert(long time, int backInTime, long initial, Point source) {
+        if(initial == 0)
+            return 0;
+
+        long res = initial;
+        int lastDirection = hasStep(time - 1) ? getDirection(time - 1, source) : 0;
+        for(int i = 1; i < backInTime && hasStep(time - i); i++) {
+            int direction = getDirection(time - i - 1, source);
+            if(lastDirection * direction < 0)
+                break;
+            res++;
+            lastDirection = direction;
+        }
+
+        return res;
+    }
+
+    public long getRevertCount(long time, int backInTime, int window, long initial, Point source) {
+        long res = initial;
+        int lastDirection = hasStep(time - 1) ? getDirection(time - 1, source) : 0;
+        for(int i = 1; i < backInTime && i <= window && hasStep(time - i); i++) {
+            int direction = getDirection(time - i - 1, source);
+            if(lastDirection * direction < 0)
+                res++;
+            lastDirection = direction;
+        }
+
+        return res;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.tracking;
+
+import org.junit.jupiter.api.Test;
+import rsalesc.baf2.core.utils.BattleTime;
+import rsalesc.baf2.core.utils.geometry.AxisRectangle;
+import rsalesc.baf2.core.utils.geometry.Point;
+import rsalesc.baf2.predictor.PredictedPoint;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Checks the history against the walk TargetingLog.computeLog used to
+ * do through RobotLog.interpolate, on logs with gaps, repeated ticks
+ * and round changes.
+ */
+public class MotionHistoryTest {
+    private static final int[] BACK_IN_TIME = new int[]{40, 80};
+    private static final int[] DISPLACEMENTS = new int[]{10, 20, 40, 80};
+
+    @Test
+    public void sameFeaturesAsInterpolatedWalk() {
+        Random random = new Random(3);
+        long served = 0;
+
+        for(int run = 0; run < 20; run++) {
+            StubLog log = new StubLog();
+            long time = 0;
+            int round = 0;
+            double x = 400, y = 300, heading = 1, velocity = 0;
+
+            for(int step = 0; step < 600; step++) {
+                if(random.nextInt(200) == 0) {
+                    round++;
+                    time = 0;
+                }
+
+                time += random.nextInt(10) < 7 ? 1 : 1 + random.nextInt(4);
+                if(random.nextInt(30) == 0)
+                    time--;
+
+                if(random.nextInt(4) != 0)
+                    velocity = Math.max(-8, Math.min(8, velocity + (random.nextInt(3) - 1) * (random.nextBoolean() ? 1 : 2)));
+
+                heading += random.nextGaussian() * 0.1;
+                x += Math.sin(heading) * velocity;
+                y += Math.cos(heading) * velocity;
+
+                if(!log.push(new Snapshot(time, round, x, y, heading, velocity)))
+                    continue;
+
+                for(int backInTime : BACK_IN_TIME) {
+                    long at = random.nextInt(4) == 0 ? time - random.nextInt(30) : time + random.nextInt(3);
+                    Point source = new Point(random.nextDouble() * 800, random.nextDouble() * 600);
+                    if(check(log, at, backInTime, source, random.nextInt(3) - 1, random.nextBoolean()))
+                        served++;
+                }
+            }
+        }
+
+        // most queries must actually be answered by the history
+        assertTrue(served > 10000);
+    }
+
+    private static boolean check(StubLog log, long time, int backInTime, Point source, int accel, boolean reverted) {
+        RobotSnapshot robot = log.interpolate(time);
+        MotionHistory history = log.getHistory();
+        if(robot == null || !history.canServe(time, backInTime))
+            return false;
+
+        RobotSnapshot past = log.before(robot);
+
+        // timeAccel, timeDecel, timeRevert, revertLast20, run, lastRun, as computeLog seeds them
+        long[] initial = new long[]{
+                accel > 0 ? 0 : 1,
+                accel < 0 ? 0 : 1,
+                reverted ? 0 : 1,
+                reverted ? 1 : 0,
+                past != null && robot.getVelocity() != past.getVelocity() ? 0 : backInTime,
+                backInTime
+        };
+
+        long[] expected = walk(log, time, backInTime, source, initial.clone());
+
+        long run = history.getRun(time, backInTime, initial[4]);
+        long[] actual = new long[]{
+                history.getTimeAccel(time, backInTime, initial[0]),
+                history.getTimeDecel(time, backInTime, initial[1]),
+                history.getTimeRevert(time, backInTime, initial[2], source),
+                history.getRevertCount(time, backInTime, 20, initial[3], source),
+                run,
+                history.getLastRun(time, backInTime, run)
+        };
+
+        assertArrayEquals(toDoubles(expected), toDoubles(actual), 0);
+
+        for(int k : DISPLACEMENTS) {
+            if(!history.contains(time - k))
+                continue;
+
+            RobotSnapshot then = log.interpolate(time - k);
+            assertTrue(then != null, "history covers a tick interpolate does not");
+            assertEquals(then.getPoint().distance(robot.getPoint()), history.distance(time - k, robot.getPoint()), 0);
+        }
+
+        return true;
+    }
+
+    /**
+     * The loop computeLog ran before the history existed.
+     */
+    private static long[] walk(RobotLog log, long time, int backInTime, Point source, long[] f) {
+        for(int i = 1; i < backInTime; i++) {
+            RobotSnapshot curRobot = log.interpolate(time - i);
+            RobotSnapshot lastRobot = log.interpolate(time - i - 1);
+            if(curRobot == null || lastRobot == null)
+                break;
+
+            double prevAccel = (curRobot.getVelocity() - lastRobot.getVelocity())
+                    * Math.signum(curRobot.getVelocity() - 1e-8);
+            if(f[0] == i && prevAccel <= 0)
+                f[0]++;
+            if(f[1] == i && prevAccel >= 0)
+                f[1]++;
+            if(curRobot.getDirection(source) * lastRobot.getDirection(source) >= 0 && f[2] == i)
+                f[2]++;
+            if(f[4] == backInTime && curRobot.getVelocity() != lastRobot.getVelocity())
+                f[4] = i;
+            if(f[4] != backInTime && curRobot.getVelocity() != lastRobot.getVelocity())
+                f[5] = i - f[4];
+
+            if(i <= 20 && curRobot.getDirection(source) * lastRobot.getDirection(source) < 0)
+                f[3]++;
+        }
+
+        return f;
+    }
+
+    private static double[] toDoubles(long[] values) {
+        double[] res = new double[values.length];
+        for(int i = 0; i < values.length; i++)
+            res[i] = values[i];
+        return res;
+    }
+
+    private static class Snapshot implements RobotSnapshot {
+        private final long time;
+        private final int round;
+        private final Point point;
+        private final double heading;
+        private final double velocity;
+
+        private Snapshot(long time, int round, double x, double y, double heading, double velocity) {
+            this.time = time;
+            this.round = round;
+            this.point = new Point(x, y);
+            this.heading = heading;
+            this.velocity = velocity;
+        }
+
+        public String getName() {
+            return "stub";
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public BattleTime getBattleTime() {
+            return new BattleTime(time, round);
+        }
+
+        public Point getPoint() {
+            return point;
+        }
+
+        public double getLateralVelocity(Point from) {
+            return 0;
+        }
+
+        public double getAdvancingVelocity(Point from) {
+            return 0;
+        }
+
+        public int getDirection(Point from) {
+            return PredictedPoint.from(this).getDirection(from);
+        }
+
+        public int getAhead() {
+            return (int) Math.signum(velocity);
+        }
+
+        public AxisRectangle getHitBox() {
+            return null;
+        }
+
+        public double getEnergy() {
+            return 100;
+        }
+
+        public double getVelocity() {
+            return velocity;
+        }
+
+        public double getHeading() {
+            return heading;
+        }
+
+        public double getBafHeading() {
+            return heading;
+        }
+
+        public int getOthers() {
+            return 1;
+        }
+
+        public boolean isFuture() {
+            return false;
+        }
+    }
+
+    /**
+     * Keeps only the latest round, like EnemyLog, and feeds the history the same way.
+     */
+    private static class StubLog extends RobotLog {
+        private final ArrayList<Snapshot> snapshots = new ArrayList<>();
+
+        private boolean push(Snapshot snapshot) {
+            Snapshot last = snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+            if(last != null && last.round == snapshot.round && last.time > snapshot.time)
+                return false;
+
+            getHistory().record(last, snapshot);
+            snapshots.add(snapshot);
+            return true;
+        }
+
+        private int latestRound() {
+            return snapshots.get(snapshots.size() - 1).round;
+        }
+
+        @Override
+        public RobotSnapshot exactlyAt(long time) {
+            RobotSnapshot res = atLeastAt(time);
+            return res != null && res.getTime() == time ? res : null;
+        }
+
+        @Override
+        public RobotSnapshot atLeastAt(long time) {
+            if(snapshots.isEmpty())
+                return null;
+
+            int round = latestRound();
+            for(Snapshot snapshot : snapshots) {
+                if(snapshot.round >= round && snapshot.time >= time)
+                    return snapshot;
+            }
+
+            return null;
+        }
+
+        @Override
+        public RobotSnapshot atMostAt(long time) {
+            if(snapshots.isEmpty())
+                return null;
+
+            int round = latestRound();
+            RobotSnapshot res = null;
+            for(Snapshot snapshot : snapshots) {
+                if(snapshot.round >= round && snapshot.time <= time)
+                    res = snapshot;
+            }
+
+            return res;
+        }
+
+        @Override
+        public RobotSnapshot getLatest() {
+            return snapshots.get(snapshots.size() - 1);
+        }
+
+        @Override
+        public RobotSnapshot getKthLatest(int k) {
+            return snapshots.get(snapshots.size() - k);
+        }
+
+        @Override
+        public RobotSnapshot getAtLeastKthLatest(int k) {
+            return null;
+        }
+
+        @Override
+        public RobotSnapshot before(RobotSnapshot robot) {
+            return atMostAt(robot.getTime() - 1);
+        }
+
+        @Override
+        public RobotSnapshot after(RobotSnapshot robot) {
+            return atLeastAt(robot.getTime() + 1);
+        }
+
+        @Override
+        public int size() {
+            return snapshots.size();
+        }
+    }
+}
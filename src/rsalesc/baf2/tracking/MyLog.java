@@ -182,6 +182,8 @@ public class MyLog extends RobotLog {
 
         me.setAhead(newAhead);
 
+        getHistory().record(getLatest(), me);
+
         log[realAt(length++)] = me;
         if (length > LOG_SIZE) {
             length = LOG_SIZE;
@@ -197,6 +199,8 @@ public class MyLog extends RobotLog {
         if (length == 0)
             throw new ArrayIndexOutOfBoundsException("popping empty MyLog");
 
+        getHistory().reset();
+
         log[removed] = null;
         removed++;
         length--;
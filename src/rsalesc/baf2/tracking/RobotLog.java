@@ -24,12 +24,12 @@
 package rsalesc.baf2.tracking;
 
 import robocode.Rules;
+import rsalesc.baf2.core.utils.BoundedCache;
 import rsalesc.baf2.core.utils.Pair;
 import rsalesc.baf2.predictor.FastPredictor;
 import rsalesc.baf2.predictor.PrecisePredictor;
 import rsalesc.baf2.predictor.PredictedPoint;
 
-import java.util.Hashtable;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -37,8 +37,12 @@ import java.util.TreeMap;
  * Created by Roberto Sales on 11/09/17.
  */
 public abstract class RobotLog {
-    private Hashtable<Pair<RobotSnapshot, RobotSnapshot>, PredictedPoint[]> cache = new Hashtable<>();
+    private static final int INTERPOLATION_CAPACITY = 256;
+
+    private final BoundedCache<Pair<RobotSnapshot, RobotSnapshot>, PredictedPoint[]> cache =
+            new BoundedCache<>("RobotLog.interpolation", INTERPOLATION_CAPACITY);
     private Map<String, Object> data = new TreeMap<>();
+    private final MotionHistory history = new MotionHistory();
 
     public abstract RobotSnapshot exactlyAt(long time);
 
@@ -58,6 +62,10 @@ public abstract class RobotLog {
 
     public abstract int size();
 
+    public MotionHistory getHistory() {
+        return history;
+    }
+
     public Object getData(String key) {
         return data.get(key);
     }
@@ -102,9 +110,15 @@ public abstract class RobotLog {
             Pair<RobotSnapshot, RobotSnapshot> pair = new Pair<>(atMost, after);
             int steps = (int) (time - cur.time);
 
-            PredictedPoint[] cached = cache.get(pair);
-            if(cached == null) {
-                cache.put(pair, cached = FastPredictor.interpolate(cur, PredictedPoint.from(after)));
+            PredictedPoint[] cached;
+
+            // BoundedCache is not thread-safe (even get reorders it), while the Hashtable
+            // this replaced could be read off the robot thread
+            synchronized(cache) {
+                cached = cache.get(pair);
+                if(cached == null) {
+                    cache.put(pair, cached = FastPredictor.interpolate(cur, PredictedPoint.from(after)));
+                }
             }
 
             res = new InterpolatedSnapshot(atMost, cached[steps]);
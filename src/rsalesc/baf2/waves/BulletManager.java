@@ -35,7 +35,9 @@ import rsalesc.baf2.tracking.EnemyTracker;
 
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.function.Predicate;
 
 /**
@@ -43,8 +45,13 @@ import java.util.function.Predicate;
  */
 public class BulletManager extends Component implements FireListener, PaintListener, ScannedRobotListener,
         BulletListener, TickListener {
-    private ArrayList<BulletWave> waves = new ArrayList<>();
-    private ArrayList<TickWave> tickWaves = new ArrayList<>();
+    private static final int BULLET_PRIORITY = 0;
+    private static final int TICK_PRIORITY = 1;
+
+    private LinkedHashSet<BulletWave> waves = new LinkedHashSet<>();
+    private LinkedHashSet<TickWave> tickWaves = new LinkedHashSet<>();
+    private WaveScheduler<RobotWave> scheduler = new WaveScheduler<>();
+    private HashSet<String> scheduledAgainst = new HashSet<>();
     private boolean checked = false;
     private double lastPower = 0;
 
@@ -59,20 +66,20 @@ public class BulletManager extends Component implements FireListener, PaintListe
         BulletWave wave = new BulletWave(e.getSource(), new BattleTime(e.getTime(), getMediator().getRoundNum()),
                 e.getSpeed(), e.getHeadingRadians());
         waves.add(wave);
+        scheduler.add(wave, BULLET_PRIORITY, wave.getTime());
 
-        for (Object obj : getListeners()) {
-            if (obj instanceof BulletWaveListener) {
-                BulletWaveListener listener = (BulletWaveListener) obj;
-                listener.onBulletWaveFired(wave);
-            }
-        }
+        forEachListener(BulletWaveListener.class, listener -> listener.onBulletWaveFired(wave));
 
         lastPower = e.getPower();
 
         tickWaves.removeIf(new Predicate<TickWave>() {
             @Override
             public boolean test(TickWave tickWave) {
-                return tickWave.getTime() == e.getTime();
+                if(tickWave.getTime() != e.getTime())
+                    return false;
+
+                scheduler.remove(tickWave);
+                return true;
             }
         });
     }
@@ -118,13 +125,7 @@ public class BulletManager extends Component implements FireListener, PaintListe
     }
 
     public boolean hasPreciseListener() {
-        for (Object obj : getListeners()) {
-            if (obj instanceof BulletWavePreciseListener) {
-                return true;
-            }
-        }
-
-        return false;
+        return hasListener(BulletWavePreciseListener.class);
     }
 
     public void check() {
@@ -135,16 +136,16 @@ public class BulletManager extends Component implements FireListener, PaintListe
                 getMediator().getBattleField().getHeight()
         );
 
-        ArrayList<RobotWave> allWaves = new ArrayList<>();
-        allWaves.addAll(waves);
-        allWaves.addAll(tickWaves);
+        EnemyTracker tracker = EnemyTracker.getInstance();
+        EnemyRobot[] enemies = tracker.getLatest();
 
-        Iterator<RobotWave> it = allWaves.iterator();
-        while (it.hasNext()) {
-            RobotWave wave = it.next();
+        for (EnemyRobot enemy : enemies) {
+            if (scheduledAgainst.add(enemy.getName()))
+                scheduler.wakeAll(time);
+        }
 
-            EnemyTracker tracker = EnemyTracker.getInstance();
-            EnemyRobot[] enemies = tracker.getLatest();
+        for (RobotWave wave : scheduler.due(time)) {
+            long wake = WaveScheduler.expiry(wave, 1.2 * longestSide) - 1;
 
             for (EnemyRobot enemy : enemies) {
                 AxisRectangle hitbox = enemy.getHitBox();
@@ -154,19 +155,9 @@ public class BulletManager extends Component implements FireListener, PaintListe
                         !wave.getCircle(time - 1).isInside(pastEnemy.getPoint()))) {
 
                     if(wave instanceof BulletWave) {
-                        for (Object obj : getListeners()) {
-                            if (obj instanceof BulletWaveListener) {
-                                BulletWaveListener listener = (BulletWaveListener) obj;
-                                listener.onBulletWaveBreak((BulletWave) wave, enemy);
-                            }
-                        }
+                        forEachListener(BulletWaveListener.class, listener -> listener.onBulletWaveBreak((BulletWave) wave, enemy));
                     } else if(wave instanceof TickWave) {
-                        for (Object obj : getListeners()) {
-                            if (obj instanceof TickBulletListener) {
-                                TickBulletListener listener = (TickBulletListener) obj;
-                                listener.onTickWaveBreak((TickWave) wave, enemy);
-                            }
-                        }
+                        forEachListener(TickBulletListener.class, listener -> listener.onTickWaveBreak((TickWave) wave, enemy));
                     }
                 }
 
@@ -174,29 +165,26 @@ public class BulletManager extends Component implements FireListener, PaintListe
                         !wave.getCircle(time - 1).isInside(pastEnemy.getHitBox()))) {
 
                     if(wave instanceof BulletWave) {
-                        for (Object obj : getListeners()) {
-                            if (obj instanceof BulletWaveListener) {
-                                BulletWaveListener listener = (BulletWaveListener) obj;
-                                listener.onBulletWavePass((BulletWave) wave, enemy);
-                            }
-                        }
+                        forEachListener(BulletWaveListener.class, listener -> listener.onBulletWavePass((BulletWave) wave, enemy));
                     }
 
                     if(hasPreciseListener()) {
                         AngularRange intersection =
                                 Wave.preciseIntersection(wave, EnemyTracker.getInstance().getLog(enemy), getMediator().getTime());
-                        for (Object obj : getListeners()) {
-                            if (obj instanceof BulletWavePreciseListener) {
-                                BulletWavePreciseListener listener = (BulletWavePreciseListener) obj;
-                                if(wave instanceof BulletWave) {
-                                    listener.onBulletWavePreciselyIntersects((BulletWave) wave, enemy, intersection);
-                                } else if(wave instanceof TickWave) {
-                                    listener.onTickWavePreciselyIntersects((TickWave) wave, enemy, intersection);
-                                }
+                        forEachListener(BulletWavePreciseListener.class, listener -> {
+                            if(wave instanceof BulletWave) {
+                                listener.onBulletWavePreciselyIntersects((BulletWave) wave, enemy, intersection);
+                            } else if(wave instanceof TickWave) {
+                                listener.onTickWavePreciselyIntersects((TickWave) wave, enemy, intersection);
                             }
-                        }
+                        });
                     }
                 }
+
+                if (!WaveScheduler.isSettled(wave, time, enemy.getPoint(), enemy.getTime(),
+                        pastEnemy == null ? null : pastEnemy.getHitBox())) {
+                    wake = Math.min(wake, WaveScheduler.earliestReach(wave, enemy.getPoint(), enemy.getTime()));
+                }
             }
 
             if (wave.getDistanceTraveled(time) > 1.2 * longestSide) {
@@ -204,7 +192,9 @@ public class BulletManager extends Component implements FireListener, PaintListe
                     tickWaves.remove(wave);
                 else if(wave instanceof BulletWave)
                     waves.remove(wave);
-                it.remove();
+                scheduler.remove(wave);
+            } else {
+                scheduler.reschedule(wave, Math.max(wake, time + 1));
             }
         }
     }
@@ -216,12 +206,7 @@ public class BulletManager extends Component implements FireListener, PaintListe
                 wave.setBulletHit(e.getHitBullet());
                 wave.setHitTime(getMediator().getTime());
 
-                for (Object obj : getListeners()) {
-                    if (obj instanceof BulletWaveListener) {
-                        BulletWaveListener listener = (BulletWaveListener) obj;
-                        listener.onBulletWaveHitBullet(wave, e);
-                    }
-                }
+                forEachListener(BulletWaveListener.class, listener -> listener.onBulletWaveHitBullet(wave, e));
 
                 return;
             }
@@ -237,12 +222,7 @@ public class BulletManager extends Component implements FireListener, PaintListe
                 wave.setHit(e.getBullet());
                 wave.setHitTime(getMediator().getTime());
 
-                for (Object obj : getListeners()) {
-                    if (obj instanceof BulletWaveListener) {
-                        BulletWaveListener listener = (BulletWaveListener) obj;
-                        listener.onBulletWaveHitEnemy(wave, e);
-                    }
-                }
+                forEachListener(BulletWaveListener.class, listener -> listener.onBulletWaveHitEnemy(wave, e));
 
                 return;
             }
@@ -271,12 +251,8 @@ public class BulletManager extends Component implements FireListener, PaintListe
         if(lastPower > 0) {
             TickWave wave = new TickWave(getMediator().getPoint(), getMediator().getBattleTime(), Rules.getBulletSpeed(lastPower));
             tickWaves.add(wave);
-            for (Object obj : getListeners()) {
-                if (obj instanceof TickBulletListener) {
-                    TickBulletListener listener = (TickBulletListener) obj;
-                    listener.onTickWaveFired(wave);
-                }
-            }
+            scheduler.add(wave, TICK_PRIORITY, wave.getTime());
+            forEachListener(TickBulletListener.class, listener -> listener.onTickWaveFired(wave));
         }
     }
 }
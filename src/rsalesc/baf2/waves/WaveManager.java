@@ -29,6 +29,7 @@ import rsalesc.baf2.core.listeners.BulletListener;
 import rsalesc.baf2.core.listeners.HitListener;
 import rsalesc.baf2.core.listeners.ScannedRobotListener;
 import rsalesc.baf2.core.utils.BattleTime;
+import rsalesc.baf2.core.utils.Pair;
 import rsalesc.baf2.core.utils.geometry.AngularRange;
 import rsalesc.baf2.core.utils.geometry.AxisRectangle;
 import rsalesc.baf2.core.utils.geometry.Point;
@@ -41,8 +42,9 @@ import rsalesc.baf2.tracking.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.function.Predicate;
 
 /**
@@ -51,7 +53,8 @@ import java.util.function.Predicate;
 public class WaveManager extends Component implements EnemyFireListener, EnemyWaveListener,
         ScannedRobotListener, BulletListener, HitListener, EnemyWavePreciseListener, EnemyCooledListener, EnemyPreCooledListener {
     private boolean checked = false;
-    private ArrayList<EnemyWave> waves = new ArrayList<>();
+    private LinkedHashSet<EnemyWave> waves = new LinkedHashSet<>();
+    private WaveScheduler<EnemyWave> scheduler = new WaveScheduler<>();
 
     @Override
     public void onEnemyFire(EnemyFireEvent e) {
@@ -63,11 +66,16 @@ public class WaveManager extends Component implements EnemyFireListener, EnemyWa
         waves.removeIf(new Predicate<EnemyWave>() {
             @Override
             public boolean test(EnemyWave enemyWave) {
-                return enemyWave.getEnemy().getName().equals(e.getEnemy().getName()) && enemyWave.isHeat();
+                if(!enemyWave.getEnemy().getName().equals(e.getEnemy().getName()) || !enemyWave.isHeat())
+                    return false;
+
+                scheduler.remove(enemyWave);
+                return true;
             }
         });
 
         waves.add(wave);
+        scheduler.add(wave, 0, wave.getTime());
 
         onEnemyWaveFired(wave);
     }
@@ -77,13 +85,7 @@ public class WaveManager extends Component implements EnemyFireListener, EnemyWa
     }
 
     public boolean hasPreciseListener() {
-        for (Object obj : getListeners()) {
-            if (obj instanceof EnemyWavePreciseListener) {
-                return true;
-            }
-        }
-
-        return false;
+        return hasListener(EnemyWavePreciseListener.class);
     }
 
     @Override
@@ -121,10 +123,7 @@ public class WaveManager extends Component implements EnemyFireListener, EnemyWa
 
         AxisRectangle hitbox = me.getHitBox();
 
-        Iterator<EnemyWave> it = waves.iterator();
-        while (it.hasNext()) {
-            EnemyWave wave = it.next();
-
+        for (EnemyWave wave : scheduler.due(time)) {
             if (wave.getCircle(time).isInside(me.getPoint()) && (pastMe == null ||
                     !wave.getCircle(time - 1).isInside(pastMe.getPoint()))) {
 
@@ -138,7 +137,16 @@ public class WaveManager extends Component implements EnemyFireListener, EnemyWa
             }
 
             if (wave.getDistanceTraveled(time) > 2 * longestSide) {
-                it.remove();
+                waves.remove(wave);
+                scheduler.remove(wave);
+            } else {
+                long wake = WaveScheduler.expiry(wave, 2 * longestSide) - 1;
+                if (!WaveScheduler.isSettled(wave, time, me.getPoint(), me.getTime(),
+                        pastMe == null ? null : pastMe.getHitBox())) {
+                    wake = Math.min(wake, WaveScheduler.earliestReach(wave, me.getPoint(), me.getTime()));
+                }
+
+                scheduler.reschedule(wave, Math.max(wake, time + 1));
             }
         }
     }
@@ -162,52 +170,27 @@ public class WaveManager extends Component implements EnemyFireListener, EnemyWa
 
     @Override
     public void onEnemyWaveFired(EnemyWave wave) {
-        for (Object object : getListeners()) {
-            if (object instanceof EnemyWaveListener) {
-                EnemyWaveListener listener = (EnemyWaveListener) object;
-                listener.onEnemyWaveFired(wave);
-            }
-        }
+        forEachListener(EnemyWaveListener.class, listener -> listener.onEnemyWaveFired(wave));
     }
 
     @Override
     public void onEnemyWaveBreak(EnemyWave wave, MyRobot me) {
-        for (Object object : getListeners()) {
-            if (object instanceof EnemyWaveListener) {
-                EnemyWaveListener listener = (EnemyWaveListener) object;
-                listener.onEnemyWaveBreak(wave, me);
-            }
-        }
+        forEachListener(EnemyWaveListener.class, listener -> listener.onEnemyWaveBreak(wave, me));
     }
 
     @Override
     public void onEnemyWaveHitMe(EnemyWave wave, HitByBulletEvent e) {
-        for (Object object : getListeners()) {
-            if (object instanceof EnemyWaveListener) {
-                EnemyWaveListener listener = (EnemyWaveListener) object;
-                listener.onEnemyWaveHitMe(wave, e);
-            }
-        }
+        forEachListener(EnemyWaveListener.class, listener -> listener.onEnemyWaveHitMe(wave, e));
     }
 
     @Override
     public void onEnemyWaveHitBullet(EnemyWave wave, BulletHitBulletEvent e) {
-        for (Object object : getListeners()) {
-            if (object instanceof EnemyWaveListener) {
-                EnemyWaveListener listener = (EnemyWaveListener) object;
-                listener.onEnemyWaveHitBullet(wave, e);
-            }
-        }
+        forEachListener(EnemyWaveListener.class, listener -> listener.onEnemyWaveHitBullet(wave, e));
     }
 
     @Override
     public void onEnemyWavePass(EnemyWave wave, MyRobot me) {
-        for (Object object : getListeners()) {
-            if (object instanceof EnemyWaveListener) {
-                EnemyWaveListener listener = (EnemyWaveListener) object;
-                listener.onEnemyWavePass(wave, me);
-            }
-        }
+        forEachListener(EnemyWaveListener.class, listener -> listener.onEnemyWavePass(wave, me));
 
         if(hasPreciseListener()) {
             onEnemyWavePreciselyIntersects(wave, me, Wave.preciseIntersection(wave, MyLog.getInstance(), getMediator().getTime()));
@@ -265,30 +248,29 @@ public class WaveManager extends Component implements EnemyFireListener, EnemyWa
     }
 
     public EnemyWave[] earliestWaves(int K, Point dest, long time, EnemyWaveCondition condition) {
-        K = Math.min(K, waves.size());
-        ArrayList<EnemyWave> res = new ArrayList<>();
-        HashSet<EnemyWave> seen = new HashSet<>();
-        for (int i = 0; i < K; i++) {
-            double earliestTime = Double.POSITIVE_INFINITY;
-            EnemyWave earliest = null;
-
-            for (EnemyWave wave : waves) {
-                if (!seen.contains(wave) && condition.test(wave)) {
-                    double breakAt = wave.getBreakTime(dest);
-                    if (breakAt >= time && breakAt < earliestTime) {
-                        earliestTime = breakAt;
-                        earliest = wave;
-                    }
-                }
+        ArrayList<Pair<Double, EnemyWave>> candidates = new ArrayList<>();
+        for (EnemyWave wave : waves) {
+            if (condition.test(wave)) {
+                double breakAt = wave.getBreakTime(dest);
+                if (breakAt >= time && breakAt < Double.POSITIVE_INFINITY)
+                    candidates.add(new Pair<>(breakAt, wave));
             }
+        }
 
-            if (earliest != null) {
-                seen.add(earliest);
-                res.add(earliest);
+        // stable, so ties keep the order the waves were fired in
+        Collections.sort(candidates, new Comparator<Pair<Double, EnemyWave>>() {
+            @Override
+            public int compare(Pair<Double, EnemyWave> o1, Pair<Double, EnemyWave> o2) {
+                return Double.compare(o1.first, o2.first);
             }
-        }
+        });
+
+        K = Math.min(K, candidates.size());
+        EnemyWave[] res = new EnemyWave[K];
+        for (int i = 0; i < K; i++)
+            res[i] = candidates.get(i).second;
 
-        return res.toArray(new EnemyWave[0]);
+        return res;
     }
 
     public EnemyWave earliestWave(MyRobot me, EnemyRobot enemy, long time, EnemyWaveCondition condition) {
@@ -356,12 +338,7 @@ public class WaveManager extends Component implements EnemyFireListener, EnemyWa
 
     @Override
     public void onEnemyWavePreciselyIntersects(EnemyWave wave, MyRobot me, AngularRange intersection) {
-        for (Object object : getListeners()) {
-            if (object instanceof EnemyWavePreciseListener) {
-                EnemyWavePreciseListener listener = (EnemyWavePreciseListener) object;
-                listener.onEnemyWavePreciselyIntersects(wave, me, intersection);
-            }
-        }
+        forEachListener(EnemyWavePreciseListener.class, listener -> listener.onEnemyWavePreciselyIntersects(wave, me, intersection));
     }
 
     @Override
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.waves;
+
+import robocode.Rules;
+import rsalesc.baf2.core.utils.Physics;
+import rsalesc.baf2.core.utils.R;
+import rsalesc.baf2.core.utils.geometry.AxisRectangle;
+import rsalesc.baf2.core.utils.geometry.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ * Keeps waves ordered by the next tick at which they need to be looked at,
+ * so the managers only check waves that can break or expire this tick.
+ * Waves are woken in the order they were added (lower priority first).
+ */
+public class WaveScheduler<T extends Wave> {
+    public static final long NEVER = Long.MAX_VALUE;
+    private static final double HITBOX_RADIUS = Physics.BOT_WIDTH * Math.sqrt(2) + 1e-6;
+
+    private final PriorityQueue<Entry<T>> queue = new PriorityQueue<>(new Comparator<Entry<T>>() {
+        @Override
+        public int compare(Entry<T> o1, Entry<T> o2) {
+            return Long.compare(o1.wake, o2.wake);
+        }
+    });
+
+    private final Comparator<Entry<T>> arrival = new Comparator<Entry<T>>() {
+        @Override
+        public int compare(Entry<T> o1, Entry<T> o2) {
+            if(o1.priority != o2.priority)
+                return Integer.compare(o1.priority, o2.priority);
+            return Long.compare(o1.seq, o2.seq);
+        }
+    };
+
+    private final IdentityHashMap<T, Entry<T>> entries = new IdentityHashMap<>();
+    private long seq = 0;
+
+    public void add(T wave, int priority, long wake) {
+        Entry<T> entry = new Entry<>(wave, priority, seq++);
+        entries.put(wave, entry);
+        schedule(entry, wake);
+    }
+
+    /**
+     * Marks the wave as dead. It is dropped when it reaches the top of the queue.
+     */
+    public void remove(T wave) {
+        Entry<T> entry = entries.remove(wave);
+        if(entry != null)
+            entry.alive = false;
+    }
+
+    public void reschedule(T wave, long wake) {
+        Entry<T> entry = entries.get(wave);
+        if(entry != null)
+            schedule(entry, wake);
+    }
+
+    private void schedule(Entry<T> entry, long wake) {
+        entry.wake = wake;
+        queue.add(entry);
+    }
+
+    /**
+     * Removes and returns every live wave due at {@code time}, in arrival order.
+     * The caller must reschedule or remove each one of them.
+     */
+    public ArrayList<T> due(long time) {
+        ArrayList<Entry<T>> due = new ArrayList<>();
+        while(!queue.isEmpty() && queue.peek().wake <= time) {
+            Entry<T> entry = queue.poll();
+            if(entry.alive)
+                due.add(entry);
+        }
+
+        Collections.sort(due, arrival);
+
+        ArrayList<T> res = new ArrayList<>(due.size());
+        for(Entry<T> entry : due)
+            res.add(entry.wave);
+
+        return res;
+    }
+
+    /**
+     * Wakes every wave at {@code time}, e.g. when a robot that was not
+     * considered when they were scheduled shows up.
+     */
+    public void wakeAll(long time) {
+        ArrayList<Entry<T>> pending = new ArrayList<>(queue);
+        queue.clear();
+        for(Entry<T> entry : pending) {
+            if(entry.alive)
+                schedule(entry, Math.min(entry.wake, time));
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * First tick at which a robot last seen at {@code point} on {@code scanTime} could
+     * have its center inside the wave, assuming it moves at most Rules.MAX_VELOCITY per tick.
+     */
+    public static long earliestReach(Wave wave, Point point, long scanTime) {
+        double distance = wave.getSource().distance(point);
+        double speed = wave.getVelocity() + Rules.MAX_VELOCITY;
+        double reach = (distance - R.EPSILON + Rules.MAX_VELOCITY * scanTime
+                + wave.getVelocity() * wave.getTime()) / speed;
+
+        if(Double.isNaN(reach) || reach >= NEVER)
+            return NEVER;
+
+        return (long) Math.floor(reach) - 1;
+    }
+
+    /**
+     * First tick at which the wave has traveled more than {@code maxDistance}.
+     */
+    public static long expiry(Wave wave, double maxDistance) {
+        return wave.getTime() + (long) Math.floor(maxDistance / wave.getVelocity()) + 1;
+    }
+
+    /**
+     * Whether a break/pass against a robot can never happen again: the previous snapshot
+     * is already inside the wave, and so is any hitbox the robot can reach from its last
+     * snapshot (seen at {@code scanTime}), since waves outrun robots.
+     */
+    public static boolean isSettled(Wave wave, long time, Point point, long scanTime, AxisRectangle pastHitbox) {
+        if(pastHitbox == null || wave.getVelocity() <= Rules.MAX_VELOCITY)
+            return false;
+
+        double reach = wave.getSource().distance(point) + Rules.MAX_VELOCITY * (time - scanTime) + HITBOX_RADIUS;
+        return reach < wave.getDistanceTraveled(time) && wave.getCircle(time).isInside(pastHitbox);
+    }
+
+    private static class Entry<T> {
+        public final T wave;
+        public final int priority;
+        public final long seq;
+        public long wake;
+        public boolean alive = true;
+
+        private Entry(T wave, int priority, long seq) {
+            this.wave = wave;
+            this.priority = priority;
+            this.seq = seq;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.baf2.waves;
+
+import org.junit.jupiter.api.Test;
+import rsalesc.baf2.core.utils.BattleTime;
+import rsalesc.baf2.core.utils.geometry.AxisRectangle;
+import rsalesc.baf2.core.utils.geometry.Point;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Replays random battles twice: once checking every wave on every tick,
+ * bullet waves before tick waves, as the managers used to, and once
+ * checking only the waves the scheduler hands back, as they do now.
+ * Both must fire the same events in the same order.
+ */
+public class WaveSchedulerTest {
+    private static final double MAX_DISTANCE = 1600;
+    private static final int BULLET = 0;
+    private static final int TICK = 1;
+
+    @Test
+    public void sameDispatchAsCheckingEveryWave() {
+        Random random = new Random(7);
+        long checks = 0, bruteChecks = 0;
+
+        for(int run = 0; run < 100; run++) {
+            ArrayList<Wave> all = new ArrayList<>();
+            ArrayList<ArrayList<Wave>> lists = new ArrayList<>();
+            lists.add(new ArrayList<>());
+            lists.add(new ArrayList<>());
+            WaveScheduler<Wave> scheduler = new WaveScheduler<>();
+
+            StringBuilder expected = new StringBuilder();
+            StringBuilder actual = new StringBuilder();
+
+            double x = 400, y = 300, heading = 0;
+            Point point = null, past = null;
+            long scanTime = 0;
+
+            for(long time = 1; time < 400; time++) {
+                heading += random.nextGaussian() * 0.3;
+                double velocity = random.nextDouble() * 16 - 8;
+                x = Math.max(18, Math.min(782, x + Math.sin(heading) * velocity));
+                y = Math.max(18, Math.min(582, y + Math.cos(heading) * velocity));
+
+                // scans are missed now and then
+                if(point == null || random.nextInt(5) > 0) {
+                    past = point;
+                    point = new Point(x, y);
+                    scanTime = time;
+                }
+
+                if(random.nextInt(6) == 0) {
+                    int priority = random.nextInt(3) == 0 ? TICK : BULLET;
+                    Wave wave = new Wave(new Point(random.nextDouble() * 800, random.nextDouble() * 600),
+                            new BattleTime(time, 0), 11 + random.nextInt(9));
+
+                    all.add(wave);
+                    lists.get(priority).add(wave);
+                    scheduler.add(wave, priority, time);
+                }
+
+                // like a heat wave being replaced by the real one
+                if(random.nextInt(40) == 0 && !lists.get(BULLET).isEmpty()) {
+                    Wave wave = lists.get(BULLET).remove(random.nextInt(lists.get(BULLET).size()));
+                    scheduler.remove(wave);
+                }
+
+                for(ArrayList<Wave> waves : lists) {
+                    Iterator<Wave> it = waves.iterator();
+                    while(it.hasNext()) {
+                        Wave wave = it.next();
+                        bruteChecks++;
+
+                        if(check(wave, time, point, past, all.indexOf(wave), expected))
+                            it.remove();
+                    }
+                }
+
+                for(Wave wave : scheduler.due(time)) {
+                    checks++;
+
+                    if(check(wave, time, point, past, all.indexOf(wave), actual)) {
+                        scheduler.remove(wave);
+                        continue;
+                    }
+
+                    long wake = WaveScheduler.expiry(wave, MAX_DISTANCE) - 1;
+                    if(!WaveScheduler.isSettled(wave, time, point, scanTime, past == null ? null : hitbox(past)))
+                        wake = Math.min(wake, WaveScheduler.earliestReach(wave, point, scanTime));
+
+                    scheduler.reschedule(wave, Math.max(wake, time + 1));
+                }
+            }
+
+            assertEquals(expected.toString(), actual.toString());
+        }
+
+        assertTrue(checks * 3 < bruteChecks, "scheduler should skip most checks");
+    }
+
+    /**
+     * Appends the break, pass and expiry events of the wave at this tick,
+     * returning whether it expired.
+     */
+    private static boolean check(Wave wave, long time, Point point, Point past, int id, StringBuilder events) {
+        if(wave.getCircle(time).isInside(point) && (past == null || !wave.getCircle(time - 1).isInside(past)))
+            events.append(time).append(":break").append(id).append(' ');
+
+        if(wave.getCircle(time).isInside(hitbox(point)) && (past == null || !wave.getCircle(time - 1).isInside(hitbox(past))))
+            events.append(time).append(":pass").append(id).append(' ');
+
+        if(wave.getDistanceTraveled(time) > MAX_DISTANCE) {
+            events.append(time).append(":expire").append(id).append(' ');
+            return true;
+        }
+
+        return false;
+    }
+
+    private static AxisRectangle hitbox(Point point) {
+        return new AxisRectangle(point.x - 18, point.x + 18, point.y - 18, point.y + 18);
+    }
+}
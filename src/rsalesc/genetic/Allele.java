@@ -28,15 +28,19 @@ package rsalesc.genetic;
  */
 public class Allele<T> {
     private final ConcreteGene<T> gene;
-    private final String bitString;
+    private final long bits;
 
     public Allele(ConcreteGene<T> gene, String bitString) {
+        this(gene, ConcreteGene.toBits(bitString));
+    }
+
+    public Allele(ConcreteGene<T> gene, long bits) {
         this.gene = gene;
-        this.bitString = bitString;
+        this.bits = bits;
     }
 
     public T getValue() {
-        return gene.interpretString(bitString);
+        return gene.interpretBits(bits);
     }
 
     public ConcreteGene<T> getGene() {
@@ -45,6 +49,6 @@ public class Allele<T> {
 
     @Override
     public String toString() {
-        return bitString;
+        return ConcreteGene.toBitString(bits, gene.getBitLength());
     }
 }
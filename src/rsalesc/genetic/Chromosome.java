@@ -27,6 +27,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Objects;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by Roberto Sales on 30/09/17.
@@ -86,13 +87,7 @@ public class Chromosome implements Cloneable, Serializable {
 
     public static Chromosome mutate(Chromosome chromosome, double mutationRate) {
         ChromosomeSequence sequence = (ChromosomeSequence) chromosome.sequence.clone();
-        boolean mutated = false;
-        for(int i = 0; i < sequence.size(); i++) {
-            if (Math.random() < mutationRate) {
-                sequence.flip(i);
-                mutated = true;
-            }
-        }
+        boolean mutated = sequence.mutate(mutationRate, ThreadLocalRandom.current());
 
         return new Chromosome(chromosome.layout, sequence, mutated ? ChromosomeSource.MUTATION : chromosome.source);
     }
@@ -107,12 +102,11 @@ public class Chromosome implements Cloneable, Serializable {
     }
 
     public <T> Allele<T> getAllele(ConcreteGene<T> gene) {
-        return new Allele<>(gene, sequence.substring(layout.getConcreteGeneOffset(gene), gene.getBitLength()));
+        return new Allele<>(gene, sequence.getBits(layout.getConcreteGeneOffset(gene), gene.getBitLength()));
     }
 
     public <T> void setAllele(ConcreteGene<T> gene, T value) {
-        String toSet = gene.stringifyValue(value);
-        sequence.setBitString(layout.getConcreteGeneOffset(gene), toSet);
+        sequence.setBits(layout.getConcreteGeneOffset(gene), gene.getBitLength(), gene.encodeValue(value));
     }
 
     @Override
@@ -33,6 +33,7 @@ public class ChromosomeLayout implements Serializable {
     private static final long serialVersionUID = 1777777711231L;
     protected HashMap<ConcreteGene, Integer> concreteGeneOffset = new HashMap<>();
     private int totalLength = 0;
+    private transient int hash = 0;
 
     public int getBitLength() {
         return totalLength;
@@ -58,6 +59,7 @@ public class ChromosomeLayout implements Serializable {
             else {
                 concreteGeneOffset.put(concreteGene, totalLength);
                 totalLength += concreteGene.getBitLength();
+                hash = 0;
             }
         }
     }
@@ -86,6 +88,10 @@ public class ChromosomeLayout implements Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(getConcreteGeneEntrySet().toArray());
+        // chromosomes are hashed as fitness cache keys, so don't rebuild this every time
+        if(hash == 0)
+            hash = Objects.hash(getConcreteGeneEntrySet().toArray());
+
+        return hash;
     }
 }
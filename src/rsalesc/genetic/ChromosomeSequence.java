@@ -22,118 +22,276 @@
  */
 
 package rsalesc.genetic;
-
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by Roberto Sales on 30/09/17.
+ * Bits are packed into words, bit i living at words[i / 64] & (1L << i). Bits past
+ * size are always kept off, so words can be compared and hashed directly.
  */
 public class ChromosomeSequence implements Cloneable, Serializable {
     private static final long serialVersionUID = 190231001201020121L;
 
-    StringBuilder builder = new StringBuilder();
+    private long[] words;
+    private int size;
 
     public ChromosomeSequence(int n) {
+        words = new long[0];
         appendBits(n);
     }
+
     public ChromosomeSequence(String bitString) {
+        words = new long[0];
         append(bitString);
     }
 
+    private ChromosomeSequence(long[] words, int size) {
+        this.words = words;
+        this.size = size;
+    }
+
+    private static int wordsFor(int n) {
+        return (n + 63) >>> 6;
+    }
+
+    private static long mask(int from, int to) {
+        long res = -1L << (from & 63);
+        return (to & 63) == 0 ? res : res & (-1L >>> (64 - (to & 63)));
+    }
+
+    private void clearTail() {
+        if((size & 63) != 0)
+            words[words.length - 1] &= -1L >>> (64 - (size & 63));
+    }
+
     public int size() {
-        return builder.length();
+        return size;
     }
 
     public int appendBits(int n) {
-        int res = builder.length();
-        while(n-- > 0)
-            builder.append('0');
+        int res = size;
+        size += n;
+
+        if(wordsFor(size) > words.length)
+            words = Arrays.copyOf(words, wordsFor(size));
 
         return res;
     }
 
     public int append(String bitString) {
-        int res = builder.length();
-        builder.append(bitString);
+        int res = appendBits(bitString.length());
+        setBitString(res, bitString);
 
         return res;
     }
 
     public boolean isOn(int pos) {
-        return builder.charAt(pos) == '1';
+        return (words[pos >>> 6] & (1L << pos)) != 0;
     }
 
     public char get(int pos) {
-        return builder.charAt(pos);
+        return isOn(pos) ? '1' : '0';
     }
 
     public void flip(int pos) {
-        builder.setCharAt(pos, (char) ('0' + ((short) (builder.charAt(pos) - '0') ^ 1)));
+        words[pos >>> 6] ^= 1L << pos;
     }
 
     public void on(int pos) {
-        builder.setCharAt(pos, '1');
+        words[pos >>> 6] |= 1L << pos;
     }
 
     public void off(int pos) {
-        builder.setCharAt(pos, '0');
+        words[pos >>> 6] &= ~(1L << pos);
     }
 
     public void set(int pos, boolean on) {
-        builder.setCharAt(pos, on ? '1' : '0');
+        if(on) on(pos);
+        else off(pos);
     }
 
     public void set(int pos, char c) {
-        builder.setCharAt(pos, c);
+        set(pos, c == '1');
     }
 
     public void setBitString(int pos, String bitString) {
-        builder.replace(pos, pos + bitString.length(), bitString);
+        for(int i = 0; i < bitString.length(); i++)
+            set(pos + i, bitString.charAt(i));
     }
 
     public String substring(int start, int length) {
-        return builder.substring(start, start + length);
+        char[] res = new char[length];
+        for(int i = 0; i < length; i++)
+            res[i] = get(start + i);
+
+        return new String(res);
     }
 
-    public static ChromosomeSequence getRandomSequence(int n) {
-        ChromosomeSequence sequence = new ChromosomeSequence(n);
-        for(int i = 0; i < n; i++)
-            if(Math.random() < 0.5)
-                sequence.on(i);
+    /**
+     * Reads length (at most 64) bits starting at start as a number, the bit at start
+     * being the most significant one, just like reading substring(start, length).
+     */
+    public long getBits(int start, int length) {
+        if(length > 64)
+            throw new IllegalArgumentException("cannot read more than 64 bits at once");
+
+        long res = 0;
+        int end = start + length;
+
+        while(start < end) {
+            int word = start >>> 6;
+            int take = Math.min(end - start, 64 - (start & 63));
+            long chunk = (words[word] >>> (start & 63)) & (take == 64 ? -1L : (1L << take) - 1);
 
-        return sequence;
+            res = (res << take) | Long.reverse(chunk) >>> (64 - take);
+            start += take;
+        }
+
+        return res;
     }
 
-    public static ChromosomeSequence getRandomSequence(int n, Random rng) {
-        ChromosomeSequence sequence = new ChromosomeSequence(n);
-        for(int i = 0; i < n; i++)
-            if(rng.nextDouble() < 0.5)
-                sequence.on(i);
+    /**
+     * Inverse of getBits.
+     */
+    public void setBits(int start, int length, long value) {
+        if(length > 64)
+            throw new IllegalArgumentException("cannot write more than 64 bits at once");
 
-        return sequence;
+        for(int i = start + length - 1; i >= start; i--) {
+            set(i, (value & 1) != 0);
+            value >>>= 1;
+        }
+    }
+
+    /**
+     * Exchanges the bits in [from, to) with the ones of other, a word at a time.
+     */
+    public void swap(ChromosomeSequence other, int from, int to) {
+        if(from >= to)
+            return;
+
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+
+        for(int i = first; i <= last; i++) {
+            long m = -1L;
+            if(i == first) m &= mask(from, 64);
+            if(i == last) m &= mask(0, to);
+
+            long diff = (words[i] ^ other.words[i]) & m;
+            words[i] ^= diff;
+            other.words[i] ^= diff;
+        }
+    }
+
+    /**
+     * Exchanges the bits set in mask with the ones of other, a word at a time.
+     */
+    public void swap(ChromosomeSequence other, long[] mask) {
+        for(int i = 0; i < words.length; i++) {
+            long diff = (words[i] ^ other.words[i]) & mask[i];
+            words[i] ^= diff;
+            other.words[i] ^= diff;
+        }
+    }
+
+    /**
+     * Builds a mask with each of the first n bits on with probability 1/2.
+     */
+    public static long[] getRandomMask(int n, Random rng) {
+        long[] res = new long[wordsFor(n)];
+        for(int i = 0; i < res.length; i++)
+            res[i] = rng.nextLong();
+
+        if((n & 63) != 0)
+            res[res.length - 1] &= -1L >>> (64 - (n & 63));
+
+        return res;
+    }
+
+    /**
+     * Flips each bit independently with probability rate. Instead of rolling every bit,
+     * it jumps straight to the next flipped one, whose distance is geometrically
+     * distributed, so the cost is proportional to the number of flips.
+     */
+    public boolean mutate(double rate, Random rng) {
+        if(rate <= 0 || size == 0)
+            return false;
+
+        if(rate >= 1) {
+            for(int i = 0; i < words.length; i++)
+                words[i] = ~words[i];
+
+            clearTail();
+            return true;
+        }
+
+        double logq = Math.log1p(-rate);
+        boolean mutated = false;
+
+        long pos = -1;
+        while(true) {
+            pos += 1 + (long) (Math.log(1.0 - rng.nextDouble()) / logq);
+            if(pos >= size)
+                break;
+
+            flip((int) pos);
+            mutated = true;
+        }
+
+        return mutated;
+    }
+
+    public static ChromosomeSequence getRandomSequence(int n) {
+        return getRandomSequence(n, ThreadLocalRandom.current());
+    }
+
+    public static ChromosomeSequence getRandomSequence(int n, Random rng) {
+        return new ChromosomeSequence(getRandomMask(n, rng), n);
     }
 
     @Override
     public String toString() {
-        return builder.toString();
+        return substring(0, size);
     }
 
     @Override
     public Object clone() {
-        return new ChromosomeSequence(this.toString());
+        return new ChromosomeSequence(words.clone(), size);
     }
 
     @Override
     public boolean equals(Object obj) {
-        if(obj instanceof ChromosomeSequence)
-            return obj.toString().equals(toString());
+        if(obj instanceof ChromosomeSequence) {
+            ChromosomeSequence rhs = (ChromosomeSequence) obj;
+            return size == rhs.size && Arrays.equals(words, rhs.words);
+        }
 
         return false;
     }
 
     @Override
     public int hashCode() {
-        return this.toString().hashCode();
+        return 31 * Arrays.hashCode(words) + size;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+
+        if(fields.getObjectStreamClass().getField("builder") != null) {
+            // cached generations written before packing kept the sequence as a '0'/'1' string
+            Object legacy = fields.get("builder", null);
+            words = new long[0];
+            size = 0;
+            append(legacy.toString());
+        } else {
+            words = (long[]) fields.get("words", null);
+            size = fields.get("size", 0);
+        }
     }
 }
@@ -72,6 +72,36 @@ class ChromosomeTest {
         }
     }
 
+    @Test
+    public void testPackedBits() {
+        ChromosomeLayout layout = new ChromosomeLayout();
+        LongDecimalGene ldGene = new LongDecimalGene(0, 100, 2);
+        LongGene lGene = new LongGene(-37, 1000);
+        for(int i = 0; i < 10; i++)
+            layout.addGene(new LongGene(0, 1000));
+        layout.addGene(ldGene);
+        layout.addGene(lGene);
+
+        for(int i = 0; i < 100; i++) {
+            Chromosome chromosome = Chromosome.random(layout);
+            ChromosomeSequence sequence = chromosome.getSequence();
+
+            for(ConcreteGene<?> gene : layout.getConcreteGenes()) {
+                assertPacked(chromosome, sequence, gene);
+            }
+
+            chromosome.setAllele(lGene, (long) i * 7);
+            Assertions.assertEquals((long) i * 7, (long) chromosome.getAllele(lGene).getValue());
+            Assertions.assertEquals(sequence, new ChromosomeSequence(sequence.toString()));
+        }
+    }
+
+    private <T> void assertPacked(Chromosome chromosome, ChromosomeSequence sequence, ConcreteGene<T> gene) {
+        ChromosomeLayout layout = chromosome.getLayout();
+        String bitString = sequence.substring(layout.getConcreteGeneOffset(gene), gene.getBitLength());
+        Assertions.assertEquals(gene.interpretString(bitString), chromosome.getAllele(gene).getValue());
+    }
+
     private void dump(Chromosome chromosome) {
         for(ConcreteGene gene : chromosome.getLayout().getConcreteGenes()) {
             Allele allele = chromosome.getAllele(gene);
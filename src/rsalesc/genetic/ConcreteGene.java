@@ -34,4 +34,36 @@ public abstract class ConcreteGene<T> extends Gene implements Serializable {
 
     public abstract T interpretString(String bitString);
     public abstract String stringifyValue(T value);
+
+    /**
+     * Same as interpretString, for genes of at most 64 bits read with ChromosomeSequence.getBits.
+     */
+    public T interpretBits(long bits) {
+        return interpretString(toBitString(bits, getBitLength()));
+    }
+
+    /**
+     * Same as stringifyValue, packed as ChromosomeSequence.setBits expects.
+     */
+    public long encodeValue(T value) {
+        return toBits(stringifyValue(value));
+    }
+
+    public static String toBitString(long bits, int length) {
+        char[] res = new char[length];
+        for(int i = length - 1; i >= 0; i--) {
+            res[i] = (char) ('0' + (bits & 1));
+            bits >>>= 1;
+        }
+
+        return new String(res);
+    }
+
+    public static long toBits(String bitString) {
+        long res = 0;
+        for(int i = 0; i < bitString.length(); i++)
+            res = (res << 1) | (bitString.charAt(i) - '0');
+
+        return res;
+    }
 }
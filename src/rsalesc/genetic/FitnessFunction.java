@@ -45,6 +45,10 @@ public abstract class FitnessFunction<T extends Comparable<T> & Serializable> {
         logs = true;
     }
 
+    protected boolean isLogging() {
+        return logs;
+    }
+
     public ArrayList<ChromosomePerformance<T>> getFitness(Population population) {
         ArrayList<ChromosomePerformance<T>> res = new ArrayList<>();
 
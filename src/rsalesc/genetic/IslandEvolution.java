@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.genetic;
+
+import rsalesc.baf2.core.utils.R;
+import rsalesc.baf2.core.utils.Timer;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Island model on top of an EvolutionStrategy. Several sub-populations evolve
+ * at once and replace their members in steady-state: each fitness result is
+ * merged into its island as soon as it arrives, and another offspring of that
+ * island is sent to evaluation right away. No island ever waits for the
+ * slowest chromosome of a generation. Every migrationInterval generations
+ * of an island, its elites are copied to the next island in the ring.
+ *
+ * Only the calling thread touches the islands; the workers just evaluate
+ * fitness, so the FitnessFunction must be safe to call concurrently.
+ */
+public class IslandEvolution<T extends Comparable<T> & Serializable> {
+    private final EvolutionStrategy<T> strategy;
+    private final int islands;
+    private final int islandSize;
+    private final int migrationInterval;
+    private final int migrants;
+    private final int concurrency;
+
+    private Checkpoint<T> checkpoint;
+    private boolean logs = false;
+
+    public IslandEvolution(EvolutionStrategy<T> strategy, int islands, int islandSize,
+                           int migrationInterval, int migrants, int concurrency) {
+        if(islands < 1 || islandSize < 1 || concurrency < 1)
+            throw new IllegalArgumentException("islands, islandSize and concurrency must be positive");
+
+        this.strategy = strategy;
+        this.islands = islands;
+        this.islandSize = islandSize;
+        this.migrationInterval = Math.max(migrationInterval, 1);
+        this.migrants = Math.min(migrants, islandSize);
+        this.concurrency = concurrency;
+    }
+
+    public void setCheckpoint(Checkpoint<T> checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public void log() {
+        logs = true;
+    }
+
+    public int getPopulationSize() {
+        return islands * islandSize;
+    }
+
+    /**
+     * Runs until gens generations worth of results (gens * islands * islandSize) were
+     * merged, counting the ones already in resume. Members of resume are dealt to the
+     * islands from the fittest down without being evaluated again.
+     */
+    public Generation<T> evolve(int gens, ChromosomeLayout layout, Generation<T> resume) throws IOException {
+        ArrayList<Island> state = new ArrayList<>();
+        for(int i = 0; i < islands; i++)
+            state.add(new Island());
+
+        int generation = 0;
+
+        if(resume != null) {
+            generation = resume.getIndex() + 1;
+
+            ArrayList<ChromosomePerformance<T>> seeds = new ArrayList<>(resume.getPerformance());
+            Collections.sort(seeds, Collections.reverseOrder());
+
+            for(int i = 0; i < seeds.size() && i < getPopulationSize(); i++)
+                state.get(i % islands).merge(seeds.get(i));
+        }
+
+        for(Island island : state) {
+            while(island.members.size() + island.seeds.size() < islandSize)
+                island.seeds.add(Chromosome.random(layout));
+        }
+
+        long budget = Math.max((long) (gens - generation) * getPopulationSize(), 0);
+        long dispatched = 0;
+        long merged = 0;
+        int cursor = 0;
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "island-evolution");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        CompletionService<Result> completion = new ExecutorCompletionService<>(workers);
+        FitnessFunction<T> fitnessFn = strategy.getFitnessFunction();
+
+        Timer timer = new Timer();
+        timer.start();
+
+        try {
+            int inFlight = 0;
+
+            while(true) {
+                while(inFlight < concurrency && dispatched < budget) {
+                    final int index = cursor;
+                    final Chromosome chromosome = state.get(index).next(layout);
+                    cursor = (cursor + 1) % islands;
+
+                    completion.submit(new Callable<Result>() {
+                        @Override
+                        public Result call() throws Exception {
+                            return new Result(index, new ChromosomePerformance<>(chromosome, fitnessFn.getFitness(chromosome)));
+                        }
+                    });
+
+                    inFlight++;
+                    dispatched++;
+                }
+
+                if(inFlight == 0)
+                    break;
+
+                Result result = take(completion);
+                inFlight--;
+                merged++;
+
+                Island island = state.get(result.island);
+                island.pending.remove(result.performance.getChromosome());
+                island.merge(result.performance);
+
+                if(++island.merged % ((long) islandSize * migrationInterval) == 0)
+                    migrate(island, state.get((result.island + 1) % islands));
+
+                if(merged % getPopulationSize() == 0) {
+                    save(generation, state, timer);
+                    generation++;
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        Generation<T> last = snapshot(Math.max(gens, generation), state);
+        if(checkpoint != null)
+            checkpoint.save(last);
+
+        return last;
+    }
+
+    private Result take(CompletionService<Result> completion) {
+        try {
+            return completion.take().get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("island evolution was interrupted", e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException("fitness evaluation failed", e.getCause());
+        }
+    }
+
+    private void migrate(Island from, Island to) {
+        ArrayList<ChromosomePerformance<T>> sorted = new ArrayList<>(from.members);
+        Collections.sort(sorted, Collections.reverseOrder());
+
+        for(int i = 0; i < migrants && i < sorted.size(); i++) {
+            ChromosomePerformance<T> elite = sorted.get(i);
+            to.merge(new ChromosomePerformance<>(Chromosome.survive(elite.getChromosome()), elite.getFitness()));
+        }
+    }
+
+    private void save(int index, List<Island> state, Timer timer) throws IOException {
+        Generation<T> generation = snapshot(index, state);
+
+        if(logs) {
+            System.out.println(index + "-th generation performance: "
+                    + R.formattedPercentage(toDouble(GeneticUtils.getFittest(generation.getPerformance()).getFitness()))
+                    + " (total " + Timer.getFormattedMinutes(timer.spent()) + ")");
+        }
+
+        if(checkpoint != null)
+            checkpoint.save(generation);
+    }
+
+    private static double toDouble(Object fitness) {
+        return fitness instanceof Number ? ((Number) fitness).doubleValue() : Double.NaN;
+    }
+
+    private Generation<T> snapshot(int index, List<Island> state) {
+        Population population = new Population();
+        ArrayList<ChromosomePerformance<T>> perfs = new ArrayList<>();
+
+        for(Island island : state) {
+            for(ChromosomePerformance<T> perf : island.members) {
+                population.add(perf.getChromosome());
+                perfs.add(perf);
+            }
+        }
+
+        return new Generation<>(index, population, perfs);
+    }
+
+    public interface Checkpoint<T extends Comparable<T> & Serializable> {
+        void save(Generation<T> generation) throws IOException;
+    }
+
+    private class Result {
+        private final int island;
+        private final ChromosomePerformance<T> performance;
+
+        private Result(int island, ChromosomePerformance<T> performance) {
+            this.island = island;
+            this.performance = performance;
+        }
+    }
+
+    private class Island {
+        private final ArrayList<ChromosomePerformance<T>> members = new ArrayList<>();
+        private final ArrayDeque<Chromosome> seeds = new ArrayDeque<>();
+        private final ArrayDeque<Chromosome> brood = new ArrayDeque<>();
+        private final HashSet<Chromosome> pending = new HashSet<>();
+        private long merged = 0;
+
+        private boolean contains(Chromosome chromosome) {
+            for(ChromosomePerformance<T> member : members) {
+                if(member.getChromosome().equals(chromosome))
+                    return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Fills the island up to its size, then only replaces the worst member
+         * when the newcomer is fitter.
+         */
+        private void merge(ChromosomePerformance<T> perf) {
+            if(perf.getFitness() == null || contains(perf.getChromosome()))
+                return;
+
+            if(members.size() < islandSize) {
+                members.add(perf);
+                return;
+            }
+
+            int worst = 0;
+            for(int i = 1; i < members.size(); i++) {
+                if(members.get(i).compareTo(members.get(worst)) < 0)
+                    worst = i;
+            }
+
+            if(perf.compareTo(members.get(worst)) > 0)
+                members.set(worst, perf);
+        }
+
+        private Chromosome next(ChromosomeLayout layout) {
+            Chromosome res = seeds.poll();
+
+            while(res == null) {
+                if(brood.isEmpty() && !members.isEmpty())
+                    brood.addAll(strategy.evolve(new ArrayList<>(members), layout).getChromosomes());
+
+                Chromosome candidate = brood.poll();
+                if(candidate == null)
+                    candidate = Chromosome.random(layout);
+
+                if(!contains(candidate) && !pending.contains(candidate))
+                    res = candidate;
+                else if(brood.isEmpty())
+                    res = Chromosome.random(layout);
+            }
+
+            pending.add(res);
+            return res;
+        }
+    }
+}
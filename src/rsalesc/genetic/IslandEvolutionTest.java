@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.genetic;
+
+import org.junit.jupiter.api.Test;
+import rsalesc.genetic.crossover.TwoPointCrossoverStrategy;
+import rsalesc.genetic.evolution.MutateAndSurviveStrategy;
+import rsalesc.runner.SerializeHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class IslandEvolutionTest {
+    private static final int ISLANDS = 2;
+    private static final int ISLAND_SIZE = 20;
+    private static final long TARGET = 777777;
+
+    private final LongGene gene = new LongGene(0, 1000000);
+    private final ChromosomeLayout layout = new ChromosomeLayout();
+    private final AtomicInteger evaluated = new AtomicInteger();
+
+    private final FitnessFunction<Double> fitnessFn = new FitnessFunction<Double>() {
+        @Override
+        public Double getFitness(Chromosome chromosome) {
+            evaluated.incrementAndGet();
+            long value = chromosome.getAllele(gene).getValue();
+            return value == TARGET ? 1e9 : (double) value;
+        }
+    };
+
+    public IslandEvolutionTest() {
+        layout.addGene(gene);
+    }
+
+    private IslandEvolution<Double> model(int migrationInterval, int migrants) {
+        MutateAndSurviveStrategy<Double> strategy = new MutateAndSurviveStrategy<>(
+                fitnessFn, 0.02, 0.03, 0.75, new TwoPointCrossoverStrategy());
+
+        return new IslandEvolution<>(strategy, ISLANDS, ISLAND_SIZE, migrationInterval, migrants, 1);
+    }
+
+    private ChromosomePerformance<Double> evaluate(Chromosome chromosome) {
+        return new ChromosomePerformance<>(chromosome, fitnessFn.getFitness(chromosome));
+    }
+
+    /**
+     * A finished generation whose fittest member, the only one at TARGET, is dealt to the first island.
+     */
+    private Generation<Double> withElite() {
+        Population population = new Population();
+        ArrayList<ChromosomePerformance<Double>> perfs = new ArrayList<>();
+
+        Chromosome elite = new Chromosome(layout);
+        elite.setAllele(gene, TARGET);
+        perfs.add(evaluate(elite));
+
+        while(perfs.size() < ISLANDS * ISLAND_SIZE) {
+            Chromosome chromosome = Chromosome.random(layout);
+            if(chromosome.getAllele(gene).getValue() != TARGET)
+                perfs.add(evaluate(chromosome));
+        }
+
+        for(ChromosomePerformance<Double> perf : perfs)
+            population.add(perf.getChromosome());
+
+        return new Generation<>(0, population, perfs);
+    }
+
+    /**
+     * Islands whose members hold TARGET. Snapshots list the islands one after the other.
+     */
+    private static List<Integer> islandsWithTarget(Generation<Double> generation) {
+        ArrayList<Integer> res = new ArrayList<>();
+        List<ChromosomePerformance<Double>> perfs = generation.getPerformance();
+
+        for(int i = 0; i < perfs.size(); i++) {
+            int island = i / ISLAND_SIZE;
+            if(perfs.get(i).getFitness() == 1e9 && !res.contains(island))
+                res.add(island);
+        }
+
+        return res;
+    }
+
+    @Test
+    public void migrationCopiesTheElite() throws IOException {
+        Generation<Double> resume = withElite();
+
+        // one island's worth of results goes by before its first migration
+        Generation<Double> migrated = model(1, 1).evolve(2, layout, resume);
+        assertEquals(ISLANDS * ISLAND_SIZE, migrated.getPerformance().size());
+        assertEquals(2, islandsWithTarget(migrated).size());
+
+        Generation<Double> isolated = model(100, 1).evolve(2, layout, resume);
+        assertEquals(1, islandsWithTarget(isolated).size());
+        assertEquals(0, (int) islandsWithTarget(isolated).get(0));
+    }
+
+    @Test
+    public void resumingReproducesThePopulation() throws IOException {
+        ArrayList<Generation<Double>> checkpoints = new ArrayList<>();
+
+        IslandEvolution<Double> model = model(1, 2);
+        model.setCheckpoint(checkpoints::add);
+        model.evolve(3, layout, null);
+
+        Generation<Double> saved = checkpoints.get(0);
+        assertEquals(0, saved.getIndex());
+
+        // goes through serialization, like the trainer's cache file
+        Generation<Double> loaded = SerializeHelper.<Generation<Double>>convertFrom(
+                SerializeHelper.convertToByteArray(saved).get()).get();
+
+        int before = evaluated.get();
+        Generation<Double> resumed = model(1, 2).evolve(1, layout, loaded);
+
+        assertEquals(before, evaluated.get());
+        assertEquals(ISLANDS * ISLAND_SIZE, resumed.getPerformance().size());
+        assertEquals(fitnesses(saved), fitnesses(resumed));
+    }
+
+    /**
+     * Members and their fitness, as a sorted multiset, since migrants may be in two islands.
+     */
+    private static List<String> fitnesses(Generation<Double> generation) {
+        ArrayList<String> res = new ArrayList<>();
+        for(ChromosomePerformance<Double> perf : generation.getPerformance())
+            res.add(perf.getChromosome() + " " + perf.getFitness());
+
+        Collections.sort(res);
+        return res;
+    }
+}
@@ -71,16 +71,32 @@ public class LongDecimalGene extends ConcreteGene<Double> implements Serializabl
 
     @Override
     public Double interpretString(String bitString) {
-        double res = longGene.interpretString(bitString);
-        for(int i = 0; i < places; i++) res /= 10;
-        return res;
+        return scaleDown(longGene.interpretString(bitString));
     }
 
     @Override
     public String stringifyValue(Double value) {
-        for(int i = 0; i < places; i++) value *= 10;
-        long longValue = Math.round(value);
+        return longGene.stringifyValue(scaleUp(value));
+    }
 
-        return longGene.stringifyValue(longValue);
+    @Override
+    public Double interpretBits(long bits) {
+        return scaleDown(longGene.interpretBits(bits));
+    }
+
+    @Override
+    public long encodeValue(Double value) {
+        return longGene.encodeValue(scaleUp(value));
+    }
+
+    private double scaleDown(long value) {
+        double res = value;
+        for(int i = 0; i < places; i++) res /= 10;
+        return res;
+    }
+
+    private long scaleUp(double value) {
+        for(int i = 0; i < places; i++) value *= 10;
+        return Math.round(value);
     }
 }
@@ -73,29 +73,7 @@ public class LongGene extends ConcreteGene<Long> implements Serializable {
 
     @Override
     public String stringifyValue(Long value) {
-        if(value < minValue)
-            value = minValue;
-        if(value > maxValue)
-            value = maxValue;
-
-        long binary = value - integerOffset;
-        long gray = binaryToGray(binary);
-
-        StringBuilder builder = new StringBuilder();
-        while(gray > 0) {
-            builder.append((char) ('0' + (gray & 1)));
-            gray >>= 1;
-        }
-
-        while(builder.length() < getBitLength())
-            builder.append('0');
-
-        if(builder.length() > getBitLength())
-            throw new IllegalStateException();
-
-        builder.reverse();
-
-        return builder.toString();
+        return toBitString(encodeValue(value), getBitLength());
     }
 
     @Override
@@ -103,14 +81,29 @@ public class LongGene extends ConcreteGene<Long> implements Serializable {
         if(bitString.length() != getBitLength())
             throw new IllegalStateException("interpreted bitString length != from gene bitLength");
 
-        long gray = 0;
-        for(char c : bitString.toCharArray()) {
-            gray = (gray << 1) + c - '0';
-        }
+        return interpretBits(toBits(bitString));
+    }
 
+    @Override
+    public Long interpretBits(long gray) {
         return (grayToBinary(gray) % diff) + integerOffset;
     }
 
+    @Override
+    public long encodeValue(Long value) {
+        if(value < minValue)
+            value = minValue;
+        if(value > maxValue)
+            value = maxValue;
+
+        long gray = binaryToGray(value - integerOffset);
+
+        if(gray >>> getBitLength() != 0)
+            throw new IllegalStateException();
+
+        return gray;
+    }
+
     public static long grayToBinary(long gray) {
         long mask;
         for(mask = gray >> 1; mask != 0; mask >>= 1)
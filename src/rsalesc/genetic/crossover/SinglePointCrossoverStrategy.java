@@ -55,11 +55,7 @@ public class SinglePointCrossoverStrategy extends CrossoverStrategy
 
         boolean mutated = true;
 
-        for(int i = 0; i <= mutationPoint; i++) {
-            char leftChar = sequenceLeft.get(i);
-            sequenceLeft.set(i, sequenceRight.get(i));
-            sequenceRight.set(i, leftChar);
-        }
+        sequenceLeft.swap(sequenceRight, 0, mutationPoint + 1);
 
         ArrayList<Chromosome> res = new ArrayList<>();
         res.add(new Chromosome(left.getLayout(), sequenceLeft, mutated ? ChromosomeSource.CROSSOVER : left.getSource()));
@@ -55,11 +55,7 @@ public class TwoPointCrossoverStrategy extends CrossoverStrategy
 
         boolean mutated = true;
 
-        for(int i = mutationBegin; i <= mutationEnd; i++) {
-            char leftChar = sequenceLeft.get(i);
-            sequenceLeft.set(i, sequenceRight.get(i));
-            sequenceRight.set(i, leftChar);
-        }
+        sequenceLeft.swap(sequenceRight, mutationBegin, mutationEnd + 1);
 
         ArrayList<Chromosome> res = new ArrayList<>();
         res.add(new Chromosome(left.getLayout(), sequenceLeft, mutated ? ChromosomeSource.CROSSOVER : left.getSource()));
@@ -29,6 +29,7 @@ import rsalesc.genetic.ChromosomeSource;
 import rsalesc.genetic.CrossoverStrategy;
 
 import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by Roberto Sales on 30/09/17.
@@ -47,18 +48,15 @@ public class UniformCrossoverStrategy extends CrossoverStrategy {
 
         int n = left.size();
 
-        boolean mutated = false;
         ChromosomeSequence sequenceLeft = (ChromosomeSequence) left.getSequence().clone();
         ChromosomeSequence sequenceRight = (ChromosomeSequence) right.getSequence().clone();
 
-        for(int i = 0; i < n; i++) {
-            if(Math.random() < 0.5) {
-                char leftChar = sequenceLeft.get(i);
-                sequenceLeft.set(i, sequenceRight.get(i));
-                sequenceRight.set(i, leftChar);
-                mutated = true;
-            }
-        }
+        long[] mask = ChromosomeSequence.getRandomMask(n, ThreadLocalRandom.current());
+        sequenceLeft.swap(sequenceRight, mask);
+
+        boolean mutated = false;
+        for(long word : mask)
+            mutated |= word != 0;
 
         ArrayList<Chromosome> res = new ArrayList<>();
         res.add(new Chromosome(left.getLayout(), sequenceLeft, mutated ? ChromosomeSource.CROSSOVER : left.getSource()));
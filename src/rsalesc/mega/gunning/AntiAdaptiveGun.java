@@ -43,6 +43,9 @@ public class AntiAdaptiveGun extends GuessFactorGun {
         super(new KnnGuessFactorTargeting() {
             @Override
             public KnnView<TimestampedGFRange> getNewKnnSet() {
+                // a single strategy instance lets the view store the horizons below only once
+                AntiSurferStrategy strategy = new AntiSurferStrategy();
+
                 return new KnnView<TimestampedGFRange>()
                         .setDistanceWeighter(new Knn.GaussDistanceWeighter<>(1.0))
                         .add(new KnnTree<TimestampedGFRange>()
@@ -50,7 +53,7 @@ public class AntiAdaptiveGun extends GuessFactorGun {
                                 .setMode(KnnTree.Mode.MANHATTAN)
                                 .setK(4)
                                 .setRatio(0.15)
-                                .setStrategy(new AntiSurferStrategy())
+                                .setStrategy(strategy)
 //                                .setDistanceWeighter(new Knn.GaussDistanceWeighter<>(1.0))
                                 .logsBreak()
                                 .logsHit()
@@ -60,7 +63,7 @@ public class AntiAdaptiveGun extends GuessFactorGun {
                                 .setMode(KnnTree.Mode.MANHATTAN)
                                 .setK(4)
                                 .setRatio(0.15)
-                                .setStrategy(new AntiSurferStrategy())
+                                .setStrategy(strategy)
 //                                .setDistanceWeighter(new Knn.GaussDistanceWeighter<>(1.0))
                                 .logsBreak()
                                 .logsHit()
@@ -70,7 +73,7 @@ public class AntiAdaptiveGun extends GuessFactorGun {
                                 .setMode(KnnTree.Mode.MANHATTAN)
                                 .setK(4)
                                 .setRatio(0.15)
-                                .setStrategy(new AntiSurferStrategy())
+                                .setStrategy(strategy)
 //                                .setDistanceWeighter(new Knn.GaussDistanceWeighter<>(1.0))
                                 .logsBreak()
                                 .logsHit()
@@ -80,7 +83,7 @@ public class AntiAdaptiveGun extends GuessFactorGun {
                                 .setMode(KnnTree.Mode.MANHATTAN)
                                 .setK(4)
                                 .setRatio(0.15)
-                                .setStrategy(new AntiSurferStrategy())
+                                .setStrategy(strategy)
 //                                .setDistanceWeighter(new Knn.GaussDistanceWeighter<>(1.0))
                                 .logsBreak()
                                 .logsHit())
@@ -89,7 +92,7 @@ public class AntiAdaptiveGun extends GuessFactorGun {
                                 .setMode(KnnTree.Mode.MANHATTAN)
                                 .setK(2)
                                 .setRatio(0.15)
-                                .setStrategy(new AntiSurferStrategy())
+                                .setStrategy(strategy)
 //                                .setDistanceWeighter(new Knn.GaussDistanceWeighter<>(1.0))
                                 .logsBreak()
                                 .logsHit()
@@ -99,7 +102,7 @@ public class AntiAdaptiveGun extends GuessFactorGun {
                                 .setMode(KnnTree.Mode.MANHATTAN)
                                 .setK(1)
                                 .setRatio(0.15)
-                                .setStrategy(new AntiSurferStrategy())
+                                .setStrategy(strategy)
 //                                .setDistanceWeighter(new Knn.GaussDistanceWeighter<>(1.0))
                                 .logsBreak()
                                 .logsHit()
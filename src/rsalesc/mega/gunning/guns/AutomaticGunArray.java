@@ -28,6 +28,7 @@ import robocode.BulletHitEvent;
 import robocode.Condition;
 import rsalesc.baf2.core.RobotMediator;
 import rsalesc.baf2.core.StorageNamespace;
+import rsalesc.baf2.core.StorageSlot;
 import rsalesc.baf2.core.benchmark.Benchmark;
 import rsalesc.baf2.core.listeners.LastBreathListener;
 import rsalesc.baf2.core.utils.BattleTime;
@@ -54,6 +55,8 @@ import java.util.function.Function;
  * Created by Roberto Sales on 20/09/17.
  */
 public abstract class AutomaticGunArray extends AutomaticGun implements BulletWaveListener, BulletWavePreciseListener, LastBreathListener {
+    private static final int FIRING_ANGLES_PROBE = Benchmark.getInstance().register("GunArray.generateFiringAngles()");
+    private static final int PICK_PROBE = Benchmark.getInstance().register("GunArray.pickBestAngle()");
     private ArrayList<AutomaticGun> guns = new ArrayList<>();
     private boolean log = false;
     private boolean scoring = true;
@@ -131,7 +134,7 @@ public abstract class AutomaticGunArray extends AutomaticGun implements BulletWa
 
     @Override
     public GeneratedAngle[] generateFiringAngles(EnemyLog enemyLog, double power) {
-        Benchmark.getInstance().start("GunArray.generateFiringAngles()");
+        Benchmark.getInstance().start(FIRING_ANGLES_PROBE);
         BattleTime time = getMediator().getBattleTime();
         generateAll(enemyLog, power);
 
@@ -143,7 +146,7 @@ public abstract class AutomaticGunArray extends AutomaticGun implements BulletWa
 
     @Override
     public double pickBestAngle(EnemyLog enemyLog, GeneratedAngle[] angles, double power) {
-        Benchmark.getInstance().start("GunArray.pickBestAngle()");
+        Benchmark.getInstance().start(PICK_PROBE);
 
         BattleTime time = getMediator().getBattleTime();
         generateAll(enemyLog, power);
@@ -160,15 +163,12 @@ public abstract class AutomaticGunArray extends AutomaticGun implements BulletWa
     }
 
     public AutomaticGun getLastBestGun(EnemyLog enemyLog) {
-        StorageNamespace ns = getStorageNamespace().namespace(enemyLog.getName());
-        if(!ns.contains("lb"))
-            return null;
-
-        return (AutomaticGun) ns.get("lb");
+        StorageSlot<AutomaticGun> slot = getStorageNamespace().namespace(enemyLog.getName()).slot("lb");
+        return slot.get();
     }
 
     public void updateLastBestGun(EnemyLog enemyLog, AutomaticGun gun) {
-        getStorageNamespace().namespace(enemyLog.getName()).put("lb", gun);
+        getStorageNamespace().namespace(enemyLog.getName()).<AutomaticGun>slot("lb").put(gun);
     }
 
     public AutomaticGun getBestGun(EnemyLog enemyLog, double power, BattleTime time) {
@@ -206,11 +206,14 @@ public abstract class AutomaticGunArray extends AutomaticGun implements BulletWa
     }
 
     public ScoreKeeper getGunScoreKeeper(AutomaticGun gun) {
-        StorageNamespace ns = getGunSharedNamespace(gun);
-        if(!ns.contains("keeper"))
-            ns.put("keeper", new ScoreKeeper());
+        StorageSlot<ScoreKeeper> slot = getGunSharedNamespace(gun).slot("keeper");
+        ScoreKeeper keeper = slot.get();
+        if(keeper == null) {
+            keeper = new ScoreKeeper();
+            slot.put(keeper);
+        }
 
-        return (ScoreKeeper) ns.get("keeper");
+        return keeper;
     }
 
     public double getGunScore(AutomaticGun gun, EnemyLog enemyLog) {
@@ -218,11 +221,14 @@ public abstract class AutomaticGunArray extends AutomaticGun implements BulletWa
     }
 
     public GunCache getGunCache(AutomaticGun gun) {
-        StorageNamespace ns = getGunSharedNamespace(gun);
-        if(!ns.contains("cache"))
-            ns.put("cache", new GunCache());
+        StorageSlot<GunCache> slot = getGunSharedNamespace(gun).slot("cache");
+        GunCache cache = slot.get();
+        if(cache == null) {
+            cache = new GunCache();
+            slot.put(cache);
+        }
 
-        return (GunCache) ns.get("cache");
+        return cache;
     }
 
     public GeneratedAngle[] getGunGeneratedAngles(AutomaticGun gun, EnemyLog enemyLog, double power, BattleTime time) {
@@ -335,7 +341,7 @@ public abstract class AutomaticGunArray extends AutomaticGun implements BulletWa
     }
 
     public String getGunWaveHint(AutomaticGun gun, EnemyLog enemyLog) {
-        return getGunSharedNamespace(gun).namespace(enemyLog.getName()).getPath() + "fired-angle";
+        return getGunSharedNamespace(gun).namespace(enemyLog.getName()).slot("fired-angle").getPath();
     }
 
     public static GunScorePair getGunScorePair(ArrayList<GunScorePair> list, AutomaticGun gun) {
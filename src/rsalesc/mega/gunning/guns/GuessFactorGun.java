@@ -55,6 +55,8 @@ import java.util.List;
  */
 public abstract class GuessFactorGun extends AutomaticGun
         implements BulletWaveListener, BulletWavePreciseListener, TickBulletListener {
+    private static final int FIRING_ANGLES_PROBE = Benchmark.getInstance().register("GuessFactorGun.generateFiringAngles()");
+    private static final int INTERSECTION_PROBE = Benchmark.getInstance().register("GuessFactorGun.checkBulletIntersection()");
     public static final String LOG_HINT = "loghint";
     public static final String FOUND_HINT = "foundhint";
     private static final double GF_SCALE = 0.9;
@@ -85,7 +87,7 @@ public abstract class GuessFactorGun extends AutomaticGun
 
     @Override
     public GeneratedAngle[] generateFiringAngles(EnemyLog enemyLog, double power) {
-        Benchmark.getInstance().start("GuessFactorGun.generateFiringAngles()");
+        Benchmark.getInstance().start(FIRING_ANGLES_PROBE);
         if(enemyLog == null) {
             EnemyRobot[] enemies = EnemyTracker.getInstance().getLatest();
             if(enemies.length == 0)
@@ -189,7 +191,7 @@ public abstract class GuessFactorGun extends AutomaticGun
         if(f == null)
             return;
 
-        Benchmark.getInstance().start("GuessFactorGun.checkBulletIntersection()");
+        Benchmark.getInstance().start(INTERSECTION_PROBE);
 
         EnemyLog enemyLog = EnemyTracker.getInstance().getLog(enemy);
 //        RobotSnapshot interpolated = enemyLog.interpolate(getMediator().getTime() - 2);
@@ -225,7 +227,7 @@ public abstract class GuessFactorGun extends AutomaticGun
             wave.setData(LOG_HINT, lastTargetingLog);
 
             if(targeting instanceof KnnGuessFactorTargeting)
-                wave.setData(FOUND_HINT, ((KnnGuessFactorTargeting) targeting).lastFound);
+                wave.setData(FOUND_HINT, ((KnnGuessFactorTargeting) targeting).lastFound.toEntries());
         }
     }
 
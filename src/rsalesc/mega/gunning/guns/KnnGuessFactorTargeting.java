@@ -23,8 +23,9 @@
 
 package rsalesc.mega.gunning.guns;
 
-import rsalesc.baf2.core.StorageNamespace;
+import rsalesc.baf2.core.StorageSlot;
 import rsalesc.baf2.core.StoreComponent;
+import rsalesc.baf2.core.annotations.Modified;
 import rsalesc.baf2.core.benchmark.Benchmark;
 import rsalesc.baf2.tracking.EnemyLog;
 import rsalesc.baf2.waves.BreakType;
@@ -37,6 +38,7 @@ import rsalesc.structures.KnnView;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -47,17 +49,29 @@ import java.util.List;
  * TC2: had hit-angle bandwidth and gauss distance weighter, besides ratio 0.33
  */
 public abstract class KnnGuessFactorTargeting extends StoreComponent implements GFTargeting, KnnProvider<TimestampedGFRange> {
-    public List<Knn.Entry<TimestampedGFRange>> lastFound;
+    private static final int FIRING_ANGLES_PROBE = Benchmark.getInstance().register("KnnGuessFactorTargeting.getFiringAngles()");
+    public final Knn.Buffer<TimestampedGFRange> lastFound = new Knn.Buffer<>();
+
+    // sweep scratch, reused across firing decisions
+    private double[] sweepAxis = new double[0];
+    private double[] sweepDelta = new double[0];
+
+    // slots resolved once per enemy, so getKnnSet stays off the namespace maps
+    private final HashMap<String, StorageSlot<KnnView<TimestampedGFRange>>> knnSlots = new HashMap<>();
 
     public abstract KnnView<TimestampedGFRange> getNewKnnSet();
 
     public KnnView<TimestampedGFRange> getKnnSet(String name) {
-        StorageNamespace ns = getStorageNamespace().namespace(name);
-        if (ns.contains("knn"))
-            return (KnnView) ns.get("knn");
+        StorageSlot<KnnView<TimestampedGFRange>> slot = knnSlots.get(name);
+        if(slot == null)
+            knnSlots.put(name, slot = getStorageNamespace().namespace(name).slot("knn"));
 
-        KnnView<TimestampedGFRange> knn = getNewKnnSet();
-        ns.put("knn", knn);
+        KnnView<TimestampedGFRange> knn = slot.get();
+        if (knn != null)
+            return knn;
+
+        knn = getNewKnnSet();
+        slot.put(knn);
         return knn;
     }
 
@@ -68,10 +82,10 @@ public abstract class KnnGuessFactorTargeting extends StoreComponent implements
 
     @Override
     public GeneratedAngle[] getFiringAngles(EnemyLog enemyLog, TargetingLog f, IMea mea) {
-        Benchmark.getInstance().start("KnnGuessFactorTargeting.getFiringAngles()");
+        Benchmark.getInstance().start(FIRING_ANGLES_PROBE);
         KnnView<TimestampedGFRange> view = getKnnSet(enemyLog.getName());
 
-        List<Knn.Entry<TimestampedGFRange>> found = view.query(f);
+        view.query(f, lastFound);
 
 //        double bandwidth = Physics.hitAngle(f.distance) / 2 /
 //                Math.min(f.preciseMea.minAbsolute(), f.preciseMea.maxAbsolute());
@@ -95,8 +109,12 @@ public abstract class KnnGuessFactorTargeting extends StoreComponent implements
 //            }
 //        }
 
-        double bestGf = maxOverlapCenter(found, mea);
-        lastFound = found;
+        if (sweepAxis.length < 2 * lastFound.size()) {
+            sweepAxis = new double[4 * lastFound.size()];
+            sweepDelta = new double[4 * lastFound.size()];
+        }
+
+        double bestGf = maxOverlapCenter(lastFound, sweepAxis, sweepDelta);
 
         Benchmark.getInstance().stop();
         return new GeneratedAngle[]{new GeneratedAngle(1.0, mea.getAngle(bestGf), f.distance)};
@@ -184,6 +202,86 @@ public abstract class KnnGuessFactorTargeting extends StoreComponent implements
         return bestGf;
     }
 
+    /**
+     * Same as maxOverlapCenter(list, mea), but sweeps over a query
+     * buffer using primitive scratch arrays instead of event objects.
+     * Starting events carry +weight and ending events -weight, so that
+     * ends are processed before starts at the same axis.
+     *
+     * @param buffer the weighted matches
+     * @param axis   scratch array with room for 2 * buffer.size() events
+     * @param delta  scratch array with room for 2 * buffer.size() events
+     * @return the center of the region with the maximum overlap
+     */
+    public static double maxOverlapCenter(Knn.Buffer<TimestampedGFRange> buffer,
+                                          @Modified double[] axis, @Modified double[] delta) {
+        int n = 2 * buffer.size();
+        for(int i = 0; i < buffer.size(); i++) {
+            TimestampedGFRange range = buffer.getPayload(i);
+            axis[2 * i] = range.min;
+            delta[2 * i] = buffer.weight[i];
+            axis[2 * i + 1] = range.max;
+            delta[2 * i + 1] = -buffer.weight[i];
+        }
+
+        sortEvents(axis, delta, n);
+
+        double bestGf = 0;
+        double bestAcc = 0;
+        double acc = 0;
+
+        for(int i = 0; i < n; i++) {
+            acc += delta[i];
+            if(delta[i] > 0 && acc > bestAcc) {
+                bestAcc = acc;
+                bestGf = i+1 < n ? (axis[i+1] + axis[i]) / 2 : axis[i];
+            }
+        }
+
+        return bestGf;
+    }
+
+    // in-place heapsort by (axis, delta)
+    private static void sortEvents(double[] axis, double[] delta, int n) {
+        for(int i = n / 2 - 1; i >= 0; i--)
+            siftEvent(axis, delta, i, n);
+
+        for(int end = n - 1; end > 0; end--) {
+            swapEvents(axis, delta, 0, end);
+            siftEvent(axis, delta, 0, end);
+        }
+    }
+
+    private static void siftEvent(double[] axis, double[] delta, int u, int n) {
+        while(2 * u + 1 < n) {
+            int child = 2 * u + 1;
+            if(child + 1 < n && eventBefore(axis, delta, child, child + 1))
+                child++;
+
+            if(!eventBefore(axis, delta, u, child))
+                return;
+
+            swapEvents(axis, delta, u, child);
+            u = child;
+        }
+    }
+
+    private static boolean eventBefore(double[] axis, double[] delta, int i, int j) {
+        if(axis[i] == axis[j])
+            return delta[i] < delta[j];
+        return axis[i] < axis[j];
+    }
+
+    private static void swapEvents(double[] axis, double[] delta, int i, int j) {
+        double tmp = axis[i];
+        axis[i] = axis[j];
+        axis[j] = tmp;
+
+        tmp = delta[i];
+        delta[i] = delta[j];
+        delta[j] = tmp;
+    }
+
     private static class SweepEvent implements Comparable<SweepEvent> {
         public final EventType type;
         public final double weight;
@@ -24,7 +24,7 @@
 package rsalesc.mega.gunning.guns;
 
 import robocode.Rules;
-import rsalesc.baf2.core.StorageNamespace;
+import rsalesc.baf2.core.StorageSlot;
 import rsalesc.baf2.core.StoreComponent;
 import rsalesc.baf2.core.utils.Physics;
 import rsalesc.baf2.core.utils.R;
@@ -38,6 +38,7 @@ import rsalesc.structures.KnnProvider;
 import rsalesc.structures.KnnView;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
@@ -45,15 +46,24 @@ import java.util.List;
  * Created by Roberto Sales on 19/09/17.
  */
 public abstract class KnnPlayer extends StoreComponent implements Player, KnnProvider<EnemyMovie> {
+    // slots resolved once per enemy, so getKnnSet stays off the namespace maps
+    private final HashMap<String, StorageSlot<KnnView<EnemyMovie>>> knnSlots = new HashMap<>();
+
     public abstract KnnView<EnemyMovie> getNewKnnSet();
     public abstract Knn.DistanceWeighter<EnemyMovie> getLazyWeighter();
 
     public KnnView<EnemyMovie> getKnnSet(String name) {
-        StorageNamespace ns = getStorageNamespace().namespace("knn");
-        if(!ns.contains(name))
-            ns.put(name, getNewKnnSet());
+        StorageSlot<KnnView<EnemyMovie>> slot = knnSlots.get(name);
+        if(slot == null)
+            knnSlots.put(name, slot = getStorageNamespace().namespace("knn").slot(name));
+
+        KnnView<EnemyMovie> knn = slot.get();
+        if(knn == null) {
+            knn = getNewKnnSet();
+            slot.put(knn);
+        }
 
-        return (KnnView) ns.get(name);
+        return knn;
     }
 
     public void log(TargetingLog f, EnemyMovie movie) {
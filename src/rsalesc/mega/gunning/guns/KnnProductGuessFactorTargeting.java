@@ -34,6 +34,7 @@ import rsalesc.mega.utils.TargetingLog;
 import rsalesc.mega.utils.TimestampedGFRange;
 import rsalesc.mega.utils.stats.GaussianKernelDensity;
 import rsalesc.mega.utils.stats.GuessFactorStats;
+import rsalesc.mega.utils.stats.KernelDensity;
 import rsalesc.mega.utils.stats.PowerKernelDensity;
 import rsalesc.structures.Knn;
 import rsalesc.structures.KnnProvider;
@@ -49,6 +50,9 @@ import java.util.List;
  * TC2: had hit-angle bandwidth and gauss distance weighter, besides ratio 0.33
  */
 public abstract class KnnProductGuessFactorTargeting extends StoreComponent implements GFTargeting, KnnProvider<TimestampedGFRange> {
+    private static final KernelDensity GAUSS_KERNEL = new GaussianKernelDensity();
+    private static final KernelDensity POWER_KERNEL = new PowerKernelDensity(0.4);
+
     public List<Knn.Entry<TimestampedGFRange>> lastFound;
 
     public abstract KnnView<TimestampedGFRange> getNewKnnSet();
@@ -93,8 +97,8 @@ public abstract class KnnProductGuessFactorTargeting extends StoreComponent impl
             Math.min(f.preciseMea.minAbsolute(), f.preciseMea.maxAbsolute());
 
 
-        GuessFactorStats stats = new GuessFactorStats(new GaussianKernelDensity());
-        GuessFactorStats stats2 = new GuessFactorStats(new PowerKernelDensity(0.4));
+        GuessFactorStats stats = new GuessFactorStats(GAUSS_KERNEL);
+        GuessFactorStats stats2 = new GuessFactorStats(POWER_KERNEL);
 
         for(Knn.Entry<TimestampedGFRange> entry : found) {
             stats.logGuessFactor(entry.payload.mean, entry.weight, bandwidth);
@@ -25,6 +25,7 @@ package rsalesc.mega.gunning.guns;
 
 import rsalesc.baf2.core.listeners.FireEvent;
 import rsalesc.baf2.core.listeners.FireListener;
+import rsalesc.baf2.core.utils.AngularDensity;
 import rsalesc.baf2.core.utils.Physics;
 import rsalesc.baf2.core.utils.R;
 import rsalesc.baf2.core.utils.geometry.Point;
@@ -90,26 +91,22 @@ public abstract class PlayItForwardGun extends AutomaticGun implements MovieList
         if(angles.length == 0)
             throw new IllegalStateException();
 
-        double bestDensity = Double.NEGATIVE_INFINITY;
-        GeneratedAngle bestAngle = null;
+        double[] shootAngles = new double[angles.length];
+        double[] weights = new double[angles.length];
+        double[] bandwidths = new double[angles.length];
 
-        for(GeneratedAngle shootAngle : angles) {
-            double density = 0;
-            for(GeneratedAngle angle : angles) {
-                double diff = R.normalRelativeAngle(angle.angle - shootAngle.angle);
-                double x = diff / (36 / angle.distance);
-                density += angle.weight * R.gaussKernel(x);
-            }
-
-            if(density > bestDensity) {
-                bestDensity = density;
-                bestAngle = shootAngle;
-            }
+        for(int i = 0; i < angles.length; i++) {
+            shootAngles[i] = angles[i].angle;
+            weights[i] = angles[i].weight;
+            bandwidths[i] = 36 / angles[i].distance;
         }
 
-        if(bestAngle == null)
+        int best = AngularDensity.argmax(shootAngles, weights, bandwidths, AngularDensity.GAUSS);
+        if(best == -1)
             return 0;
 
+        GeneratedAngle bestAngle = angles[best];
+
         lastPicked = bestAngle;
 
         return bestAngle.angle;
@@ -97,6 +97,7 @@ public class Tuning {
                 GeneticAdaptiveTargeting.class, new BaseAdaptiveStrategy(), THREADS);
 
         trainer.setCache(geneticCache);
+        trainer.setRacing(2.0, 8);
         trainer.log();
 
         return trainer.train(40, null);
@@ -110,6 +111,7 @@ public class Tuning {
                 GeneticRandomTargeting.class, new BaseRandomStrategy(), THREADS);
 
         trainer.setCache(geneticCache);
+        trainer.setRacing(2.0, 8);
         trainer.log();
 
         return trainer.train(20, null);
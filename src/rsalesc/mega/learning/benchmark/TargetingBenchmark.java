@@ -55,6 +55,7 @@ public class TargetingBenchmark {
         System.out.println("Performance: " + R.formattedPercentage(fitnessFn.getFitness(chromosome)));
         System.out.println("Took " + R.formattedDouble((double) Timer.getInMilliseconds(measure.stop()) / 1000) + " seconds.");
 
+        fitnessFn.shutdown();
         runner.getEngineProvider().close();
         System.exit(0);
     }
@@ -23,6 +23,7 @@
 
 package rsalesc.mega.learning.genetic;
 
+import rsalesc.baf2.core.GlobalStorage;
 import rsalesc.baf2.core.StorageNamespace;
 import rsalesc.mega.gunning.guns.KnnGuessFactorTargeting;
 import rsalesc.mega.utils.Strategy;
@@ -34,6 +35,9 @@ public abstract class GeneticGunTargeting extends KnnGuessFactorTargeting {
     private final int threadNumber;
     private final Strategy geneticStrategy;
 
+    // each instance replays a single battle, so it keeps its trees apart
+    private final GlobalStorage storage = GlobalStorage.isolated();
+
     public GeneticGunTargeting(int threadNum, Strategy strategy) {
         this.threadNumber = threadNum;
         this.geneticStrategy = strategy;
@@ -43,6 +47,11 @@ public abstract class GeneticGunTargeting extends KnnGuessFactorTargeting {
         return geneticStrategy;
     }
 
+    @Override
+    public GlobalStorage getGlobalStorage() {
+        return storage;
+    }
+
     @Override
     public StorageNamespace getStorageNamespace() {
         return getGlobalStorage().namespace("genetic-tuning-gun-" + threadNumber);
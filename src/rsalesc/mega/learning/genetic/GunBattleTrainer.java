@@ -52,6 +52,8 @@ public class GunBattleTrainer {
     private final int threads;
     private File cache = null;
     private boolean logs = false;
+    private double racingConfidence = 0;
+    private int racingMinRecords = 0;
     private final GunChromosomeLayoutProvider layoutProvider;
 
     public GunBattleTrainer(int popSize, DuelRecordSuperPack superPack, Class<? extends GeneticGunTargeting> targetingClazz,
@@ -76,11 +78,37 @@ public class GunBattleTrainer {
         this.cache = cache;
     }
 
+    /**
+     * Stop replaying chromosomes that are clearly worse than the best one.
+     * See GunFitnessFunction.setRacing.
+     */
+    public void setRacing(double confidence, int minRecords) {
+        this.racingConfidence = confidence;
+        this.racingMinRecords = minRecords;
+    }
+
+    private GunFitnessFunction createFitnessFunction() throws NoSuchMethodException {
+        GunFitnessFunction fitnessFn = new GunFitnessFunction(superPack, layoutProvider, targetingClazz, threads);
+        if(racingMinRecords > 0)
+            fitnessFn.setRacing(racingConfidence, racingMinRecords);
+
+        return fitnessFn;
+    }
+
     public Strategy train(int gens, EvolutionStrategy<Double> evolution) throws IOException, NoSuchMethodException {
         if(cache != null && cache.exists() && !cache.isFile())
             throw new IllegalStateException("cache file exists but it's actually a directory");
 
-        GunFitnessFunction fitnessFn = new GunFitnessFunction(superPack, layoutProvider, targetingClazz, threads);
+        GunFitnessFunction fitnessFn = createFitnessFunction();
+
+        try {
+            return train(gens, evolution, fitnessFn);
+        } finally {
+            fitnessFn.shutdown();
+        }
+    }
+
+    private Strategy train(int gens, EvolutionStrategy<Double> evolution, GunFitnessFunction fitnessFn) throws IOException {
         evolution.setFitnessFunction(fitnessFn);
 
 //        MutateAndSurviveStrategy<Double> evolution = new MutateAndSurviveStrategy<>(
@@ -215,6 +243,61 @@ public class GunBattleTrainer {
         return layoutProvider.extractStrategy(fittest.getChromosome());
     }
 
+    /**
+     * Same as train, but splits the population into islands evolved by an IslandEvolution,
+     * which keeps checkpointing to the same cache file.
+     */
+    public Strategy trainIslands(int gens, EvolutionStrategy<Double> evolution, int islands,
+                                 int migrationInterval, int migrants) throws IOException, NoSuchMethodException {
+        if(cache != null && cache.exists() && !cache.isFile())
+            throw new IllegalStateException("cache file exists but it's actually a directory");
+
+        GunFitnessFunction fitnessFn = createFitnessFunction();
+
+        try {
+            evolution.setFitnessFunction(fitnessFn);
+
+            Generation<Double> cachedGeneration = loadGeneration(cache, layoutProvider.getLayout());
+
+            if(cachedGeneration != null) {
+                fitnessFn.cache(cachedGeneration.getPerformance());
+
+                if(cachedGeneration.getIndex() >= gens) {
+                    ChromosomePerformance<Double> fittest = GeneticUtils.getFittest(cachedGeneration.getPerformance());
+
+                    System.out.println("Last generation performance (after " + cachedGeneration.getIndex() + " iterations): "
+                            + R.formattedPercentage(fittest.getFitness())
+                            + " (cached)");
+
+                    return layoutProvider.extractStrategy(fittest.getChromosome());
+                }
+            }
+
+            IslandEvolution<Double> model = new IslandEvolution<>(evolution, islands,
+                    Math.max(popSize / islands, 1), migrationInterval, migrants, threads);
+
+            model.setCheckpoint(new IslandEvolution.Checkpoint<Double>() {
+                @Override
+                public void save(Generation<Double> generation) throws IOException {
+                    saveGeneration(cache, generation);
+                }
+            });
+
+            if(logs)
+                model.log();
+
+            Generation<Double> last = model.evolve(gens, layoutProvider.getLayout(), cachedGeneration);
+            ChromosomePerformance<Double> fittest = GeneticUtils.getFittest(last.getPerformance());
+
+            System.out.println("Last generation (after " + gens + " iterations): "
+                    + R.formattedPercentage(fittest.getFitness()));
+
+            return layoutProvider.extractStrategy(fittest.getChromosome());
+        } finally {
+            fitnessFn.shutdown();
+        }
+    }
+
     public static void saveGeneration(File cache, Generation generation) throws IOException {
         if(cache != null) {
             if(!cache.getParentFile().isDirectory())
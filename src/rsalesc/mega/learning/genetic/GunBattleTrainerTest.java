@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.learning.genetic;
+
+import org.junit.jupiter.api.Test;
+import rsalesc.baf2.core.utils.BattleTime;
+import rsalesc.baf2.core.utils.Pair;
+import rsalesc.baf2.core.utils.geometry.AngularRange;
+import rsalesc.baf2.tracking.EnemyLog;
+import rsalesc.baf2.waves.BreakType;
+import rsalesc.genetic.ChromosomePerformance;
+import rsalesc.genetic.Generation;
+import rsalesc.genetic.crossover.TwoPointCrossoverStrategy;
+import rsalesc.genetic.evolution.MutateAndSurviveStrategy;
+import rsalesc.mega.gunning.guns.GeneratedAngle;
+import rsalesc.mega.learning.recording.DuelRecord;
+import rsalesc.mega.learning.recording.DuelRecordSuperPack;
+import rsalesc.mega.learning.recording.RecordPack;
+import rsalesc.mega.utils.IMea;
+import rsalesc.mega.utils.Strategy;
+import rsalesc.mega.utils.TargetingLog;
+import rsalesc.mega.utils.TimestampedGFRange;
+import rsalesc.structures.KnnView;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class GunBattleTrainerTest {
+    @Test
+    public void trainOverStubPack() throws Exception {
+        assertTrained(false);
+    }
+
+    @Test
+    public void trainOverStubPackRacing() throws Exception {
+        assertTrained(true);
+    }
+
+    private void assertTrained(boolean racing) throws Exception {
+        DuelRecordSuperPack pack = new DuelRecordSuperPack(new StubPack(stubRecords(6)));
+        GunBattleTrainer trainer = new GunBattleTrainer(20, pack, StubTargeting.class, new StubStrategy(), 2);
+        if(racing)
+            trainer.setRacing(2, 2);
+
+        Strategy strategy = trainer.train(3, new MutateAndSurviveStrategy<Double>(
+                null, 0.02, 0.03, 0.75, new TwoPointCrossoverStrategy()));
+
+        assertEquals(1, strategy.getWeights().length);
+        assertTrue(strategy.getWeights()[0] >= 0 && strategy.getWeights()[0] <= 4);
+    }
+
+    @Test
+    public void trainIslandsOverStubPack() throws Exception {
+        DuelRecordSuperPack pack = new DuelRecordSuperPack(new StubPack(stubRecords(6)));
+        GunBattleTrainer trainer = new GunBattleTrainer(40, pack, StubTargeting.class, new StubStrategy(), 4);
+
+        File cache = File.createTempFile("islands", ".gen");
+        assertTrue(cache.delete());
+        trainer.setCache(cache);
+
+        try {
+            Strategy strategy = trainer.trainIslands(3, new MutateAndSurviveStrategy<Double>(
+                    null, 0.02, 0.03, 0.75, new TwoPointCrossoverStrategy()), 2, 1, 2);
+
+            assertEquals(1, strategy.getWeights().length);
+
+            // the checkpoint agrees with a sequential replay of every member
+            Generation<Double> last = GunBattleTrainer.loadGeneration(cache, trainer.getLayoutProvider().getLayout());
+            assertEquals(40, last.getPerformance().size());
+
+            GunFitnessFunction sequential = new GunFitnessFunction(pack, trainer.getLayoutProvider(),
+                    StubTargeting.class, 1);
+            try {
+                for(ChromosomePerformance<Double> perf : last.getPerformance())
+                    assertEquals(sequential.getFitness(perf.getChromosome()), perf.getFitness(), 1e-9);
+            } finally {
+                sequential.shutdown();
+            }
+        } finally {
+            cache.delete();
+        }
+    }
+
+    /**
+     * Records whose every shot hits when fired in [1.5, 2.5]. The rounds
+     * of each record is its index, so tests can tell them apart.
+     */
+    static List<DuelRecord> stubRecords(int n) {
+        ArrayList<DuelRecord> res = new ArrayList<>();
+        for(int i = 0; i < n; i++) {
+            ArrayList<Pair<TargetingLog, BreakType>> logs = new ArrayList<>();
+            for(int j = 0; j < 5; j++) {
+                TargetingLog fired = new TargetingLog();
+                fired.battleTime = new BattleTime((long) j, 0);
+                logs.add(new Pair<>(fired, BreakType.FIRED));
+
+                TargetingLog broken = new TargetingLog();
+                broken.battleTime = new BattleTime((long) j, 0);
+                broken.preciseIntersection = new AngularRange(2.0, -0.5, 0.5);
+                logs.add(new Pair<>(broken, BreakType.BULLET_BREAK));
+            }
+
+            res.add(new DuelRecord("stub", logs, i));
+        }
+
+        return res;
+    }
+
+    static class StubPack implements RecordPack {
+        private final List<DuelRecord> records;
+
+        StubPack(List<DuelRecord> records) {
+            this.records = records;
+        }
+
+        @Override
+        public void setSeed(Long seed) {
+        }
+
+        @Override
+        public int count() {
+            return records.size();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public Iterator<DuelRecord> iterator() {
+            return records.iterator();
+        }
+    }
+
+    static class StubStrategy extends GeneticStrategy {
+        @Override
+        public double[] getQuery(TargetingLog f) {
+            return new double[]{0};
+        }
+
+        @Override
+        public double[] getWeights() {
+            return new double[]{1};
+        }
+    }
+
+    /**
+     * Always fires at its only weight, so its fitness only depends on the chromosome.
+     */
+    public static class StubTargeting extends GeneticGunTargeting {
+        public StubTargeting(int threadNum, Strategy strategy) {
+            super(threadNum, strategy);
+        }
+
+        @Override
+        public KnnView<TimestampedGFRange> getNewKnnSet() {
+            return null;
+        }
+
+        @Override
+        public GeneratedAngle[] getFiringAngles(EnemyLog enemyLog, TargetingLog f, IMea mea) {
+            return new GeneratedAngle[]{new GeneratedAngle(1, getGeneticStrategy().getWeights()[0], 0)};
+        }
+
+        @Override
+        public void log(EnemyLog enemyLog, TargetingLog f, IMea mea, BreakType type) {
+        }
+    }
+}
@@ -23,15 +23,16 @@
 
 package rsalesc.mega.learning.genetic;
 
-import rsalesc.baf2.core.GlobalStorage;
 import rsalesc.baf2.core.utils.BattleTime;
 import rsalesc.baf2.core.utils.Pair;
+import rsalesc.baf2.core.utils.Timer;
 import rsalesc.baf2.core.utils.geometry.AngularRange;
 import rsalesc.baf2.tracking.EnemyLog;
 import rsalesc.baf2.waves.BreakType;
 import rsalesc.genetic.Chromosome;
 import rsalesc.genetic.ChromosomePerformance;
 import rsalesc.genetic.FitnessFunction;
+import rsalesc.genetic.Population;
 import rsalesc.mega.gunning.guns.GeneratedAngle;
 import rsalesc.mega.learning.recording.DuelRecord;
 import rsalesc.mega.learning.recording.DuelRecordSuperPack;
@@ -41,13 +42,29 @@ import rsalesc.mega.utils.TargetingLog;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.*;
 
 /**
  * Created by Roberto Sales on 01/10/17.
+ *
+ * Every (chromosome, record) pair is replayed as an independent task
+ * in a pool which lives as long as this function, until shutdown() is
+ * called. Each replay builds its own targeting, which keeps its trees
+ * in an isolated storage, so nothing needs to be cleared between them.
+ * getFitness may be called from several threads at once, as the island
+ * model does, and their replays then share the same pool.
+ *
+ * With racing on, records are fed interleaved across packages and every
+ * chromosome keeps a running mean with a confidence interval. Once its
+ * upper bound falls below the best known fitness (or the best lower bound
+ * in the same race), it stops being replayed and its partial mean is
+ * reported as its fitness.
  */
 public class GunFitnessFunction extends FitnessFunction<Double> {
     private final GunChromosomeLayoutProvider provider;
@@ -55,7 +72,13 @@ public class GunFitnessFunction extends FitnessFunction<Double> {
     private final Constructor<? extends GeneticGunTargeting> targetingConstructor;
     private final int threads;
 
-    private HashMap<Chromosome, Double> cache = new HashMap<>();
+    private ConcurrentHashMap<Chromosome, Double> cache = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<Chromosome, Integer> partial = new ConcurrentHashMap<>();
+    private ExecutorService executorService;
+
+    private boolean racing = false;
+    private double confidence;
+    private int minRecords;
 
     public GunFitnessFunction(DuelRecordSuperPack pack, GunChromosomeLayoutProvider provider,
                               Class<? extends GeneticGunTargeting> targetingClazz, int threads) throws NoSuchMethodException {
@@ -75,69 +98,264 @@ public class GunFitnessFunction extends FitnessFunction<Double> {
         return cache.containsKey(chromosome);
     }
 
+    /**
+     * Turns racing on. confidence is the number of standard errors of the
+     * interval (2 is about 95%) and no chromosome is dropped before being
+     * replayed on minRecords records.
+     */
+    public void setRacing(double confidence, int minRecords) {
+        this.racing = true;
+        this.confidence = confidence;
+        this.minRecords = Math.max(minRecords, 2);
+    }
+
+    /**
+     * Whether the fitness of this chromosome is the mean of only part of the
+     * records, because it was raced out or some of its replays failed.
+     */
+    public boolean isPartial(Chromosome chromosome) {
+        return partial.containsKey(chromosome);
+    }
+
+    public int getReplayedRecords(Chromosome chromosome) {
+        Integer res = partial.get(chromosome);
+        return res != null ? res : -1;
+    }
+
+    private double getBestComplete() {
+        double res = Double.NEGATIVE_INFINITY;
+        for(Map.Entry<Chromosome, Double> entry : cache.entrySet()) {
+            if(!partial.containsKey(entry.getKey()) && !Double.isNaN(entry.getValue()))
+                res = Math.max(res, entry.getValue());
+        }
+
+        return res;
+    }
+
+    private synchronized ExecutorService getExecutorService() {
+        if(executorService == null) {
+            executorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "gun-fitness");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return executorService;
+    }
+
+    /**
+     * Stop the evaluation pool. It is recreated if this
+     * function is used again afterwards.
+     */
+    public synchronized void shutdown() {
+        if(executorService != null) {
+            executorService.shutdown();
+            executorService = null;
+        }
+    }
+
     @Override
     public Double getFitness(Chromosome chromosome) {
-        if(!(chromosome.getLayout().equals(provider.getLayout())))
-            throw new IllegalStateException();
+        evaluate(Collections.singletonList(chromosome));
+        return cache.get(chromosome);
+    }
+
+    @Override
+    public ArrayList<ChromosomePerformance<Double>> getFitness(Population population) {
+        evaluate(population.getChromosomes());
+
+        ArrayList<ChromosomePerformance<Double>> res = new ArrayList<>();
+        for(Chromosome chromosome : population.getChromosomes()) {
+            res.add(new ChromosomePerformance<>(chromosome, cache.get(chromosome)));
+        }
+
+        return res;
+    }
 
-        if(cache.containsKey(chromosome)) {
-            return cache.get(chromosome);
+    private void evaluate(List<Chromosome> chromosomes) {
+        LinkedHashMap<Chromosome, Strategy> pending = new LinkedHashMap<>();
+        for(Chromosome chromosome : chromosomes) {
+            if(!(chromosome.getLayout().equals(provider.getLayout())))
+                throw new IllegalStateException();
+
+            if(!cache.containsKey(chromosome) && !pending.containsKey(chromosome))
+                pending.put(chromosome, provider.extractStrategy(chromosome));
         }
 
-        Strategy chromosomeStrategy = provider.extractStrategy(chromosome);
+        if(pending.isEmpty())
+            return;
 
-        double totalValue = 0;
-        int totalPlayed = 0;
+        Strategy[] strategies = pending.values().toArray(new Strategy[0]);
+        double[] totalValue = new double[strategies.length];
+        int[] totalPlayed = new int[strategies.length];
 
-        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        boolean[] failed = new boolean[strategies.length];
+        boolean[] active = new boolean[strategies.length];
+        Arrays.fill(active, true);
+        int activeCount = strategies.length;
 
-        BatchIterator<DuelRecord> batchIterator = pack.batchIterator();
+        Race[] races = new Race[strategies.length];
+        for(int i = 0; i < races.length; i++)
+            races[i] = new Race();
 
-        while(batchIterator.hasNext()) {
-            Iterable<DuelRecord> records = batchIterator.consume(threads);
+        double bestComplete = racing ? getBestComplete() : Double.NEGATIVE_INFINITY;
 
-            // Empty global storage
-            GlobalStorage.getInstance().clear();
-            System.gc();
+        ExecutorService executorService = getExecutorService();
+        BatchIterator<DuelRecord> batchIterator = racing
+                ? new BatchIterator<>(pack.interleavedIterator(ThreadLocalRandom.current().nextLong()))
+                : pack.batchIterator();
+
+        Timer timer = new Timer();
+        timer.start();
+        int replayed = 0;
+        String lastBuilt = "";
+
+        while(batchIterator.hasNext() && activeCount > 0) {
+            Iterable<DuelRecord> records = batchIterator.consume(threads);
 
             ArrayList<Callable<Double>> callables = new ArrayList<>();
+            ArrayList<Integer> owners = new ArrayList<>();
 
-            int pointer = 0;
             for(DuelRecord record : records) {
-                final int finalPointer = pointer;
-                callables.add(new Callable<Double>() {
-                    @Override
-                    public Double call() throws Exception {
-                        GeneticGunTargeting targeting = targetingConstructor.newInstance(finalPointer, chromosomeStrategy);
-                        return evaluateBattle(targeting, record.getLogs());
-                    }
-                });
+                replayed++;
 
-                pointer++;
+                for(int i = 0; i < strategies.length; i++) {
+                    if(!active[i])
+                        continue;
+
+                    final Strategy strategy = strategies[i];
+                    callables.add(new Callable<Double>() {
+                        @Override
+                        public Double call() throws Exception {
+                            return replay(strategy, record);
+                        }
+                    });
+
+                    owners.add(i);
+                }
             }
 
+            List<Future<Double>> outcomes;
             try {
-                List<Future<Double>> outcomes = executorService.invokeAll(callables);
+                outcomes = executorService.invokeAll(callables);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("fitness evaluation was interrupted", e);
+            }
 
-                for(Future<Double> outcome : outcomes) {
-                    totalValue += outcome.get();
-                    totalPlayed++;
+            for(int i = 0; i < outcomes.size(); i++) {
+                int owner = owners.get(i);
+                double value;
+
+                try {
+                    value = outcomes.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("fitness evaluation was interrupted", e);
+                } catch (ExecutionException e) {
+                    // only this replay is lost, the chromosome is then marked as partial
+                    if(!failed[owner])
+                        e.getCause().printStackTrace();
+
+                    failed[owner] = true;
+                    continue;
                 }
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+
+                if(Double.isNaN(value))
+                    continue;
+
+                totalValue[owner] += value;
+                totalPlayed[owner]++;
+                races[owner].push(value);
+            }
+
+            if(racing)
+                activeCount -= race(races, active, bestComplete);
+
+            if(isLogging()) {
+                System.out.print("\r" + (lastBuilt = "Evaluating " + activeCount + " of " + strategies.length
+                        + " chromosome(s)... " + replayed + " records replayed (spent "
+                        + Timer.getFormattedMinutes(timer.spent()) + ")"));
             }
         }
 
-        double res;
+        if(isLogging()) System.out.print("\r"
+                + String.join("", Collections.nCopies(lastBuilt.length(), " "))
+                + "\r");
 
-        if(totalPlayed == 0)
-            res = 0.0;
-        else
-            res = totalValue / totalPlayed;
+        int i = 0;
+        for(Chromosome chromosome : pending.keySet()) {
+            if(!active[i] || failed[i])
+                partial.put(chromosome, totalPlayed[i]);
 
-        cache.put(chromosome, res);
+            cache.put(chromosome, totalPlayed[i] == 0 ? 0.0 : totalValue[i] / totalPlayed[i]);
+            i++;
+        }
+    }
 
-        return res;
+    /**
+     * Fitness of a single strategy on a single record.
+     */
+    protected double replay(Strategy strategy, DuelRecord record) throws Exception {
+        GeneticGunTargeting targeting = targetingConstructor.newInstance(0, strategy);
+        return evaluateBattle(targeting, record.getLogs());
+    }
+
+    /**
+     * Drops every active chromosome whose upper bound is below the best known fitness
+     * or the best lower bound of this race. Returns how many were dropped.
+     */
+    private int race(Race[] races, boolean[] active, double bestComplete) {
+        double threshold = bestComplete;
+        for(Race race : races) {
+            if(race.count >= minRecords)
+                threshold = Math.max(threshold, race.getLowerBound(confidence));
+        }
+
+        int dropped = 0;
+        for(int i = 0; i < races.length; i++) {
+            if(active[i] && races[i].count >= minRecords && races[i].getUpperBound(confidence) < threshold) {
+                active[i] = false;
+                dropped++;
+            }
+        }
+
+        return dropped;
+    }
+
+    /**
+     * Running mean and variance of the per-record hit rates of one chromosome.
+     */
+    private static class Race {
+        private int count = 0;
+        private double mean = 0;
+        private double m2 = 0;
+
+        private void push(double x) {
+            if(Double.isNaN(x))
+                return;
+
+            count++;
+            double delta = x - mean;
+            mean += delta / count;
+            m2 += delta * (x - mean);
+        }
+
+        private double getError() {
+            return count < 2 ? Double.POSITIVE_INFINITY : Math.sqrt(m2 / (count - 1) / count);
+        }
+
+        private double getUpperBound(double confidence) {
+            return mean + confidence * getError();
+        }
+
+        private double getLowerBound(double confidence) {
+            return mean - confidence * getError();
+        }
     }
 
     public static double evaluateBattle(GeneticGunTargeting targeting, ArrayList<Pair<TargetingLog, BreakType>> events) {
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.learning.genetic;
+
+import org.junit.jupiter.api.Test;
+import rsalesc.genetic.Chromosome;
+import rsalesc.genetic.ChromosomePerformance;
+import rsalesc.genetic.Generation;
+import rsalesc.genetic.IslandEvolution;
+import rsalesc.genetic.Population;
+import rsalesc.genetic.crossover.TwoPointCrossoverStrategy;
+import rsalesc.genetic.evolution.MutateAndSurviveStrategy;
+import rsalesc.mega.learning.recording.DuelRecord;
+import rsalesc.mega.learning.recording.DuelRecordSuperPack;
+import rsalesc.mega.utils.Strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class GunFitnessFunctionTest {
+    @Test
+    public void racing() throws Exception {
+        GunChromosomeLayoutProvider provider = new GunChromosomeLayoutProvider(new GunBattleTrainerTest.StubStrategy(), 5);
+        ScoredFitnessFunction fitnessFn = new ScoredFitnessFunction(provider);
+        fitnessFn.setRacing(2, 4);
+
+        Chromosome best = chromosome(provider, 4.0);
+        Chromosome close = chromosome(provider, 3.6);
+        Chromosome bad = chromosome(provider, 0.4);
+        Chromosome worst = chromosome(provider, 0.0);
+
+        Population population = new Population();
+        population.add(best, close, bad, worst);
+
+        try {
+            fitnessFn.getFitness(population);
+        } finally {
+            fitnessFn.shutdown();
+        }
+
+        // the clearly worse ones go as soon as they are allowed to
+        assertTrue(fitnessFn.isPartial(bad));
+        assertTrue(fitnessFn.isPartial(worst));
+        assertEquals(4, fitnessFn.getReplayedRecords(bad));
+        assertEquals(4, fitnessFn.getReplayedRecords(worst));
+
+        // the close one needs more records to be told apart, but not all of them
+        assertTrue(fitnessFn.isPartial(close));
+        assertTrue(fitnessFn.getReplayedRecords(close) > 4);
+        assertTrue(fitnessFn.getReplayedRecords(close) < 40);
+
+        assertFalse(fitnessFn.isPartial(best));
+        assertEquals(1.0, fitnessFn.getFitness(best), 1e-3);
+        assertEquals(0.9, fitnessFn.getFitness(close), 1e-3);
+    }
+
+    @Test
+    public void noRacing() throws Exception {
+        GunChromosomeLayoutProvider provider = new GunChromosomeLayoutProvider(new GunBattleTrainerTest.StubStrategy(), 5);
+        ScoredFitnessFunction fitnessFn = new ScoredFitnessFunction(provider);
+
+        Chromosome best = chromosome(provider, 4.0);
+        Chromosome worst = chromosome(provider, 0.0);
+
+        Population population = new Population();
+        population.add(best, worst);
+
+        try {
+            fitnessFn.getFitness(population);
+        } finally {
+            fitnessFn.shutdown();
+        }
+
+        assertFalse(fitnessFn.isPartial(best));
+        assertFalse(fitnessFn.isPartial(worst));
+        assertEquals(0.0, fitnessFn.getFitness(worst), 1e-3);
+    }
+
+    @Test
+    public void failedReplaysOnlyCostTheirOwner() throws Exception {
+        GunChromosomeLayoutProvider provider = new GunChromosomeLayoutProvider(new GunBattleTrainerTest.StubStrategy(), 5);
+        FaultyFitnessFunction fitnessFn = new FaultyFitnessFunction(provider);
+
+        Chromosome best = chromosome(provider, 4.0);
+        Chromosome faulty = chromosome(provider, 2.0);
+        Chromosome undefined = chromosome(provider, 1.0);
+
+        Population population = new Population();
+        population.add(best, faulty, undefined);
+
+        try {
+            fitnessFn.getFitness(population);
+        } finally {
+            fitnessFn.shutdown();
+        }
+
+        assertFalse(fitnessFn.isPartial(best));
+        assertEquals(1.0, fitnessFn.getFitness(best), 1e-9);
+
+        // records 0, 5, ..., 35 failed, evenly split between both parities
+        assertTrue(fitnessFn.isPartial(faulty));
+        assertEquals(32, fitnessFn.getReplayedRecords(faulty));
+        assertEquals(0.5, fitnessFn.getFitness(faulty), 1e-9);
+
+        // records 0, 4, ..., 36 are NaN and left out of the mean
+        assertFalse(fitnessFn.isPartial(undefined));
+        assertEquals(0.25 - 0.05 / 3, fitnessFn.getFitness(undefined), 1e-9);
+    }
+
+    @Test
+    public void concurrentIslandsShareTheCache() throws Exception {
+        GunChromosomeLayoutProvider provider = new GunChromosomeLayoutProvider(new GunBattleTrainerTest.StubStrategy(), 5);
+        ScoredFitnessFunction fitnessFn = new ScoredFitnessFunction(provider);
+
+        MutateAndSurviveStrategy<Double> strategy = new MutateAndSurviveStrategy<>(
+                fitnessFn, 0.02, 0.03, 0.75, new TwoPointCrossoverStrategy());
+        IslandEvolution<Double> model = new IslandEvolution<>(strategy, 3, 20, 1, 2, 6);
+
+        Generation<Double> last;
+        try {
+            last = model.evolve(3, provider.getLayout(), null);
+        } finally {
+            fitnessFn.shutdown();
+        }
+
+        assertEquals(60, last.getPerformance().size());
+
+        // every fitness merged by the islands and every cached one is the chromosome's own
+        for(ChromosomePerformance<Double> perf : last.getPerformance()) {
+            double expected = provider.extractStrategy(perf.getChromosome()).getWeights()[0] / 4;
+
+            assertTrue(fitnessFn.isCached(perf.getChromosome()));
+            assertEquals(expected, perf.getFitness(), 1e-9);
+            assertEquals(expected, fitnessFn.getFitness(perf.getChromosome()), 1e-9);
+        }
+    }
+
+    private static Chromosome chromosome(GunChromosomeLayoutProvider provider, double weight) {
+        Chromosome chromosome = new Chromosome(provider.getLayout());
+        chromosome.setAllele(provider.getWeightGenes()[0], weight);
+        return chromosome;
+    }
+
+    /**
+     * Scores a strategy by its weight over 4, plus or minus 0.05 on odd and even
+     * records, so every chromosome has a known mean and a small variance.
+     */
+    private static class ScoredFitnessFunction extends GunFitnessFunction {
+        private ScoredFitnessFunction(GunChromosomeLayoutProvider provider) throws NoSuchMethodException {
+            super(new DuelRecordSuperPack(new GunBattleTrainerTest.StubPack(GunBattleTrainerTest.stubRecords(40))),
+                    provider, GunBattleTrainerTest.StubTargeting.class, 2);
+        }
+
+        @Override
+        protected double replay(Strategy strategy, DuelRecord record) {
+            return strategy.getWeights()[0] / 4 + (record.getRounds() % 2 == 0 ? 0.05 : -0.05);
+        }
+    }
+
+    /**
+     * Fails the replays of weight 2 on every fifth record and gives NaN for
+     * weight 1 on every fourth.
+     */
+    private static class FaultyFitnessFunction extends ScoredFitnessFunction {
+        private FaultyFitnessFunction(GunChromosomeLayoutProvider provider) throws NoSuchMethodException {
+            super(provider);
+        }
+
+        @Override
+        protected double replay(Strategy strategy, DuelRecord record) {
+            double weight = strategy.getWeights()[0];
+            if(weight == 2.0 && record.getRounds() % 5 == 0)
+                throw new IllegalStateException("stub replay failure");
+            if(weight == 1.0 && record.getRounds() % 4 == 0)
+                return Double.NaN;
+
+            return super.replay(strategy, record);
+        }
+    }
+}
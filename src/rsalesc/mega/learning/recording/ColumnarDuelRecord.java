@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.learning.recording;
+
+import rsalesc.baf2.core.utils.Pair;
+import rsalesc.baf2.waves.BreakType;
+import rsalesc.mega.learning.recording.DuelRecordColumns.*;
+import rsalesc.mega.utils.TargetingLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Created by Roberto Sales on 14/10/17.
+ *
+ * Read-only view over a columnar DuelRecord block. Nothing is decoded until
+ * it is asked for, so scanning a single column does not touch the others.
+ */
+public class ColumnarDuelRecord implements DuelRecordInfo {
+    private static final BreakType[] BREAK_TYPES = BreakType.values();
+
+    private final ByteBuffer buffer;
+    private final String enemyName;
+    private final int rounds;
+    private final int count;
+
+    private final int doubleBase;
+    private final int longBase;
+    private final int intBase;
+    private final int byteBase;
+    private final int arrayBase;
+
+    private int[] arrayStarts;
+    private int[][] arrayOffsets;
+
+    private ColumnarDuelRecord(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if(buffer.getInt(0) != DuelRecordColumns.MAGIC)
+            throw new IOException("not a columnar duel record");
+
+        int version = buffer.getInt(4);
+        if(version != DuelRecordColumns.VERSION)
+            throw new IOException("unsupported columnar duel record version " + version);
+
+        rounds = buffer.getInt(8);
+        count = buffer.getInt(12);
+
+        byte[] name = new byte[buffer.getInt(16)];
+        for(int i = 0; i < name.length; i++)
+            name[i] = buffer.get(20 + i);
+
+        enemyName = new String(name, StandardCharsets.UTF_8);
+
+        doubleBase = DuelRecordColumns.getHeaderSize(name);
+        longBase = doubleBase + 8 * count * DuelRecordColumns.DOUBLES.length;
+        intBase = longBase + 8 * count * DuelRecordColumns.LONGS.length;
+        byteBase = intBase + 4 * count * DuelRecordColumns.INTS.length;
+        arrayBase = byteBase + count * DuelRecordColumns.BYTES.length;
+    }
+
+    public static ColumnarDuelRecord wrap(ByteBuffer buffer) throws IOException {
+        return new ColumnarDuelRecord(buffer.duplicate());
+    }
+
+    public static ColumnarDuelRecord wrap(byte[] block) throws IOException {
+        return new ColumnarDuelRecord(ByteBuffer.wrap(block));
+    }
+
+    /**
+     * The whole underlying block, positioned at its start.
+     */
+    public ByteBuffer getBlock() {
+        ByteBuffer res = buffer.duplicate();
+        res.clear();
+        return res;
+    }
+
+    public String getEnemyName() {
+        return enemyName;
+    }
+
+    public int getRounds() {
+        return rounds;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getEventCount() {
+        return count;
+    }
+
+    public double get(DoubleColumn column, int i) {
+        return buffer.getDouble(doubleBase + 8 * (column.index * count + i));
+    }
+
+    public long get(LongColumn column, int i) {
+        return buffer.getLong(longBase + 8 * (column.index * count + i));
+    }
+
+    public int get(IntColumn column, int i) {
+        return buffer.getInt(intBase + 4 * (column.index * count + i));
+    }
+
+    public byte get(ByteColumn column, int i) {
+        return buffer.get(byteBase + column.index * count + i);
+    }
+
+    public double[] get(ArrayColumn column, int i) {
+        ensureArrayOffsets();
+
+        int base = arrayBase + arrayStarts[column.index];
+        int length = buffer.getInt(base + 4 * i);
+        if(length < 0)
+            return null;
+
+        int valueBase = base + 4 * count + 8 * arrayOffsets[column.index][i];
+        double[] res = new double[length];
+        for(int j = 0; j < length; j++)
+            res[j] = buffer.getDouble(valueBase + 8 * j);
+
+        return res;
+    }
+
+    /**
+     * Copies a whole column into {@code out}, which must hold at least size() values.
+     */
+    public void copy(DoubleColumn column, double[] out) {
+        int base = doubleBase + 8 * column.index * count;
+        for(int i = 0; i < count; i++)
+            out[i] = buffer.getDouble(base + 8 * i);
+    }
+
+    public boolean isAiming(int i) {
+        return get(DuelRecordColumns.AIMING, i) != 0;
+    }
+
+    public BreakType getBreakType(int i) {
+        int ordinal = get(DuelRecordColumns.BREAK_TYPE, i);
+        return ordinal == DuelRecordColumns.NO_BREAK_TYPE ? null : BREAK_TYPES[ordinal];
+    }
+
+    public int getPresence(int i) {
+        return get(DuelRecordColumns.PRESENCE, i);
+    }
+
+    public TargetingLog getLog(int i) {
+        TargetingLog f = new TargetingLog();
+
+        for(DoubleColumn column : DuelRecordColumns.DOUBLES) {
+            if(column.setter != null)
+                column.setter.accept(f, get(column, i));
+        }
+
+        for(LongColumn column : DuelRecordColumns.LONGS) {
+            if(column.setter != null)
+                column.setter.accept(f, get(column, i));
+        }
+
+        for(IntColumn column : DuelRecordColumns.INTS) {
+            if(column.setter != null)
+                column.setter.accept(f, get(column, i));
+        }
+
+        for(ArrayColumn column : DuelRecordColumns.ARRAYS)
+            column.setter.accept(f, get(column, i));
+
+        f.aiming = isAiming(i);
+        DuelRecordColumns.restoreMembers(f, this, i);
+
+        return f;
+    }
+
+    /**
+     * Materializes the whole record, for consumers that still expect TargetingLog objects.
+     */
+    public DuelRecord toDuelRecord() {
+        ArrayList<Pair<TargetingLog, BreakType>> logs = new ArrayList<>(count);
+        for(int i = 0; i < count; i++)
+            logs.add(new Pair<>(getLog(i), getBreakType(i)));
+
+        return new DuelRecord(enemyName, logs, rounds);
+    }
+
+    /**
+     * Byte offset of each array column and prefix sums (in values) of its lengths.
+     */
+    private void ensureArrayOffsets() {
+        if(arrayOffsets != null)
+            return;
+
+        int[] starts = new int[DuelRecordColumns.ARRAYS.length];
+        int[][] offsets = new int[DuelRecordColumns.ARRAYS.length][count];
+        int base = 0;
+
+        for(int c = 0; c < offsets.length; c++) {
+            int values = 0;
+            for(int i = 0; i < count; i++) {
+                offsets[c][i] = values;
+                values += Math.max(buffer.getInt(arrayBase + base + 4 * i), 0);
+            }
+
+            starts[c] = base;
+            base += 4 * count + 8 * values;
+        }
+
+        arrayStarts = starts;
+        arrayOffsets = offsets;
+    }
+}
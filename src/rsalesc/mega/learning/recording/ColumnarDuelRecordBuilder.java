@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.learning.recording;
+
+import rsalesc.baf2.waves.BreakType;
+import rsalesc.mega.utils.TargetingLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static rsalesc.mega.learning.recording.DuelRecordColumns.*;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Accumulates rows straight into growable columns and lays them out
+ * as a columnar DuelRecord block, so records can be written without
+ * ever holding TargetingLog objects.
+ */
+public class ColumnarDuelRecordBuilder {
+    private int count = 0;
+    private int arrayValues = 0;
+
+    private double[][] doubles;
+    private long[][] longs;
+    private int[][] ints;
+    private byte[][] bytes;
+    private double[][][] arrays;
+
+    // scratch for add
+    private final double[] rowDoubles = new double[DOUBLES.length];
+    private final long[] rowLongs = new long[LONGS.length];
+    private final int[] rowInts = new int[INTS.length];
+    private final byte[] rowBytes = new byte[BYTES.length];
+    private final double[][] rowArrays = new double[ARRAYS.length][];
+
+    public ColumnarDuelRecordBuilder(int capacity) {
+        capacity = Math.max(capacity, 16);
+        doubles = new double[DOUBLES.length][capacity];
+        longs = new long[LONGS.length][capacity];
+        ints = new int[INTS.length][capacity];
+        bytes = new byte[BYTES.length][capacity];
+        arrays = new double[ARRAYS.length][capacity][];
+    }
+
+    public ColumnarDuelRecordBuilder() {
+        this(256);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void clear() {
+        for(double[][] column : arrays)
+            Arrays.fill(column, 0, count, null);
+
+        count = 0;
+        arrayValues = 0;
+    }
+
+    public void add(TargetingLog f, BreakType type) {
+        extract(f, type, rowDoubles, rowLongs, rowInts, rowBytes, rowArrays);
+        addRow(rowDoubles, rowLongs, rowInts, rowBytes, rowArrays);
+    }
+
+    /**
+     * Appends a row given by its column values. Primitive values are
+     * copied, array values are kept by reference.
+     */
+    void addRow(double[] rowDoubles, long[] rowLongs, int[] rowInts, byte[] rowBytes, double[][] rowArrays) {
+        if(count == doubles[0].length)
+            grow();
+
+        for(int c = 0; c < doubles.length; c++)
+            doubles[c][count] = rowDoubles[c];
+
+        for(int c = 0; c < longs.length; c++)
+            longs[c][count] = rowLongs[c];
+
+        for(int c = 0; c < ints.length; c++)
+            ints[c][count] = rowInts[c];
+
+        for(int c = 0; c < bytes.length; c++)
+            bytes[c][count] = rowBytes[c];
+
+        for(int c = 0; c < arrays.length; c++) {
+            arrays[c][count] = rowArrays[c];
+            if(rowArrays[c] != null)
+                arrayValues += rowArrays[c].length;
+        }
+
+        count++;
+    }
+
+    private void grow() {
+        int capacity = 2 * doubles[0].length;
+
+        for(int c = 0; c < doubles.length; c++)
+            doubles[c] = Arrays.copyOf(doubles[c], capacity);
+
+        for(int c = 0; c < longs.length; c++)
+            longs[c] = Arrays.copyOf(longs[c], capacity);
+
+        for(int c = 0; c < ints.length; c++)
+            ints[c] = Arrays.copyOf(ints[c], capacity);
+
+        for(int c = 0; c < bytes.length; c++)
+            bytes[c] = Arrays.copyOf(bytes[c], capacity);
+
+        for(int c = 0; c < arrays.length; c++)
+            arrays[c] = Arrays.copyOf(arrays[c], capacity);
+    }
+
+    /**
+     * Lays the rows added so far out as a block, see DuelRecordColumns.
+     */
+    public byte[] toBlock(String enemyName, int rounds) {
+        byte[] name = enemyName.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer buffer = ByteBuffer.allocate(getHeaderSize(name) + getBodySize(count, arrayValues));
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(rounds);
+        buffer.putInt(count);
+        buffer.putInt(name.length);
+        buffer.put(name);
+
+        for(double[] column : doubles) {
+            for(int i = 0; i < count; i++)
+                buffer.putDouble(column[i]);
+        }
+
+        for(long[] column : longs) {
+            for(int i = 0; i < count; i++)
+                buffer.putLong(column[i]);
+        }
+
+        for(int[] column : ints) {
+            for(int i = 0; i < count; i++)
+                buffer.putInt(column[i]);
+        }
+
+        for(byte[] column : bytes)
+            buffer.put(column, 0, count);
+
+        for(double[][] column : arrays) {
+            for(int i = 0; i < count; i++)
+                buffer.putInt(column[i] == null ? -1 : column[i].length);
+
+            for(int i = 0; i < count; i++) {
+                if(column[i] != null) {
+                    for(double value : column[i])
+                        buffer.putDouble(value);
+                }
+            }
+        }
+
+        return buffer.array();
+    }
+
+    public ColumnarDuelRecord build(String enemyName, int rounds) {
+        try {
+            return ColumnarDuelRecord.wrap(toBlock(enemyName, rounds));
+        } catch (IOException e) {
+            throw new IllegalStateException("built an invalid columnar duel record", e);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.learning.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Created by Roberto Sales on 14/10/17.
+ *
+ * A pack of columnar DuelRecord blocks stored back to back in a single plain file,
+ * each prefixed by its length. Blocks are memory-mapped on demand and handed out
+ * as ColumnarDuelRecord views, so predicates only look at the header of a block.
+ */
+public class ColumnarDuelRecordFile implements RecordPack {
+    public static final int FILE_MAGIC = 0x44524346;
+    public static final String EXTENSION = ".drc";
+
+    private final File file;
+    private final Predicate<ColumnarDuelRecord> predicate;
+    private Long shufflingSeed;
+
+    private FileChannel channel;
+    private long[] offsets;
+    private int[] lengths;
+
+    public ColumnarDuelRecordFile(File file, Predicate<ColumnarDuelRecord> predicate) throws IOException {
+        this.file = file;
+        this.predicate = predicate;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        index();
+    }
+
+    public ColumnarDuelRecordFile(File file) throws IOException {
+        this(file, null);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void setSeed(Long seed) {
+        this.shufflingSeed = seed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void index() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        readFully(header, 0);
+
+        if(header.getInt(0) != FILE_MAGIC)
+            throw new IOException("not a columnar duel record file: " + file);
+        if(header.getInt(4) != DuelRecordColumns.VERSION)
+            throw new IOException("unsupported columnar duel record file version " + header.getInt(4));
+
+        ArrayList<Long> blockOffsets = new ArrayList<>();
+        ArrayList<Integer> blockLengths = new ArrayList<>();
+
+        ByteBuffer prefix = ByteBuffer.allocate(4);
+        long position = 8;
+        long end = channel.size();
+
+        while(position + 4 <= end) {
+            prefix.clear();
+            readFully(prefix, position);
+
+            int length = prefix.getInt(0);
+            if(position + 4 + length > end)
+                break; // truncated tail, most likely an interrupted append
+
+            blockOffsets.add(position + 4);
+            blockLengths.add(length);
+            position += 4 + length;
+        }
+
+        offsets = new long[blockOffsets.size()];
+        lengths = new int[blockLengths.size()];
+        for(int i = 0; i < offsets.length; i++) {
+            offsets[i] = blockOffsets.get(i);
+            lengths[i] = blockLengths.get(i);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("unexpected end of columnar duel record file");
+        }
+    }
+
+    /**
+     * Number of blocks in the file, regardless of the predicate.
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    public ColumnarDuelRecord get(int i) throws IOException {
+        return ColumnarDuelRecord.wrap(channel.map(FileChannel.MapMode.READ_ONLY, offsets[i], lengths[i]));
+    }
+
+    private int[] getOrder() {
+        int[] order = new int[offsets.length];
+        for(int i = 0; i < order.length; i++)
+            order[i] = i;
+
+        if(shufflingSeed != null) {
+            Random random = new Random(shufflingSeed);
+            for(int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+        }
+
+        return order;
+    }
+
+    @Override
+    public int count() throws IOException {
+        if(predicate == null)
+            return size();
+
+        int res = 0;
+        for(int i = 0; i < size(); i++) {
+            if(predicate.test(get(i)))
+                res++;
+        }
+
+        return res;
+    }
+
+    /**
+     * Iterates over the views accepted by the predicate, without materializing them.
+     */
+    public Iterable<ColumnarDuelRecord> views() {
+        return ViewIterator::new;
+    }
+
+    @Override
+    public java.util.Iterator<DuelRecord> iterator() {
+        ViewIterator views = new ViewIterator();
+        return new java.util.Iterator<DuelRecord>() {
+            @Override
+            public boolean hasNext() {
+                return views.hasNext();
+            }
+
+            @Override
+            public DuelRecord next() {
+                return views.next().toDuelRecord();
+            }
+        };
+    }
+
+    private class ViewIterator implements java.util.Iterator<ColumnarDuelRecord> {
+        private final int[] order = getOrder();
+        private int cursor = 0;
+        private ColumnarDuelRecord lookahead;
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while(lookahead == null && cursor < order.length) {
+                    ColumnarDuelRecord view = get(order[cursor++]);
+                    if(predicate == null || predicate.test(view))
+                        lookahead = view;
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("error mapping iterated block in ColumnarDuelRecordFile", e);
+            }
+
+            return lookahead != null;
+        }
+
+        @Override
+        public ColumnarDuelRecord next() {
+            if(!hasNext())
+                throw new NoSuchElementException("iterator exceeded ColumnarDuelRecordFile bounds");
+
+            ColumnarDuelRecord res = lookahead;
+            lookahead = null; // GC
+            return res;
+        }
+    }
+
+    /******* WRITING *******/
+
+    public static void append(File file, DuelRecord record) throws IOException {
+        append(file, Collections.singletonList(record));
+    }
+
+    public static void append(File file, Iterable<DuelRecord> records) throws IOException {
+        try (FileChannel out = openForAppend(file)) {
+            for(DuelRecord record : records)
+                writeBlock(out, ByteBuffer.wrap(DuelRecordColumns.encode(record)));
+        }
+    }
+
+    /**
+     * Appends an already laid out block as is.
+     */
+    public static void append(File file, ColumnarDuelRecord record) throws IOException {
+        try (FileChannel out = openForAppend(file)) {
+            writeBlock(out, record.getBlock());
+        }
+    }
+
+    private static FileChannel openForAppend(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null)
+            parent.mkdirs();
+
+        FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        if(out.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(8).putInt(FILE_MAGIC).putInt(DuelRecordColumns.VERSION);
+            header.flip();
+            writeFully(out, header);
+        }
+
+        return out;
+    }
+
+    private static void writeBlock(FileChannel out, ByteBuffer block) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(4).putInt(block.remaining());
+        prefix.flip();
+        writeFully(out, prefix);
+        writeFully(out, block);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining())
+            out.write(buffer);
+    }
+
+    /**
+     * Converts a serialized zip pack into a columnar file, keeping the pack's order.
+     * The file is written next to its final location and moved in place when done.
+     */
+    public static int convert(DuelRecordPackage pack, File target) throws IOException {
+        File tmp = new File(target.getPath() + ".tmp");
+        Files.deleteIfExists(tmp.toPath());
+
+        int converted = 0;
+        DuelRecordPackage.Iterator iterator = pack.iterator();
+
+        ArrayList<DuelRecord> batch = new ArrayList<>();
+        while(iterator.hasNext()) {
+            batch.add(iterator.next());
+            converted++;
+
+            if(batch.size() >= 16) {
+                append(tmp, batch);
+                batch.clear();
+            }
+        }
+
+        append(tmp, batch);
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        return converted;
+    }
+}
@@ -33,7 +33,7 @@ import java.util.ArrayList;
 /**
  * Created by Roberto Sales on 01/10/17.
  */
-public class DuelRecord implements Serializable {
+public class DuelRecord implements Serializable, DuelRecordInfo {
     private final static long serialVersionUID = 129109231L;
 
     private final String enemyName;
@@ -57,4 +57,8 @@ public class DuelRecord implements Serializable {
     public int getRounds() {
         return rounds;
     }
+
+    public int getEventCount() {
+        return logs.size();
+    }
 }
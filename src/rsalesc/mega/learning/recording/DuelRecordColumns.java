@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.learning.recording;
+
+import rsalesc.baf2.core.utils.BattleTime;
+import rsalesc.baf2.core.utils.Pair;
+import rsalesc.baf2.core.utils.geometry.AngularRange;
+import rsalesc.baf2.core.utils.geometry.AxisRectangle;
+import rsalesc.baf2.core.utils.geometry.Point;
+import rsalesc.baf2.core.utils.geometry.Range;
+import rsalesc.baf2.waves.BreakType;
+import rsalesc.mega.utils.TargetingLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.*;
+
+/**
+ * Created by Roberto Sales on 14/10/17.
+ *
+ * Layout of a columnar DuelRecord block. Every TargetingLog feature gets its own
+ * primitive column, so a record can be read (or partially read) straight from a
+ * mapped buffer without going through Java serialization.
+ *
+ * Block layout (big endian):
+ *   header   magic, version, rounds, count, name length, name (UTF-8)
+ *   doubles  DOUBLES.length columns of count values
+ *   longs    LONGS.length columns of count values
+ *   ints     INTS.length columns of count values
+ *   bytes    BYTES.length columns of count values
+ *   arrays   lengths (count ints, -1 for null) followed by values, for each ARRAYS column
+ *
+ * Any change to the column lists must bump VERSION.
+ */
+public class DuelRecordColumns {
+    public static final int MAGIC = 0x44524331;
+    public static final int VERSION = 1;
+
+    public static final int HAS_SOURCE = 1;
+    public static final int HAS_FIELD = 2;
+    public static final int HAS_BATTLE_TIME = 4;
+    public static final int HAS_PRECISE_MEA = 8;
+    public static final int HAS_PRECISE_INTERSECTION = 16;
+
+    public static final int NO_BREAK_TYPE = -1;
+
+    private static final List<DoubleColumn> doubles = new ArrayList<>();
+    private static final List<LongColumn> longs = new ArrayList<>();
+    private static final List<IntColumn> ints = new ArrayList<>();
+    private static final List<ByteColumn> bytes = new ArrayList<>();
+    private static final List<ArrayColumn> arrays = new ArrayList<>();
+
+    public static final DoubleColumn ABS_BEARING = doubleColumn("absBearing", f -> f.absBearing, (f, v) -> f.absBearing = v);
+    public static final DoubleColumn VELOCITY = doubleColumn("velocity", f -> f.velocity, (f, v) -> f.velocity = v);
+    public static final DoubleColumn DISTANCE = doubleColumn("distance", f -> f.distance, (f, v) -> f.distance = v);
+    public static final DoubleColumn LATERAL_VELOCITY = doubleColumn("lateralVelocity", f -> f.lateralVelocity, (f, v) -> f.lateralVelocity = v);
+    public static final DoubleColumn ADVANCING_VELOCITY = doubleColumn("advancingVelocity", f -> f.advancingVelocity, (f, v) -> f.advancingVelocity = v);
+    public static final DoubleColumn BULLET_POWER = doubleColumn("bulletPower", f -> f.bulletPower, (f, v) -> f.bulletPower = v);
+    public static final DoubleColumn RELATIVE_HEADING = doubleColumn("relativeHeading", f -> f.relativeHeading, (f, v) -> f.relativeHeading = v);
+    public static final DoubleColumn ACCEL = doubleColumn("accel", f -> f.accel, (f, v) -> f.accel = v);
+    public static final DoubleColumn POSITIVE_ESCAPE = doubleColumn("positiveEscape", f -> f.positiveEscape, (f, v) -> f.positiveEscape = v);
+    public static final DoubleColumn NEGATIVE_ESCAPE = doubleColumn("negativeEscape", f -> f.negativeEscape, (f, v) -> f.negativeEscape = v);
+    public static final DoubleColumn BAF_HEADING = doubleColumn("bafHeading", f -> f.bafHeading, (f, v) -> f.bafHeading = v);
+    public static final DoubleColumn DISPLACE_LAST_10 = doubleColumn("displaceLast10", f -> f.displaceLast10, (f, v) -> f.displaceLast10 = v);
+    public static final DoubleColumn DISPLACE_LAST_20 = doubleColumn("displaceLast20", f -> f.displaceLast20, (f, v) -> f.displaceLast20 = v);
+    public static final DoubleColumn DISPLACE_LAST_40 = doubleColumn("displaceLast40", f -> f.displaceLast40, (f, v) -> f.displaceLast40 = v);
+    public static final DoubleColumn DISPLACE_LAST_80 = doubleColumn("displaceLast80", f -> f.displaceLast80, (f, v) -> f.displaceLast80 = v);
+    public static final DoubleColumn DISTANCE_TO_WALL = doubleColumn("distanceToWall", f -> f.distanceToWall, (f, v) -> f.distanceToWall = v);
+    public static final DoubleColumn DISTANCE_TO_CORNER = doubleColumn("distanceToCorner", f -> f.distanceToCorner, (f, v) -> f.distanceToCorner = v);
+    public static final DoubleColumn DISTANCE_TO_CENTER = doubleColumn("distanceToCenter", f -> f.distanceToCenter, (f, v) -> f.distanceToCenter = v);
+    public static final DoubleColumn ADVANCING_VELOCITY_TO_WALL = doubleColumn("advancingVelocityToWall", f -> f.advancingVelocityToWall, (f, v) -> f.advancingVelocityToWall = v);
+    public static final DoubleColumn LAST_GF = doubleColumn("lastGf", f -> f.lastGf, (f, v) -> f.lastGf = v);
+    public static final DoubleColumn GUN_HEAT = doubleColumn("gunHeat", f -> f.gunHeat, (f, v) -> f.gunHeat = v);
+    public static final DoubleColumn CLOSEST_DISTANCE = doubleColumn("closestDistance", f -> f.closestDistance, (f, v) -> f.closestDistance = v);
+    public static final DoubleColumn CLOSEST_LATERAL_VELOCITY = doubleColumn("closestLateralVelocity", f -> f.closestLateralVelocity, (f, v) -> f.closestLateralVelocity = v);
+    public static final DoubleColumn CLOSEST_ADVANCING_VELOCITY = doubleColumn("closestAdvancingVelocity", f -> f.closestAdvancingVelocity, (f, v) -> f.closestAdvancingVelocity = v);
+    public static final DoubleColumn CLOSEST_ENERGY_RATIO = doubleColumn("closestEnergyRatio", f -> f.closestEnergyRatio, (f, v) -> f.closestEnergyRatio = v);
+    public static final DoubleColumn HIT_CHANCE = doubleColumn("hitChance", f -> f.hitChance, (f, v) -> f.hitChance = v);
+    public static final DoubleColumn HIT_ANGLE = doubleColumn("hitAngle", f -> f.hitAngle, (f, v) -> f.hitAngle = v);
+    public static final DoubleColumn HIT_DISTANCE = doubleColumn("hitDistance", f -> f.hitDistance, (f, v) -> f.hitDistance = v);
+
+    // nullable members, rebuilt from the presence mask
+    public static final DoubleColumn SOURCE_X = doubleColumn("source.x", f -> f.source == null ? 0 : f.source.x, null);
+    public static final DoubleColumn SOURCE_Y = doubleColumn("source.y", f -> f.source == null ? 0 : f.source.y, null);
+    public static final DoubleColumn FIELD_MIN_X = doubleColumn("field.minx", f -> f.field == null ? 0 : f.field.minx, null);
+    public static final DoubleColumn FIELD_MAX_X = doubleColumn("field.maxx", f -> f.field == null ? 0 : f.field.maxx, null);
+    public static final DoubleColumn FIELD_MIN_Y = doubleColumn("field.miny", f -> f.field == null ? 0 : f.field.miny, null);
+    public static final DoubleColumn FIELD_MAX_Y = doubleColumn("field.maxy", f -> f.field == null ? 0 : f.field.maxy, null);
+    public static final DoubleColumn PRECISE_MEA_MIN = doubleColumn("preciseMea.min", f -> f.preciseMea == null ? 0 : f.preciseMea.min, null);
+    public static final DoubleColumn PRECISE_MEA_MAX = doubleColumn("preciseMea.max", f -> f.preciseMea == null ? 0 : f.preciseMea.max, null);
+    public static final DoubleColumn INTERSECTION_REFERENCE = doubleColumn("preciseIntersection.reference",
+            f -> f.preciseIntersection == null ? 0 : f.preciseIntersection.getReference(), null);
+    public static final DoubleColumn INTERSECTION_MIN = doubleColumn("preciseIntersection.min",
+            f -> f.preciseIntersection == null ? 0 : f.preciseIntersection.min, null);
+    public static final DoubleColumn INTERSECTION_MAX = doubleColumn("preciseIntersection.max",
+            f -> f.preciseIntersection == null ? 0 : f.preciseIntersection.max, null);
+
+    public static final LongColumn BULLETS_FIRED = longColumn("bulletsFired", f -> f.bulletsFired, (f, v) -> f.bulletsFired = v);
+    public static final LongColumn TIME = longColumn("time", f -> f.time, (f, v) -> f.time = v);
+    public static final LongColumn TIME_ACCEL = longColumn("timeAccel", f -> f.timeAccel, (f, v) -> f.timeAccel = v);
+    public static final LongColumn TIME_DECEL = longColumn("timeDecel", f -> f.timeDecel, (f, v) -> f.timeDecel = v);
+    public static final LongColumn TIME_REVERT = longColumn("timeRevert", f -> f.timeRevert, (f, v) -> f.timeRevert = v);
+    public static final LongColumn REVERT_LAST_20 = longColumn("revertLast20", f -> f.revertLast20, (f, v) -> f.revertLast20 = v);
+    public static final LongColumn LAST_RUN = longColumn("lastRun", f -> f.lastRun, (f, v) -> f.lastRun = v);
+    public static final LongColumn RUN = longColumn("run", f -> f.run, (f, v) -> f.run = v);
+    public static final LongColumn BATTLE_TIME = longColumn("battleTime.time", f -> f.battleTime == null ? 0 : f.battleTime.getTime(), null);
+
+    public static final IntColumn DIRECTION = intColumn("direction", f -> f.direction, (f, v) -> f.direction = v);
+    public static final IntColumn ACCEL_DIRECTION = intColumn("accelDirection", f -> f.accelDirection, (f, v) -> f.accelDirection = v);
+    public static final IntColumn ESCAPE_DIRECTION = intColumn("escapeDirection", f -> f.escapeDirection, (f, v) -> f.escapeDirection = v);
+    public static final IntColumn OTHERS = intColumn("others", f -> f.others, (f, v) -> f.others = v);
+    public static final IntColumn HITS = intColumn("hits", f -> f.hits, (f, v) -> f.hits = v);
+    public static final IntColumn BATTLE_ROUND = intColumn("battleTime.round", f -> f.battleTime == null ? 0 : f.battleTime.getRound(), null);
+
+    public static final ByteColumn AIMING = byteColumn("aiming");
+    public static final ByteColumn BREAK_TYPE = byteColumn("breakType");
+    public static final ByteColumn PRESENCE = byteColumn("presence");
+
+    public static final ArrayColumn DISTANCE_AVG = arrayColumn("distanceAvg", f -> f.distanceAvg, (f, v) -> f.distanceAvg = v);
+    public static final ArrayColumn DISTANCE_ENERGY_AVG = arrayColumn("distanceEnergyAvg", f -> f.distanceEnergyAvg, (f, v) -> f.distanceEnergyAvg = v);
+
+    public static final DoubleColumn[] DOUBLES = doubles.toArray(new DoubleColumn[0]);
+    public static final LongColumn[] LONGS = longs.toArray(new LongColumn[0]);
+    public static final IntColumn[] INTS = ints.toArray(new IntColumn[0]);
+    public static final ByteColumn[] BYTES = bytes.toArray(new ByteColumn[0]);
+    public static final ArrayColumn[] ARRAYS = arrays.toArray(new ArrayColumn[0]);
+
+    public static DoubleColumn getDoubleColumn(String name) {
+        for(DoubleColumn column : DOUBLES) {
+            if(column.name.equals(name))
+                return column;
+        }
+
+        return null;
+    }
+
+    public static int getPresence(TargetingLog f) {
+        return (f.source != null ? HAS_SOURCE : 0)
+                | (f.field != null ? HAS_FIELD : 0)
+                | (f.battleTime != null ? HAS_BATTLE_TIME : 0)
+                | (f.preciseMea != null ? HAS_PRECISE_MEA : 0)
+                | (f.preciseIntersection != null ? HAS_PRECISE_INTERSECTION : 0);
+    }
+
+    public static int getHeaderSize(byte[] name) {
+        return 5 * 4 + name.length;
+    }
+
+    public static int getBodySize(int count, int arrayValues) {
+        return count * (8 * DOUBLES.length + 8 * LONGS.length + 4 * INTS.length + BYTES.length + 4 * ARRAYS.length)
+                + 8 * arrayValues;
+    }
+
+    /**
+     * Encodes a whole record into a single columnar block.
+     */
+    public static byte[] encode(DuelRecord record) {
+        List<Pair<TargetingLog, BreakType>> logs = record.getLogs();
+        ColumnarDuelRecordBuilder builder = new ColumnarDuelRecordBuilder(logs.size());
+
+        for(Pair<TargetingLog, BreakType> pair : logs)
+            builder.add(pair.first, pair.second);
+
+        return builder.toBlock(record.getEnemyName(), record.getRounds());
+    }
+
+    /**
+     * Reads every column of a log into row arrays indexed by column index.
+     * Array columns are not copied.
+     */
+    static void extract(TargetingLog f, BreakType type, double[] rowDoubles, long[] rowLongs,
+                        int[] rowInts, byte[] rowBytes, double[][] rowArrays) {
+        for(DoubleColumn column : DOUBLES)
+            rowDoubles[column.index] = column.getter.applyAsDouble(f);
+
+        for(LongColumn column : LONGS)
+            rowLongs[column.index] = column.getter.applyAsLong(f);
+
+        for(IntColumn column : INTS)
+            rowInts[column.index] = column.getter.applyAsInt(f);
+
+        rowBytes[AIMING.index] = (byte) (f.aiming ? 1 : 0);
+        rowBytes[BREAK_TYPE.index] = (byte) (type == null ? NO_BREAK_TYPE : type.ordinal());
+        rowBytes[PRESENCE.index] = (byte) getPresence(f);
+
+        for(ArrayColumn column : ARRAYS)
+            rowArrays[column.index] = column.getter.apply(f);
+    }
+
+    /**
+     * Rebuilds the nullable members of a log from its nested columns.
+     */
+    static void restoreMembers(TargetingLog f, ColumnarDuelRecord view, int i) {
+        int presence = view.getPresence(i);
+
+        if((presence & HAS_SOURCE) != 0)
+            f.source = new Point(view.get(SOURCE_X, i), view.get(SOURCE_Y, i));
+
+        if((presence & HAS_FIELD) != 0)
+            f.field = new AxisRectangle(view.get(FIELD_MIN_X, i), view.get(FIELD_MAX_X, i),
+                    view.get(FIELD_MIN_Y, i), view.get(FIELD_MAX_Y, i));
+
+        if((presence & HAS_BATTLE_TIME) != 0)
+            f.battleTime = new BattleTime(view.get(BATTLE_TIME, i), view.get(BATTLE_ROUND, i));
+
+        if((presence & HAS_PRECISE_MEA) != 0)
+            f.preciseMea = new Range(view.get(PRECISE_MEA_MIN, i), view.get(PRECISE_MEA_MAX, i));
+
+        if((presence & HAS_PRECISE_INTERSECTION) != 0)
+            f.preciseIntersection = new AngularRange(view.get(INTERSECTION_REFERENCE, i),
+                    view.get(INTERSECTION_MIN, i), view.get(INTERSECTION_MAX, i));
+    }
+
+    private static DoubleColumn doubleColumn(String name, ToDoubleFunction<TargetingLog> getter,
+                                             ObjDoubleConsumer<TargetingLog> setter) {
+        DoubleColumn column = new DoubleColumn(name, doubles.size(), getter, setter);
+        doubles.add(column);
+        return column;
+    }
+
+    private static LongColumn longColumn(String name, ToLongFunction<TargetingLog> getter,
+                                         ObjLongConsumer<TargetingLog> setter) {
+        LongColumn column = new LongColumn(name, longs.size(), getter, setter);
+        longs.add(column);
+        return column;
+    }
+
+    private static IntColumn intColumn(String name, ToIntFunction<TargetingLog> getter,
+                                       ObjIntConsumer<TargetingLog> setter) {
+        IntColumn column = new IntColumn(name, ints.size(), getter, setter);
+        ints.add(column);
+        return column;
+    }
+
+    private static ByteColumn byteColumn(String name) {
+        ByteColumn column = new ByteColumn(name, bytes.size());
+        bytes.add(column);
+        return column;
+    }
+
+    private static ArrayColumn arrayColumn(String name, Function<TargetingLog, double[]> getter,
+                                           BiConsumer<TargetingLog, double[]> setter) {
+        ArrayColumn column = new ArrayColumn(name, arrays.size(), getter, setter);
+        arrays.add(column);
+        return column;
+    }
+
+    public static abstract class Column {
+        public final String name;
+        public final int index;
+
+        Column(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static class DoubleColumn extends Column {
+        final ToDoubleFunction<TargetingLog> getter;
+        final ObjDoubleConsumer<TargetingLog> setter;
+
+        DoubleColumn(String name, int index, ToDoubleFunction<TargetingLog> getter, ObjDoubleConsumer<TargetingLog> setter) {
+            super(name, index);
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    public static class LongColumn extends Column {
+        final ToLongFunction<TargetingLog> getter;
+        final ObjLongConsumer<TargetingLog> setter;
+
+        LongColumn(String name, int index, ToLongFunction<TargetingLog> getter, ObjLongConsumer<TargetingLog> setter) {
+            super(name, index);
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    public static class IntColumn extends Column {
+        final ToIntFunction<TargetingLog> getter;
+        final ObjIntConsumer<TargetingLog> setter;
+
+        IntColumn(String name, int index, ToIntFunction<TargetingLog> getter, ObjIntConsumer<TargetingLog> setter) {
+            super(name, index);
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    public static class ByteColumn extends Column {
+        ByteColumn(String name, int index) {
+            super(name, index);
+        }
+    }
+
+    public static class ArrayColumn extends Column {
+        final Function<TargetingLog, double[]> getter;
+        final BiConsumer<TargetingLog, double[]> setter;
+
+        ArrayColumn(String name, int index, Function<TargetingLog, double[]> getter, BiConsumer<TargetingLog, double[]> setter) {
+            super(name, index);
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+}
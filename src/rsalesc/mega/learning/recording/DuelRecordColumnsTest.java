@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.learning.recording;
+
+import org.junit.jupiter.api.Test;
+import rsalesc.baf2.core.utils.BattleTime;
+import rsalesc.baf2.core.utils.Pair;
+import rsalesc.baf2.core.utils.geometry.AngularRange;
+import rsalesc.baf2.core.utils.geometry.AxisRectangle;
+import rsalesc.baf2.core.utils.geometry.Point;
+import rsalesc.baf2.core.utils.geometry.Range;
+import rsalesc.baf2.waves.BreakType;
+import rsalesc.mega.utils.TargetingLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class DuelRecordColumnsTest {
+    /**
+     * Fills every instance field of a log, failing on field types the columnar
+     * format does not know, so new TargetingLog fields cannot go unnoticed.
+     */
+    static TargetingLog randomLog(Random random, boolean withMembers) {
+        TargetingLog f = new TargetingLog();
+
+        for(Field field : fields()) {
+            Class<?> type = field.getType();
+            Object value;
+
+            if(type == double.class)
+                value = random.nextGaussian() * 100;
+            else if(type == long.class)
+                value = (long) random.nextInt(20000) - 10000;
+            else if(type == int.class)
+                value = random.nextInt(200) - 100;
+            else if(type == boolean.class)
+                value = random.nextBoolean();
+            else if(type == double[].class)
+                value = !withMembers ? null : randomArray(random, random.nextInt(5));
+            else if(type == Point.class)
+                value = !withMembers ? null : new Point(random.nextDouble() * 800, random.nextDouble() * 600);
+            else if(type == AxisRectangle.class)
+                value = !withMembers ? null : new AxisRectangle(18, 782, 18, 582);
+            else if(type == BattleTime.class)
+                value = !withMembers ? null : new BattleTime((long) random.nextInt(3000), random.nextInt(35));
+            else if(type == AngularRange.class)
+                value = !withMembers ? null : new AngularRange(random.nextDouble(), -random.nextDouble(), random.nextDouble());
+            else if(type == Range.class)
+                value = !withMembers ? null : new Range(-random.nextDouble(), random.nextDouble());
+            else
+                throw new IllegalStateException("columnar format does not cover field " + field.getName());
+
+            set(f, field, value);
+        }
+
+        return f;
+    }
+
+    static void assertSameLog(TargetingLog expected, TargetingLog actual) {
+        for(Field field : fields()) {
+            Object a = get(expected, field);
+            Object b = get(actual, field);
+            String name = field.getName();
+
+            if(a == null || b == null)
+                assertTrue(a == b, name + " lost its null-ness");
+            else if(a instanceof double[])
+                assertTrue(Arrays.equals((double[]) a, (double[]) b), name + " differs");
+            else if(a instanceof Point)
+                assertTrue(((Point) a).x == ((Point) b).x && ((Point) a).y == ((Point) b).y, name + " differs");
+            else if(a instanceof AxisRectangle) {
+                AxisRectangle ra = (AxisRectangle) a, rb = (AxisRectangle) b;
+                assertTrue(ra.minx == rb.minx && ra.maxx == rb.maxx && ra.miny == rb.miny && ra.maxy == rb.maxy,
+                        name + " differs");
+            } else if(a instanceof AngularRange) {
+                AngularRange ra = (AngularRange) a, rb = (AngularRange) b;
+                assertTrue(ra.getReference() == rb.getReference() && ra.min == rb.min && ra.max == rb.max,
+                        name + " differs");
+            } else if(a instanceof Range)
+                assertTrue(((Range) a).min == ((Range) b).min && ((Range) a).max == ((Range) b).max, name + " differs");
+            else
+                assertEquals(a, b, name);
+        }
+    }
+
+    static ArrayList<Pair<TargetingLog, BreakType>> randomLogs(Random random, int count) {
+        BreakType[] types = BreakType.values();
+        ArrayList<Pair<TargetingLog, BreakType>> res = new ArrayList<>();
+
+        for(int i = 0; i < count; i++) {
+            BreakType type = random.nextInt(5) == 0 ? null : types[random.nextInt(types.length)];
+            res.add(new Pair<>(randomLog(random, random.nextBoolean()), type));
+        }
+
+        return res;
+    }
+
+    static void assertSameLogs(ArrayList<Pair<TargetingLog, BreakType>> expected, ColumnarDuelRecord actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for(int i = 0; i < expected.size(); i++) {
+            assertSameLog(expected.get(i).first, actual.getLog(i));
+            assertTrue(expected.get(i).second == actual.getBreakType(i), "break type differs");
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Random random = new Random(17);
+        ArrayList<Pair<TargetingLog, BreakType>> logs = randomLogs(random, 300);
+
+        ColumnarDuelRecord view = ColumnarDuelRecord.wrap(DuelRecordColumns.encode(new DuelRecord("sample.Bot 1.0", logs, 35)));
+
+        assertEquals("sample.Bot 1.0", view.getEnemyName());
+        assertEquals(35, view.getRounds());
+        assertSameLogs(logs, view);
+
+        DuelRecord record = view.toDuelRecord();
+        for(int i = 0; i < logs.size(); i++)
+            assertSameLog(logs.get(i).first, record.getLogs().get(i).first);
+    }
+
+    @Test
+    public void fileRoundTrip() throws IOException {
+        Random random = new Random(23);
+        File file = File.createTempFile("records", ColumnarDuelRecordFile.EXTENSION);
+
+        try {
+            Files.delete(file.toPath());
+
+            ArrayList<ArrayList<Pair<TargetingLog, BreakType>>> batches = new ArrayList<>();
+            for(int i = 0; i < 4; i++) {
+                batches.add(randomLogs(random, 20 + i));
+                ColumnarDuelRecordFile.append(file, new DuelRecord("bot" + i, batches.get(i), 10 + i));
+            }
+
+            ColumnarDuelRecordFile records = new ColumnarDuelRecordFile(file);
+            try {
+                assertEquals(4, records.size());
+
+                Iterator<ColumnarDuelRecord> it = records.views().iterator();
+                for(int i = 0; i < 4; i++) {
+                    ColumnarDuelRecord view = it.next();
+                    assertEquals("bot" + i, view.getEnemyName());
+                    assertEquals(10 + i, view.getRounds());
+                    assertSameLogs(batches.get(i), view);
+                }
+
+                assertFalse(it.hasNext());
+            } finally {
+                records.close();
+            }
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private static double[] randomArray(Random random, int length) {
+        double[] res = new double[length];
+        for(int i = 0; i < length; i++)
+            res[i] = random.nextDouble();
+        return res;
+    }
+
+    private static ArrayList<Field> fields() {
+        ArrayList<Field> res = new ArrayList<>();
+        for(Field field : TargetingLog.class.getDeclaredFields()) {
+            if(!Modifier.isStatic(field.getModifiers()))
+                res.add(field);
+        }
+
+        return res;
+    }
+
+    private static Object get(TargetingLog f, Field field) {
+        try {
+            field.setAccessible(true);
+            return field.get(f);
+        } catch(IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void set(TargetingLog f, Field field, Object value) {
+        try {
+            field.setAccessible(true);
+            field.set(f, value);
+        } catch(IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -24,14 +24,14 @@
 package rsalesc.mega.learning.recording;
 
 import rsalesc.baf2.core.utils.Pair;
+import rsalesc.runner.BattleFarm;
+import rsalesc.runner.BattleJob;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.file.ClosedFileSystemException;
-import java.nio.file.FileSystem;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Predicate;
+import java.util.*;
 
 /**
  * Created by Roberto Sales on 01/10/17.
@@ -40,12 +40,23 @@ public class DuelRecordEnsurer {
     private static final int MAX_RETRIES = 3;
 
     private final DuelRecorderRunner runner;
+    private final BattleFarm farm;
     private final DuelRecordFS fs;
 
     private boolean logs = false;
 
     public DuelRecordEnsurer(DuelRecorderRunner runner, DuelRecordFS fs) {
         this.runner = runner;
+        this.farm = null;
+        this.fs = fs;
+    }
+
+    /**
+     * Records the missing battles concurrently on a farm of DuelRecordTask workers.
+     */
+    public DuelRecordEnsurer(BattleFarm farm, DuelRecordFS fs) {
+        this.runner = null;
+        this.farm = farm;
         this.fs = fs;
     }
 
@@ -64,10 +75,77 @@ public class DuelRecordEnsurer {
     }
 
 
-    public DuelRecordPackage ensure(int n, String enemyName, int rounds, boolean enforceRounds) throws IOException {
-        DuelRecordPackage pack = loadPack(enemyName, rounds, enforceRounds);
+    /**
+     * Saves the record, re-mounting the pack if needed. Returns the pack to keep using.
+     */
+    private DuelRecordPackage save(DuelRecordPackage pack, DuelRecord record, int rounds, boolean enforceRounds)
+            throws IOException {
+        try {
+            pack.save(record);
+        }  catch (ClosedChannelException | ClosedFileSystemException exception) {
+            // ZipFileSystem somehow was closed (or had it's channel closed)
+            // try to re-mount it and re-save the record as a last resort
+
+            try {
+                pack.close();
+            } catch (Exception ignored) {}
+
+            pack = loadPack(record.getEnemyName(), rounds, enforceRounds);
+            pack.save(record);
+        }
+
+        return pack;
+    }
+
+    public RecordPack ensure(int n, String enemyName, int rounds, boolean enforceRounds) throws IOException {
+        if(farm != null) {
+            List<RecordPack> packs = ensureOnFarm(Collections.singletonList(new Pair<>(enemyName, n)),
+                    rounds, enforceRounds);
+            return packs == null ? null : packs.get(0);
+        }
+
+        ColumnarDuelRecordFile columnar;
+        try {
+            columnar = loadColumnar(enemyName, rounds, enforceRounds);
+        } catch (IOException e) {
+            // a pack that can't be converted still works the old way
+            if(logs)
+                System.out.println("Falling back to the zip pack of " + enemyName + ": " + e);
+
+            return ensureOnZip(n, enemyName, rounds, enforceRounds);
+        }
 
-        int goodRecords = pack.count();
+        int good;
+        try {
+            good = columnar.count();
+        } finally {
+            columnar.close();
+        }
+
+        File file = fs.getColumnarFile(enemyName);
+        if(!record(n, good, enemyName, rounds, enforceRounds,
+                () -> ColumnarDuelRecordFile.append(file, runner.runColumnar(fs.getMyself(), enemyName, rounds))))
+            return null;
+
+        return loadColumnar(enemyName, rounds, enforceRounds);
+    }
+
+    private RecordPack ensureOnZip(int n, String enemyName, int rounds, boolean enforceRounds) throws IOException {
+        DuelRecordPackage[] pack = {loadPack(enemyName, rounds, enforceRounds)};
+
+        if(!record(n, pack[0].count(), enemyName, rounds, enforceRounds,
+                () -> pack[0] = save(pack[0], runner.run(fs.getMyself(), enemyName, rounds), rounds, enforceRounds)))
+            return null;
+
+        return pack[0];
+    }
+
+    /**
+     * Runs battles one at a time until n records are good, handing each to recording.
+     * Returns false if the max. number of retries was exceeded.
+     */
+    private boolean record(int n, int goodRecords, String enemyName, int rounds, boolean enforceRounds,
+                           Recording recording) {
         int beforeGoodRecords = -1;
         int retries = 0;
 
@@ -80,7 +158,7 @@ public class DuelRecordEnsurer {
                 if(logs)
                     System.out.println("[" + fs.getMyself() +
                             " vs " + enemyName + "] exceeded the max. number of retries");
-                return null;
+                return false;
             }
 
             if(logs)
@@ -90,22 +168,7 @@ public class DuelRecordEnsurer {
             beforeGoodRecords = goodRecords;
 
             try {
-                DuelRecord record = runner.run(fs.getMyself(), enemyName, rounds);
-
-                try {
-                    pack.save(record);
-                }  catch (ClosedChannelException | ClosedFileSystemException exception) {
-                    // ZipFileSystem somehow was closed (or had it's channel closed)
-                    // try to re-mount it and re-save the record as a last resort
-
-                    try {
-                        pack.close();
-                    } catch (Exception ignored) {}
-
-                    pack = loadPack(enemyName, rounds, enforceRounds);
-                    pack.save(record);
-                }
-
+                recording.record();
                 goodRecords++;
             } catch (IOException e) {
                 e.printStackTrace();
@@ -121,12 +184,17 @@ public class DuelRecordEnsurer {
                 System.out.println("Finished ensuring " + n + " battles for " + enemyName + ".");
         }
 
-        return pack;
+        return true;
     }
 
     public DuelRecordSuperPack ensure(List<Pair<String, Integer>> ensurances, int rounds, boolean enforceRounds)
             throws IOException {
-        ArrayList<DuelRecordPackage> packs = new ArrayList<>();
+        if(farm != null) {
+            List<RecordPack> packs = ensureOnFarm(ensurances, rounds, enforceRounds);
+            return packs == null ? null : new DuelRecordSuperPack(packs);
+        }
+
+        ArrayList<RecordPack> packs = new ArrayList<>();
 
         int totalBattles = 0;
 
@@ -140,7 +208,7 @@ public class DuelRecordEnsurer {
         boolean ensured = true;
 
         for(Pair<String, Integer> ensurance : ensurances) {
-            DuelRecordPackage pack = ensure(ensurance.second, ensurance.first, rounds, enforceRounds);
+            RecordPack pack = ensure(ensurance.second, ensurance.first, rounds, enforceRounds);
             if(pack == null) {
                 // that means this bot has skipped MAX_RETRIES retries
                 ensured = false;
@@ -154,4 +222,98 @@ public class DuelRecordEnsurer {
 
         return ensured ? new DuelRecordSuperPack(packs) : null;
     }
+
+    /**
+     * Opens the columnar file of an enemy, first converting its zip pack if
+     * that is all there is, or creating it empty.
+     */
+    private ColumnarDuelRecordFile loadColumnar(String enemyName, int rounds, boolean enforceRounds)
+            throws IOException {
+        File file = fs.getColumnarFile(enemyName);
+        if(!file.exists()) {
+            if(fs.getFile(enemyName).exists())
+                fs.convert(enemyName);
+            else
+                ColumnarDuelRecordFile.append(file, Collections.<DuelRecord>emptyList());
+        }
+
+        if(enforceRounds)
+            return fs.loadColumnar(enemyName, record -> record.getRounds() == rounds);
+        else
+            return fs.loadColumnar(enemyName);
+    }
+
+    /**
+     * Queues every missing battle at once. Workers already answer with columnar
+     * blocks, which this thread appends as is to each enemy's .drc file, so each
+     * file keeps a single writer. Returns null if some enemy exceeded the max.
+     * number of retries.
+     */
+    private List<RecordPack> ensureOnFarm(List<Pair<String, Integer>> ensurances, int rounds,
+                                          boolean enforceRounds) throws IOException {
+        HashMap<String, Integer> goodRecords = new HashMap<>();
+        ArrayList<BattleJob> jobs = new ArrayList<>();
+
+        for(Pair<String, Integer> ensurance : ensurances) {
+            String enemyName = ensurance.first;
+
+            // the mapping would not see the appended blocks, so it is reopened at the end
+            ColumnarDuelRecordFile pack = loadColumnar(enemyName, rounds, enforceRounds);
+            int good;
+            try {
+                good = pack.count();
+            } finally {
+                pack.close();
+            }
+
+            goodRecords.put(enemyName, good);
+
+            for(int i = good; i < ensurance.second; i++)
+                jobs.add(new BattleJob(fs.getMyself(), enemyName, rounds, i));
+        }
+
+        if(logs)
+            System.out.println("Ensuring " + jobs.size() + " missing battles of " + rounds + " rounds on "
+                    + farm.getConcurrency() + " workers.");
+
+        HashSet<String> failed = new HashSet<>();
+
+        farm.run(jobs, new BattleFarm.Listener() {
+            @Override
+            public void onResult(BattleJob job, byte[] result) throws Exception {
+                String enemyName = job.getEnemy();
+                ColumnarDuelRecordFile.append(fs.getColumnarFile(enemyName), ColumnarDuelRecord.wrap(result));
+
+                int good = goodRecords.merge(enemyName, 1, Integer::sum);
+                if(logs)
+                    System.out.println("Recorded [" + fs.getMyself() + " vs " + enemyName + "] "
+                            + good + "-th battle (seed " + job.getSeed() + ")");
+            }
+
+            @Override
+            public void onFailure(BattleJob job, Throwable cause) {
+                failed.add(job.getEnemy());
+                if(logs)
+                    System.out.println("[" + fs.getMyself() + " vs " + job.getEnemy()
+                            + "] exceeded the max. number of retries: " + cause);
+            }
+        });
+
+        if(!failed.isEmpty()) {
+            if(logs)
+                System.out.println("Not all battles could be recorded, check for some error and re-run the recorder.");
+
+            return null;
+        }
+
+        ArrayList<RecordPack> packs = new ArrayList<>();
+        for(Pair<String, Integer> ensurance : ensurances)
+            packs.add(loadColumnar(ensurance.first, rounds, enforceRounds));
+
+        return packs;
+    }
+
+    private interface Recording {
+        void record() throws IOException;
+    }
 }
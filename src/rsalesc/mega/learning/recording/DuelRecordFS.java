@@ -73,10 +73,16 @@ public class DuelRecordFS {
         return prefix + "_";
     }
 
+    private String getBaseName(String name) {
+        return getPrefixS() + (myself.replace("*", "_dev") + SEPARATOR + name).replace(" ", "_");
+    }
+
     public File getFile(String name) {
-        return new File(directory, getPrefixS()
-                + (myself.replace("*", "_dev") + SEPARATOR + name).replace(" ", "_")
-                + ".zip");
+        return new File(directory, getBaseName(name) + ".zip");
+    }
+
+    public File getColumnarFile(String name) {
+        return new File(directory, getBaseName(name) + ColumnarDuelRecordFile.EXTENSION);
     }
 
     public String getFilePath(String name) {
@@ -115,7 +121,7 @@ public class DuelRecordFS {
         return new DuelRecordPackage(getZipFs(enemyName));
     }
 
-    public DuelRecordPackage load(String enemyName, Predicate<DuelRecord> predicate) throws IOException {
+    public DuelRecordPackage load(String enemyName, Predicate<DuelRecordInfo> predicate) throws IOException {
         return new DuelRecordPackage(getZipFs(enemyName), predicate);
     }
 
@@ -123,10 +129,31 @@ public class DuelRecordFS {
         return new DuelRecordPackage(fs);
     }
 
-    public DuelRecordPackage load(FileSystem fs, Predicate<DuelRecord> predicate) {
+    public DuelRecordPackage load(FileSystem fs, Predicate<DuelRecordInfo> predicate) {
         return new DuelRecordPackage(fs, predicate);
     }
 
+    public ColumnarDuelRecordFile loadColumnar(String enemyName) throws IOException {
+        return new ColumnarDuelRecordFile(getColumnarFile(enemyName));
+    }
+
+    public ColumnarDuelRecordFile loadColumnar(String enemyName, Predicate<ColumnarDuelRecord> predicate)
+            throws IOException {
+        return new ColumnarDuelRecordFile(getColumnarFile(enemyName), predicate);
+    }
+
+    /**
+     * Rewrites the zip pack of this enemy as a columnar file, returning the number of converted records.
+     */
+    public int convert(String enemyName) throws IOException {
+        DuelRecordPackage pack = load(enemyName);
+        try {
+            return ColumnarDuelRecordFile.convert(pack, getColumnarFile(enemyName));
+        } finally {
+            pack.close();
+        }
+    }
+
     public void save(DuelRecord record) throws IOException {
         File directoryFile = getDirectory();
         if(!directoryFile.isDirectory() && !directoryFile.mkdirs())
@@ -143,6 +170,10 @@ public class DuelRecordFS {
         FileUtils.compressedWrite(fs, getInnerFile(nextIndex), SerializeHelper.convertToByteArray(record).get());
     }
 
+    public void saveColumnar(ColumnarDuelRecord record) throws IOException {
+        ColumnarDuelRecordFile.append(getColumnarFile(record.getEnemyName()), record);
+    }
+
     public void save(ArrayList<DuelRecord> records) throws IOException {
         for(DuelRecord record : records) {
             this.save(record);
@@ -23,52 +23,107 @@
 
 package rsalesc.mega.learning.recording;
 
-import rsalesc.baf2.core.utils.Pair;
-import rsalesc.mega.utils.BatchIterable;
+import rsalesc.runner.FileUtils;
 import rsalesc.runner.SerializeHelper;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.Predicate;
 
 /**
  * Created by Roberto Sales on 02/10/17.
  */
-public class DuelRecordPackage implements Iterable<DuelRecord>, BatchIterable<DuelRecord> {
+public class DuelRecordPackage implements RecordPack {
+    private static final String INFO_FILE = "/index.info";
+    private static final int DEFAULT_PREFETCH = 4;
+    private static final int SAVES_PER_FLUSH = 32;
+
+    private static ExecutorService prefetchService;
+
     private final FileSystem zipFs;
-    private final Predicate<DuelRecord> predicate;
+    private final Predicate<DuelRecordInfo> predicate;
     private Long shufflingSeed;
+    private int prefetch = DEFAULT_PREFETCH;
+
+    private List<Path> paths;
+    private HashMap<String, Info> infos;
+    private boolean infosDirty = false;
+    private int unflushedSaves = 0;
 
-    public DuelRecordPackage(FileSystem zipFs, Predicate<DuelRecord> predicate) {
+    public DuelRecordPackage(FileSystem zipFs, Predicate<DuelRecordInfo> predicate) {
         this.zipFs = zipFs;
         this.predicate = predicate;
     }
 
-    public DuelRecordPackage(FileSystem zipFs, Predicate<DuelRecord> predicate, long seed) {
+    public DuelRecordPackage(FileSystem zipFs, Predicate<DuelRecordInfo> predicate, long seed) {
         this.zipFs = zipFs;
         this.predicate = predicate;
         this.shufflingSeed = seed;
     }
 
+    public DuelRecordPackage(FileSystem zipFs) {
+        this(zipFs, null);
+    }
+
     public void setSeed(Long seed) {
         this.shufflingSeed = seed;
     }
 
+    /**
+     * How many records ahead of the consumer are read and deserialized in background.
+     */
+    public void setPrefetch(int prefetch) {
+        this.prefetch = Math.max(prefetch, 0);
+    }
+
+    /**
+     * Persists the infos decoded while reading, if any, and closes the pack.
+     */
     public void close() throws IOException {
+        flushInfos();
         zipFs.close();
     }
 
     public void save(DuelRecord record) throws IOException {
-        DuelRecordFS.save(zipFs, record);
+        List<Path> index = getIndex();
+
+        String inner = DuelRecordFS.getInnerFile(index.isEmpty() ? 0 : getNextIndex(index));
+        FileUtils.compressedWrite(zipFs, inner, SerializeHelper.convertToByteArray(record).get());
+
+        Path path = zipFs.getPath("/" + inner);
+        index.add(path);
+        index.sort(Comparator.naturalOrder());
+
+        getInfos().put(path.toString(), new Info(record));
+        infosDirty = true;
+
+        // rewriting the index on every save is quadratic, and a stale index is
+        // fine: records missing from it are decoded again the next time
+        if(++unflushedSaves >= SAVES_PER_FLUSH)
+            flushInfos();
     }
 
-    public DuelRecordPackage(FileSystem zipFs) {
-        this(zipFs, null);
+    private static int getNextIndex(List<Path> index) {
+        int res = 0;
+        for(Path path : index) {
+            String name = path.getFileName().toString();
+            res = Math.max(res, Integer.parseInt(name.substring(0, name.length() - 3)) + 1);
+        }
+
+        return res;
     }
 
-    public List<Path> getRecordInnerPaths() throws IOException {
+    /**
+     * Walks the zip filesystem once; later calls reuse the same sorted listing.
+     */
+    private List<Path> getIndex() throws IOException {
+        if(paths != null)
+            return paths;
+
         PathMatcher matcher = zipFs.getPathMatcher("regex:/?[0-9]+\\.dr");
 
         ArrayList<Path> matches = new ArrayList<>();
@@ -89,101 +144,219 @@ public class DuelRecordPackage implements Iterable<DuelRecord>, BatchIterable<Du
 
         Files.walkFileTree(zipFs.getPath("/"), visitor);
 
-        matches.sort(new Comparator<Path>() {
-            @Override
-            public int compare(Path o1, Path o2) {
-                return o1.compareTo(o2);
-            }
-        });
+        matches.sort(Comparator.naturalOrder());
+
+        return paths = matches;
+    }
+
+    public List<Path> getRecordInnerPaths() throws IOException {
+        ArrayList<Path> res = new ArrayList<>(getIndex());
 
         if(shufflingSeed != null) {
-            Collections.shuffle(matches, new Random(shufflingSeed));
+            Collections.shuffle(res, new Random(shufflingSeed));
         }
 
-        return matches;
+        return res;
     }
 
-    public Iterator iterator() {
-        return new Iterator();
+    /******* RECORD INFO *******/
+
+    private HashMap<String, Info> getInfos() {
+        if(infos != null)
+            return infos;
+
+        infos = new HashMap<>();
+
+        if(FileUtils.compressedExists(zipFs, INFO_FILE)) {
+            try {
+                Optional<HashMap<String, Info>> stored =
+                        SerializeHelper.convertFrom(FileUtils.compressedRead(zipFs, INFO_FILE));
+                stored.ifPresent(map -> infos.putAll(map));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return infos;
     }
 
-    private int count(Predicate<DuelRecord> predicate) {
-        int res = 0;
+    /**
+     * Returns the cached info of a record, decoding it only if it was never seen before.
+     * Records that cannot be decoded have null info.
+     */
+    private Info getInfo(Path path) throws IOException {
+        HashMap<String, Info> cached = getInfos();
+        String key = path.toString();
 
-        for (DuelRecord record : this) {
-            if (predicate.test(record))
-                res++;
+        if(cached.containsKey(key))
+            return cached.get(key);
+
+        DuelRecord record = read(path);
+        Info info = record == null ? null : new Info(record);
+        cached.put(key, info);
+        infosDirty = true;
+
+        return info;
+    }
+
+    /**
+     * Only called from close and every SAVES_PER_FLUSH saves, so reading a pack never writes to it.
+     */
+    private void flushInfos() {
+        if(!infosDirty)
+            return;
+
+        try {
+            FileUtils.compressedWrite(zipFs, INFO_FILE, SerializeHelper.convertToByteArray(infos).get());
+            infosDirty = false;
+            unflushedSaves = 0;
+        } catch (IOException | RuntimeException e) {
+            // keep the infos in memory, they will be recomputed next time
+            e.printStackTrace();
+        }
+    }
+
+    private boolean accepts(Path path) throws IOException {
+        if(predicate == null)
+            return true;
+
+        Info info = getInfo(path);
+        return info != null && predicate.test(info);
+    }
+
+    private static DuelRecord read(Path path) throws IOException {
+        byte[] read = Files.readAllBytes(path);
+        Optional<DuelRecord> optional = SerializeHelper.convertFrom(read);
+        return optional.orElse(null);
+    }
+
+    /******* ITERATION *******/
+
+    private static synchronized ExecutorService getPrefetchService() {
+        if(prefetchService == null) {
+            prefetchService = Executors.newFixedThreadPool(2, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "record-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return prefetchService;
+    }
+
+    /**
+     * Paths of the records accepted by the predicate, in iteration order.
+     */
+    private List<Path> getAcceptedPaths() throws IOException {
+        List<Path> res = new ArrayList<>();
+        for(Path path : getRecordInnerPaths()) {
+            if(accepts(path))
+                res.add(path);
         }
 
         return res;
     }
 
+    public Iterator iterator() {
+        try {
+            return new Iterator(getAcceptedPaths());
+        } catch (IOException e) {
+            throw new IllegalStateException("error listing records of DuelRecordPackage", e);
+        }
+    }
+
     public int count() throws IOException {
         if(predicate == null)
-            return getRecordInnerPaths().size();
+            return getIndex().size();
         else
-            return count(duelRecord -> true);
+            return getAcceptedPaths().size();
     }
 
-    public class Iterator implements java.util.Iterator<DuelRecord> {
-        private Path current = null;
+    public static class Info implements DuelRecordInfo, Serializable {
+        private static final long serialVersionUID = 8291823110L;
 
-        private Path lookAfter(Path cur) throws IOException {
-            List<Path> paths = getRecordInnerPaths();
+        private final String enemyName;
+        private final int rounds;
+        private final int eventCount;
 
-            int pos = -1;
-            if(current != null) {
-                pos = paths.indexOf(cur);
-                if (pos == -1)
-                    throw new IllegalStateException("iterated file could not be found in DuelRecordPackage");
-            }
+        public Info(DuelRecord record) {
+            this.enemyName = record.getEnemyName();
+            this.rounds = record.getRounds();
+            this.eventCount = record.getEventCount();
+        }
 
-            if(pos + 1 >= paths.size())
-                return null;
+        @Override
+        public String getEnemyName() {
+            return enemyName;
+        }
 
-            return paths.get(pos + 1);
+        @Override
+        public int getRounds() {
+            return rounds;
         }
 
-        private Pair<Path, DuelRecord> lookReallyAfter(Path cur) throws IOException {
-            Path nextPath = cur;
-            while((nextPath = lookAfter(nextPath)) != null) {
-                byte[] read = Files.readAllBytes(nextPath);
-                Optional<DuelRecord> optional = SerializeHelper.convertFrom(read);
-                DuelRecord record = optional.orElseGet(null);
-                if(predicate == null || record != null && predicate.test(record))
-                    return new Pair<>(nextPath, record);
-            }
+        @Override
+        public int getEventCount() {
+            return eventCount;
+        }
+    }
 
-            return null;
+    public class Iterator implements java.util.Iterator<DuelRecord> {
+        private final List<Path> accepted;
+        private final ArrayDeque<Future<DuelRecord>> pending = new ArrayDeque<>();
+        private int cursor = 0;
+        private DuelRecord lookahead;
+
+        private Iterator(List<Path> accepted) {
+            this.accepted = accepted;
+        }
+
+        private void schedule() {
+            while(cursor < accepted.size() && pending.size() < Math.max(prefetch, 1)) {
+                Path path = accepted.get(cursor++);
+                Callable<DuelRecord> task = () -> read(path);
+
+                if(prefetch == 0) {
+                    FutureTask<DuelRecord> now = new FutureTask<>(task);
+                    now.run();
+                    pending.add(now);
+                } else {
+                    pending.add(getPrefetchService().submit(task));
+                }
+            }
         }
 
         @Override
         public boolean hasNext() {
-            try {
-                if(predicate == null)
-                    return lookAfter(current) != null;
-                else
-                    return lookReallyAfter(current) != null;
-            } catch (IOException e) {
-                e.printStackTrace();
-                return false;
+            while(lookahead == null) {
+                schedule();
+                if(pending.isEmpty())
+                    return false;
+
+                try {
+                    lookahead = pending.poll().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while reading DuelRecordPackage");
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                }
             }
+
+            return true;
         }
 
         @Override
         public DuelRecord next() {
-            Pair<Path, DuelRecord> next;
-            try {
-                next = lookReallyAfter(current);
-            } catch (IOException e) {
-                throw new IllegalStateException("error finding or reading iterated file in DuelRecordPackage");
-            }
-
-            if(next == null)
+            if(!hasNext())
                 throw new IndexOutOfBoundsException("iterator somehow exceeded DuelRecordPackage bounds");
 
-            current = next.first;
-            return next.second;
+            DuelRecord res = lookahead;
+            lookahead = null; // GC
+            return res;
         }
     }
 }
@@ -29,47 +29,49 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
 
 /**
  * Created by Roberto Sales on 02/10/17.
  */
 public class DuelRecordSuperPack implements Iterable<DuelRecord>, BatchIterable<DuelRecord> {
-    private final ArrayList<DuelRecordPackage> packs = new ArrayList<>();
+    private final ArrayList<RecordPack> packs = new ArrayList<>();
     private Long seed;
 
-    public DuelRecordSuperPack(Collection<DuelRecordPackage> packs, Long seed) {
+    public DuelRecordSuperPack(Collection<? extends RecordPack> packs, Long seed) {
         this.seed = seed;
 
         if(seed != null) {
-            for (DuelRecordPackage pack : packs)
+            for (RecordPack pack : packs)
                 pack.setSeed(seed);
         }
 
         this.packs.addAll(packs);
     }
 
-    public DuelRecordSuperPack(Collection<DuelRecordPackage> packs) {
+    public DuelRecordSuperPack(Collection<? extends RecordPack> packs) {
         this(packs, null);
     }
 
-    public DuelRecordSuperPack(DuelRecordPackage ...packs) {
+    public DuelRecordSuperPack(RecordPack ...packs) {
         this(Arrays.asList(packs));
     }
 
     public void setSeed(Long seed) {
         this.seed = seed;
-        for(DuelRecordPackage pack : packs)
+        for(RecordPack pack : packs)
             pack.setSeed(seed);
     }
 
-    public ArrayList<DuelRecordPackage> getPackages() {
-        ArrayList<DuelRecordPackage> res = new ArrayList<>();
+    public ArrayList<RecordPack> getPackages() {
+        ArrayList<RecordPack> res = new ArrayList<>();
         res.addAll(packs);
         return res;
     }
 
     public static DuelRecordSuperPack merge(DuelRecordSuperPack ...superPacks) {
-        ArrayList<DuelRecordPackage> packs = new ArrayList<>();
+        ArrayList<RecordPack> packs = new ArrayList<>();
         for(DuelRecordSuperPack superPack : superPacks) {
             packs.addAll(superPack.getPackages());
         }
@@ -78,7 +80,7 @@ public class DuelRecordSuperPack implements Iterable<DuelRecord>, BatchIterable<
     }
 
     public void tryClosing() {
-        for(DuelRecordPackage pack : packs) {
+        for(RecordPack pack : packs) {
             try {
                 pack.close();
             } catch (IOException e) {
@@ -92,9 +94,50 @@ public class DuelRecordSuperPack implements Iterable<DuelRecord>, BatchIterable<
         return new Iterator();
     }
 
+    /**
+     * Takes one record of each package in turn, visiting the packages in an order
+     * shuffled by seed, so that every prefix is spread over all of them.
+     */
+    public java.util.Iterator<DuelRecord> interleavedIterator(long seed) {
+        return new InterleavedIterator(new Random(seed));
+    }
+
+    private class InterleavedIterator implements java.util.Iterator<DuelRecord> {
+        private final ArrayList<java.util.Iterator<DuelRecord>> iterators = new ArrayList<>();
+        private int cursor = 0;
+
+        private InterleavedIterator(Random random) {
+            for(RecordPack pack : packs)
+                iterators.add(pack.iterator());
+
+            Collections.shuffle(iterators, random);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while(!iterators.isEmpty()) {
+                cursor %= iterators.size();
+                if(iterators.get(cursor).hasNext())
+                    return true;
+
+                iterators.remove(cursor);
+            }
+
+            return false;
+        }
+
+        @Override
+        public DuelRecord next() {
+            if(!hasNext())
+                throw new IndexOutOfBoundsException("exceeded DuelRecordSuperPack bounds");
+
+            return iterators.get(cursor++).next();
+        }
+    }
+
     public class Iterator implements java.util.Iterator<DuelRecord> {
         private int packageIndex = -1;
-        private DuelRecordPackage.Iterator iterator = null;
+        private java.util.Iterator<DuelRecord> iterator = null;
 
         public void goAhead() {
             packageIndex++;
@@ -32,15 +32,8 @@ import robocode.control.snapshot.IDebugProperty;
 import robocode.control.snapshot.IRobotSnapshot;
 import robocode.control.snapshot.ITurnSnapshot;
 import robocode.control.snapshot.RobotState;
-import rsalesc.baf2.core.utils.Pair;
-import rsalesc.baf2.waves.BreakType;
-import rsalesc.mega.utils.TargetingLog;
 import rsalesc.runner.DuelBattleRunner;
 import rsalesc.runner.RobocodeEngineProvider;
-import rsalesc.runner.SerializeHelper;
-
-import java.util.ArrayList;
-import java.util.Optional;
 
 /**
  * Created by Roberto Sales on 01/10/17.
@@ -61,6 +54,10 @@ public class DuelRecorderRunner {
         this.engineProvider = new RobocodeEngineProvider(engine);
     }
 
+    public DuelRecorderRunner(RobocodeEngineProvider engineProvider) {
+        this.engineProvider = engineProvider;
+    }
+
     public void log() {
         logs = true;
     }
@@ -74,20 +71,30 @@ public class DuelRecorderRunner {
     }
 
     public DuelRecord run(String yourBot, String enemyBot, int rounds) {
+        return runColumnar(yourBot, enemyBot, rounds).toDuelRecord();
+    }
+
+    /**
+     * Runs a battle and returns its record as a columnar block, ready to
+     * be appended to a columnar file (see DuelRecordFS.saveColumnar).
+     */
+    public ColumnarDuelRecord runColumnar(String yourBot, String enemyBot, int rounds) {
         DuelBattleRunner runner = new DuelBattleRunner(yourBot, enemyBot, rounds);
         DuelObserver observer = new DuelObserver(yourBot, enemyBot);
         if(logs) observer.log();
         runner.run(getEngine(), observer);
 
+        ColumnarDuelRecord record = observer.getRecords().build(enemyBot, rounds);
         System.gc();
 
-        return new DuelRecord(enemyBot, observer.getLogs(), rounds);
+        return record;
     }
 
     private static class DuelObserver extends BattleAdaptor {
         private final String myself;
         private final String enemyName;
-        private ArrayList<Pair<TargetingLog, BreakType>> logs = new ArrayList<>();
+        private final ColumnarDuelRecordBuilder records = new ColumnarDuelRecordBuilder();
+        private final GunRecordDecoder decoder = new GunRecordDecoder();
 
         private boolean logFlag = false;
 
@@ -100,8 +107,8 @@ public class DuelRecorderRunner {
             logFlag = true;
         }
 
-        public ArrayList<Pair<TargetingLog, BreakType>> getLogs() {
-            return logs;
+        public ColumnarDuelRecordBuilder getRecords() {
+            return records;
         }
 
         @Override
@@ -125,12 +132,8 @@ public class DuelRecorderRunner {
                     IDebugProperty[] properties = robotSnapshot.getDebugProperties();
 
                     for(IDebugProperty property : properties) {
-                        if(property.getKey().equals(GunRecorder.GUN_RECORD_HINT)) {
-                            Optional data = SerializeHelper.convertFrom(property.getValue());
-                            if(data.isPresent()) {
-                                logs.addAll((ArrayList) data.get());
-                            }
-                        }
+                        if(property.getKey().equals(GunRecorder.GUN_RECORD_HINT) && property.getValue() != null)
+                            decoder.decode(property.getValue(), records);
                     }
                 }
             }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.learning.recording;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+import static rsalesc.mega.learning.recording.DuelRecordColumns.*;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Reads messages written by GunRecordEncoder and appends their records
+ * straight into the columns of a ColumnarDuelRecordBuilder.
+ */
+public class GunRecordDecoder {
+    private byte[] bytes;
+    private int position;
+
+    private final double[] rowDoubles = new double[DOUBLES.length];
+    private final long[] rowLongs = new long[LONGS.length];
+    private final int[] rowInts = new int[INTS.length];
+    private final byte[] rowBytes = new byte[BYTES.length];
+    private final double[][] rowArrays = new double[ARRAYS.length][];
+
+    /**
+     * Decodes a message into out, returning how many records were appended.
+     */
+    public int decode(String message, ColumnarDuelRecordBuilder out) {
+        bytes = Base64.getDecoder().decode(message);
+        position = 0;
+
+        if(bytes.length == 0 || bytes[position++] != GunRecordEncoder.FORMAT)
+            throw new IllegalStateException("unsupported gun record message format");
+
+        Arrays.fill(rowDoubles, 0);
+        Arrays.fill(rowLongs, 0);
+        Arrays.fill(rowInts, 0);
+
+        int count = (int) readVarint();
+
+        for(int i = 0; i < count; i++) {
+            int flags = bytes[position++];
+            rowBytes[AIMING.index] = (byte) (flags & 1);
+            rowBytes[PRESENCE.index] = (byte) (flags >>> 1);
+            rowBytes[BREAK_TYPE.index] = bytes[position++];
+
+            long mask = readVarint();
+            int bit = 0;
+
+            for(int c = 0; c < DOUBLES.length; c++, bit++) {
+                if((mask & 1L << bit) != 0)
+                    rowDoubles[c] = readDouble();
+            }
+
+            for(int c = 0; c < LONGS.length; c++, bit++) {
+                if((mask & 1L << bit) != 0)
+                    rowLongs[c] += unZigZag(readVarint());
+            }
+
+            for(int c = 0; c < INTS.length; c++, bit++) {
+                if((mask & 1L << bit) != 0)
+                    rowInts[c] += (int) unZigZag(readVarint());
+            }
+
+            for(int c = 0; c < ARRAYS.length; c++) {
+                int length = (int) readVarint() - 1;
+                double[] values = length < 0 ? null : new double[length];
+
+                for(int j = 0; j < length; j++)
+                    values[j] = readDouble();
+
+                rowArrays[c] = values;
+            }
+
+            out.addRow(rowDoubles, rowLongs, rowInts, rowBytes, rowArrays);
+        }
+
+        bytes = null; // GC
+        return count;
+    }
+
+    private double readDouble() {
+        long bits = 0;
+        for(int i = 0; i < 8; i++)
+            bits = bits << 8 | bytes[position++] & 0xff;
+
+        return Double.longBitsToDouble(bits);
+    }
+
+    private long readVarint() {
+        long res = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = bytes[position++];
+            res |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+
+        return res;
+    }
+
+    private static long unZigZag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.learning.recording;
+
+import rsalesc.baf2.waves.BreakType;
+import rsalesc.mega.utils.TargetingLog;
+
+import java.util.Arrays;
+
+import static rsalesc.mega.learning.recording.DuelRecordColumns.*;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Packs the logs of a tick into a Base64 string small enough to travel as a
+ * debug property. Fields follow the order of DuelRecordColumns; each record only
+ * carries the fields that changed since the previous record of the same message,
+ * with longs and ints as zig-zag varint deltas. Messages are self-contained, so
+ * skipped turns never desynchronize the decoder.
+ *
+ * Message layout:
+ *   format   FORMAT byte
+ *   count    varint
+ *   records  flags byte (aiming | presence << 1), break type byte,
+ *            varint mask of changed fields (doubles, then longs, then ints),
+ *            changed doubles (raw 8 bytes), changed longs and ints (zig-zag varint deltas),
+ *            then for each array column its varint length + 1 (0 for null) and raw values
+ */
+public class GunRecordEncoder {
+    public static final byte FORMAT = 1;
+
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    static {
+        if(DOUBLES.length + LONGS.length + INTS.length > 64)
+            throw new IllegalStateException("too many columns for the change mask of GunRecordEncoder");
+    }
+
+    private byte[] bytes = new byte[512];
+    private char[] chars = new char[0];
+    private int position;
+    private int count;
+
+    private final long[] lastDoubles = new long[DOUBLES.length];
+    private final long[] lastLongs = new long[LONGS.length];
+    private final int[] lastInts = new int[INTS.length];
+
+    private final double[] rowDoubles = new double[DOUBLES.length];
+    private final long[] rowLongs = new long[LONGS.length];
+    private final int[] rowInts = new int[INTS.length];
+    private final byte[] rowBytes = new byte[BYTES.length];
+    private final double[][] rowArrays = new double[ARRAYS.length][];
+
+    public GunRecordEncoder() {
+        reset();
+    }
+
+    /**
+     * Starts a new message.
+     */
+    public void reset() {
+        Arrays.fill(lastDoubles, 0);
+        Arrays.fill(lastLongs, 0);
+        Arrays.fill(lastInts, 0);
+
+        // the count is only known at the end, so records start after the widest count varint
+        position = 6;
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void write(TargetingLog f, BreakType type) {
+        extract(f, type, rowDoubles, rowLongs, rowInts, rowBytes, rowArrays);
+
+        ensure(2 + 10 + 8 * DOUBLES.length + 10 * (LONGS.length + INTS.length));
+        bytes[position++] = (byte) (rowBytes[AIMING.index] | rowBytes[PRESENCE.index] << 1);
+        bytes[position++] = rowBytes[BREAK_TYPE.index];
+
+        long mask = 0;
+        int bit = 0;
+
+        for(int c = 0; c < DOUBLES.length; c++, bit++) {
+            if(Double.doubleToRawLongBits(rowDoubles[c]) != lastDoubles[c])
+                mask |= 1L << bit;
+        }
+
+        for(int c = 0; c < LONGS.length; c++, bit++) {
+            if(rowLongs[c] != lastLongs[c])
+                mask |= 1L << bit;
+        }
+
+        for(int c = 0; c < INTS.length; c++, bit++) {
+            if(rowInts[c] != lastInts[c])
+                mask |= 1L << bit;
+        }
+
+        writeVarint(mask);
+        bit = 0;
+
+        for(int c = 0; c < DOUBLES.length; c++, bit++) {
+            if((mask & 1L << bit) != 0) {
+                long bits = Double.doubleToRawLongBits(rowDoubles[c]);
+                for(int shift = 56; shift >= 0; shift -= 8)
+                    bytes[position++] = (byte) (bits >>> shift);
+                lastDoubles[c] = bits;
+            }
+        }
+
+        for(int c = 0; c < LONGS.length; c++, bit++) {
+            if((mask & 1L << bit) != 0) {
+                writeVarint(zigZag(rowLongs[c] - lastLongs[c]));
+                lastLongs[c] = rowLongs[c];
+            }
+        }
+
+        for(int c = 0; c < INTS.length; c++, bit++) {
+            if((mask & 1L << bit) != 0) {
+                writeVarint(zigZag((long) rowInts[c] - lastInts[c]));
+                lastInts[c] = rowInts[c];
+            }
+        }
+
+        for(double[] values : rowArrays) {
+            ensure(5 + (values == null ? 0 : 8 * values.length));
+            writeVarint(values == null ? 0 : values.length + 1);
+
+            if(values != null) {
+                for(double value : values) {
+                    long bits = Double.doubleToRawLongBits(value);
+                    for(int shift = 56; shift >= 0; shift -= 8)
+                        bytes[position++] = (byte) (bits >>> shift);
+                }
+            }
+        }
+
+        count++;
+    }
+
+    /**
+     * Returns the Base64 form of the records written since the last reset.
+     */
+    public String encode() {
+        // right-align the header against the first record
+        int start = 6 - 1 - varintSize(count);
+        bytes[start] = FORMAT;
+
+        int end = position;
+        position = start + 1;
+        writeVarint(count);
+        position = end;
+
+        return toBase64(start, end);
+    }
+
+    private String toBase64(int from, int to) {
+        int length = (to - from + 2) / 3 * 4;
+        if(chars.length < length)
+            chars = new char[Math.max(length, 2 * chars.length)];
+
+        int j = 0;
+        for(int i = from; i < to; i += 3) {
+            int value = (bytes[i] & 0xff) << 16
+                    | (i + 1 < to ? (bytes[i + 1] & 0xff) << 8 : 0)
+                    | (i + 2 < to ? bytes[i + 2] & 0xff : 0);
+
+            chars[j++] = BASE64[value >>> 18 & 63];
+            chars[j++] = BASE64[value >>> 12 & 63];
+            chars[j++] = i + 1 < to ? BASE64[value >>> 6 & 63] : '=';
+            chars[j++] = i + 2 < to ? BASE64[value & 63] : '=';
+        }
+
+        return new String(chars, 0, j);
+    }
+
+    private void ensure(int extra) {
+        if(position + extra > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(position + extra, 2 * bytes.length));
+    }
+
+    private void writeVarint(long value) {
+        while((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+
+        bytes[position++] = (byte) value;
+    }
+
+    private static int varintSize(long value) {
+        int res = 1;
+        while((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            res++;
+        }
+
+        return res;
+    }
+
+    private static long zigZag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.learning.recording;
+
+import org.junit.jupiter.api.Test;
+import rsalesc.baf2.core.utils.Pair;
+import rsalesc.baf2.waves.BreakType;
+import rsalesc.mega.utils.TargetingLog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static rsalesc.mega.learning.recording.DuelRecordColumnsTest.assertSameLogs;
+import static rsalesc.mega.learning.recording.DuelRecordColumnsTest.randomLogs;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class GunRecordEncoderTest {
+    @Test
+    public void roundTrip() throws IOException {
+        Random random = new Random(29);
+        ArrayList<Pair<TargetingLog, BreakType>> logs = randomLogs(random, 300);
+
+        GunRecordEncoder encoder = new GunRecordEncoder();
+        for(Pair<TargetingLog, BreakType> log : logs)
+            encoder.write(log.first, log.second);
+
+        assertEquals(logs.size(), encoder.size());
+
+        ColumnarDuelRecordBuilder builder = new ColumnarDuelRecordBuilder();
+        assertEquals(logs.size(), new GunRecordDecoder().decode(encoder.encode(), builder));
+
+        assertSameLogs(logs, builder.build("sample.Bot 1.0", 35));
+    }
+
+    /**
+     * Messages are deltas from the previous record, so a reset encoder and
+     * a reused decoder must not carry anything from one message to the next.
+     */
+    @Test
+    public void severalMessages() throws IOException {
+        Random random = new Random(31);
+        GunRecordEncoder encoder = new GunRecordEncoder();
+        GunRecordDecoder decoder = new GunRecordDecoder();
+        ColumnarDuelRecordBuilder builder = new ColumnarDuelRecordBuilder();
+
+        ArrayList<Pair<TargetingLog, BreakType>> all = new ArrayList<>();
+        for(int i = 0; i < 5; i++) {
+            ArrayList<Pair<TargetingLog, BreakType>> logs = randomLogs(random, i * 40);
+
+            encoder.reset();
+            for(Pair<TargetingLog, BreakType> log : logs)
+                encoder.write(log.first, log.second);
+
+            assertEquals(logs.size(), decoder.decode(encoder.encode(), builder));
+            all.addAll(logs);
+        }
+
+        assertSameLogs(all, builder.build("sample.Bot 1.0", 35));
+    }
+
+    @Test
+    public void unknownFormat() {
+        String message = Base64.getEncoder().encodeToString(new byte[]{GunRecordEncoder.FORMAT + 1, 0});
+        assertThrows(IllegalStateException.class,
+                () -> new GunRecordDecoder().decode(message, new ColumnarDuelRecordBuilder()));
+    }
+}
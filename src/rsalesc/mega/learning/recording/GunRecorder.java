@@ -33,7 +33,6 @@ import rsalesc.baf2.tracking.EnemyRobot;
 import rsalesc.baf2.waves.*;
 import rsalesc.mega.gunning.guns.GuessFactorGun;
 import rsalesc.mega.utils.TargetingLog;
-import rsalesc.runner.SerializeHelper;
 
 import java.util.ArrayList;
 
@@ -44,11 +43,16 @@ public class GunRecorder extends Component
         implements TickListener, TickBulletListener, BulletWaveListener, BulletWavePreciseListener {
     public static final String GUN_RECORD_HINT = "gun-recorder-events";
     private ArrayList<Pair<TargetingLog, BreakType>> accumulator = new ArrayList<>();
+    private final GunRecordEncoder encoder = new GunRecordEncoder();
     private boolean logTicks = false;
 
     @Override
     public void afterRun() {
-        getMediator().setDebugProperty(GUN_RECORD_HINT, SerializeHelper.convertToString(accumulator).get());
+        encoder.reset();
+        for(Pair<TargetingLog, BreakType> pair : accumulator)
+            encoder.write(pair.first, pair.second);
+
+        getMediator().setDebugProperty(GUN_RECORD_HINT, encoder.encode());
     }
 
     @Override
@@ -23,7 +23,6 @@
 
 package rsalesc.mega.learning.sgd;
 
-import rsalesc.baf2.core.GlobalStorage;
 import rsalesc.baf2.core.utils.R;
 import rsalesc.baf2.core.utils.Timer;
 import rsalesc.genetic.Chromosome;
@@ -319,10 +318,6 @@ public class GunGeneticSgd {
         double totalValue = 0;
         int totalPlayed = 0;
 
-        // Empty global storage
-        GlobalStorage.getInstance().clear();
-        System.gc();
-
         ArrayList<Callable<Double>> callables = new ArrayList<>();
 
         int pointer = 0;
@@ -48,6 +48,7 @@ import rsalesc.mega.movement.distancing.FallbackSurfingDistancer;
 import rsalesc.mega.utils.*;
 import rsalesc.mega.utils.stats.GaussianKernelDensity;
 import rsalesc.mega.utils.stats.GuessFactorStats;
+import rsalesc.mega.utils.stats.KernelDensity;
 import rsalesc.structures.Knn;
 
 import java.awt.*;
@@ -60,10 +61,13 @@ import java.util.List;
  * Created by Roberto Sales on 12/09/17.
  */
 public abstract class BaseSurfing extends StoreComponent implements EnemyWaveListener, EnemyWavePreciseListener {
+    private static final int DANGER_STATS_PROBE = Benchmark.getInstance().register("BaseSurfing.getDanger() stats");
     protected static final boolean PRECISE = true;
     protected static final boolean SINGLE_EVAL = false;
     protected static final String LOG_HINT = "surfing-log";
     protected static final int WALL_STICK = 160;
+    private static final KernelDensity FALLBACK_KERNEL = new GaussianKernelDensity();
+    private static final long GENERATION = (long) 1e9;
     private int breaks = 0;
 
     private final Surfer surfer;
@@ -98,7 +102,7 @@ public abstract class BaseSurfing extends StoreComponent implements EnemyWaveLis
     }
 
     public static GuessFactorStats getFallbackStats(double distance, double velocity) {
-        GuessFactorStats stats = new GuessFactorStats(new GaussianKernelDensity());
+        GuessFactorStats stats = new GuessFactorStats(FALLBACK_KERNEL);
         double hitAngle = Physics.hitAngle(distance);
         double mea = Physics.maxEscapeAngle(velocity);
 
@@ -144,7 +148,18 @@ public abstract class BaseSurfing extends StoreComponent implements EnemyWaveLis
     @Override
     public void onEnemyWaveBreak(EnemyWave wave, MyRobot me) {
         if(!wave.isHeat())
-            breaks++;
+            nextGeneration();
+    }
+
+    @Override
+    public void onEnemyWavePass(EnemyWave wave, MyRobot me) {
+        long time = wave.getTime();
+        surfer.evict(i -> Math.floorDiv(i, GENERATION) == time);
+    }
+
+    private void nextGeneration() {
+        breaks++;
+        surfer.evict(i -> Math.floorMod(i, GENERATION) < breaks);
     }
 
 
@@ -178,7 +193,7 @@ public abstract class BaseSurfing extends StoreComponent implements EnemyWaveLis
         if (f == null)
             return;
 
-        breaks++;
+        nextGeneration();
 
         f.hitAngle = angle;
         f.hitDistance = getMediator().getPoint().distance(wave.getSource());
@@ -196,7 +211,7 @@ public abstract class BaseSurfing extends StoreComponent implements EnemyWaveLis
         if (f == null)
             return;
 
-        breaks++;
+        nextGeneration();
 
         f.hitAngle = angle;
         f.hitDistance = getMediator().getPoint().distance(wave.getSource());
@@ -212,7 +227,7 @@ public abstract class BaseSurfing extends StoreComponent implements EnemyWaveLis
         if (log == null)
             throw new IllegalStateException();
 
-        Benchmark.getInstance().start("BaseSurfing.getDanger() stats");
+        Benchmark.getInstance().start(DANGER_STATS_PROBE);
         IMea mea = precise ? log : log.imprecise();
 
         if (intersection == null) {
@@ -304,7 +319,7 @@ public abstract class BaseSurfing extends StoreComponent implements EnemyWaveLis
     }
 
     protected long getCacheIndex(Wave wave) {
-        return wave.getTime() * (long) 1e9 + breaks;
+        return wave.getTime() * GENERATION + breaks;
     }
 
     protected void fallback(Controller controller, EnemyRobot enemy) {
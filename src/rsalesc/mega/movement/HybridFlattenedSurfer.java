@@ -26,6 +26,7 @@ package rsalesc.mega.movement;
 import robocode.Rules;
 import rsalesc.baf2.core.StorageNamespace;
 import rsalesc.baf2.core.StoreComponent;
+import rsalesc.baf2.core.utils.BoundedCache;
 import rsalesc.baf2.core.benchmark.Benchmark;
 import rsalesc.baf2.core.utils.geometry.AngularRange;
 import rsalesc.baf2.tracking.EnemyLog;
@@ -34,22 +35,28 @@ import rsalesc.mega.utils.IMea;
 import rsalesc.mega.utils.NamedStatData;
 import rsalesc.mega.utils.TargetingLog;
 import rsalesc.mega.utils.TimestampedGFRange;
+import rsalesc.mega.utils.segmentation.GFSegmentationSet;
 import rsalesc.mega.utils.segmentation.SegmentationView;
-import rsalesc.mega.utils.segmentation.WeightedEntry;
 import rsalesc.mega.utils.segmentation.WeightedSegmentedData;
 import rsalesc.mega.utils.stats.GuessFactorStats;
+import rsalesc.mega.utils.stats.KernelDensity;
 import rsalesc.mega.utils.stats.PowerKernelDensity;
 import rsalesc.structures.Knn;
 import rsalesc.structures.KnnView;
 
 import java.util.List;
-import java.util.TreeMap;
+import java.util.function.LongPredicate;
 
 /**
  * Created by Roberto Sales on 12/09/17.
  */
 public abstract class HybridFlattenedSurfer extends StoreComponent implements Surfer {
-    private TreeMap<Long, GuessFactorStats> statsCache = new TreeMap<>();
+    private static final int STATS_PROBE = Benchmark.getInstance().register("HybridFlattenedSurfer.getStats() non-cached");
+    private static final KernelDensity KERNEL = new PowerKernelDensity(0.15);
+
+    private static final int CACHE_CAPACITY = 256;
+    private final BoundedCache<Long, GuessFactorStats> statsCache =
+            new BoundedCache<>("HybridFlattenedSurfer.stats", CACHE_CAPACITY);
 
     public abstract SegmentationView<TimestampedGFRange> getNewSegmentationView();
     public abstract KnnView<TimestampedGFRange> getNewFlattenerKnnSet();
@@ -126,10 +133,11 @@ public abstract class HybridFlattenedSurfer extends StoreComponent implements Su
         if (f == null)
             throw new IllegalStateException();
 
-        if(statsCache.containsKey(cacheIndex))
-            return statsCache.get(cacheIndex);
+        GuessFactorStats cached = statsCache.get(cacheIndex);
+        if(cached != null)
+            return cached;
 
-        Benchmark.getInstance().start("HybridFlattenedSurfer.getStats() non-cached");
+        Benchmark.getInstance().start(STATS_PROBE);
 
         SegmentationView<TimestampedGFRange> view = getSegmentationView(enemyLog.getName());
 
@@ -139,18 +147,18 @@ public abstract class HybridFlattenedSurfer extends StoreComponent implements Su
 
         List<WeightedSegmentedData<TimestampedGFRange>> data = getMatches(enemyLog, f, cacheIndex, o);
 
-        GuessFactorStats stats = new GuessFactorStats(new PowerKernelDensity(0.15));
+        GuessFactorStats stats = new GuessFactorStats(KERNEL);
 
-        for(WeightedSegmentedData<TimestampedGFRange> entry : data) {
-            for(WeightedEntry<TimestampedGFRange> range : entry.getWeightedData()) {
-                stats.add(stats.getBucket(range.payload.mean), range.weight, 1);
-            }
-        }
+        double[] histogram = new double[GuessFactorStats.BUCKET_COUNT];
+        for(WeightedSegmentedData<TimestampedGFRange> entry : data)
+            entry.addHistogram(histogram, GFSegmentationSet.BUCKETER);
+
+        stats.addHistogram(histogram, 1);
 
 
         List<Knn.Entry<TimestampedGFRange>> found = getFlattenerMatches(enemyLog, f, cacheIndex, o);
 
-        GuessFactorStats flatStats = new GuessFactorStats(new PowerKernelDensity(0.15)); // TODO: rethink
+        GuessFactorStats flatStats = new GuessFactorStats(KERNEL); // TODO: rethink
 
         for (Knn.Entry<TimestampedGFRange> entry : found) {
             double gf = entry.payload.mean;
@@ -168,4 +176,8 @@ public abstract class HybridFlattenedSurfer extends StoreComponent implements Su
         return finalStats;
     }
 
+    @Override
+    public void evict(LongPredicate stale) {
+        statsCache.evictIf(stale::test);
+    }
 }
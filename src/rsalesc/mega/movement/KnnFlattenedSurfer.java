@@ -25,6 +25,7 @@ package rsalesc.mega.movement;
 
 import rsalesc.baf2.core.StorageNamespace;
 import rsalesc.baf2.core.StoreComponent;
+import rsalesc.baf2.core.utils.BoundedCache;
 import rsalesc.baf2.core.benchmark.Benchmark;
 import rsalesc.baf2.core.utils.geometry.AngularRange;
 import rsalesc.baf2.tracking.EnemyLog;
@@ -34,6 +35,7 @@ import rsalesc.mega.utils.NamedStatData;
 import rsalesc.mega.utils.TargetingLog;
 import rsalesc.mega.utils.TimestampedGFRange;
 import rsalesc.mega.utils.stats.GuessFactorStats;
+import rsalesc.mega.utils.stats.KernelDensity;
 import rsalesc.mega.utils.stats.PowerKernelDensity;
 import rsalesc.structures.Knn;
 import rsalesc.structures.KnnProvider;
@@ -41,15 +43,22 @@ import rsalesc.structures.KnnView;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.function.LongPredicate;
 
 /**
  * Created by Roberto Sales on 12/09/17.
  */
 public abstract class KnnFlattenedSurfer extends StoreComponent implements Surfer, KnnProvider<TimestampedGFRange> {
-    private TreeMap<Long, List<Knn.Entry<TimestampedGFRange>>> cache = new TreeMap<>();
-    private TreeMap<Long, List<Knn.Entry<TimestampedGFRange>>> flatCache = new TreeMap<>();
-    private TreeMap<Long, GuessFactorStats> statsCache = new TreeMap<>();
+    private static final int STATS_PROBE = Benchmark.getInstance().register("KnnFlattenedSurfer.getStats() non-cached");
+    private static final KernelDensity KERNEL = new PowerKernelDensity(0.1);
+
+    private static final int CACHE_CAPACITY = 256;
+    private final BoundedCache<Long, List<Knn.Entry<TimestampedGFRange>>> cache =
+            new BoundedCache<>("KnnFlattenedSurfer.matches", CACHE_CAPACITY);
+    private final BoundedCache<Long, List<Knn.Entry<TimestampedGFRange>>> flatCache =
+            new BoundedCache<>("KnnFlattenedSurfer.flatMatches", CACHE_CAPACITY);
+    private final BoundedCache<Long, GuessFactorStats> statsCache =
+            new BoundedCache<>("KnnFlattenedSurfer.stats", CACHE_CAPACITY);
 
     public abstract KnnView<TimestampedGFRange> getNewFlattenerKnnSet();
     public abstract boolean flattenerEnabled(NamedStatData o);
@@ -116,7 +125,8 @@ public abstract class KnnFlattenedSurfer extends StoreComponent implements Surfe
             }
 
             res = view.query(f, o);
-            cache.put(cacheIndex, res);
+            if(cacheIndex != -1)
+                cache.put(cacheIndex, res);
         }
         return res;
     }
@@ -131,7 +141,8 @@ public abstract class KnnFlattenedSurfer extends StoreComponent implements Surfe
             }
 
             res = view.query(f, o);
-            flatCache.put(cacheIndex, res);
+            if(cacheIndex != -1)
+                flatCache.put(cacheIndex, res);
         }
         return res;
     }
@@ -142,10 +153,11 @@ public abstract class KnnFlattenedSurfer extends StoreComponent implements Surfe
         if (f == null)
             throw new IllegalStateException();
 
-        if(statsCache.containsKey(cacheIndex))
-            return statsCache.get(cacheIndex);
+        GuessFactorStats cached = statsCache.get(cacheIndex);
+        if(cached != null)
+            return cached;
 
-        Benchmark.getInstance().start("KnnFlattenedSurfer.getStats() non-cached");
+        Benchmark.getInstance().start(STATS_PROBE);
 
         List<Knn.Entry<TimestampedGFRange>> found = getMatches(enemyLog, f, cacheIndex, o);
 
@@ -156,7 +168,7 @@ public abstract class KnnFlattenedSurfer extends StoreComponent implements Surfe
 //
 //        double invMean = found.size() / sum;
 
-        GuessFactorStats stats = new GuessFactorStats(new PowerKernelDensity(0.1)); // TODO: rethink
+        GuessFactorStats stats = new GuessFactorStats(KERNEL); // TODO: rethink
 
         for (Knn.Entry<TimestampedGFRange> entry : found) {
             double gf = entry.payload.mean;
@@ -173,7 +185,7 @@ public abstract class KnnFlattenedSurfer extends StoreComponent implements Surfe
 //
 //        invMean = found.size() / sum;
 
-        GuessFactorStats flatStats = new GuessFactorStats(new PowerKernelDensity(0.1)); // TODO: rethink
+        GuessFactorStats flatStats = new GuessFactorStats(KERNEL); // TODO: rethink
 
         for (Knn.Entry<TimestampedGFRange> entry : found) {
             double gf = entry.payload.mean;
@@ -191,4 +203,10 @@ public abstract class KnnFlattenedSurfer extends StoreComponent implements Surfe
         return finalStats;
     }
 
+    @Override
+    public void evict(LongPredicate stale) {
+        cache.evictIf(stale::test);
+        flatCache.evictIf(stale::test);
+        statsCache.evictIf(stale::test);
+    }
 }
@@ -23,8 +23,9 @@
 
 package rsalesc.mega.movement;
 
-import rsalesc.baf2.core.StorageNamespace;
+import rsalesc.baf2.core.StorageSlot;
 import rsalesc.baf2.core.StoreComponent;
+import rsalesc.baf2.core.utils.BoundedCache;
 import rsalesc.baf2.core.utils.geometry.AngularRange;
 import rsalesc.baf2.tracking.EnemyLog;
 import rsalesc.baf2.waves.BreakType;
@@ -33,28 +34,42 @@ import rsalesc.mega.utils.NamedStatData;
 import rsalesc.mega.utils.TargetingLog;
 import rsalesc.mega.utils.TimestampedGFRange;
 import rsalesc.mega.utils.stats.GuessFactorStats;
+import rsalesc.mega.utils.stats.KernelDensity;
 import rsalesc.mega.utils.stats.PowerKernelDensity;
 import rsalesc.structures.Knn;
 import rsalesc.structures.KnnProvider;
 import rsalesc.structures.KnnView;
 
+import java.util.HashMap;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.function.LongPredicate;
 
 /**
  * Created by Roberto Sales on 12/09/17.
  */
 public abstract class KnnSurfer extends StoreComponent implements Surfer, KnnProvider<TimestampedGFRange> {
-    private TreeMap<Long, List<Knn.Entry<TimestampedGFRange>>> cache = new TreeMap<>();
-    private TreeMap<Long, GuessFactorStats> statsCache = new TreeMap<>();
+    private static final KernelDensity KERNEL = new PowerKernelDensity(0.1);
+
+    private static final int CACHE_CAPACITY = 256;
+    private final BoundedCache<Long, List<Knn.Entry<TimestampedGFRange>>> cache =
+            new BoundedCache<>("KnnSurfer.matches", CACHE_CAPACITY);
+    private final BoundedCache<Long, GuessFactorStats> statsCache =
+            new BoundedCache<>("KnnSurfer.stats", CACHE_CAPACITY);
+
+    // slots resolved once per enemy, so getKnnSet stays off the namespace maps
+    private final HashMap<String, StorageSlot<KnnView<TimestampedGFRange>>> knnSlots = new HashMap<>();
 
     public KnnView<TimestampedGFRange> getKnnSet(String name) {
-        StorageNamespace ns = getStorageNamespace().namespace(name);
-        if (ns.contains("knn"))
-            return (KnnView) ns.get("knn");
+        StorageSlot<KnnView<TimestampedGFRange>> slot = knnSlots.get(name);
+        if(slot == null)
+            knnSlots.put(name, slot = getStorageNamespace().namespace(name).slot("knn"));
+
+        KnnView<TimestampedGFRange> knn = slot.get();
+        if (knn != null)
+            return knn;
 
-        KnnView<TimestampedGFRange> knn = getNewKnnSet();
-        ns.put("knn", knn);
+        knn = getNewKnnSet();
+        slot.put(knn);
         return knn;
     }
 
@@ -96,7 +111,8 @@ public abstract class KnnSurfer extends StoreComponent implements Surfer, KnnPro
             }
 
             res = view.query(f, o);
-            cache.put(cacheIndex, res);
+            if(cacheIndex != -1)
+                cache.put(cacheIndex, res);
         }
         return res;
     }
@@ -106,12 +122,13 @@ public abstract class KnnSurfer extends StoreComponent implements Surfer, KnnPro
         if (f == null)
             throw new IllegalStateException();
 
-        if(statsCache.containsKey(cacheIndex))
-            return statsCache.get(cacheIndex);
+        GuessFactorStats cached = statsCache.get(cacheIndex);
+        if(cached != null)
+            return cached;
 
         List<Knn.Entry<TimestampedGFRange>> found = getMatches(enemyLog, f, cacheIndex, o);
 
-        GuessFactorStats stats = new GuessFactorStats(new PowerKernelDensity(0.1)); // TODO: rethink
+        GuessFactorStats stats = new GuessFactorStats(KERNEL); // TODO: rethink
         double totalWeight = Knn.getTotalWeight(found);
 
         for (Knn.Entry<TimestampedGFRange> entry : found) {
@@ -125,4 +142,9 @@ public abstract class KnnSurfer extends StoreComponent implements Surfer, KnnPro
         return stats;
     }
 
+    @Override
+    public void evict(LongPredicate stale) {
+        cache.evictIf(stale::test);
+        statsCache.evictIf(stale::test);
+    }
 }
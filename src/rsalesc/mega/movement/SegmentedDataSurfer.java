@@ -26,27 +26,33 @@ package rsalesc.mega.movement;
 import robocode.Rules;
 import rsalesc.baf2.core.StorageNamespace;
 import rsalesc.baf2.core.StoreComponent;
-import rsalesc.baf2.core.utils.PredictedHashMap;
+import rsalesc.baf2.core.utils.BoundedCache;
 import rsalesc.baf2.tracking.EnemyLog;
 import rsalesc.baf2.waves.BreakType;
 import rsalesc.mega.utils.IMea;
 import rsalesc.mega.utils.NamedStatData;
 import rsalesc.mega.utils.TargetingLog;
 import rsalesc.mega.utils.TimestampedGFRange;
+import rsalesc.mega.utils.segmentation.GFSegmentationSet;
 import rsalesc.mega.utils.segmentation.SegmentationView;
-import rsalesc.mega.utils.segmentation.WeightedEntry;
 import rsalesc.mega.utils.segmentation.WeightedSegmentedData;
 import rsalesc.mega.utils.stats.GuessFactorStats;
+import rsalesc.mega.utils.stats.KernelDensity;
 import rsalesc.mega.utils.stats.PowerKernelDensity;
 
-import java.util.HashMap;
+
 import java.util.List;
+import java.util.function.LongPredicate;
 
 /**
  * Created by Roberto Sales on 01/10/17.
  */
 public abstract class SegmentedDataSurfer extends StoreComponent implements Surfer {
-    private HashMap<Long, GuessFactorStats> statsCache = new PredictedHashMap<>(3000);
+    private static final KernelDensity KERNEL = new PowerKernelDensity(0.15);
+
+    private static final int CACHE_CAPACITY = 256;
+    private final BoundedCache<Long, GuessFactorStats> statsCache =
+            new BoundedCache<>("SegmentedDataSurfer.stats", CACHE_CAPACITY);
 
     public abstract SegmentationView<TimestampedGFRange> getNewSegmentationView();
 
@@ -75,8 +81,9 @@ public abstract class SegmentedDataSurfer extends StoreComponent implements Surf
         if(f == null)
             throw new IllegalStateException();
 
-        if(statsCache.containsKey(cacheIndex))
-            return statsCache.get(cacheIndex);
+        GuessFactorStats cached = statsCache.get(cacheIndex);
+        if(cached != null)
+            return cached;
 
         SegmentationView<TimestampedGFRange> view = getSegmentationView(enemyLog.getName());
 
@@ -86,17 +93,23 @@ public abstract class SegmentedDataSurfer extends StoreComponent implements Surf
 
         List<WeightedSegmentedData<TimestampedGFRange>> data = view.query(f, o);
 
-        GuessFactorStats stats = new GuessFactorStats(new PowerKernelDensity(0.15));
+        GuessFactorStats stats = new GuessFactorStats(KERNEL);
 
-        for(WeightedSegmentedData<TimestampedGFRange> entry : data) {
-            for(WeightedEntry<TimestampedGFRange> range : entry.getWeightedData()) {
-                stats.add(stats.getBucket(range.payload.mean), range.weight, 1);
-            }
-        }
+        // segments keep their histograms pre-rolled, so the kernel runs once per bucket
+        double[] histogram = new double[GuessFactorStats.BUCKET_COUNT];
+        for(WeightedSegmentedData<TimestampedGFRange> entry : data)
+            entry.addHistogram(histogram, GFSegmentationSet.BUCKETER);
+
+        stats.addHistogram(histogram, 1);
 
         stats.normalize();
 
         statsCache.put(cacheIndex, stats);
         return stats;
     }
+
+    @Override
+    public void evict(LongPredicate stale) {
+        statsCache.evictIf(stale::test);
+    }
 }
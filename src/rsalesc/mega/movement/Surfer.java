@@ -31,6 +31,8 @@ import rsalesc.mega.utils.NamedStatData;
 import rsalesc.mega.utils.TargetingLog;
 import rsalesc.mega.utils.stats.GuessFactorStats;
 
+import java.util.function.LongPredicate;
+
 /**
  * Created by Roberto Sales on 12/09/17.
  */
@@ -40,4 +42,10 @@ public interface Surfer {
     void log(EnemyLog enemyLog, TargetingLog log, IMea mea, BreakType type);
 
     GuessFactorStats getStats(EnemyLog enemyLog, TargetingLog f, IMea mea, long cacheIndex, NamedStatData o);
+
+    /**
+     * Drops every cached query whose cache index matches {@code stale}.
+     */
+    default void evict(LongPredicate stale) {
+    }
 }
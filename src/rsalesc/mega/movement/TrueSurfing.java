@@ -36,6 +36,7 @@ import rsalesc.baf2.painting.PaintManager;
 import rsalesc.baf2.painting.Painting;
 import rsalesc.baf2.predictor.PrecisePredictor;
 import rsalesc.baf2.predictor.PredictedPoint;
+import rsalesc.baf2.predictor.PredictionBuffer;
 import rsalesc.baf2.predictor.WallSmoothing;
 import rsalesc.baf2.tracking.*;
 import rsalesc.baf2.waves.EnemyWave;
@@ -52,18 +53,22 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Function;
 
 /**
  * Created by Roberto Sales on 12/09/17.
  */
 public class TrueSurfing extends BaseSurfing {
+    private static final int RUN_PROBE = Benchmark.getInstance().register("BaseSurfing.run()");
     SurfingDistancer distancer = new DefaultSurfingDistancer();
     private EnemyWave nextWave;
     private EnemyWave secondWave;
 
     private ArrayList<Point> breakOptions = new ArrayList<>();
 
+    private final PredictionBuffer clockwiseBuffer = new PredictionBuffer();
+    private final PredictionBuffer counterBuffer = new PredictionBuffer();
+    private final PredictionBuffer stopBuffer = new PredictionBuffer();
+
     public TrueSurfing(Surfer surfer, WaveManager manager) {
         super(surfer, manager);
     }
@@ -85,7 +90,7 @@ public class TrueSurfing extends BaseSurfing {
     }
 
     public void run() {
-        Benchmark.getInstance().start("BaseSurfing.run()");
+        Benchmark.getInstance().start(RUN_PROBE);
 
         final MyRobot me = MyLog.getInstance().getLatest();
         final EnemyRobot enemy = getEnemy();
@@ -202,31 +207,20 @@ public class TrueSurfing extends BaseSurfing {
         double distanceToCenter = initialPoint.distance(orbitCenter);
 //        double perp = distancer.getPerpendiculator(distanceToCenter);
 
-        Function<PredictedPoint, Double> perpFn = new Function<PredictedPoint, Double>() {
-            @Override
-            public Double apply(PredictedPoint predictedPoint) {
-                return distancer.getPerpendiculator(predictedPoint.distance(orbitCenter));
-            }
-        };
-
-        int stopDirection = initialPoint.getDirection(orbitCenter);
-        if (stopDirection == 0) stopDirection = 1;
+        PrecisePredictor.Perpendiculator perpFn = (x, y) ->
+                distancer.getPerpendiculator(R.sqrt((x - orbitCenter.x) * (x - orbitCenter.x)
+                        + (y - orbitCenter.y) * (y - orbitCenter.y)));
 
-        List<PredictedPoint> clockwisePoints = PrecisePredictor
-                .predictOnWaveImpact(field, orbitCenter, WALL_STICK, initialPoint, nextWave, +1, perpFn,
-                        true, false);
+        PredictionBuffer clockwisePoints = clockwiseBuffer;
+        PredictionBuffer counterPoints = counterBuffer;
+        PredictionBuffer stopPoints = stopBuffer;
 
-        List<PredictedPoint> counterPoints = PrecisePredictor
-                .predictOnWaveImpact(field, orbitCenter, WALL_STICK, initialPoint, nextWave, -1, perpFn,
-                        true, false);
+        PrecisePredictor.predictOnWaveImpact(clockwisePoints, counterPoints, stopPoints,
+                field, orbitCenter, WALL_STICK, initialPoint, nextWave, perpFn, true);
 
-        List<PredictedPoint> stopPoints = PrecisePredictor
-                .predictOnWaveImpact(field, orbitCenter, WALL_STICK, initialPoint, nextWave, stopDirection, perpFn,
-                        true, true);
-
-        PredictedPoint clockwisePass = R.getLast(clockwisePoints);
-        PredictedPoint counterPass = R.getLast(counterPoints);
-        PredictedPoint stopPass = R.getLast(stopPoints);
+        PredictedPoint clockwisePass = clockwisePoints.getLast();
+        PredictedPoint counterPass = counterPoints.getLast();
+        PredictedPoint stopPass = stopPoints.getLast();
 
         PredictedPoint clockwiseTransition = nextWave.impactPoint(clockwisePoints);
         PredictedPoint counterTransition = nextWave.impactPoint(counterPoints);
@@ -287,11 +281,6 @@ public class TrueSurfing extends BaseSurfing {
         return res;
     }
 
-    @Override
-    public void onEnemyWavePass(EnemyWave wave, MyRobot me) {
-
-    }
-
     private class SurfingCandidate {
         public final PredictedPoint transitionPoint;
         public double danger;
@@ -41,6 +41,7 @@ import rsalesc.mega.movement.surfers.KnightDCSurfer;
  */
 public class StatTracker extends StoreComponent implements StatusListener, BulletListener,
         EnemyWaveListener, LastBreathListener {
+    private static final int STATUS_PROBE = Benchmark.getInstance().register("StatTracker.onStatus()");
     private static final int MEETING_THRESHOLD = 35;
     private static final StatTracker SINGLETON = new StatTracker();
 
@@ -93,7 +94,7 @@ public class StatTracker extends StoreComponent implements StatusListener, Bulle
 
     @Override
     public void onStatus(StatusEvent e) {
-        Benchmark.getInstance().start("StatTracker.onStatus()");
+        Benchmark.getInstance().start(STATUS_PROBE);
 
         getMeleeStatData().onStatus(e);
         getDuelStatData().onStatus(e);
@@ -274,6 +274,39 @@ public class TargetingLog implements Serializable, IMea {
         f.run = pastRobot != null && robot.getVelocity() != pastRobot.getVelocity() ? 0 : backInTime;
         f.lastRun = backInTime;
 
+        MotionHistory history = log.getHistory();
+        if(history.canServe(f.time, backInTime)) {
+            long run = history.getRun(f.time, backInTime, f.run);
+            f.lastRun = history.getLastRun(f.time, backInTime, run);
+            f.run = run;
+            f.timeAccel = history.getTimeAccel(f.time, backInTime, f.timeAccel);
+            f.timeDecel = history.getTimeDecel(f.time, backInTime, f.timeDecel);
+            f.revertLast20 = history.getRevertCount(f.time, backInTime, 20, f.revertLast20, f.source);
+            f.timeRevert = history.getTimeRevert(f.time, backInTime, f.timeRevert, f.source);
+        } else {
+            walkHistory(f, log, backInTime);
+        }
+
+        f.displaceLast10 = getDisplacement(log, robot, f.time - 10);
+        f.displaceLast20 = getDisplacement(log, robot, f.time - 20);
+        f.displaceLast40 = getDisplacement(log, robot, f.time - 40);
+        f.displaceLast80 = getDisplacement(log, robot, f.time - 80);
+    }
+
+    private static double getDisplacement(RobotLog log, RobotSnapshot robot, long time) {
+        MotionHistory history = log.getHistory();
+        if(history.contains(time))
+            return history.distance(time, robot.getPoint());
+
+        RobotSnapshot past = log.interpolate(time);
+        return past == null ? 0 : past.getPoint().distance(robot.getPoint());
+    }
+
+    /**
+     * Fallback for when the motion history does not cover the requested window,
+     * e.g. when computing features for a time ahead of the last scan.
+     */
+    private static void walkHistory(TargetingLog f, RobotLog log, int backInTime) {
         for (int i = 1; i < backInTime; i++) {
             // biggest interpolate change
             RobotSnapshot curRobot = log.interpolate(f.time - i);
@@ -299,26 +332,6 @@ public class TargetingLog implements Serializable, IMea {
                     f.revertLast20++;
             }
         }
-
-        try {
-            f.displaceLast10 = log.interpolate(f.time - 10).getPoint()
-                    .distance(robot.getPoint());
-        } catch(Exception ex) {}
-
-        try {
-            f.displaceLast20 = log.interpolate(f.time - 20).getPoint()
-                    .distance(robot.getPoint());
-        } catch(Exception ex){}
-
-        try {
-            f.displaceLast40 = log.interpolate(f.time - 40).getPoint()
-                    .distance(robot.getPoint());
-        } catch(Exception ex){}
-
-        try {
-            f.displaceLast80 = log.interpolate(f.time - 80).getPoint()
-                    .distance(robot.getPoint());
-        } catch(Exception ex){}
     }
 
     private static void computeMeleeLog(TargetingLog f, IMea mea, RobotLog log, RobotSnapshot robot) {
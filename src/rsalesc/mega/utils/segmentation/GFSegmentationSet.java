@@ -24,12 +24,19 @@
 package rsalesc.mega.utils.segmentation;
 
 import rsalesc.mega.utils.TimestampedGFRange;
+import rsalesc.mega.utils.stats.GuessFactorStats;
+
+import java.util.function.ToIntFunction;
 
 /**
  * Created by Roberto Sales on 30/09/17.
  */
 public class GFSegmentationSet extends SegmentationSet<TimestampedGFRange> {
+    public static final ToIntFunction<TimestampedGFRange> BUCKETER =
+            range -> GuessFactorStats.getBucketOf(range.mean);
+
     public GFSegmentationSet() {
         setWeighter(new SimpleSegmentationWeighter());
+        setHistogram(GuessFactorStats.BUCKET_COUNT, BUCKETER);
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.utils.segmentation;
+
+import rsalesc.mega.utils.Ensurer;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Flat open-addressing map from cell index to cell data.
+ * Index spaces of segmentation layouts are far too big to be
+ * allocated densely, but only the cells that were logged to
+ * ever need to exist.
+ */
+public class SegmentTable<T> {
+    private static final int INITIAL_SIZE = 1024;
+
+    // cell + 1, so that 0 marks an empty slot
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    public SegmentTable() {
+        keys = new int[INITIAL_SIZE];
+        values = new Object[INITIAL_SIZE];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int hash(int cell) {
+        int h = cell * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slotOf(int cell) {
+        int mask = keys.length - 1;
+        int key = cell + 1;
+        int slot = hash(cell) & mask;
+        while(keys[slot] != 0 && keys[slot] != key)
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int cell) {
+        return (T) values[slotOf(cell)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getOrEnsure(int cell, Ensurer<T> ensurer) {
+        int slot = slotOf(cell);
+        if(keys[slot] != 0)
+            return (T) values[slot];
+
+        if(2 * (size + 1) > keys.length) {
+            grow();
+            slot = slotOf(cell);
+        }
+
+        T data = ensurer.ensure();
+        keys[slot] = cell + 1;
+        values[slot] = data;
+        size++;
+        return data;
+    }
+
+    public void put(int cell, T data) {
+        int slot = slotOf(cell);
+        if(keys[slot] == 0) {
+            if(2 * (size + 1) > keys.length) {
+                grow();
+                slot = slotOf(cell);
+            }
+
+            keys[slot] = cell + 1;
+            size++;
+        }
+
+        values[slot] = data;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != 0) {
+                int slot = slotOf(oldKeys[i] - 1);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
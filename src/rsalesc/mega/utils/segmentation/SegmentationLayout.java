@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.utils.segmentation;
+
+import rsalesc.baf2.core.annotations.Modified;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Compiled form of a list of segmentations over the same
+ * features. Each distinct slicing of a feature is searched
+ * only once per point, and every segmentation maps the bins
+ * to a single cell index, by a mixed-radix offset into one
+ * index space shared by all of them.
+ */
+public class SegmentationLayout {
+    private final int features;
+    private final double[][][] slicings;
+    private final int[][] slicingOf;
+    private final int[][] strides;
+    private final int[] base;
+    private final int[] sliceCount;
+    private final int cells;
+
+    // scratch bins, indexed by [feature][slicing]
+    private final int[][] bins;
+
+    public SegmentationLayout(double[][][] slices) {
+        int segmentations = slices.length;
+        features = segmentations > 0 ? slices[0].length : 0;
+
+        slicingOf = new int[segmentations][features];
+        strides = new int[segmentations][features];
+        base = new int[segmentations];
+        sliceCount = new int[segmentations];
+
+        ArrayList<ArrayList<double[]>> distinct = new ArrayList<>();
+        for(int f = 0; f < features; f++)
+            distinct.add(new ArrayList<>());
+
+        long offset = 0;
+        for(int s = 0; s < segmentations; s++) {
+            if(slices[s].length != features)
+                throw new IllegalArgumentException("segmentations must share their features");
+
+            base[s] = (int) offset;
+
+            long stride = 1;
+            for(int f = features - 1; f >= 0; f--) {
+                slicingOf[s][f] = indexOf(distinct.get(f), slices[s][f]);
+                strides[s][f] = (int) stride;
+                sliceCount[s] += slices[s][f].length + 1;
+                stride *= slices[s][f].length + 1;
+            }
+
+            offset += stride;
+            if(offset > Integer.MAX_VALUE)
+                throw new IllegalStateException("too many cells in segmentation layout");
+        }
+
+        cells = (int) offset;
+
+        slicings = new double[features][][];
+        bins = new int[features][];
+        for(int f = 0; f < features; f++) {
+            slicings[f] = distinct.get(f).toArray(new double[0][]);
+            bins[f] = new int[slicings[f].length];
+        }
+    }
+
+    private static int indexOf(ArrayList<double[]> distinct, double[] slicing) {
+        for(int i = 0; i < distinct.size(); i++) {
+            if(Arrays.equals(distinct.get(i), slicing))
+                return i;
+        }
+
+        distinct.add(slicing);
+        return distinct.size() - 1;
+    }
+
+    public int size() {
+        return base.length;
+    }
+
+    /**
+     * How many cells all the segmentations have together.
+     */
+    public int getCellCount() {
+        return cells;
+    }
+
+    public int getSliceCount(int segmentation) {
+        return sliceCount[segmentation];
+    }
+
+    /**
+     * Write in out[s] the cell of values in segmentation s.
+     */
+    public void locate(double[] values, @Modified int[] out) {
+        if(values.length != features)
+            throw new IllegalArgumentException();
+
+        for(int f = 0; f < features; f++) {
+            for(int k = 0; k < slicings[f].length; k++)
+                bins[f][k] = getBin(slicings[f][k], values[f]);
+        }
+
+        for(int s = 0; s < base.length; s++) {
+            int cell = base[s];
+            for(int f = 0; f < features; f++)
+                cell += bins[f][slicingOf[s][f]] * strides[s][f];
+
+            out[s] = cell;
+        }
+    }
+
+    private static int getBin(double[] slicing, double value) {
+        int l = -1, r = slicing.length - 1;
+        while(l < r) {
+            int mid = (l + r + 1) / 2;
+            if(slicing[mid] <= value)
+                l = mid;
+            else r = mid - 1;
+        }
+
+        return l + 1;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.mega.utils.segmentation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class SegmentationLayoutTest {
+    private static final int FEATURES = 4;
+
+    @Test
+    public void samePartitionAsSegmentation() {
+        Random random = new Random(31);
+
+        // a few slicings per feature, shared between segmentations like the strategies do
+        double[][][] pool = new double[FEATURES][][];
+        for(int f = 0; f < FEATURES; f++) {
+            pool[f] = new double[4][];
+            pool[f][0] = new double[0];
+            for(int k = 1; k < pool[f].length; k++)
+                pool[f][k] = randomSlicing(random, k * 2);
+        }
+
+        double[][][] slices = new double[40][FEATURES][];
+        for(int s = 0; s < slices.length; s++) {
+            for(int f = 0; f < FEATURES; f++)
+                slices[s][f] = pool[f][random.nextInt(pool[f].length)];
+        }
+
+        SegmentationLayout layout = new SegmentationLayout(slices);
+        assertEquals(slices.length, layout.size());
+
+        ArrayList<Segmentation<Integer>> tries = new ArrayList<>();
+        for(int s = 0; s < slices.length; s++) {
+            tries.add(new Segmentation<>(slices[s]));
+            assertEquals(tries.get(s).getSliceCount(), layout.getSliceCount(s));
+        }
+
+        // each trie leaf and each layout cell must be matched one to one
+        HashMap<Integer, Integer> leafOfCell = new HashMap<>();
+        HashMap<Integer, Integer> cellOfLeaf = new HashMap<>();
+        int[] leaves = new int[1];
+        int[] cells = new int[slices.length];
+
+        for(int i = 0; i < 20000; i++) {
+            double[] values = randomPoint(random, pool);
+            layout.locate(values, cells);
+
+            for(int s = 0; s < slices.length; s++) {
+                int leaf = tries.get(s).getOrEnsure(values, () -> leaves[0]++);
+                int cell = cells[s];
+
+                assertTrue(cell >= 0 && cell < layout.getCellCount());
+                assertEquals(leaf, (int) leafOfCell.computeIfAbsent(cell, k -> leaf));
+                assertEquals(cell, (int) cellOfLeaf.computeIfAbsent(leaf, k -> cell));
+            }
+        }
+    }
+
+    private static double[] randomSlicing(Random random, int n) {
+        double[] res = new double[n];
+        for(int i = 0; i < n; i++)
+            res[i] = (i + random.nextDouble()) / n;
+
+        return res;
+    }
+
+    /**
+     * Mostly uniform points, but also points lying exactly on slices.
+     */
+    private static double[] randomPoint(Random random, double[][][] pool) {
+        double[] res = new double[FEATURES];
+        for(int f = 0; f < FEATURES; f++) {
+            double[] slicing = pool[f][random.nextInt(pool[f].length)];
+            if(slicing.length > 0 && random.nextInt(4) == 0)
+                res[f] = slicing[random.nextInt(slicing.length)];
+            else
+                res[f] = random.nextDouble() * 1.2 - 0.1;
+        }
+
+        return res;
+    }
+}
@@ -29,6 +29,7 @@ import rsalesc.mega.utils.TargetingLog;
 import rsalesc.structures.Knn;
 
 import java.util.ArrayList;
+import java.util.function.ToIntFunction;
 
 /**
  * Created by Roberto Sales on 30/09/17.
@@ -38,8 +39,13 @@ public class SegmentationSet<T> {
 
     private MultipleSlicingStrategy strategy;
     private ArrayList<SegmentationEntry> segmentations;
+    private SegmentationLayout layout;
+    private SegmentTable<SegmentedData<T>> table;
+    private int[] cells;
     private SegmentationWeighter<T> weighter;
     private SegmentationNormalizer<T> normalizer;
+    private int histogramBuckets = 0;
+    private ToIntFunction<T> bucketer;
     private boolean built = false;
 
     private int dataAmount = 0;
@@ -111,12 +117,25 @@ public class SegmentationSet<T> {
         return this;
     }
 
+    /**
+     * Make every segment keep its rolled histogram over the
+     * given buckets (see WeightedSegmentedData.addHistogram).
+     */
+    public SegmentationSet<T> setHistogram(int buckets, ToIntFunction<T> bucketer) {
+        this.histogramBuckets = buckets;
+        this.bucketer = bucketer;
+        return this;
+    }
+
     public SegmentationSet<T> build() {
         built = true;
         segmentations = new ArrayList<>();
+        layout = new SegmentationLayout(strategy.getSlices());
+        table = new SegmentTable<>();
+        cells = new int[layout.size()];
 
-        for(double[][] slices : strategy.getSlices()) {
-            segmentations.add(new SegmentationEntry(new Segmentation<>(slices)));
+        for(int i = 0; i < layout.size(); i++) {
+            segmentations.add(new SegmentationEntry(i, layout.getSliceCount(i)));
         }
 
         return this;
@@ -147,21 +166,21 @@ public class SegmentationSet<T> {
             return Double.POSITIVE_INFINITY;
     }
 
-    private SegmentedData<T> getDataFrom(SegmentationEntry segmentationEntry, double[] vals) {
-        SegmentedData<T> data = segmentationEntry.getSegmentation().getOrEnsure(vals, segmentationEntry.getEnsurer());
-
-//        if(data == null) {
-//            segmentationEntry.getSegmentation().add(vals, data = new SegmentedData<T>(getMaxSize(segmentationEntry)));
-//        }
-
-        return data;
+    /**
+     * Cells that were never logged to are not created: they
+     * read as the entry's shared empty data instead.
+     */
+    private SegmentedData<T> getDataFrom(SegmentationEntry segmentationEntry) {
+        SegmentedData<T> data = table.get(cells[segmentationEntry.getIndex()]);
+        return data != null ? data : segmentationEntry.getEmpty();
     }
 
     public ArrayList<WeightedSegmentedData<T>> getData(double[] vals) {
-        ArrayList<WeightedSegmentedData<T>> res = new ArrayList<>();
+        ArrayList<WeightedSegmentedData<T>> res = new ArrayList<>(segmentations.size());
+        layout.locate(vals, cells);
 
         for(SegmentationEntry entry : segmentations) {
-            SegmentedData<T> data = getDataFrom(entry, vals);
+            SegmentedData<T> data = getDataFrom(entry);
             res.add(data.weight(getWeight(entry, data), getDepth(entry)));
         }
 
@@ -180,8 +199,10 @@ public class SegmentationSet<T> {
 
     public void log(double[] vals, T payload) {
         dataAmount++;
+        layout.locate(vals, cells);
+
         for(SegmentationEntry entry : segmentations) {
-            getDataFrom(entry, vals).add(payload);
+            table.getOrEnsure(cells[entry.getIndex()], entry.getEnsurer()).add(payload);
         }
     }
 
@@ -216,24 +237,31 @@ public class SegmentationSet<T> {
     }
 
     public class SegmentationEntry {
-        private final Segmentation<SegmentedData<T>> segmentation;
+        private final int index;
         private final int sliceCount;
         private final Ensurer<SegmentedData<T>> ensurer;
+        private SegmentedData<T> empty;
 
-        private SegmentationEntry(Segmentation<SegmentedData<T>> segmentation) {
-            this.segmentation = segmentation;
-            this.sliceCount = segmentation.getSliceCount();
+        private SegmentationEntry(int index, int sliceCount) {
+            this.index = index;
+            this.sliceCount = sliceCount;
             final SegmentationEntry temp = this;
             ensurer = new Ensurer<SegmentedData<T>>() {
                 @Override
                 public SegmentedData<T> ensure() {
-                    return new SegmentedData<T>(getMaxSize(temp));
+                    return new SegmentedData<T>(getMaxSize(temp), getDepth(temp), histogramBuckets, bucketer);
                 }
             };
         }
 
-        public Segmentation<SegmentedData<T>> getSegmentation() {
-            return segmentation;
+        public int getIndex() {
+            return index;
+        }
+
+        private SegmentedData<T> getEmpty() {
+            if(empty == null)
+                empty = ensurer.ensure();
+            return empty;
         }
 
         public int getSliceCount() {
@@ -24,55 +24,120 @@
 package rsalesc.mega.utils.segmentation;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.function.ToIntFunction;
 
 /**
  * Created by Roberto Sales on 30/09/17.
+ *
+ * Fixed-capacity ring of the newest entries of a segment.
+ * When a bucketer is given, it also keeps the segment's
+ * rolled histogram up to date on every insertion, so readers
+ * get it in O(buckets) instead of walking the entries.
  */
 public class SegmentedData<T> {
     private final int maxSize;
-    private final LinkedList<T> list;
+    private final Object[] ring;
+    private int head = 0;
+    private int size = 0;
+
+    // pre-rolled histogram, only kept when a bucketer is given
+    private final double roll;
+    private final ToIntFunction<T> bucketer;
+    private final double[] histogram;
 
     public SegmentedData(int maxSize) {
+        this(maxSize, Double.POSITIVE_INFINITY, 0, null);
+    }
+
+    /**
+     * @param maxSize  how many entries the segment keeps
+     * @param depth    the roll depth the histogram is rolled with
+     * @param buckets  how many buckets the histogram has
+     * @param bucketer maps an entry to its histogram bucket
+     */
+    public SegmentedData(int maxSize, double depth, int buckets, ToIntFunction<T> bucketer) {
         this.maxSize = maxSize;
-        list = new LinkedList<T>();
+        this.ring = new Object[Math.max(maxSize, 0)];
+        this.roll = getRollFactor(depth);
+        this.bucketer = bucketer;
+        this.histogram = bucketer != null ? new double[buckets] : null;
+    }
+
+    static double getRollFactor(double depth) {
+        return 1.0 - 1.0 / (1.0 + depth);
     }
 
     public void add(T data) {
-        while(list.size() >= maxSize)
-            list.pop();
+        if(maxSize <= 0)
+            return;
+
+        ring[head] = data;
+        head = head + 1 == maxSize ? 0 : head + 1;
+        size = Math.min(size + 1, maxSize);
 
-        list.add(data);
+        if(histogram != null)
+            rebuildHistogram();
+    }
+
+    /**
+     * Rebuilt from the ring instead of decayed in place, so the
+     * histogram never drifts from its entries. The ring is small
+     * (see SegmentationWeighter.getDataLimit).
+     */
+    private void rebuildHistogram() {
+        for(int i = 0; i < histogram.length; i++)
+            histogram[i] = 0;
+
+        double factor = 1.0;
+        for(int i = 0; i < size; i++) {
+            histogram[bucketer.applyAsInt(get(i))] += factor;
+            factor *= roll;
+        }
     }
 
     public int size() {
-        return list.size();
+        return size;
+    }
+
+    /**
+     * The i-th newest entry of the segment, 0 being the newest.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+        int index = head - 1 - i;
+        if(index < 0)
+            index += maxSize;
+        return (T) ring[index];
     }
 
     public ArrayList<T> getData() {
-        ArrayList<T> rev = new ArrayList<>(list);
-        Collections.reverse(rev);
+        ArrayList<T> rev = new ArrayList<>(size);
+        for(int i = 0; i < size; i++)
+            rev.add(get(i));
         return rev;
     }
 
-    public WeightedSegmentedData<T> weight(double w, double roll) {
-        WeightedSegmentedData<T> data = new WeightedSegmentedData<>(maxSize, w, roll);
-        for(T entry : list)
-            data.add(entry);
+    /**
+     * Histogram of the entries, each one weighted by roll^age
+     * for the depth given at construction, or null if this
+     * segment does not keep one.
+     */
+    double[] getHistogram(double roll, int buckets) {
+        if(histogram == null || histogram.length != buckets || this.roll != roll)
+            return null;
+        return histogram;
+    }
 
-        return data;
+    public WeightedSegmentedData<T> weight(double w, double roll) {
+        return new WeightedSegmentedData<>(this, w, roll);
     }
 
     public static <T> double getTotalWeight(List<WeightedSegmentedData<T>> list) {
         double res = 0;
 
-        // TODO: optimize this
-        for(WeightedSegmentedData<T> data : list) {
-            for(WeightedEntry<T> t : data.getWeightedData())
-                res += t.weight;
-        }
+        for(WeightedSegmentedData<T> data : list)
+            res += data.getTotalWeight();
 
         return res;
     }
@@ -23,19 +23,26 @@
 
 package rsalesc.mega.utils.segmentation;
 
+import rsalesc.baf2.core.annotations.Modified;
+
 import java.util.ArrayList;
+import java.util.function.ToIntFunction;
 
 /**
  * Created by Roberto Sales on 30/09/17.
+ *
+ * A weighted, rolled view over the entries of a segment. It
+ * does not copy them, so it reflects later insertions.
  */
-public class WeightedSegmentedData<T> extends SegmentedData<T> {
+public class WeightedSegmentedData<T> {
+    private final SegmentedData<T> data;
     private double weight;
     private double roll;
 
-    public WeightedSegmentedData(int maxSize, double weight, double roll) {
-        super(maxSize);
+    public WeightedSegmentedData(SegmentedData<T> data, double weight, double roll) {
+        this.data = data;
         this.weight = weight;
-        this.roll = 1.0 - 1.0 / (1.0 + roll);
+        this.roll = SegmentedData.getRollFactor(roll);
     }
 
     public double getWeight() {
@@ -50,15 +57,50 @@ public class WeightedSegmentedData<T> extends SegmentedData<T> {
         weight = x;
     }
 
+    public int size() {
+        return data.size();
+    }
+
+    public ArrayList<T> getData() {
+        return data.getData();
+    }
+
+    public double getTotalWeight() {
+        int n = data.size();
+        if(roll == 1.0)
+            return weight * n;
+        return weight * (1.0 - Math.pow(roll, n)) / (1.0 - roll);
+    }
+
     public ArrayList<WeightedEntry<T>> getWeightedData() {
-        ArrayList<WeightedEntry<T>> rev = new ArrayList<>();
+        ArrayList<WeightedEntry<T>> rev = new ArrayList<>(data.size());
 
         double factor = 1.0;
-        for(T t : getData()) {
-            rev.add(new WeightedEntry<>(weight * factor, t));
+        for(int i = 0; i < data.size(); i++) {
+            rev.add(new WeightedEntry<>(weight * factor, data.get(i)));
             factor *= roll;
         }
 
         return rev;
     }
+
+    /**
+     * Add the weighted, rolled histogram of the entries to
+     * histogram. Uses the one kept by the segment when it was
+     * rolled the same way, otherwise buckets every entry.
+     */
+    public void addHistogram(@Modified double[] histogram, ToIntFunction<T> bucketer) {
+        double[] rolled = data.getHistogram(roll, histogram.length);
+        if(rolled != null) {
+            for(int i = 0; i < histogram.length; i++)
+                histogram[i] += weight * rolled[i];
+            return;
+        }
+
+        double factor = 1.0;
+        for(int i = 0; i < data.size(); i++) {
+            histogram[bucketer.applyAsInt(data.get(i))] += weight * factor;
+            factor *= roll;
+        }
+    }
 }
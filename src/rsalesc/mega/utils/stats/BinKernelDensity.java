@@ -23,43 +23,90 @@
 
 package rsalesc.mega.utils.stats;
 
+import rsalesc.baf2.core.annotations.Modified;
+
 /**
  * Created by Roberto Sales on 01/10/17.
+ *
+ * Kernel density sampled at integer bin offsets for a fixed bandwidth.
+ * The table only grows, and each version is published whole, so a single
+ * instance can be shared between stats (and threads).
  */
 public class BinKernelDensity {
     private final KernelDensity density;
-    private double[] profile = new double[]{0};
-    private int profileLength = 1;
-
     private final double bandwidth;
 
+    private volatile Table table;
+
     public BinKernelDensity(KernelDensity density, double bandwidth) {
         this.density = density;
         this.bandwidth = bandwidth;
+        this.table = new Table(0);
     }
 
-    private void ensureProfile(int length) {
-        if(length > profileLength) {
-            double[] newProfile = new double[2*length - 1];
-            System.arraycopy(profile, 0, newProfile,
-                    length - profileLength, 2*profileLength - 1);
-
-            for(int i = 0; i < length - profileLength; i++)
-                newProfile[i] = density.getDensity(i - length, bandwidth);
-            for(int i = length - 1 + profileLength; i < 2*length-1; i++)
-                newProfile[i] = density.getDensity(i - length, bandwidth);
+    private Table ensureTable(int span) {
+        Table current = table;
+        if(current.span < span)
+            table = current = new Table(span);
 
-            profile = newProfile;
-            profileLength = length;
-        }
+        return current;
     }
 
     public double getBinDensity(int diff) {
-        ensureProfile(Math.abs(diff) + 1);
-        return profile[diff + profileLength - 1];
+        Table current = ensureTable(Math.abs(diff));
+        return current.values[diff + current.span];
+    }
+
+    /**
+     * Adds {@code x} times the kernel centered at bin {@code i}, spreading while the
+     * density stays positive. Bin 0 is only reached from the right, like Stats.add always did.
+     */
+    public void add(@Modified double[] buffer, int i, double x) {
+        Table current = ensureTable(buffer.length);
+        double[] values = current.values;
+        int center = current.span + i;
+
+        int lo = Math.max(i - current.leftReach, 1);
+        for(int j = i - 1; j >= lo; j--)
+            buffer[j] += values[center - j] * x;
+
+        int hi = Math.min(i + current.rightReach, buffer.length);
+        for(int j = i; j < hi; j++)
+            buffer[j] += values[center - j] * x;
     }
 
     public KernelDensity getKernelDensity() {
         return density;
     }
+
+    public double getBandwidth() {
+        return bandwidth;
+    }
+
+    private class Table {
+        private final int span;
+        private final double[] values;
+        // how many bins the kernel reaches before its first non-positive density
+        private final int leftReach;
+        private final int rightReach;
+
+        private Table(int span) {
+            this.span = span;
+            this.values = new double[2 * span + 1];
+
+            for(int d = -span; d <= span; d++)
+                values[d + span] = density.getDensity(d, bandwidth);
+
+            int left = 0;
+            while(left < span && values[span + left + 1] > 0)
+                left++;
+
+            int right = 0;
+            while(right <= span && values[span - right] > 0)
+                right++;
+
+            this.leftReach = left;
+            this.rightReach = right;
+        }
+    }
 }
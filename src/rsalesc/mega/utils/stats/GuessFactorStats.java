@@ -49,16 +49,27 @@ public class GuessFactorStats extends Stats {
             throw new IllegalStateException();
     }
 
+    /**
+     * Weighted sum of the max-normalized inputs. The inputs are left untouched.
+     */
     public static GuessFactorStats merge(GuessFactorStats[] sts, double[] weights) {
         int size = BUCKET_COUNT;
         double[] buffer = new double[size];
         for (int i = 0; i < sts.length; i++) {
             if (sts[i] == null)
                 continue;
-            GuessFactorStats normalized = (GuessFactorStats) (sts[i].clone());
-            normalized.normalize();
-            for (int j = 0; j < size; j++) {
-                buffer[j] += normalized.get(j) * weights[i];
+
+            double[] other = sts[i].buffer;
+            double max = 0;
+            for (int j = 0; j < size; j++)
+                max = Math.max(max, Math.abs(other[j]));
+
+            if (R.isNear(max, 0)) {
+                for (int j = 0; j < size; j++)
+                    buffer[j] += other[j] * weights[i];
+            } else {
+                for (int j = 0; j < size; j++)
+                    buffer[j] += other[j] / max * weights[i];
             }
         }
 
@@ -73,6 +84,10 @@ public class GuessFactorStats extends Stats {
     }
 
     public int getBucket(double alpha) {
+        return getBucketOf(alpha);
+    }
+
+    public static int getBucketOf(double alpha) {
         int index = (int) (BUCKET_MID + alpha * BUCKET_MID);
         return R.constrain(0, index, BUCKET_COUNT - 1);
     }
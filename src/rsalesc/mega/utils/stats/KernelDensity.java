@@ -23,10 +23,14 @@
 
 package rsalesc.mega.utils.stats;
 
+import java.util.Arrays;
+
 /**
  * Created by Roberto Sales on 12/09/17.
  */
 public abstract class KernelDensity {
+    private volatile BinKernelDensity[] binKernels = new BinKernelDensity[0];
+
     protected abstract double _getDensity(double x);
 
     public double getDensity(double x) {
@@ -41,4 +45,30 @@ public abstract class KernelDensity {
     }
 
     public abstract double cutoff();
+
+    /**
+     * Lookup table of this kernel for an integer bandwidth, shared by every stats using it.
+     */
+    public BinKernelDensity getBinKernel(int bandwidth) {
+        if(bandwidth < 0)
+            return new BinKernelDensity(this, bandwidth);
+
+        BinKernelDensity[] current = binKernels;
+        if(bandwidth < current.length && current[bandwidth] != null)
+            return current[bandwidth];
+
+        synchronized (this) {
+            current = binKernels;
+            if(bandwidth >= current.length)
+                current = Arrays.copyOf(current, bandwidth + 1);
+            else
+                current = current.clone();
+
+            if(current[bandwidth] == null)
+                current[bandwidth] = new BinKernelDensity(this, bandwidth);
+
+            binKernels = current;
+            return current[bandwidth];
+        }
+    }
 }
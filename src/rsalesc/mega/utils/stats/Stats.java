@@ -95,34 +95,25 @@ public class Stats {
     public void add(int i, double x) {
         if(binKernel == null)
             buffer[i] += x;
-        else {
-            double density;
-            int j = i - 1;
-            while (j > 0 && (density = binKernel.getBinDensity(i - j)) > 0) {
-                buffer[j--] += density * x;
-            }
-
-            j = i;
-            while (j < buffer.length && (density = binKernel.getBinDensity(i - j)) > 0) {
-                buffer[j++] += density * x;
-            }
-        }
+        else
+            binKernel.add(buffer, i, x);
     }
 
     public void add(int i, double x, int bandwidth) {
         if (kernel == null)
             buffer[i] += x;
-        else {
-            double density;
-            int j = i - 1;
-            while (j > 0 && (density = kernel.getDensity(i - j, bandwidth)) > 0) {
-                buffer[j--] += density * x;
-            }
-
-            j = i;
-            while (j < buffer.length && (density = kernel.getDensity(i - j, bandwidth)) > 0) {
-                buffer[j++] += density * x;
-            }
+        else
+            kernel.getBinKernel(bandwidth).add(buffer, i, x);
+    }
+
+    /**
+     * Same as calling add(i, histogram[i], bandwidth) for every
+     * non-empty bucket i.
+     */
+    public void addHistogram(double[] histogram, int bandwidth) {
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] != 0)
+                add(i, histogram[i], bandwidth);
         }
     }
 
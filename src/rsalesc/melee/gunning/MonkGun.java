@@ -28,6 +28,7 @@ import rsalesc.baf2.core.StorageNamespace;
 import rsalesc.baf2.core.StoreComponent;
 import rsalesc.baf2.core.controllers.Controller;
 import rsalesc.baf2.core.listeners.PaintListener;
+import rsalesc.baf2.core.utils.AngularDensity;
 import rsalesc.baf2.core.utils.Physics;
 import rsalesc.baf2.core.utils.R;
 import rsalesc.baf2.core.utils.geometry.AngularRange;
@@ -166,30 +167,23 @@ public class MonkGun extends StoreComponent implements MovieListener, PaintListe
         double delta = Math.max(R.PI, Rules.GUN_TURN_RATE_RADIANS * Math.max(remaining * 1.1, 1));
         AngularRange range = new AngularRange(getMediator().getGunHeadingRadians(), -delta, +delta);
 
-        double bestDensity = Double.NEGATIVE_INFINITY;
-        CandidateAngle bestAngle = null;
+        double[] shootAngles = new double[angles.size()];
+        double[] weights = new double[angles.size()];
+        double[] bandwidths = new double[angles.size()];
 
-        for (CandidateAngle shootAngle : angles) {
-            if(!range.isAngleNearlyContained(shootAngle.angle))
-                continue;
+        for (int i = 0; i < angles.size(); i++) {
+            CandidateAngle candidate = angles.get(i);
+            double distance = candidate.point.distance(nextPosition);
 
-            double density = 0;
-            for (CandidateAngle candidate : angles) {
-                double distance = candidate.point.distance(nextPosition);
-                double angle = candidate.angle;
-                double off = R.normalRelativeAngle(shootAngle.angle - angle);
+            shootAngles[i] = candidate.angle;
+            weights[i] = candidate.weight / R.sqrt(distance);
+            bandwidths[i] = Physics.hitAngle(distance) * 0.9;
+        }
 
-                double x = off / (Physics.hitAngle(distance) * 0.9);
-                if (Math.abs(x) < 1) {
-                    density += R.cubicKernel(Math.abs(x)) * candidate.weight / R.sqrt(distance);
-                }
-            }
+        int best = AngularDensity.argmax(shootAngles, weights, bandwidths, AngularDensity.CUBIC,
+                i -> range.isAngleNearlyContained(shootAngles[i]));
 
-            if (density > bestDensity) {
-                bestDensity = density;
-                bestAngle = shootAngle;
-            }
-        }
+        CandidateAngle bestAngle = best == -1 ? null : angles.get(best);
 
         Controller controller = getMediator().getAimControllerOrDummy();
 
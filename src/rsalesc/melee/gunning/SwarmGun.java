@@ -30,6 +30,7 @@ import rsalesc.baf2.core.StorageNamespace;
 import rsalesc.baf2.core.controllers.Controller;
 import rsalesc.baf2.core.listeners.FireEvent;
 import rsalesc.baf2.core.listeners.FireListener;
+import rsalesc.baf2.core.utils.AngularDensity;
 import rsalesc.baf2.core.utils.Physics;
 import rsalesc.baf2.core.utils.R;
 import rsalesc.baf2.core.utils.geometry.AngularRange;
@@ -221,26 +222,27 @@ public class SwarmGun extends AutomaticGun implements FireListener {
         double bestDensity = Double.NEGATIVE_INFINITY;
         GeneratedAngle bestAngle = null;
 
-        for(int i = 0; i < 5; i++) {
-            for (GeneratedAngle shootAngle : angles) {
-                if (i < 4 && !range.isAngleNearlyContained(shootAngle.angle))
-                    continue;
+        double[] shootAngles = new double[angles.length];
+        double[] weights = new double[angles.length];
+        double[] bandwidths = new double[angles.length];
 
-                double density = 0;
-                for (GeneratedAngle candidate : angles) {
-                    double distance = candidate.distance;
-                    double angle = candidate.angle;
-                    double off = R.normalRelativeAngle(shootAngle.angle - angle);
+        for(int i = 0; i < angles.length; i++) {
+            shootAngles[i] = angles[i].angle;
+            weights[i] = angles[i].weight / R.sqrt(angles[i].distance);
+            bandwidths[i] = 40 / angles[i].distance;
+        }
 
-                    double x = off / (40 / distance);
-                    if (Math.abs(x) < 1) {
-                        density += R.cubicKernel(x) * candidate.weight / R.sqrt(distance);
-                    }
-                }
+        // densities don't depend on the range, so compute them once for every widening below
+        double[] densities = AngularDensity.getDensities(shootAngles, weights, bandwidths, AngularDensity.CUBIC);
+
+        for(int i = 0; i < 5; i++) {
+            for (int j = 0; j < angles.length; j++) {
+                if (i < 4 && !range.isAngleNearlyContained(angles[j].angle))
+                    continue;
 
-                if (density > bestDensity) {
-                    bestDensity = density;
-                    bestAngle = shootAngle;
+                if (densities[j] > bestDensity) {
+                    bestDensity = densities[j];
+                    bestAngle = angles[j];
                 }
             }
 
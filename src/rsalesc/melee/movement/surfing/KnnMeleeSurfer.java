@@ -25,6 +25,7 @@ package rsalesc.melee.movement.surfing;
 
 import rsalesc.baf2.core.StorageNamespace;
 import rsalesc.baf2.core.StoreComponent;
+import rsalesc.baf2.core.utils.BoundedCache;
 import rsalesc.baf2.core.utils.Pair;
 import rsalesc.baf2.core.utils.R;
 import rsalesc.baf2.core.utils.geometry.AngularRange;
@@ -38,14 +39,17 @@ import rsalesc.structures.KnnProvider;
 import rsalesc.structures.KnnView;
 import rsalesc.melee.utils.stats.CircularGuessFactorStats;
 
-import java.util.Hashtable;
 import java.util.List;
+import java.util.function.LongPredicate;
 
 /**
  * Created by Roberto Sales on 11/10/17.
  */
 public abstract class KnnMeleeSurfer extends StoreComponent implements MeleeSurfer, KnnProvider<WeightedGF> {
-    private Hashtable<Pair<String, Long>, CircularGuessFactorStats> cache = new Hashtable<>();
+    private static final int CACHE_CAPACITY = 256;
+
+    private final BoundedCache<Pair<String, Long>, CircularGuessFactorStats> cache =
+            new BoundedCache<>("KnnMeleeSurfer.stats", CACHE_CAPACITY);
 
     public KnnView<WeightedGF> getKnnSet(String name) {
         StorageNamespace ns = getStorageNamespace().namespace(name);
@@ -124,4 +128,9 @@ public abstract class KnnMeleeSurfer extends StoreComponent implements MeleeSurf
 
         return stats;
     }
+
+    @Override
+    public void evict(LongPredicate stale) {
+        cache.evictIf(key -> stale.test(key.second));
+    }
 }
@@ -29,6 +29,8 @@ import rsalesc.mega.utils.IMea;
 import rsalesc.mega.utils.TargetingLog;
 import rsalesc.melee.utils.stats.CircularGuessFactorStats;
 
+import java.util.function.LongPredicate;
+
 /**
  * Created by Roberto Sales on 12/09/17.
  */
@@ -42,4 +44,10 @@ public interface MeleeSurfer {
     void log(EnemyLog enemyLog, TargetingLog log, IMea mea, BreakType type, double weight);
 
     CircularGuessFactorStats getStats(EnemyLog enemyLog, TargetingLog f, IMea mea, long cacheIndex);
+
+    /**
+     * Drops every cached query whose cache index matches {@code stale}.
+     */
+    default void evict(LongPredicate stale) {
+    }
 }
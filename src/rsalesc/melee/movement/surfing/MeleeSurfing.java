@@ -30,6 +30,7 @@ import robocode.Rules;
 import rsalesc.baf2.BackAsFrontRobot2;
 import rsalesc.baf2.core.Component;
 import rsalesc.baf2.core.controllers.Controller;
+import rsalesc.baf2.core.utils.BoundedCache;
 import rsalesc.baf2.core.utils.Physics;
 import rsalesc.baf2.core.utils.R;
 import rsalesc.baf2.core.utils.geometry.AngularRange;
@@ -51,6 +52,10 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
 
 /**
  * Created by Roberto Sales on 09/10/17.
@@ -83,9 +88,13 @@ public class MeleeSurfing extends Component implements CrossFireListener, EnemyW
 
     private EnemyRobot[] latestEnemies;
 
+    private static final long GENERATION = (long) 1e9;
+    private static final int CACHE_CAPACITY = 256;
+
     private long hits = 0;
 
-    private Hashtable<Long, CircularGuessFactorStats> cache = new Hashtable<>();
+    private final BoundedCache<Long, CircularGuessFactorStats> cache =
+            new BoundedCache<>("MeleeSurfing.stats", CACHE_CAPACITY);
 
     EnemyWaveCondition hasLog = new EnemyWaveCondition() {
         @Override
@@ -142,50 +151,69 @@ public class MeleeSurfing extends Component implements CrossFireListener, EnemyW
         }
 
         double stickLength = Math.min(STICK_LENGTH, closest * 0.75);
-        long stickTime = (long) Math.ceil(stickLength / (Rules.MAX_VELOCITY / 2));
 
         List<PredictedPoint>[] pts = generatePoints(initialPoint, stickLength);
 
+        long horizon = Long.MIN_VALUE;
+        for(List<PredictedPoint> path : pts) {
+            if(path != null)
+                horizon = Math.max(horizon, deadline(path));
+        }
+
+        BranchSnapshot snapshot = takeSnapshot(initialPoint, horizon);
+
         SurfingOption bestOption = new SurfingOption(initialPoint, initialPoint, Rules.MAX_VELOCITY, Double.POSITIVE_INFINITY);
+        SurfingOption[] options = score(getMediator().getComputePool(), snapshot, pts);
 
-        SurfingOption[] options = new SurfingOption[pts.length];
-        double[] risks = new double[pts.length];
+        // TODO: put sort back before increasing branch depth
+//        Arrays.sort(options);
 
-        double maxDanger = 1e-20;
-        double maxRisk = 1e-20;
+        if(branchDepth + 1 >= BRANCH_DEPTH) {
+            int best = pickBest(options);
+            return best == -1 ? bestOption : options[best];
+        }
 
-        pathTesting:
-        for(int i = 0; i < pts.length; i++) {
-            if(pts[i] == null)
-                continue;
+        for(SurfingOption option : options) {
+            if(bestDanger < accDanger + option.danger)
+                break;
 
-            final List<PredictedPoint> path = pts[i];
+            SurfingOption branchOption = branch(option.breakPoint,branchDepth + 1,
+                    accDanger + option.danger, bestDanger);
 
-            List<EnemyWave> breakableWaves = waves.getWaves();
-            PredictedPoint.filterBreakable(path, breakableWaves);
+            double branchDanger = branchOption == null ? 0 : branchOption.danger;
 
-            double danger = 0;
-            for(PredictedPoint predicted : path) {
-                ArrayList<EnemyWave> toRemove = new ArrayList<>();
+            if(option.danger + branchDanger + accDanger < bestDanger) {
+                bestDanger = option.danger + branchDanger + accDanger;
+                bestOption = new SurfingOption(option.dest, option.breakPoint, option.maxVel, option.danger + branchDanger);
+            }
+        }
 
-                for(EnemyWave comingWave : breakableWaves) {
-                    // new break
-                    if(comingWave.hasPassed(predicted, predicted.time)) {
-                        toRemove.add(comingWave);
+        return bestOption;
+    }
 
-                        danger += getDanger(comingWave, predicted);
-                    }
-                }
+    /**
+     * Scores every candidate path against the snapshot, normalizing danger and risk
+     * over all of them. Paths are evaluated on the pool when there is one. Options
+     * are null where there is no path.
+     */
+    static SurfingOption[] score(ForkJoinPool pool, BranchSnapshot snapshot, List<PredictedPoint>[] pts) {
+        SurfingOption[] options = new SurfingOption[pts.length];
+        double[] dangers = new double[pts.length];
+        double[] risks = new double[pts.length];
 
-                breakableWaves.removeAll(toRemove);
-            }
+        evaluate(pool, snapshot, pts, dangers, risks);
 
-            risks[i] = getRisk(R.getLast(path));
+        double maxDanger = 1e-20;
+        double maxRisk = 1e-20;
 
-            PredictedPoint pt = R.getLast(path);
-            options[i] = new SurfingOption(pt, pt, Rules.MAX_VELOCITY, danger);
+        for(int i = 0; i < pts.length; i++) {
+            if(pts[i] == null)
+                continue;
 
-            maxDanger = Math.max(maxDanger, danger);
+            PredictedPoint pt = R.getLast(pts[i]);
+            options[i] = new SurfingOption(pt, pt, Rules.MAX_VELOCITY, dangers[i]);
+
+            maxDanger = Math.max(maxDanger, dangers[i]);
             maxRisk = Math.max(maxRisk, risks[i]);
         }
 
@@ -199,43 +227,106 @@ public class MeleeSurfing extends Component implements CrossFireListener, EnemyW
             options[i].danger = normDanger * 3 + 1 * normRisk; // neuromancer's setup
         }
 
-        // TODO: put sort back before increasing branch depth
-//        Arrays.sort(options);
+        return options;
+    }
 
-        if(branchDepth + 1 >= BRANCH_DEPTH) {
-            double best = Double.POSITIVE_INFINITY;
-            for(int i = 0; i < pts.length; i++) {
-                if(pts[i] != null && options[i].danger < best) {
-                    best = options[i].danger;
-                    bestOption = options[i];
-                }
+    /**
+     * Index of the least dangerous option, the first one on ties, or -1 if there is none.
+     */
+    static int pickBest(SurfingOption[] options) {
+        int res = -1;
+        for(int i = 0; i < options.length; i++) {
+            if(options[i] != null && (res == -1 || options[i].danger < options[res].danger))
+                res = i;
+        }
+
+        return res;
+    }
+
+    /**
+     * Last tick at which a wave may still be tested against the path.
+     */
+    private static long deadline(List<PredictedPoint> path) {
+        return path.get(0).time + 2 * (path.size() - 1);
+    }
+
+    /**
+     * Freezes everything a candidate path is tested against: the waves that may break
+     * on a path starting at source up to horizon, sorted by break time and with their
+     * stats already resolved, and the enemies used for risk. Waves breaking later are
+     * left out, so their stats are not combined for nothing.
+     */
+    private BranchSnapshot takeSnapshot(PredictedPoint source, long horizon) {
+        List<EnemyWave> breakableWaves = waves.getWaves();
+        breakableWaves.removeIf(new Predicate<EnemyWave>() {
+            @Override
+            public boolean test(EnemyWave wave) {
+                return wave.getBreakTime(source) < source.time || wave.getBreakTime(source) > horizon
+                        || wave.hasPassed(source, source.time) || wave.hasAnyHit();
             }
+        });
 
-            return bestOption;
-        }
+        breakableWaves.sort(new Comparator<EnemyWave>() {
+            @Override
+            public int compare(EnemyWave o1, EnemyWave o2) {
+                return (int) Math.signum(o1.getBreakTime(source) - o2.getBreakTime(source));
+            }
+        });
 
-        for(SurfingOption option : options) {
-            if(bestDanger < accDanger + option.danger)
-                break;
+        WaveSnapshot[] snapshots = new WaveSnapshot[breakableWaves.size()];
+        for(int i = 0; i < snapshots.length; i++) {
+            EnemyWave wave = breakableWaves.get(i);
 
-            SurfingOption branchOption = branch(option.breakPoint,branchDepth + 1,
-                    accDanger + option.danger, bestDanger);
+            CircularGuessFactorStats stats;
+            try {
+                stats = getCombinedStats(wave);
+            } catch(IllegalStateException ex) {
+                stats = null;
+            }
 
-            double branchDanger = branchOption == null ? 0 : branchOption.danger;
+            snapshots[i] = new WaveSnapshot(wave, wave.getBreakTime(source), stats);
+        }
 
-            if(option.danger + branchDanger + accDanger < bestDanger) {
-                bestDanger = option.danger + branchDanger + accDanger;
-                bestOption = new SurfingOption(option.dest, option.breakPoint, option.maxVel, option.danger + branchDanger);
+        return new BranchSnapshot(snapshots, latestEnemies.clone());
+    }
+
+    private static void evaluate(ForkJoinPool pool, BranchSnapshot snapshot, List<PredictedPoint>[] pts,
+                                 double[] dangers, double[] risks) {
+        if(pool == null) {
+            for(int i = 0; i < pts.length; i++) {
+                if(pts[i] != null)
+                    evaluate(snapshot, pts[i], dangers, risks, i);
             }
+
+            return;
         }
 
-        return bestOption;
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for(int i = 0; i < pts.length; i++) {
+            if(pts[i] == null)
+                continue;
+
+            final int index = i;
+            tasks.add(ForkJoinTask.adapt(() -> evaluate(snapshot, pts[index], dangers, risks, index)));
+        }
+
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+
+    private static void evaluate(BranchSnapshot snapshot, List<PredictedPoint> path,
+                                 double[] dangers, double[] risks, int index) {
+        dangers[index] = snapshot.getDanger(path);
+        risks[index] = getRisk(snapshot.enemies, R.getLast(path));
     }
 
     public double getRisk(PredictedPoint dest) {
+        return getRisk(latestEnemies, dest);
+    }
+
+    public static double getRisk(EnemyRobot[] enemies, PredictedPoint dest) {
         double res = 0;
 
-        for(EnemyRobot enemy : latestEnemies) {
+        for(EnemyRobot enemy : enemies) {
             double absBearing = Physics.absoluteBearing(enemy.getPoint(), dest);
             double bafHeading = dest.getBafHeading();
             double diff = R.normalRelativeAngle(bafHeading - absBearing);
@@ -247,14 +338,14 @@ public class MeleeSurfing extends Component implements CrossFireListener, EnemyW
             int closer = 1;
             double closest = Double.POSITIVE_INFINITY;
 
-            for(int i = 0; i < latestEnemies.length; i++) {
-                if(latestEnemies[i].getName().equals(enemy.getName()))
+            for(int i = 0; i < enemies.length; i++) {
+                if(enemies[i].getName().equals(enemy.getName()))
                     continue;
 
-                if(latestEnemies[i].getPoint().distance(enemy.getPoint()) < myDist)
+                if(enemies[i].getPoint().distance(enemy.getPoint()) < myDist)
                     closer++;
 
-                closest = Math.min(latestEnemies[i].getPoint().distance(enemy.getPoint()), closest);
+                closest = Math.min(enemies[i].getPoint().distance(enemy.getPoint()), closest);
             }
 
             double contribution = enemy.getEnergy() / closer / (myDist * myDist);
@@ -268,37 +359,7 @@ public class MeleeSurfing extends Component implements CrossFireListener, EnemyW
         return res;
     }
 
-    public double getDanger(EnemyWave wave, PredictedPoint point) {
-        double distance = wave.getSource().distance(point);
-        double angle = Physics.absoluteBearing(wave.getSource(), point);
-
-        double bandwidth = (36 / distance) * 1.1; // imprecise to make it faster
-        AngularRange range = new AngularRange(angle, -bandwidth, +bandwidth);
-
-        return getPreciseDanger(wave, range, point);
-    }
-
-    public double getPreciseDanger(EnemyWave wave, AngularRange intersection, PredictedPoint point) {
-        CircularGuessFactorStats stats;
-        try {
-            stats = getCombinedStats(wave);
-        } catch(IllegalStateException ex) {
-            return 0.0;
-        }
-
-        double distance = wave.getSource().distance(point);
-
-        double distanceToWave = (distance - wave.getDistanceTraveled(point.time));
-
-        double res = getPreciseDanger(stats, intersection);
-
-        res /= Math.max(distanceToWave / wave.getVelocity(), 1);
-        res *= wave.getDamage();
-;
-        return res;
-    }
-
-    public double getPreciseDanger(CircularGuessFactorStats stats, AngularRange intersection) {
+    public static double getPreciseDanger(CircularGuessFactorStats stats, AngularRange intersection) {
         double res = 0;
 
         double startingAngle = intersection.getStartingAngle();
@@ -330,8 +391,11 @@ public class MeleeSurfing extends Component implements CrossFireListener, EnemyW
 
     public CircularGuessFactorStats getCombinedStats(EnemyWave wave) {
         long cacheIndex = getCacheIndex(wave);
-        if(cacheIndex != -1 && cache.containsKey(cacheIndex))
-            return cache.get(cacheIndex);
+        if(cacheIndex != -1) {
+            CircularGuessFactorStats cached = cache.get(cacheIndex);
+            if(cached != null)
+                return cached;
+        }
 
         MeleeSituation[] logs = (MeleeSituation[]) wave.getData(MELEE_HINT);
 
@@ -439,7 +503,7 @@ public class MeleeSurfing extends Component implements CrossFireListener, EnemyW
     }
 
     public long getCacheIndex(EnemyWave wave) {
-        return Objects.hash(wave, wave.getTime()) * (long) 1e9 + hits;
+        return Objects.hash(wave, wave.getTime()) * GENERATION + hits;
     }
 
     public void logHit(EnemyWave wave, RobotSnapshot hitRobot, Bullet hint) {
@@ -453,6 +517,7 @@ public class MeleeSurfing extends Component implements CrossFireListener, EnemyW
         EnemyLog enemyLog = EnemyTracker.getInstance().getLog(wave.getEnemy());
 
         hits++;
+        evict(i -> Math.floorMod(i, GENERATION) < hits);
 
         long hitTime = hint != null ? getMediator().getTime() : hitRobot.getTime();
         double hitDistance = wave.getSource().distance(hint != null ? new Point(hint.getX(), hint.getY()) : hitRobot.getPoint());
@@ -559,7 +624,14 @@ public class MeleeSurfing extends Component implements CrossFireListener, EnemyW
 
     @Override
     public void onEnemyWavePass(EnemyWave wave, MyRobot me) {
+        long id = Objects.hash(wave, wave.getTime());
+        evict(i -> Math.floorDiv(i, GENERATION) == id);
+    }
 
+    private void evict(LongPredicate stale) {
+        cache.evictIf(stale::test);
+        for(MeleeSurfer surfer : surfers.values())
+            surfer.evict(stale);
     }
 
     @Override
@@ -624,7 +696,127 @@ public class MeleeSurfing extends Component implements CrossFireListener, EnemyW
         }, true);
     }
 
-    private static class SurfingOption implements Comparable<SurfingOption> {
+    static class BranchSnapshot {
+        private final WaveSnapshot[] waves;
+        private final EnemyRobot[] enemies;
+
+        BranchSnapshot(WaveSnapshot[] waves, EnemyRobot[] enemies) {
+            this.waves = waves;
+            this.enemies = enemies;
+        }
+
+        /**
+         * Sums the danger of every wave at the first point of the path it passes,
+         * in path order and, within a tick, in break time order.
+         */
+        private double getDanger(List<PredictedPoint> path) {
+            long deadline = deadline(path);
+
+            int[] order = new int[waves.length];
+            int[] breakAt = new int[waves.length];
+            int cnt = 0;
+
+            for(int i = 0; i < waves.length; i++) {
+                if(waves[i].breakTime > deadline)
+                    continue;
+
+                int k = waves[i].getBreakIndex(path);
+                if(k == path.size())
+                    continue;
+
+                // insertion keeps the break time order among waves breaking at the same tick
+                int j = cnt++;
+                while(j > 0 && breakAt[j - 1] > k) {
+                    order[j] = order[j - 1];
+                    breakAt[j] = breakAt[j - 1];
+                    j--;
+                }
+
+                order[j] = i;
+                breakAt[j] = k;
+            }
+
+            double danger = 0;
+            for(int i = 0; i < cnt; i++) {
+                danger += waves[order[i]].getDanger(path.get(breakAt[i]));
+            }
+
+            return danger;
+        }
+    }
+
+    static class WaveSnapshot {
+        private final Point source;
+        private final double velocity;
+        private final long time;
+        private final double damage;
+        private final double breakTime;
+        private final CircularGuessFactorStats stats;
+
+        WaveSnapshot(EnemyWave wave, double breakTime, CircularGuessFactorStats stats) {
+            this.source = wave.getSource();
+            this.velocity = wave.getVelocity();
+            this.time = wave.getTime();
+            this.damage = wave.getDamage();
+            this.breakTime = breakTime;
+            this.stats = stats;
+        }
+
+        private double getDistanceTraveled(long time) {
+            return Math.max(velocity * (time - this.time), 0);
+        }
+
+        private boolean hasPassed(PredictedPoint point) {
+            return point.distance(source) < getDistanceTraveled(point.time);
+        }
+
+        /**
+         * Index of the first point of the path this wave has passed, or path.size().
+         * A bullet outruns the robot, so once passed the path stays passed.
+         */
+        private int getBreakIndex(List<PredictedPoint> path) {
+            if(velocity <= Rules.MAX_VELOCITY) {
+                int k = 0;
+                while(k < path.size() && !hasPassed(path.get(k)))
+                    k++;
+
+                return k;
+            }
+
+            int lo = 0, hi = path.size();
+            while(lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(hasPassed(path.get(mid)))
+                    hi = mid;
+                else
+                    lo = mid + 1;
+            }
+
+            return lo;
+        }
+
+        private double getDanger(PredictedPoint point) {
+            if(stats == null)
+                return 0.0;
+
+            double distance = source.distance(point);
+            double angle = Physics.absoluteBearing(source, point);
+
+            double bandwidth = (36 / distance) * 1.1; // imprecise to make it faster
+            AngularRange range = new AngularRange(angle, -bandwidth, +bandwidth);
+
+            double distanceToWave = (distance - getDistanceTraveled(point.time));
+
+            double res = getPreciseDanger(stats, range);
+
+            res /= Math.max(distanceToWave / velocity, 1);
+            res *= damage;
+
+            return res;
+        }
+    }
+
+    static class SurfingOption implements Comparable<SurfingOption> {
         private final Point dest;
         private final PredictedPoint breakPoint;
         private final double maxVel;
@@ -637,6 +829,10 @@ public class MeleeSurfing extends Component implements CrossFireListener, EnemyW
             this.danger = danger;
         }
 
+        double getDanger() {
+            return danger;
+        }
+
         @Override
         public int compareTo(SurfingOption o) {
             return (int) Math.signum(danger - o.danger);
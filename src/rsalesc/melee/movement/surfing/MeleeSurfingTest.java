@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+
+package rsalesc.melee.movement.surfing;
+
+import org.junit.jupiter.api.Test;
+import rsalesc.baf2.core.utils.BattleTime;
+import rsalesc.baf2.core.utils.R;
+import rsalesc.baf2.core.utils.geometry.Point;
+import rsalesc.baf2.predictor.FastPredictor;
+import rsalesc.baf2.predictor.PredictedPoint;
+import rsalesc.baf2.tracking.EnemyRobot;
+import rsalesc.baf2.waves.EnemyWave;
+import rsalesc.melee.utils.stats.CircularGuessFactorStats;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class MeleeSurfingTest {
+    private static final int PATHS = 24;
+    private static final int WAVES = 8;
+
+    private MeleeSurfing.BranchSnapshot snapshot(Random random, PredictedPoint me) {
+        MeleeSurfing.WaveSnapshot[] waves = new MeleeSurfing.WaveSnapshot[WAVES];
+
+        for(int i = 0; i < WAVES; i++) {
+            Point source = me.project(random.nextDouble() * R.DOUBLE_PI, 300 + random.nextDouble() * 200);
+            double velocity = 11 + random.nextDouble() * 8;
+            EnemyWave wave = new EnemyWave(null, source, new BattleTime(me.time - random.nextInt(20), 0), velocity);
+
+            double[] buffer = new double[CircularGuessFactorStats.BUCKET_COUNT];
+            for(int j = 0; j < buffer.length; j++)
+                buffer[j] = random.nextDouble();
+
+            waves[i] = new MeleeSurfing.WaveSnapshot(wave, wave.getBreakTime(me),
+                    new CircularGuessFactorStats(buffer, null));
+        }
+
+        return new MeleeSurfing.BranchSnapshot(waves, new EnemyRobot[0]);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<PredictedPoint>[] paths(PredictedPoint me) {
+        List<PredictedPoint>[] pts = new List[PATHS];
+        for(int i = 0; i < PATHS; i++) {
+            // leave some holes, as walls do
+            if(i % 7 == 3)
+                continue;
+
+            pts[i] = FastPredictor.tracePath(me, me.project(R.DOUBLE_PI / PATHS * i, 120));
+        }
+
+        return pts;
+    }
+
+    @Test
+    public void parallelScoringPicksTheSameDestination() {
+        Random random = new Random(17);
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            for(int k = 0; k < 20; k++) {
+                PredictedPoint me = new PredictedPoint(400, 300, random.nextDouble() * R.DOUBLE_PI, 8, 100, 0);
+                MeleeSurfing.BranchSnapshot snapshot = snapshot(random, me);
+                List<PredictedPoint>[] pts = paths(me);
+
+                MeleeSurfing.SurfingOption[] sequential = MeleeSurfing.score(null, snapshot, pts);
+                MeleeSurfing.SurfingOption[] parallel = MeleeSurfing.score(pool, snapshot, pts);
+
+                assertEquals(sequential.length, parallel.length);
+                for(int i = 0; i < pts.length; i++) {
+                    if(pts[i] == null) {
+                        assertTrue(sequential[i] == null && parallel[i] == null);
+                        continue;
+                    }
+
+                    assertEquals(sequential[i].getDanger(), parallel[i].getDanger(), 0.0);
+                }
+
+                int best = MeleeSurfing.pickBest(sequential);
+                assertTrue(best != -1);
+                assertEquals(best, MeleeSurfing.pickBest(parallel));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
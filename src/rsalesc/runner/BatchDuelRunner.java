@@ -34,6 +34,7 @@ public class BatchDuelRunner {
     private final String myself;
     private final RobocodeEngineProvider provider;
     private final List<Match> matches;
+    private BattleFarm farm;
     private int seasons = 1;
 
     private int rounds = 35;
@@ -82,6 +83,12 @@ public class BatchDuelRunner {
         }
 
         for(int cnt = 0; cnt < seasons; cnt++) {
+            if(farm != null) {
+                runSeasonOnFarm(cnt, results, groupedResults);
+                System.out.println("\nSeason #" + (cnt+1) + ": " + results + "\n");
+                continue;
+            }
+
             Iterator<Match> it = matches.iterator();
             while(it.hasNext()) {
                 Match match = it.next();
@@ -98,25 +105,7 @@ public class BatchDuelRunner {
                     continue;
                 }
 
-                DuelResult result = observer.getDuelResult();
-                results.add(result);
-                groupedResults.get(match.group).add(result);
-
-                // current battle result
-                System.out.println("\r" + result);
-
-                // current bot result
-                BatchDuelResults filteredResults = new BatchDuelResults();
-                filteredResults.add(results.filterByEnemy(match.bot));
-                System.out.println("\t\t" + filteredResults);
-
-                // current group result, if not null
-                if(match.group != null) {
-                    BatchDuelResults currentGroupResults = groupedResults.get(match.group);
-                    System.out.println(match.group + ": " + currentGroupResults);
-                }
-
-                System.out.println();
+                report(match, observer.getDuelResult(), results, groupedResults);
             }
 
             System.out.println("\nSeason #" + (cnt+1) + ": " + results + "\n");
@@ -128,6 +117,63 @@ public class BatchDuelRunner {
         return results;
     }
 
+    /**
+     * Runs all matches of a season at once; results are reported as they come.
+     */
+    private void runSeasonOnFarm(int season, BatchDuelResults results, HashMap<String, BatchDuelResults> groupedResults) {
+        ArrayList<BattleJob> jobs = new ArrayList<>();
+
+        // by job rather than by bot, since the same bot may be listed in several groups
+        HashMap<BattleJob, Match> byJob = new HashMap<>();
+
+        for(Match match : matches) {
+            BattleJob job = new BattleJob(myself, match.bot, rounds, season);
+            jobs.add(job);
+            byJob.put(job, match);
+        }
+
+        System.out.println("Running season #" + (season+1) + " on " + farm.getConcurrency() + " workers...");
+
+        farm.run(jobs, new BattleFarm.Listener() {
+            @Override
+            public void onResult(BattleJob job, byte[] result) {
+                Optional<DuelResult> duelResult = SerializeHelper.convertFrom(result);
+                if(!duelResult.isPresent())
+                    throw new IllegalStateException("could not read result of " + job);
+
+                report(byJob.get(job), duelResult.get(), results, groupedResults);
+            }
+
+            @Override
+            public void onFailure(BattleJob job, Throwable cause) {
+                System.err.println("Could not reproduce battle against " + job.getEnemy() + ", removing it from list of reference bots.");
+                matches.remove(byJob.get(job));
+            }
+        });
+    }
+
+    private void report(Match match, DuelResult result, BatchDuelResults results,
+                        HashMap<String, BatchDuelResults> groupedResults) {
+        results.add(result);
+        groupedResults.get(match.group).add(result);
+
+        // current battle result
+        System.out.println("\r" + result);
+
+        // current bot result
+        BatchDuelResults filteredResults = new BatchDuelResults();
+        filteredResults.add(results.filterByEnemy(match.bot));
+        System.out.println("\t\t" + filteredResults);
+
+        // current group result, if not null
+        if(match.group != null) {
+            BatchDuelResults currentGroupResults = groupedResults.get(match.group);
+            System.out.println(match.group + ": " + currentGroupResults);
+        }
+
+        System.out.println();
+    }
+
     public void dumpResults(BatchDuelResults results, HashMap<String, BatchDuelResults> groupedResults, boolean dumpIndividual) {
         HashMap<String, List<Pair<String, BatchDuelResults>>> partialResults = new HashMap<>();
 
@@ -169,6 +215,13 @@ public class BatchDuelRunner {
         this.seasons = seasons;
     }
 
+    /**
+     * Runs each season's matches concurrently on a farm of DuelResultTask workers.
+     */
+    public void setFarm(BattleFarm farm) {
+        this.farm = farm;
+    }
+
     private class Match {
         public final String bot;
         public final String group;
@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.runner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Runs battle jobs on a fixed set of workers, each owned by a single thread,
+ * retrying failed jobs. Results are handed to the listener on the thread that
+ * called run, so whatever the listener writes to is never shared between threads.
+ * Workers are kept alive between runs until the farm is closed.
+ *
+ * With a job timeout, a job running for longer than it counts as failed: its
+ * worker is aborted and its thread abandoned. A fresh lane takes the slot, but
+ * only once the abandoned thread has exited, so a slot never runs two jobs at
+ * once, even when its worker cannot be aborted (local engines).
+ */
+public class BattleFarm implements Closeable {
+    private static final int DEFAULT_RETRIES = 3;
+    private static final long TIMEOUT_CHECK_MS = 1000;
+
+    private final Supplier<Worker> factory;
+    private final Worker[] workers;
+
+    // signalled when the last thread that fed each slot exits
+    private final CountDownLatch[] exits;
+
+    private int maxRetries = DEFAULT_RETRIES;
+    private long jobTimeout = 0;
+    private boolean logs = false;
+
+    public BattleFarm(int concurrency, Supplier<Worker> factory) {
+        if(concurrency < 1)
+            throw new IllegalArgumentException("a battle farm needs at least one worker");
+
+        this.factory = factory;
+        this.workers = new Worker[concurrency];
+        this.exits = new CountDownLatch[concurrency];
+    }
+
+    /**
+     * A single in-process worker. Robocode engines are not isolated from each
+     * other inside the same JVM, so this never runs battles concurrently.
+     */
+    public static BattleFarm local(BattleTask task, RobocodeEngineProvider provider) {
+        return new BattleFarm(1, () -> new LocalBattleWorker(task, provider));
+    }
+
+    /**
+     * One worker JVM per concurrent battle, each with its own engine.
+     */
+    public static BattleFarm processes(int concurrency, Class<? extends BattleTask> task, String robocodePath) {
+        return new BattleFarm(concurrency, () -> new ProcessBattleWorker(task, robocodePath));
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(maxRetries, 0);
+    }
+
+    /**
+     * How long a single job may run, counting the start of its worker, before
+     * it is given up on. Zero, the default, waits forever. A slot whose worker
+     * cannot be aborted stays idle until the hung job gives in to the interrupt.
+     */
+    public void setJobTimeout(long millis) {
+        this.jobTimeout = Math.max(millis, 0);
+    }
+
+    public void log() {
+        logs = true;
+    }
+
+    public int getConcurrency() {
+        return workers.length;
+    }
+
+    /**
+     * Runs every job, returning when each one either succeeded or exhausted its retries.
+     * A listener that throws on a result makes the job count as failed.
+     */
+    public void run(Collection<BattleJob> jobs, Listener listener) {
+        BlockingQueue<Attempt> queue = new LinkedBlockingQueue<>();
+        BlockingQueue<Attempt> done = new LinkedBlockingQueue<>();
+
+        for(BattleJob job : jobs)
+            queue.add(new Attempt(job, 0));
+
+        // cached, so abandoned threads can be replaced while they are still stuck
+        ExecutorService threads = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "battle-farm");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        Lane[] lanes = new Lane[workers.length];
+        for(int i = 0; i < lanes.length; i++)
+            lanes[i] = start(threads, i, new Lane(workers[i]), queue, done);
+
+        int pending = jobs.size();
+
+        try {
+            while(pending > 0) {
+                Attempt attempt;
+                if(jobTimeout > 0) {
+                    expire(threads, lanes, queue, done);
+                    attempt = poll(done, Math.min(jobTimeout, TIMEOUT_CHECK_MS));
+                    if(attempt == null)
+                        continue;
+                } else {
+                    attempt = take(done);
+                }
+
+                if(attempt.error == null) {
+                    try {
+                        listener.onResult(attempt.job, attempt.result);
+                        pending--;
+                        continue;
+                    } catch(Exception e) {
+                        attempt.error = e;
+                    }
+                }
+
+                if(attempt.retries < maxRetries) {
+                    if(logs)
+                        System.out.println("Retry no. " + (attempt.retries + 1) + " of " + attempt.job
+                                + " after: " + attempt.error);
+
+                    queue.add(new Attempt(attempt.job, attempt.retries + 1));
+                } else {
+                    listener.onFailure(attempt.job, attempt.error);
+                    pending--;
+                }
+            }
+        } finally {
+            // idle lanes are interrupted out of their wait, and busy ones (only left
+            // when leaving by an exception) are given up on instead of waited for
+            queue.clear();
+            for(Lane lane : lanes) {
+                if(abandon(lane, Long.MAX_VALUE) == null)
+                    lane.stop();
+            }
+
+            threads.shutdown();
+
+            for(int i = 0; i < lanes.length; i++) {
+                Lane lane = lanes[i];
+                if(!lane.isAbandoned())
+                    awaitExit(lane);
+
+                workers[i] = lane.isAbandoned() ? null : lane.worker;
+            }
+        }
+    }
+
+    private Lane start(ExecutorService threads, int slot, Lane lane, BlockingQueue<Attempt> queue, BlockingQueue<Attempt> done) {
+        CountDownLatch predecessor = exits[slot];
+        exits[slot] = lane.exited;
+        threads.execute(() -> work(lane, predecessor, queue, done));
+        return lane;
+    }
+
+    /**
+     * Gives up on the job running in the lane if it started before startedBefore,
+     * aborting its worker and interrupting its thread. Returns the job, or null
+     * when the lane was left alone.
+     */
+    private Attempt abandon(Lane lane, long startedBefore) {
+        Attempt attempt;
+        Worker hung;
+
+        synchronized(lane) {
+            attempt = lane.running;
+            if(attempt == null || lane.abandoned || attempt.startedAt >= startedBefore)
+                return null;
+
+            lane.abandoned = true;
+            hung = lane.worker;
+            lane.worker = null;
+            lane.stop();
+        }
+
+        if(hung != null) {
+            try {
+                hung.abort();
+            } catch(Exception e) {
+                // the worker is discarded either way
+            }
+        }
+
+        return attempt;
+    }
+
+    /**
+     * Gives up on every job running for longer than the timeout, replacing its lane.
+     */
+    private void expire(ExecutorService threads, Lane[] lanes, BlockingQueue<Attempt> queue, BlockingQueue<Attempt> done) {
+        long startedBefore = System.currentTimeMillis() - jobTimeout;
+
+        for(int i = 0; i < lanes.length; i++) {
+            Attempt attempt = abandon(lanes[i], startedBefore);
+            if(attempt == null)
+                continue;
+
+            attempt.error = new TimeoutException(attempt.job + " took longer than " + jobTimeout + " ms");
+            done.add(attempt);
+
+            lanes[i] = start(threads, i, new Lane(null), queue, done);
+        }
+    }
+
+    private void work(Lane lane, CountDownLatch predecessor, BlockingQueue<Attempt> queue, BlockingQueue<Attempt> done) {
+        try {
+            lane.enter();
+
+            if(predecessor != null)
+                predecessor.await();
+
+            feed(lane, queue, done);
+        } catch(InterruptedException e) {
+            // the farm is done with this lane
+        } finally {
+            lane.leave();
+            lane.exited.countDown();
+        }
+    }
+
+    private void feed(Lane lane, BlockingQueue<Attempt> queue, BlockingQueue<Attempt> done) throws InterruptedException {
+        while(true) {
+            Attempt attempt = queue.take();
+
+            Worker worker;
+            synchronized(lane) {
+                attempt.startedAt = System.currentTimeMillis();
+                lane.running = attempt;
+                worker = lane.worker;
+            }
+
+            byte[] result = null;
+            Throwable error = null;
+
+            try {
+                if(worker == null) {
+                    worker = factory.get();
+
+                    synchronized(lane) {
+                        if(lane.abandoned) {
+                            closeQuietly(worker);
+                            return;
+                        }
+
+                        lane.worker = worker;
+                    }
+                }
+
+                result = worker.run(attempt.job);
+            } catch(Throwable e) {
+                error = e;
+            }
+
+            synchronized(lane) {
+                // the attempt was already reported as timed out
+                if(lane.abandoned)
+                    return;
+
+                lane.running = null;
+                attempt.result = result;
+                attempt.error = error;
+            }
+
+            done.add(attempt);
+        }
+    }
+
+    private static Attempt take(BlockingQueue<Attempt> done) {
+        try {
+            return done.take();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("battle farm was interrupted", e);
+        }
+    }
+
+    private static Attempt poll(BlockingQueue<Attempt> done, long millis) {
+        try {
+            return done.poll(millis, TimeUnit.MILLISECONDS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("battle farm was interrupted", e);
+        }
+    }
+
+    private static void awaitExit(Lane lane) {
+        try {
+            lane.exited.await();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(Worker worker) {
+        try {
+            worker.close();
+        } catch(IOException e) {
+            // a worker made for an abandoned lane may fail to close
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+
+        for(int i = 0; i < workers.length; i++) {
+            if(workers[i] == null)
+                continue;
+
+            try {
+                workers[i].close();
+            } catch(IOException e) {
+                error = e;
+            }
+
+            workers[i] = null;
+        }
+
+        if(error != null)
+            throw error;
+    }
+
+    /**
+     * Runs jobs one at a time. A worker left broken by a failure
+     * must recover by itself on its next job.
+     */
+    public interface Worker extends Closeable {
+        byte[] run(BattleJob job) throws Exception;
+
+        /**
+         * Called from another thread to stop a hung job right away, if the worker
+         * can. The worker is discarded afterwards, without being closed.
+         */
+        default void abort() {}
+    }
+
+    public interface Listener {
+        void onResult(BattleJob job, byte[] result) throws Exception;
+
+        void onFailure(BattleJob job, Throwable cause);
+    }
+
+    /**
+     * A single try of a job. Retries are new attempts, so a late
+     * answer to a timed out try can never be taken for a newer one.
+     */
+    private static class Attempt {
+        private final BattleJob job;
+        private final int retries;
+        private volatile long startedAt;
+        private byte[] result;
+        private Throwable error;
+
+        private Attempt(BattleJob job, int retries) {
+            this.job = job;
+            this.retries = retries;
+        }
+    }
+
+    /**
+     * A worker slot and the thread feeding it. Guarded by its own lock,
+     * since the farm thread may abandon it while a job is running.
+     */
+    private static class Lane {
+        private final CountDownLatch exited = new CountDownLatch(1);
+        private Worker worker;
+        private Attempt running;
+        private boolean abandoned = false;
+        private boolean stopped = false;
+        private Thread thread;
+
+        private Lane(Worker worker) {
+            this.worker = worker;
+        }
+
+        private synchronized boolean isAbandoned() {
+            return abandoned;
+        }
+
+        private synchronized void enter() throws InterruptedException {
+            if(stopped)
+                throw new InterruptedException();
+
+            thread = Thread.currentThread();
+        }
+
+        private synchronized void leave() {
+            thread = null;
+        }
+
+        /**
+         * Interrupts the thread feeding the lane, or keeps it from starting.
+         */
+        private synchronized void stop() {
+            stopped = true;
+            if(thread != null)
+                thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.runner;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class BattleFarmTest {
+    /**
+     * Answers each job with its seed. With flaky set, jobs with seed 1 mod 3 fail
+     * on their first try. Enemy "bad" always fails, enemy "hung" never answers
+     * until interrupted and enemy "stubborn" keeps going for a while after it.
+     */
+    private static class StubTask implements BattleTask {
+        private final Set<Long> tried = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger inside = new AtomicInteger();
+        private final AtomicInteger mostInside = new AtomicInteger();
+        private final boolean flaky;
+
+        private StubTask(boolean flaky) {
+            this.flaky = flaky;
+        }
+
+        @Override
+        public byte[] run(RobocodeEngineProvider provider, BattleJob job) throws Exception {
+            mostInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+
+            try {
+                if(job.getEnemy().equals("hung"))
+                    Thread.sleep(Long.MAX_VALUE);
+
+                if(job.getEnemy().equals("stubborn"))
+                    lingerAfterInterrupt(300);
+
+                if(job.getEnemy().equals("bad") || flaky && job.getSeed() % 3 == 1 && tried.add(job.getSeed()))
+                    throw new IllegalStateException("stub failure");
+
+                return ByteBuffer.allocate(8).putLong(job.getSeed()).array();
+            } finally {
+                inside.decrementAndGet();
+            }
+        }
+
+        private static void lingerAfterInterrupt(long millis) {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch(InterruptedException e) {
+                // keeps going, like an engine that does not check for interrupts
+            }
+
+            long end = System.currentTimeMillis() + millis;
+            while(System.currentTimeMillis() < end) {
+                try {
+                    Thread.sleep(Math.max(end - System.currentTimeMillis(), 1));
+                } catch(InterruptedException e) {
+                    // keeps going, like an engine that does not check for interrupts
+                }
+            }
+        }
+    }
+
+    private static class Collector implements BattleFarm.Listener {
+        private final Thread caller = Thread.currentThread();
+        private final HashMap<Long, Long> results = new HashMap<>();
+        private final HashMap<Long, Throwable> failures = new HashMap<>();
+        private boolean otherThread = false;
+
+        @Override
+        public void onResult(BattleJob job, byte[] result) {
+            otherThread |= Thread.currentThread() != caller;
+            assertFalse(results.containsKey(job.getSeed()), "job reported twice");
+            results.put(job.getSeed(), ByteBuffer.wrap(result).getLong());
+        }
+
+        @Override
+        public void onFailure(BattleJob job, Throwable cause) {
+            otherThread |= Thread.currentThread() != caller;
+            failures.put(job.getSeed(), cause);
+        }
+    }
+
+    private static ArrayList<BattleJob> jobs(int n, String... special) {
+        ArrayList<BattleJob> res = new ArrayList<>();
+        for(int i = 0; i < n; i++)
+            res.add(new BattleJob("me", i < special.length ? special[i] : "enemy" + (i % 3), 10, i));
+
+        return res;
+    }
+
+    @Test
+    public void retriesAndReports() throws IOException {
+        StubTask task = new StubTask(true);
+        HashSet<LocalBattleWorker> created = new HashSet<>();
+        BattleFarm farm = new BattleFarm(4, () -> {
+            LocalBattleWorker worker = new LocalBattleWorker(task, null);
+            synchronized(created) {
+                created.add(worker);
+            }
+            return worker;
+        });
+
+        try {
+            Collector collector = new Collector();
+            farm.run(jobs(40, "bad"), collector);
+
+            assertEquals(39, collector.results.size());
+            for(long seed = 1; seed < 40; seed++)
+                assertEquals(seed, (long) collector.results.get(seed));
+
+            assertEquals(1, collector.failures.size());
+            assertTrue(collector.failures.get(0L) instanceof IllegalStateException);
+            assertFalse(collector.otherThread);
+
+            // workers are kept between runs
+            int workers = created.size();
+            Collector again = new Collector();
+            farm.run(jobs(8), again);
+
+            assertEquals(8, again.results.size() + again.failures.size());
+            assertEquals(workers, created.size());
+        } finally {
+            farm.close();
+        }
+    }
+
+    @Test
+    public void hungJobTimesOut() throws IOException {
+        BattleFarm farm = new BattleFarm(2, () -> new LocalBattleWorker(new StubTask(false), null));
+        farm.setJobTimeout(200);
+        farm.setMaxRetries(1);
+
+        try {
+            Collector collector = new Collector();
+            farm.run(jobs(10, "hung"), collector);
+
+            assertEquals(1, collector.failures.size());
+            assertTrue(collector.failures.get(0L) instanceof TimeoutException);
+
+            // the other lane and the replacements kept going
+            assertEquals(9, collector.results.size());
+            assertFalse(collector.otherThread);
+        } finally {
+            farm.close();
+        }
+    }
+
+    @Test
+    public void failingListenerRetries() throws IOException {
+        BattleFarm farm = new BattleFarm(1, () -> new LocalBattleWorker(new StubTask(true), null));
+        farm.setMaxRetries(10);
+
+        try {
+            Collector collector = new Collector() {
+                private boolean thrown = false;
+
+                @Override
+                public void onResult(BattleJob job, byte[] result) {
+                    if(!thrown) {
+                        thrown = true;
+                        throw new IllegalStateException("listener failure");
+                    }
+
+                    super.onResult(job, result);
+                }
+            };
+
+            farm.run(jobs(3), collector);
+            assertEquals(3, collector.results.size());
+        } finally {
+            farm.close();
+        }
+    }
+
+    @Test
+    public void timedOutLaneWaitsForItsThread() throws IOException {
+        StubTask task = new StubTask(false);
+        BattleFarm farm = new BattleFarm(1, () -> new LocalBattleWorker(task, null));
+        farm.setJobTimeout(100);
+        farm.setMaxRetries(0);
+
+        try {
+            Collector collector = new Collector();
+            farm.run(jobs(4, "stubborn"), collector);
+
+            assertTrue(collector.failures.get(0L) instanceof TimeoutException);
+            assertEquals(3, collector.results.size());
+
+            // the replacement lane never ran beside the stuck job
+            assertEquals(1, task.mostInside.get());
+        } finally {
+            farm.close();
+        }
+    }
+
+    @Test
+    public void throwingListenerLeavesHungJobBehind() throws IOException {
+        BattleFarm farm = new BattleFarm(2, () -> new LocalBattleWorker(new StubTask(false), null));
+        farm.setMaxRetries(0);
+
+        try {
+            Collector collector = new Collector() {
+                @Override
+                public void onFailure(BattleJob job, Throwable cause) {
+                    throw new IllegalStateException("listener failure");
+                }
+            };
+
+            long start = System.currentTimeMillis();
+            assertThrows(IllegalStateException.class, () -> farm.run(jobs(2, "hung", "bad"), collector));
+            assertTrue(System.currentTimeMillis() - start < 5000, "run waited for the hung job");
+        } finally {
+            farm.close();
+        }
+    }
+}
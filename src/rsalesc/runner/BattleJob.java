@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.runner;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ */
+public class BattleJob {
+    private final String myself;
+    private final String enemy;
+    private final int rounds;
+    private final long seed;
+
+    public BattleJob(String myself, String enemy, int rounds, long seed) {
+        this.myself = myself;
+        this.enemy = enemy;
+        this.rounds = rounds;
+        this.seed = seed;
+    }
+
+    public String getMyself() {
+        return myself;
+    }
+
+    public String getEnemy() {
+        return enemy;
+    }
+
+    public int getRounds() {
+        return rounds;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(myself);
+        out.writeUTF(enemy);
+        out.writeInt(rounds);
+        out.writeLong(seed);
+    }
+
+    public static BattleJob read(DataInput in) throws IOException {
+        return new BattleJob(in.readUTF(), in.readUTF(), in.readInt(), in.readLong());
+    }
+
+    @Override
+    public String toString() {
+        return myself + " vs " + enemy + " (" + rounds + " rounds, seed " + seed + ")";
+    }
+}
@@ -25,10 +25,14 @@ package rsalesc.runner;
 
 import rsalesc.baf2.core.utils.R;
 
+import java.io.Serializable;
+
 /**
  * Created by Roberto Sales on 05/10/17.
  */
-public class DuelResult implements IDuelResult {
+public class DuelResult implements IDuelResult, Serializable {
+    private static final long serialVersionUID = 5050505050L;
+
     private final String myself;
     private final String enemy;
 
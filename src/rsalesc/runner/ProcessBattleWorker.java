@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2017. Roberto Sales @ rsalesc
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *    1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ *
+ *    2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ *
+ *    3. This notice may not be removed or altered from any source
+ *    distribution.
+ */
+
+package rsalesc.runner;
+
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Roberto Sales on 15/10/17.
+ *
+ * Runs the task in a worker JVM started with the classpath of this one, so
+ * each worker has an engine of its own. Jobs go through the worker's stdin and
+ * results come back through its stdout, while anything the engine or the bots
+ * print is sent to stderr. The worker is restarted if the channel breaks.
+ */
+public class ProcessBattleWorker implements BattleFarm.Worker {
+    private final String task;
+    private final String robocodePath;
+    private final List<String> jvmArgs = new ArrayList<>();
+
+    // read by abort() from the farm thread
+    private volatile Process process;
+    private DataOutputStream toWorker;
+    private DataInputStream fromWorker;
+
+    public ProcessBattleWorker(Class<? extends BattleTask> task, String robocodePath) {
+        this.task = task.getName();
+        this.robocodePath = robocodePath;
+    }
+
+    public ProcessBattleWorker addJvmArg(String arg) {
+        jvmArgs.add(arg);
+        return this;
+    }
+
+    private void start() throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ProcessBattleWorker.class.getName());
+        command.add(task);
+        if(robocodePath != null)
+            command.add(robocodePath);
+
+        process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        toWorker = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        fromWorker = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+    }
+
+    @Override
+    public byte[] run(BattleJob job) throws IOException {
+        if(process == null)
+            start();
+
+        try {
+            job.write(toWorker);
+            toWorker.flush();
+
+            if(!fromWorker.readBoolean())
+                throw new IllegalStateException("worker failed on " + job + ": " + fromWorker.readUTF());
+
+            byte[] res = new byte[fromWorker.readInt()];
+            fromWorker.readFully(res);
+            return res;
+        } catch(IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Kills the worker JVM, so a job stuck in it fails right away on its
+     * own thread, which then cleans up through close().
+     */
+    @Override
+    public void abort() {
+        Process p = process;
+        if(p != null)
+            p.destroyForcibly();
+    }
+
+    @Override
+    public void close() {
+        if(process == null)
+            return;
+
+        try {
+            // end of input makes the worker exit by itself
+            toWorker.close();
+            if(!process.waitFor(10, TimeUnit.SECONDS))
+                process.destroyForcibly();
+        } catch(IOException e) {
+            process.destroyForcibly();
+        } catch(InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+
+        process = null;
+        toWorker = null;
+        fromWorker = null;
+    }
+
+    /**
+     * Worker side: args are the task class name and, optionally, the robocode path.
+     */
+    public static void main(String[] args) throws Exception {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        System.setOut(System.err);
+
+        BattleTask task = (BattleTask) Class.forName(args[0]).getDeclaredConstructor().newInstance();
+        RobocodeEngineProvider provider = args.length > 1
+                ? new RobocodeEngineProvider(args[1])
+                : new RobocodeEngineProvider();
+
+        try {
+            while(true) {
+                BattleJob job;
+                try {
+                    job = BattleJob.read(in);
+                } catch(EOFException e) {
+                    break;
+                }
+
+                try {
+                    byte[] res = task.run(provider, job);
+                    out.writeBoolean(true);
+                    out.writeInt(res.length);
+                    out.write(res);
+                } catch(Exception e) {
+                    e.printStackTrace();
+                    out.writeBoolean(false);
+                    out.writeUTF(String.valueOf(e));
+                }
+
+                out.flush();
+            }
+        } finally {
+            provider.close();
+        }
+
+        // the engine may leave non-daemon threads behind
+        System.exit(0);
+    }
+}
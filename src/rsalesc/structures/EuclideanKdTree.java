@@ -50,10 +50,10 @@ public class EuclideanKdTree<T> extends KdTree<T> {
     }
 
     @Override
-    public double minkowskiDistance(double[] a, double[] b) {
+    public double minkowskiDistance(double[] a, double[] b, int offset) {
         double res = 0;
         for (int i = 0; i < this.dim; i++) {
-            double acc = a[i] - b[i];
+            double acc = a[i] - b[offset + i];
             if (!Double.isNaN(acc))
                 res += acc * acc;
         }
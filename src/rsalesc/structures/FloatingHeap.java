@@ -107,6 +107,26 @@ public class FloatingHeap<T> {
         return new Entry<T>(this.key[0], (T) this.data[0]);
     }
 
+    public double topKey() {
+        return this.key[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T topPayload() {
+        return (T) this.data[0];
+    }
+
+    /**
+     * Empty the heap while keeping its storage,
+     * so it can be reused without allocating.
+     */
+    public void clear() {
+        // GC
+        for (int i = 0; i < this.size; i++)
+            this.data[i] = null;
+        this.size = 0;
+    }
+
     public void pop() {
         if (this.size == 0)
             throw new RuntimeException();
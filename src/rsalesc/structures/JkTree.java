@@ -80,6 +80,12 @@ public class JkTree<T extends Timestamped> extends Knn<T> {
         return res;
     }
 
+    @Override
+    public void query(double[] point, int K, double alpha, Buffer<T> out) {
+        for (Entry<T> entry : query(point, K, alpha))
+            out.add(entry.weight, entry.distance, entry.payload);
+    }
+
     @Override
     public Iterator iterator(double[] query, double alpha) {
         throw new UnsupportedOperationException();
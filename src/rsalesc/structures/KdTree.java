@@ -32,6 +32,7 @@ import rsalesc.baf2.core.utils.R;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Queue;
 
@@ -57,6 +58,24 @@ import java.util.Queue;
  * <p>
  * It plays well with Play-It Forward strategies :)
  * <p>
+ * Buckets are stored flat: each leaf keeps the coordinates
+ * of its points contiguously in a single double[] (point i
+ * starts at i * dim), with payloads and insertion stamps in
+ * parallel arrays, so a leaf scan streams through memory
+ * instead of chasing one array reference per point.
+ * <p>
+ * Every node also keeps the largest insertion stamp below it,
+ * so the tree can answer "K nearest among the N most recent
+ * points" for several N in a single traversal, skipping the
+ * subtrees that only hold points older than every horizon.
+ * A FIFO tree with the largest horizon as its size limit can
+ * then stand for a whole stack of smaller FIFO trees.
+ * <p>
+ * Stamp pruning is weak for short horizons, since almost every
+ * subtree holds some recent point, so the root can also keep
+ * its newest points in a ring (see keepRecent) and answer the
+ * horizons that fit in it with a linear scan instead.
+ * <p>
  * TODO: do not split node if its largest bound is already epsilon
  *
  * @param <T> The type of the payload which will be
@@ -64,10 +83,14 @@ import java.util.Queue;
  */
 abstract public class KdTree<T> {
     private static int BUCKET_SIZE = 50;
+    private static final int[] UNBOUNDED_K = {Integer.MAX_VALUE};
 
     // initial data
     protected int dim;
-    protected double[][] points;
+    protected double[] coords;
+    private long[] stamps;
+    // newest stamp below this node (may be stale after removals)
+    private long maxStamp = Long.MIN_VALUE;
     // shrinked clipping window
     protected double[] min;
     protected double[] max;
@@ -86,12 +109,26 @@ abstract public class KdTree<T> {
 
     // old points
     private Queue<double[]> pointQueue;
+    private long nextStamp;
+
+    // newest points added to the root, slot = stamp % capacity
+    private double[] recentCoords;
+    private long[] recentStamps;
+    private Object[] recentData;
+
+    // heaps reused across array queries
+    private FloatingHeap.Min<KdTree<T>> pooledQueue;
+    private FloatingHeap.Max<T> pooledFound;
+    private FloatingHeap<T>[] pooledHorizons;
+    private long[] pooledThresholds;
+    private int[] pooledActualK;
 
     public KdTree(int dimensions, Integer sizeLimit, int bucketLimit) {
         this.dim = dimensions;
         this.bucketSize = bucketLimit;
 
-        this.points = new double[bucketLimit][];
+        this.coords = new double[bucketLimit * dimensions];
+        this.stamps = new long[bucketLimit];
         this.data = new Object[bucketLimit];
         this.length = 0;
         this.maxLength = sizeLimit;
@@ -113,20 +150,23 @@ abstract public class KdTree<T> {
         this.dim = parent.dim;
         this.bucketSize = parent.bucketSize;
 
-        this.points = new double[Math.max(this.bucketSize, parent.data.length / 2)][];
-        this.data = new Object[Math.max(this.bucketSize, parent.data.length / 2)];
+        int capacity = Math.max(this.bucketSize, parent.data.length / 2);
+        this.coords = new double[capacity * this.dim];
+        this.stamps = new long[capacity];
+        this.data = new Object[capacity];
         this.length = 0;
         this.maxLength = parent.maxLength;
 
         this.parent = parent;
     }
 
-    private KdTree(KdTree<T> parent, double[][] recycle) {
+    private KdTree(KdTree<T> parent, double[] recycle) {
         this.dim = parent.dim;
         this.bucketSize = parent.bucketSize;
 
-        this.points = recycle;
-        this.data = new Object[recycle.length];
+        this.coords = recycle;
+        this.stamps = new long[recycle.length / this.dim];
+        this.data = new Object[recycle.length / this.dim];
         this.length = 0;
         this.maxLength = parent.maxLength;
 
@@ -159,6 +199,14 @@ abstract public class KdTree<T> {
         }
 
         KdTree<T> current = this;
+        long stamp = this.nextStamp++;
+
+        if (this.recentStamps != null) {
+            int slot = (int) (stamp % this.recentStamps.length);
+            System.arraycopy(point, 0, this.recentCoords, slot * dim, dim);
+            this.recentStamps[slot] = stamp;
+            this.recentData[slot] = payload;
+        }
 
         while (!current.isLeaf() || current.isHeavy()) {
             // in this case we have to split the node
@@ -185,16 +233,14 @@ abstract public class KdTree<T> {
                 if (current.cutPosition == current.max[current.hyperplane])
                     current.cutPosition = current.min[current.hyperplane];
 
-                KdTree<T> left = new KdNode(current, current.points);
+                KdTree<T> left = new KdNode(current, current.coords);
                 KdTree<T> right = new KdNode(current);
 
-                double max = 0;
-                for (int i = 0; i < current.length; i++) {
-                    max = Math.max(max, current.points[i][current.hyperplane]);
-                    KdTree<T> addOn = current.points[i][current.hyperplane] <= current.cutPosition ? left : right;
+                for (int i = 0, offset = 0; i < current.length; i++, offset += dim) {
+                    KdTree<T> addOn = current.coords[offset + current.hyperplane] <= current.cutPosition ? left : right;
                     if(addOn.isHeavy())
                         addOn.stretch();
-                    addOn.extendNode(current.points[i], current.data[i]);
+                    addOn.extendNode(current.coords, offset, current.data[i], current.stamps[i]);
                 }
 
 //                if (left.isHeavy()) {
@@ -211,12 +257,14 @@ abstract public class KdTree<T> {
 
                 current.left = left;
                 current.right = right;
-                current.points = null;
+                current.coords = null;
+                current.stamps = null;
                 current.data = null;
             }
 
-            current.updateClippingWindow(point);
+            current.updateClippingWindow(point, 0);
             current.length++;
+            current.maxStamp = stamp;
 
             if (point[current.hyperplane] <= current.cutPosition)
                 current = current.left;
@@ -225,7 +273,7 @@ abstract public class KdTree<T> {
         }
 
         // found our node
-        current.extendNode(point, payload);
+        current.extendNode(point, 0, payload, stamp);
 
         // check if knn has exceeded sizeLimit?
         this.pointQueue.add(point);
@@ -234,38 +282,74 @@ abstract public class KdTree<T> {
         }
     }
 
+    /**
+     * Keep the last capacity points added to this tree in a
+     * ring, so recency queries whose horizon fits in it are
+     * answered by a linear scan instead of a traversal. Must be
+     * called on an empty tree.
+     *
+     * @param capacity how many of the newest points to keep
+     */
+    public void keepRecent(int capacity) {
+        if (this.parent != null || this.length > 0)
+            throw new IllegalStateException("recent points can only be kept from an empty tree");
+
+        if (capacity <= 0) {
+            this.recentCoords = null;
+            this.recentStamps = null;
+            this.recentData = null;
+            return;
+        }
+
+        this.recentCoords = new double[capacity * dim];
+        this.recentStamps = new long[capacity];
+        this.recentData = new Object[capacity];
+        Arrays.fill(this.recentStamps, Long.MIN_VALUE);
+    }
+
+    private int recentCapacity() {
+        return this.recentStamps == null ? 0 : this.recentStamps.length;
+    }
+
     private void stretch() {
-        double[][] newPoints = new double[this.length * 2][];
-        System.arraycopy(this.points, 0, newPoints, 0, this.length);
-        this.points = newPoints;
+        double[] newCoords = new double[this.length * 2 * this.dim];
+        System.arraycopy(this.coords, 0, newCoords, 0, this.length * this.dim);
+        this.coords = newCoords;
+
+        long[] newStamps = new long[this.length * 2];
+        System.arraycopy(this.stamps, 0, newStamps, 0, this.length);
+        this.stamps = newStamps;
 
         Object[] newData = new Object[this.length * 2];
         System.arraycopy(this.data, 0, newData, 0, this.length);
         this.data = newData;
     }
 
-    private void extendNode(double[] point, Object payload) {
-        this.points[this.length] = point;
+    private void extendNode(double[] source, int offset, Object payload, long stamp) {
+        System.arraycopy(source, offset, this.coords, this.length * this.dim, this.dim);
+        this.stamps[this.length] = stamp;
         this.data[this.length] = payload;
+        this.maxStamp = Math.max(this.maxStamp, stamp);
         this.length++;
-        this.updateClippingWindow(point);
+        this.updateClippingWindow(source, offset);
     }
 
-    private void updateClippingWindow(double[] point) {
+    private void updateClippingWindow(double[] source, int offset) {
         if (this.length == 0) return;
         if (this.min == null || this.max == null) {
             this.min = new double[this.dim];
-            System.arraycopy(point, 0, this.min, 0, this.dim);
+            System.arraycopy(source, offset, this.min, 0, this.dim);
             this.max = new double[this.dim];
-            System.arraycopy(point, 0, this.max, 0, this.dim);
+            System.arraycopy(source, offset, this.max, 0, this.dim);
         } else {
             for (int i = 0; i < this.dim; i++) {
-                if (Double.isNaN(point[i])) {
+                double x = source[offset + i];
+                if (Double.isNaN(x)) {
                     this.min[i] = 0;
                     this.max[i] = 0;
                 } else {
-                    this.min[i] = Math.min(this.min[i], point[i]);
-                    this.max[i] = Math.max(this.max[i], point[i]);
+                    this.min[i] = Math.min(this.min[i], x);
+                    this.max[i] = Math.max(this.max[i], x);
                 }
 
 
@@ -280,7 +364,7 @@ abstract public class KdTree<T> {
         min = null;
         max = null;
         for (int i = 0; i < length; i++) {
-            updateClippingWindow(points[i]);
+            updateClippingWindow(coords, i * dim);
         }
     }
 
@@ -318,14 +402,14 @@ abstract public class KdTree<T> {
         queue.push(0, this);
 
         while (queue.size() > 0 &&
-                (found.size() < actualK || queue.top().key < found.top().key)) {
+                (found.size() < actualK || queue.topKey() < found.topKey())) {
             searchTick(query, actualK, alpha, queue, found);
         }
 
         ArrayList<Entry<T>> res = new ArrayList<>();
 
         while (found.size() > 0) {
-            res.add(new Entry<>(found.top().key / alpha, found.top().payload));
+            res.add(new Entry<>(found.topKey() / alpha, found.topPayload()));
             found.pop();
         }
 
@@ -336,8 +420,70 @@ abstract public class KdTree<T> {
         return kNN(query, K, 1.0);
     }
 
+    /**
+     * Same as kNN(query, K, alpha), but writes the neighbors
+     * into caller-owned arrays instead of building a list, and
+     * reuses the search heaps of this tree between calls, so
+     * no allocation happens once the heaps have grown.
+     * <p>
+     * Neighbors are written in increasing order of distance,
+     * starting at offset. Both arrays must have room for
+     * min(K, size()) entries after offset.
+     * <p>
+     * Since the heaps are shared, queries on the same tree
+     * must not run concurrently.
+     *
+     * @param query     the query point
+     * @param K         how many neighbors should be returned
+     * @param alpha     the factor of approximation
+     * @param distances where the distances will be written
+     * @param payloads  where the payloads will be written
+     * @param offset    the first position to be written
+     * @return how many neighbors were written
+     */
+    public int kNN(double[] query, int K, double alpha,
+                   @Modified double[] distances, @Modified Object[] payloads, int offset) {
+        if (query.length != dim)
+            throw new IllegalArgumentException();
+
+        for (int i = 0; i < this.dim; i++) {
+            if (Double.isNaN(query[i]))
+                throw new IllegalStateException("NaN on kNN point");
+        }
+
+        if (this.size() == 0)
+            return 0;
+
+        if (pooledQueue == null) {
+            pooledQueue = new FloatingHeap.Min<>();
+            pooledFound = new FloatingHeap.Max<>();
+        }
+
+        FloatingHeap.Min<KdTree<T>> queue = pooledQueue;
+        FloatingHeap.Max<T> found = pooledFound;
+
+        int actualK = Math.min(K, size());
+        queue.push(0, this);
+
+        while (queue.size() > 0 &&
+                (found.size() < actualK || queue.topKey() < found.topKey())) {
+            searchTick(query, actualK, alpha, queue, found);
+        }
+
+        queue.clear();
+
+        int count = found.size();
+        for (int i = offset + count - 1; found.size() > 0; i--) {
+            distances[i] = found.topKey() / alpha;
+            payloads[i] = found.topPayload();
+            found.pop();
+        }
+
+        return count;
+    }
+
     private void searchTick(double[] query, int K, double alpha, FloatingHeap<KdTree<T>> queue, FloatingHeap<T> found) {
-        KdTree<T> current = queue.top().payload;
+        KdTree<T> current = queue.topPayload();
         queue.pop();
 
         while (!current.isLeaf()) {
@@ -359,7 +505,7 @@ abstract public class KdTree<T> {
                 distance = leftCost;
             }
 
-            if (other.length > 0 && (found.size() < K || distance < found.top().key)) {
+            if (other.length > 0 && (found.size() < K || distance < found.topKey())) {
                 queue.push(distance, other); // distanceToEdges actually
             }
 
@@ -369,32 +515,285 @@ abstract public class KdTree<T> {
                 current = next;
         }
 
-        for (int i = 0; i < current.length; i++) {
-            double distance = this.minkowskiDistance(query, current.points[i]) * alpha;
+        for (int i = 0, offset = 0; i < current.length; i++, offset += dim) {
+            double distance = this.minkowskiDistance(query, current.coords, offset) * alpha;
             if (found.size() < K) {
-                found.push(distance, (T) current.data[i]);
-            } else if (found.top().key > distance) {
+                found.push(distance, payload(current.data, i));
+            } else if (found.topKey() > distance) {
                 found.pop();
-                found.push(distance, (T) current.data[i]);
+                found.push(distance, payload(current.data, i));
+            }
+        }
+    }
+
+    /**
+     * Same as kNN(query, K, alpha), but only the recent most
+     * recently added points of the tree are considered.
+     */
+    public List<Entry<T>> kNN(double[] query, int K, double alpha, long recent) {
+        ArrayList<Entry<T>> res = new ArrayList<>();
+        int actualK = (int) Math.min(K, Math.min(recent, size()));
+        if (actualK <= 0)
+            return res;
+
+        double[] distances = new double[actualK];
+        Object[] payloads = new Object[actualK];
+        int[] count = new int[1];
+        kNN(query, 1, new int[]{K}, new long[]{recent}, alpha, distances, payloads, new int[]{0}, count);
+
+        for (int i = 0; i < count[0]; i++)
+            res.add(new Entry<>(distances[i], KdTree.<T>payload(payloads, i)));
+
+        return res;
+    }
+
+    /**
+     * Answer several horizons at once: for each h, the K[h]
+     * nearest neighbors among the recent[h] most recently added
+     * points are written in increasing order of distance into
+     * distances/payloads, starting at offsets[h], and counts[h]
+     * is set to how many were written. Each horizon must have
+     * room for min(K[h], recent[h], size()) entries.
+     * <p>
+     * All horizons share a single best-first traversal: a subtree
+     * is only visited while it can still improve some horizon,
+     * that is, while its newest point is inside the horizon and
+     * its box is closer than the horizon's current K-th neighbor.
+     * <p>
+     * Like the other array query, heaps are reused between calls,
+     * so queries on the same tree must not run concurrently.
+     *
+     * @param query     the query point
+     * @param horizons  how many horizons are being queried
+     * @param K         how many neighbors each horizon wants
+     * @param recent    how many of the newest points each horizon sees
+     * @param alpha     the factor of approximation
+     * @param distances where the distances will be written
+     * @param payloads  where the payloads will be written
+     * @param offsets   the first position written by each horizon
+     * @param counts    how many neighbors each horizon got
+     */
+    public void kNN(double[] query, int horizons, int[] K, long[] recent, double alpha,
+                    @Modified double[] distances, @Modified Object[] payloads, int[] offsets,
+                    @Modified int[] counts) {
+        if (query.length != dim)
+            throw new IllegalArgumentException();
+
+        for (int i = 0; i < this.dim; i++) {
+            if (Double.isNaN(query[i]))
+                throw new IllegalStateException("NaN on kNN point");
+        }
+
+        for (int h = 0; h < horizons; h++)
+            counts[h] = 0;
+
+        if (this.size() == 0)
+            return;
+
+        ensureHorizons(horizons);
+
+        FloatingHeap.Min<KdTree<T>> queue = pooledQueue;
+        FloatingHeap<T>[] found = pooledHorizons;
+        long[] thresholds = pooledThresholds;
+        int[] actualK = pooledActualK;
+
+        int capacity = recentCapacity();
+        long scanned = 0;
+        for (int h = 0; h < horizons; h++) {
+            thresholds[h] = this.nextStamp - recent[h];
+            actualK[h] = (int) Math.min(K[h], Math.min(recent[h], size()));
+            if (recent[h] <= capacity)
+                scanned = Math.max(scanned, recent[h]);
+        }
+
+        if (scanned > 0) {
+            scanRecent(query, scanned, horizons, actualK, recent, thresholds, alpha, found);
+
+            // short horizons are done, keep them out of the traversal
+            for (int h = 0; h < horizons; h++) {
+                if (recent[h] <= capacity) {
+                    thresholds[h] = Long.MAX_VALUE;
+                    actualK[h] = 0;
+                }
+            }
+        }
+
+        queue.push(0, this);
+
+        while (queue.size() > 0 && isPending(queue.topKey(), horizons, actualK, found)) {
+            searchRecentTick(query, horizons, actualK, thresholds, alpha, queue, found);
+        }
+
+        queue.clear();
+
+        for (int h = 0; h < horizons; h++) {
+            FloatingHeap<T> heap = found[h];
+            counts[h] = heap.size();
+            for (int i = offsets[h] + counts[h] - 1; heap.size() > 0; i--) {
+                distances[i] = heap.topKey() / alpha;
+                payloads[i] = heap.topPayload();
+                heap.pop();
+            }
+        }
+    }
+
+    private void ensureHorizons(int horizons) {
+        if (pooledQueue == null) {
+            pooledQueue = new FloatingHeap.Min<>();
+            pooledFound = new FloatingHeap.Max<>();
+        }
+
+        if (pooledHorizons == null || pooledHorizons.length < horizons) {
+            pooledHorizons = newHeaps(horizons);
+            pooledThresholds = new long[horizons];
+            pooledActualK = new int[horizons];
+            for (int h = 0; h < horizons; h++)
+                pooledHorizons[h] = new FloatingHeap.Max<>();
+        }
+    }
+
+    private void scanRecent(double[] query, long scanned, int horizons, int[] K, long[] recent,
+                            long[] thresholds, double alpha, FloatingHeap<T>[] found) {
+        int capacity = this.recentStamps.length;
+        long stamp = Math.max(0, this.nextStamp - scanned);
+        int slot = (int) (stamp % capacity);
+
+        for (; stamp < this.nextStamp; stamp++, slot = slot + 1 == capacity ? 0 : slot + 1) {
+            if (this.recentStamps[slot] != stamp)
+                continue;
+
+            double distance = this.minkowskiDistance(query, this.recentCoords, slot * dim) * alpha;
+            for (int h = 0; h < horizons; h++) {
+                if (recent[h] > capacity || stamp < thresholds[h])
+                    continue;
+
+                FloatingHeap<T> heap = found[h];
+                if (heap.size() < K[h]) {
+                    heap.push(distance, payload(this.recentData, slot));
+                } else if (heap.topKey() > distance) {
+                    heap.pop();
+                    heap.push(distance, payload(this.recentData, slot));
+                }
+            }
+        }
+    }
+
+    // points are stored in Object arrays shared by every payload type, these are the only unchecked spots
+    @SuppressWarnings("unchecked")
+    private static <T> T payload(Object[] data, int i) {
+        return (T) data[i];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> FloatingHeap<T>[] newHeaps(int n) {
+        return new FloatingHeap[n];
+    }
+
+    private static <T> boolean isPending(double key, int horizons, int[] K, FloatingHeap<T>[] found) {
+        for (int h = 0; h < horizons; h++) {
+            if (found[h].size() < K[h] || key < found[h].topKey())
+                return true;
+        }
+
+        return false;
+    }
+
+    private static <T> boolean isWorthVisiting(KdTree<T> node, double cost, int horizons, int[] K,
+                                               long[] thresholds, FloatingHeap<T>[] found) {
+        for (int h = 0; h < horizons; h++) {
+            if (node.maxStamp >= thresholds[h] && (found[h].size() < K[h] || cost < found[h].topKey()))
+                return true;
+        }
+
+        return false;
+    }
+
+    private void searchRecentTick(double[] query, int horizons, int[] K, long[] thresholds, double alpha,
+                                  FloatingHeap<KdTree<T>> queue, FloatingHeap<T>[] found) {
+        double cost = queue.topKey();
+        KdTree<T> current = queue.topPayload();
+        queue.pop();
+
+        if (!isWorthVisiting(current, cost, horizons, K, thresholds, found))
+            return;
+
+        while (!current.isLeaf()) {
+            KdTree<T> next;
+            KdTree<T> other;
+
+            double leftCost = this.minkowskiToHyperrect(query, current.left.min, current.left.max);
+            double rightCost = this.minkowskiToHyperrect(query, current.right.min, current.right.max);
+            double distance;
+
+            if (leftCost < rightCost) {
+                next = current.left;
+                other = current.right;
+                distance = rightCost;
+                cost = leftCost;
+            } else {
+                next = current.right;
+                other = current.left;
+                distance = leftCost;
+                cost = rightCost;
+            }
+
+            if (other.length > 0 && isWorthVisiting(other, distance, horizons, K, thresholds, found)) {
+                queue.push(distance, other);
+            }
+
+            if (next.length == 0 || !isWorthVisiting(next, cost, horizons, K, thresholds, found))
+                return;
+            else
+                current = next;
+        }
+
+        long oldest = Long.MAX_VALUE;
+        for (int h = 0; h < horizons; h++)
+            oldest = Math.min(oldest, thresholds[h]);
+
+        for (int i = 0, offset = 0; i < current.length; i++, offset += dim) {
+            long stamp = current.stamps[i];
+            if (stamp < oldest)
+                continue;
+
+            double distance = this.minkowskiDistance(query, current.coords, offset) * alpha;
+            for (int h = 0; h < horizons; h++) {
+                if (stamp < thresholds[h])
+                    continue;
+
+                FloatingHeap<T> heap = found[h];
+                if (heap.size() < K[h]) {
+                    heap.push(distance, payload(current.data, i));
+                } else if (heap.topKey() > distance) {
+                    heap.pop();
+                    heap.push(distance, payload(current.data, i));
+                }
             }
         }
     }
 
     public Iterator iterator(double[] query) {
-        return new Iterator(query, 1.0);
+        return new Iterator(query, 1.0, Long.MAX_VALUE);
     }
 
     public Iterator iterator(double[] query, double alpha) {
-        return new Iterator(query, alpha);
+        return new Iterator(query, alpha, Long.MAX_VALUE);
     }
 
     /**
-     * Remove a point from the Kd Tree. Note, though,
-     * that the point is removed according to its object
-     * signature (address) instead of its actual content,
-     * so if you pass another point with the same data of
-     * one of the points in the knn, do not expect it to
-     * be removed.
+     * Iterate over the recent most recently added points only,
+     * in increasing order of distance to query.
+     */
+    public Iterator iterator(double[] query, double alpha, long recent) {
+        return new Iterator(query, alpha, recent);
+    }
+
+    /**
+     * Remove a point from the Kd Tree. Since buckets
+     * store copies of the coordinates, the point is matched
+     * by its content, and if several stored points have the
+     * same coordinates, the oldest one is removed. This is
+     * exactly the point the FIFO eviction expects to drop.
      *
      * @param point the point to be removed
      */
@@ -408,26 +807,53 @@ abstract public class KdTree<T> {
                 current = current.right;
         }
 
+        int found = -1;
         for (int i = 0; i < current.length; i++) {
-            // Note that the array addresses are being compared, not the arrays themselves
-            if (point == current.points[i]) {
-                System.arraycopy(current.points, i + 1, current.points, i, current.length - (i + 1));
-                System.arraycopy(current.data, i + 1, current.data, i, current.length - (i + 1));
-                // GC
-                current.points[current.length - 1] = null;
-                current.data[current.length - 1] = null;
-                KdTree<T> leaf = current;
-                while (current != null) {
-                    current.length--;
-                    current = current.parent;
-                }
+            if (current.matches(i, point) && (found == -1 || current.stamps[i] < current.stamps[found]))
+                found = i;
+        }
 
-                leaf.recomputeClippingWindow();
-                return;
+        if (found == -1)
+            throw new IllegalStateException("point was not found");
+
+        long removed = current.stamps[found];
+        if (this.recentStamps != null) {
+            int slot = (int) (removed % this.recentStamps.length);
+            if (this.recentStamps[slot] == removed) {
+                this.recentStamps[slot] = Long.MIN_VALUE;
+                // GC
+                this.recentData[slot] = null;
             }
         }
 
-        throw new IllegalStateException("point was not found");
+        int moved = current.length - (found + 1);
+        System.arraycopy(current.coords, (found + 1) * dim, current.coords, found * dim, moved * dim);
+        System.arraycopy(current.stamps, found + 1, current.stamps, found, moved);
+        System.arraycopy(current.data, found + 1, current.data, found, moved);
+        // GC
+        current.data[current.length - 1] = null;
+        KdTree<T> leaf = current;
+        while (current != null) {
+            current.length--;
+            current = current.parent;
+        }
+
+        leaf.recomputeClippingWindow();
+
+        // ancestors keep a stale (larger) maxStamp, which only weakens pruning
+        leaf.maxStamp = Long.MIN_VALUE;
+        for (int i = 0; i < leaf.length; i++)
+            leaf.maxStamp = Math.max(leaf.maxStamp, leaf.stamps[i]);
+    }
+
+    private boolean matches(int i, double[] point) {
+        int offset = i * dim;
+        for (int j = 0; j < dim; j++) {
+            if (coords[offset + j] != point[j])
+                return false;
+        }
+
+        return true;
     }
 
     private boolean isLeaf() {
@@ -440,7 +866,15 @@ abstract public class KdTree<T> {
 
     public abstract int minkowskiBestHyperplane(KdTree<T> node);
 
-    public abstract double minkowskiDistance(double[] a, double[] b);
+    public double minkowskiDistance(double[] a, double[] b) {
+        return minkowskiDistance(a, b, 0);
+    }
+
+    /**
+     * Same as minkowskiDistance(a, b), but the second point
+     * is read from a flat coordinate array starting at offset.
+     */
+    public abstract double minkowskiDistance(double[] a, double[] flat, int offset);
 
     public abstract double minkowskiToHyperrect(double[] p, double[] min, double[] max);
 
@@ -454,14 +888,14 @@ abstract public class KdTree<T> {
             if (nbest > bestVariance) {
                 double mean = 0;
                 for(int j = 0; j < node.length; j++) {
-                    mean += node.points[j][i];
+                    mean += node.coords[j * node.dim + i];
                 }
 
                 mean /= node.length;
 
                 double variance = 0;
                 for(int j = 0; j < node.length; j++) {
-                    variance += R.sqr(node.points[j][i] - mean);
+                    variance += R.sqr(node.coords[j * node.dim + i] - mean);
                 }
 
                 variance /= node.length;
@@ -491,7 +925,7 @@ abstract public class KdTree<T> {
             super(parent);
         }
 
-        private KdNode(KdTree<T> parent, double[][] recycle) {
+        private KdNode(KdTree<T> parent, double[] recycle) {
             super(parent);
         }
 
@@ -511,12 +945,13 @@ abstract public class KdTree<T> {
          * Should return the distanceToEdges between two points in some
          * Minkowski distanceToEdges (L1, L2, ... Loo)
          *
-         * @param a the first point
-         * @param b the second point
+         * @param a      the first point
+         * @param flat   flat array holding the second point
+         * @param offset where the second point starts in flat
          * @return minkowski distanceToEdges Lx between those points for some x >= 1
          */
         @Override
-        public double minkowskiDistance(double[] a, double[] b) {
+        public double minkowskiDistance(double[] a, double[] flat, int offset) {
             throw new UnsupportedOperationException();
         }
 
@@ -546,6 +981,9 @@ abstract public class KdTree<T> {
     private class Iterator implements java.util.Iterator<Entry<T>> {
         private final double[] query;
         private final double alpha;
+        private final long recent;
+        private final long[] threshold;
+        private final FloatingHeap<T>[] horizon;
 
         private FloatingHeap.Min<KdTree<T>> queue = new FloatingHeap.Min<>();
         private FloatingHeap.Min<T> found = new FloatingHeap.Min<>();
@@ -554,16 +992,20 @@ abstract public class KdTree<T> {
 
         private int K = 0;
 
-        private Iterator(double[] query, double alpha) {
+        private Iterator(double[] query, double alpha, long recent) {
             this.query = query;
             this.alpha = alpha;
+            this.recent = recent;
+            this.threshold = new long[]{nextStamp - recent};
+            this.horizon = newHeaps(1);
+            this.horizon[0] = found;
 
             this.queue.push(0, KdTree.this);
         }
 
         @Override
         public boolean hasNext() {
-            return queue.size() > 0 && K < pointQueue.size();
+            return queue.size() > 0 && K < Math.min(recent, pointQueue.size());
         }
 
         @Override
@@ -571,9 +1013,12 @@ abstract public class KdTree<T> {
             ++K;
 
             while (queue.size() > 0 && reallyFound.size() < K) {
-                searchTick(query, Integer.MAX_VALUE, alpha, queue, found);
+                if (recent >= pointQueue.size())
+                    searchTick(query, Integer.MAX_VALUE, alpha, queue, found);
+                else
+                    searchRecentTick(query, 1, UNBOUNDED_K, threshold, alpha, queue, horizon);
 
-                while(found.size() > 0 && (queue.size() == 0 || queue.top().key >= found.top().key)) {
+                while(found.size() > 0 && (queue.size() == 0 || queue.topKey() >= found.topKey())) {
                     reallyFound.add(found.top());
                     found.pop();
                 }
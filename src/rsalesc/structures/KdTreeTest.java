@@ -246,6 +246,76 @@ public class KdTreeTest {
         assertTrue(error < 1e-9);
     }
 
+    @Test
+    public void fifoWithDuplicates() {
+        int limit = 100;
+        EuclideanKdTree<Integer> tree = new EuclideanKdTree<>(dimension, limit);
+        double[] point = generatePoint(dimension);
+
+        for (int i = 0; i < 1000; i++) {
+            tree.add(point.clone(), i);
+        }
+
+        List<KdTree.Entry<Integer>> entries = tree.kNN(point, limit);
+        assertTrue(entries.size() == limit);
+
+        boolean[] seen = new boolean[limit];
+        for (KdTree.Entry<Integer> entry : entries) {
+            assertTrue(entry.payload >= 1000 - limit);
+            seen[entry.payload - (1000 - limit)] = true;
+        }
+
+        for (boolean b : seen)
+            assertTrue(b);
+    }
+
+    @Test
+    public void recentHorizons() {
+        int limit = 7500;
+        int[] Ks = {4, 4, 4, 2, 1};
+        long[] recent = {7500, 2000, 350, 32, 8};
+        int horizons = Ks.length;
+
+        EuclideanKdTree<Integer> tree = new EuclideanKdTree<>(dimension, limit);
+        for (int i = 0; i < 12000; i++) {
+            tree.add(points[i], i);
+        }
+
+        double[] distances = new double[16];
+        Object[] payloads = new Object[16];
+        int[] offsets = new int[horizons];
+        int[] counts = new int[horizons];
+        for (int h = 1; h < horizons; h++)
+            offsets[h] = offsets[h - 1] + Ks[h - 1];
+
+        double error = 0;
+        for (int i = 0; i < 1000; i++) {
+            tree.kNN(queries[i], horizons, Ks, recent, 1.0, distances, payloads, offsets, counts);
+
+            for (int h = 0; h < horizons; h++) {
+                PriorityQueue<Double> pq = new PriorityQueue<Double>();
+                for (int j = 12000 - (int) recent[h]; j < 12000; j++) {
+                    pq.add(dist(points[j], queries[i]));
+                }
+
+                assertTrue(counts[h] == Ks[h]);
+                for (int j = 0; j < counts[h]; j++) {
+                    assertTrue((Integer) payloads[offsets[h] + j] >= 12000 - recent[h]);
+                    error += Math.abs(distances[offsets[h] + j] - pq.poll());
+                }
+            }
+
+            Iterator<KdTree.Entry<Integer>> it = tree.iterator(queries[i], 1.0, 350);
+            for (int j = 0; j < 4; j++) {
+                KdTree.Entry<Integer> entry = it.next();
+                assertTrue(entry.payload >= 12000 - 350);
+                error += Math.abs(entry.distance - distances[offsets[2] + j]);
+            }
+        }
+
+        assertTrue(error < 1e-9);
+    }
+
     public void jk() {
         double[][] p1 = withTree();
         double[][] p2 = withJkTree();
@@ -23,6 +23,7 @@
 
 package rsalesc.structures;
 
+import rsalesc.baf2.core.annotations.Modified;
 import rsalesc.baf2.core.utils.R;
 import rsalesc.baf2.core.utils.geometry.Range;
 import rsalesc.mega.utils.Strategy;
@@ -159,6 +160,12 @@ public abstract class Knn<T extends Timestamped> {
 
     public abstract List<Entry<T>> query(double[] point, int K, double alpha);
 
+    /**
+     * Append the K (possibly less) nearest neighbors of point
+     * to out, each one with this knn's scan weight.
+     */
+    public abstract void query(double[] point, int K, double alpha, @Modified Buffer<T> out);
+
     public boolean isEnabled(Object o) {
         if (parametrizedCondition == null)
             return true;
@@ -212,6 +219,97 @@ public abstract class Knn<T extends Timestamped> {
         return query(getStrategy().getQuery(f), K);
     }
 
+    /**
+     * Allocation-free counterpart of query(point, K): the
+     * neighbors are appended to out and the distance weighter
+     * is applied in place, only over the appended entries.
+     */
+    public void query(double[] point, int K, @Modified Buffer<T> out) {
+        int from = out.size();
+        query(point, Math.min(K, getQueryableData()), 1.0, out);
+
+        if (weighter != null)
+            weighter.weight(out, from, out.size());
+    }
+
+    public void query(double[] point, @Modified Buffer<T> out) {
+        query(point, defaultK, out);
+    }
+
+    public void query(TargetingLog f, @Modified Buffer<T> out) {
+        query(getStrategy().getQuery(f), out);
+    }
+
+    int getQueryK() {
+        return Math.min(defaultK, getQueryableData());
+    }
+
+    /**
+     * Answer a query from the raw result of another knn holding
+     * the same point set, sorted by increasing distance and with
+     * at least getQueryK() entries when available. This knn takes
+     * its own prefix, scan weight and weighter from it.
+     */
+    void queryFrom(Buffer<T> sorted, @Modified Buffer<T> out) {
+        int from = out.size();
+        int K = Math.min(getQueryK(), sorted.size());
+        for (int i = 0; i < K; i++)
+            out.add(scanWeight, sorted.distance[i], sorted.getPayload(i));
+
+        if (weighter != null)
+            weighter.weight(out, from, out.size());
+    }
+
+    /**
+     * Whether this knn is guaranteed to hold exactly the same
+     * points as other, in which case a single traversal can
+     * answer both (with the points sorted by distance).
+     */
+    boolean sharesPointSetWith(Knn<T> other) {
+        return false;
+    }
+
+    /**
+     * Whether this knn and other read the same stored points,
+     * possibly each one through its own recency horizon, in
+     * which case queryHorizons can answer both at once.
+     */
+    boolean sharesHistoryWith(Knn<T> other) {
+        return false;
+    }
+
+    /**
+     * Try to make other read its points from this knn's storage
+     * instead of keeping its own copy. Only called on freshly
+     * built knns.
+     *
+     * @return whether other was adopted
+     */
+    boolean adopt(Knn<T> other) {
+        return false;
+    }
+
+    /**
+     * Answer all members, which share the history of this knn,
+     * with a single traversal. Each one appends its own result
+     * to out, in order, as in query(point, out).
+     */
+    void queryHorizons(double[] point, List<Knn<T>> members, @Modified Buffer<T> out) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Accept count neighbors of this knn written right after the
+     * end of out, applying its scan weight and weighter.
+     */
+    void commitQuery(@Modified Buffer<T> out, int count) {
+        int from = out.size();
+        out.commit(count, scanWeight);
+
+        if (weighter != null)
+            weighter.weight(out, from, out.size());
+    }
+
     protected Entry<T> makeEntry(double distance, T payload) {
         return new Entry<T>(scanWeight, distance, payload);
     }
@@ -272,6 +370,154 @@ public abstract class Knn<T extends Timestamped> {
         }
     }
 
+    /**
+     * Caller-owned storage for query results, kept as parallel
+     * primitive arrays. The arrays only grow, so a buffer reused
+     * across ticks stops allocating once it has seen its largest K.
+     */
+    public static class Buffer<T extends Timestamped> {
+        private static final int INITIAL_CAP = 16;
+
+        public double[] weight;
+        public double[] distance;
+        public Object[] payload;
+        private int size;
+
+        public Buffer() {
+            this(INITIAL_CAP);
+        }
+
+        public Buffer(int capacity) {
+            weight = new double[capacity];
+            distance = new double[capacity];
+            payload = new Object[capacity];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            // GC
+            for (int i = 0; i < size; i++)
+                payload[i] = null;
+            size = 0;
+        }
+
+        public void ensure(int n) {
+            if (n <= payload.length)
+                return;
+
+            int capacity = Math.max(n, payload.length * 2);
+            double[] nweight = new double[capacity];
+            double[] ndistance = new double[capacity];
+            Object[] npayload = new Object[capacity];
+            System.arraycopy(weight, 0, nweight, 0, size);
+            System.arraycopy(distance, 0, ndistance, 0, size);
+            System.arraycopy(payload, 0, npayload, 0, size);
+            weight = nweight;
+            distance = ndistance;
+            payload = npayload;
+        }
+
+        public void add(double weight, double distance, T payload) {
+            ensure(size + 1);
+            this.weight[size] = weight;
+            this.distance[size] = distance;
+            this.payload[size] = payload;
+            size++;
+        }
+
+        /**
+         * Accept count entries whose distances and payloads were
+         * already written right after the current end.
+         */
+        void commit(int count, double weight) {
+            for (int i = size; i < size + count; i++)
+                this.weight[i] = weight;
+            size += count;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T getPayload(int i) {
+            return (T) payload[i];
+        }
+
+        public double getTotalWeight() {
+            double total = 0;
+            for (int i = 0; i < size; i++)
+                total += weight[i];
+
+            return total;
+        }
+
+        public List<Entry<T>> toEntries() {
+            List<Entry<T>> res = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                res.add(new Entry<>(weight[i], distance[i], getPayload(i)));
+
+            return res;
+        }
+
+        public void sortByDistance(int from, int to) {
+            sort(from, to, true);
+        }
+
+        /**
+         * Sort entries from the most recent payload to the oldest.
+         */
+        public void sortByRecency(int from, int to) {
+            sort(from, to, false);
+        }
+
+        // in-place heapsort, so sorting does not allocate
+        private void sort(int from, int to, boolean byDistance) {
+            int n = to - from;
+            for (int i = n / 2 - 1; i >= 0; i--)
+                siftDown(from, i, n, byDistance);
+
+            for (int end = n - 1; end > 0; end--) {
+                swap(from, from + end);
+                siftDown(from, 0, end, byDistance);
+            }
+        }
+
+        private void siftDown(int base, int u, int n, boolean byDistance) {
+            while (2 * u + 1 < n) {
+                int child = 2 * u + 1;
+                if (child + 1 < n && before(base + child, base + child + 1, byDistance))
+                    child++;
+
+                if (!before(base + u, base + child, byDistance))
+                    return;
+
+                swap(base + u, base + child);
+                u = child;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean before(int i, int j, boolean byDistance) {
+            if (byDistance)
+                return distance[i] < distance[j];
+            return ((T) payload[i]).compareTo((T) payload[j]) > 0;
+        }
+
+        private void swap(int i, int j) {
+            double tmpWeight = weight[i];
+            weight[i] = weight[j];
+            weight[j] = tmpWeight;
+
+            double tmpDistance = distance[i];
+            distance[i] = distance[j];
+            distance[j] = tmpDistance;
+
+            Object tmpPayload = payload[i];
+            payload[i] = payload[j];
+            payload[j] = tmpPayload;
+        }
+    }
+
     public static abstract class ParametrizedCondition {
         public abstract boolean test(Object o);
 
@@ -408,6 +654,12 @@ public abstract class Knn<T extends Timestamped> {
     public static abstract class DistanceWeighter<T extends Timestamped> {
         public abstract List<Entry<T>> getWeightedEntries(List<Entry<T>> entries);
         public abstract Entry<T> getWeightedEntry(Entry<T> entry, int K);
+
+        /**
+         * In-place counterpart of getWeightedEntries, applied
+         * to the entries of buffer in the range [from, to).
+         */
+        public abstract void weight(@Modified Buffer<T> buffer, int from, int to);
     }
 
     public static class InverseDistanceWeighter<T extends Timestamped> extends DistanceWeighter<T> {
@@ -436,6 +688,12 @@ public abstract class Knn<T extends Timestamped> {
         public Entry<T> getWeightedEntry(Entry<T> entry, int K) {
             return new Knn.Entry<>(entry.weight / Math.pow(entry.distance + 1e-10, ratio), entry.distance, entry.payload);
         }
+
+        @Override
+        public void weight(Buffer<T> buffer, int from, int to) {
+            for (int i = from; i < to; i++)
+                buffer.weight[i] /= Math.pow(buffer.distance[i] + 1e-10, ratio);
+        }
     }
 
     public static class NormalizeManhattanWeighter<T extends Timestamped> extends DistanceWeighter<T> {
@@ -476,6 +734,12 @@ public abstract class Knn<T extends Timestamped> {
         public Entry<T> getWeightedEntry(Entry<T> entry, int K) {
             return new Knn.Entry<>(entry.weight / Math.pow(entry.distance + 1e-10, ratio), entry.distance, entry.payload);
         }
+
+        @Override
+        public void weight(Buffer<T> buffer, int from, int to) {
+            for (int i = from; i < to; i++)
+                buffer.distance[i] = buffer.distance[i] / modifier * ratio;
+        }
     }
 
     public static class GaussDistanceWeighter<T extends Timestamped> extends DistanceWeighter<T> {
@@ -525,6 +789,28 @@ public abstract class Knn<T extends Timestamped> {
         public Entry<T> getWeightedEntry(Entry<T> entry, int K) {
             throw new UnsupportedOperationException();
         }
+
+        @Override
+        public void weight(Buffer<T> buffer, int from, int to) {
+            buffer.sortByDistance(from, to);
+
+            int count = to - from;
+            double sum = 1e-9;
+            int skipped = 0;
+            for (int i = from; i < to; i++) {
+                if(skipped < ignore && skipped + 1 < count) {
+                    skipped++;
+                    continue;
+                }
+
+                sum += buffer.distance[i];
+            }
+
+            double invAvg = (count - skipped) / sum;
+
+            for (int i = from; i < to; i++)
+                buffer.weight[i] *= R.gaussKernel(buffer.distance[i] * invAvg * ratio);
+        }
     }
 
     public static class DecayWeighter<T extends Timestamped> extends DistanceWeighter<T> {
@@ -558,6 +844,17 @@ public abstract class Knn<T extends Timestamped> {
         public Entry<T> getWeightedEntry(Entry<T> entry, int K) {
             return new Knn.Entry<>(entry.weight * Math.pow(ratio, K), entry.distance, entry.payload);
         }
+
+        @Override
+        public void weight(Buffer<T> buffer, int from, int to) {
+            buffer.sortByRecency(from, to);
+
+            double factor = 1.0;
+            for (int i = from; i < to; i++) {
+                buffer.weight[i] *= factor;
+                factor *= ratio;
+            }
+        }
     }
 
     public static class DecayedGaussWeighter<T extends Timestamped> extends DistanceWeighter<T> {
@@ -577,5 +874,11 @@ public abstract class Knn<T extends Timestamped> {
         public Entry<T> getWeightedEntry(Entry<T> entry, int K) {
             throw new UnsupportedOperationException();
         }
+
+        @Override
+        public void weight(Buffer<T> buffer, int from, int to) {
+            gauss.weight(buffer, from, to);
+            decay.weight(buffer, from, to);
+        }
     }
 }
@@ -23,20 +23,42 @@
 
 package rsalesc.structures;
 
+import rsalesc.baf2.core.annotations.Modified;
 import rsalesc.mega.utils.Strategy;
 import rsalesc.mega.utils.Timestamped;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Created by Roberto Sales on 13/08/17.
+ *
+ * Trees that only differ in their limit hold nested suffixes of
+ * the same insertion history, so a tree can adopt the others
+ * (see adopt): it then stores the points once, with the largest
+ * limit, and each adopted tree sees only its most recent limit
+ * points through the recency queries of KdTree.
  */
 public class KnnTree<T extends Timestamped> extends Knn<T> {
+    // horizons up to this size are scanned instead of searched
+    private static final int RECENT_SCAN = 512;
+
     private Mode mode;
     private Integer limit = null;
     private WeightedKdTree<T> tree;
 
+    // tree whose kd-tree holds our points, or null if it is our own
+    private KnnTree<T> owner;
+    private Integer storageLimit = null;
+    private int recentScan = 0;
+
+    // scratch for multi-horizon queries
+    private int[] horizonK = new int[0];
+    private long[] horizonRecent = new long[0];
+    private int[] horizonOffsets = new int[0];
+    private int[] horizonCounts = new int[0];
+
     public KnnTree<T> setLimit(int limit) {
         this.limit = limit;
         return this;
@@ -56,34 +78,192 @@ public class KnnTree<T extends Timestamped> extends Knn<T> {
 
     @Override
     public void buildStructure() {
+        tree = newTree(limit);
+        storageLimit = limit;
+    }
+
+    private WeightedKdTree<T> newTree(Integer sizeLimit) {
         if (mode == Mode.MANHATTAN)
-            tree = new WeightedManhattanKdTree<T>(this.getStrategy().getWeights(), limit);
+            return new WeightedManhattanKdTree<T>(this.getStrategy().getWeights(), sizeLimit);
         else if (mode == Mode.EUCLIDEAN)
-            tree = new WeightedEuclideanKdTree<T>(this.getStrategy().getWeights(), limit);
+            return new WeightedEuclideanKdTree<T>(this.getStrategy().getWeights(), sizeLimit);
         else
             throw new IllegalStateException("building with no valid mode specified");
     }
 
+    private WeightedKdTree<T> storage() {
+        return owner == null ? tree : owner.tree;
+    }
+
+    private long horizon() {
+        return limit == null ? Long.MAX_VALUE : limit;
+    }
+
+    private boolean seesWholeStorage() {
+        return owner == null && Objects.equals(limit, storageLimit);
+    }
+
     @Override
     public int size() {
-        return tree.size();
+        return (int) Math.min(horizon(), storage().size());
     }
 
+    /**
+     * Adopted trees do not store anything: their owner
+     * receives the very same points.
+     */
     @Override
     public void add(double[] point, T payload) {
-        tree.add(point, payload);
+        if (owner == null)
+            tree.add(point, payload);
     }
 
     @Override
     public List<Entry<T>> query(double[] point, int K, double alpha) {
+        List<KdTree.Entry<T>> found = seesWholeStorage()
+                ? tree.kNN(point, K, alpha)
+                : storage().kNN(point, K, alpha, horizon());
+
         List<Entry<T>> res = new ArrayList<>();
-        for (KdTree.Entry<T> entry : tree.kNN(point, K, alpha)) {
+        for (KdTree.Entry<T> entry : found) {
             res.add(makeEntry(entry.distance, entry.payload));
         }
 
         return res;
     }
 
+    @Override
+    boolean sharesPointSetWith(Knn<T> other) {
+        if (!(other instanceof KnnTree))
+            return false;
+
+        KnnTree<T> tree = (KnnTree<T>) other;
+        return getStrategy() == tree.getStrategy()
+                && mode == tree.mode
+                && Objects.equals(limit, tree.limit)
+                && logsOnHit() == tree.logsOnHit()
+                && logsOnBreak() == tree.logsOnBreak()
+                && logsOnVirtual() == tree.logsOnVirtual();
+    }
+
+    @Override
+    boolean sharesHistoryWith(Knn<T> other) {
+        return other instanceof KnnTree && storage() == ((KnnTree<T>) other).storage();
+    }
+
+    /**
+     * Take over the storage of other if both trees would always
+     * receive the same points (same strategy instance, mode and
+     * logging flags), no matter their limits. Both must still
+     * be empty.
+     */
+    @Override
+    boolean adopt(Knn<T> other) {
+        if (!(other instanceof KnnTree) || other == this || owner != null)
+            return false;
+
+        KnnTree<T> adopted = (KnnTree<T>) other;
+        if (adopted.owner != null || adopted.tree == null || tree.size() > 0 || adopted.tree.size() > 0)
+            return false;
+
+        if (getStrategy() != adopted.getStrategy()
+                || mode != adopted.mode
+                || logsOnHit() != adopted.logsOnHit()
+                || logsOnBreak() != adopted.logsOnBreak()
+                || logsOnVirtual() != adopted.logsOnVirtual())
+            return false;
+
+        if (storageLimit != null && (adopted.limit == null || adopted.limit > storageLimit)) {
+            storageLimit = adopted.limit;
+            tree = newTree(storageLimit);
+            recentScan = Math.max(recentScan, scannableHorizon(limit));
+        }
+
+        recentScan = Math.max(recentScan, scannableHorizon(adopted.limit));
+        tree.keepRecent(recentScan);
+
+        adopted.tree = null;
+        adopted.owner = this;
+        return true;
+    }
+
+    private int scannableHorizon(Integer horizon) {
+        if (horizon == null || horizon > RECENT_SCAN || Objects.equals(horizon, storageLimit))
+            return 0;
+        return horizon;
+    }
+
+    @Override
+    public void query(double[] point, int K, double alpha, Buffer<T> out) {
+        if (seesWholeStorage()) {
+            out.ensure(out.size() + Math.min(K, tree.size()));
+            int count = tree.kNN(point, K, alpha, out.distance, out.payload, out.size());
+            out.commit(count, getScanWeight());
+            return;
+        }
+
+        int size = out.size();
+        int needed = Math.min(K, size());
+        out.ensure(size + needed);
+
+        ensureHorizons(1);
+        horizonK[0] = K;
+        horizonRecent[0] = horizon();
+        horizonOffsets[0] = size;
+        storage().kNN(point, 1, horizonK, horizonRecent, alpha,
+                out.distance, out.payload, horizonOffsets, horizonCounts);
+        out.commit(horizonCounts[0], getScanWeight());
+    }
+
+    /**
+     * Answer every knn of members, all sharing the history of
+     * this one, with a single traversal of the storage. Each
+     * member appends its getQueryK() nearest neighbors among
+     * its own horizon to out, in the order of members.
+     */
+    @Override
+    void queryHorizons(double[] point, List<Knn<T>> members, @Modified Buffer<T> out) {
+        int n = members.size();
+        ensureHorizons(n);
+
+        int offset = out.size();
+        for (int i = 0; i < n; i++) {
+            Knn<T> member = members.get(i);
+            horizonK[i] = member.getQueryK();
+            horizonRecent[i] = ((KnnTree<T>) member).horizon();
+            horizonOffsets[i] = offset;
+            offset += Math.min(horizonK[i], member.size());
+        }
+
+        out.ensure(offset);
+        storage().kNN(point, n, horizonK, horizonRecent, 1.0,
+                out.distance, out.payload, horizonOffsets, horizonCounts);
+
+        for (int i = 0; i < n; i++) {
+            int count = horizonCounts[i];
+            // close the gaps left by horizons with fewer neighbors than requested
+            if (horizonOffsets[i] != out.size()) {
+                System.arraycopy(out.distance, horizonOffsets[i], out.distance, out.size(), count);
+                System.arraycopy(out.payload, horizonOffsets[i], out.payload, out.size(), count);
+            }
+
+            members.get(i).commitQuery(out, count);
+        }
+
+        // GC
+        for (int i = out.size(); i < offset; i++)
+            out.payload[i] = null;
+    }
+
+    private void ensureHorizons(int n) {
+        if (horizonK.length < n) {
+            horizonK = new int[n];
+            horizonRecent = new long[n];
+            horizonOffsets = new int[n];
+            horizonCounts = new int[n];
+        }
+    }
+
     @Override
     public Knn<T>.Iterator iterator(double[] query, double alpha) {
         return new Knn<T>.Iterator(new Iterator(query, alpha));
@@ -93,7 +273,9 @@ public class KnnTree<T extends Timestamped> extends Knn<T> {
         private final java.util.Iterator<KdTree.Entry<T>> iterator;
 
         private Iterator(double[] query, double alpha) {
-            this.iterator = tree.iterator(query, alpha);
+            this.iterator = seesWholeStorage()
+                    ? tree.iterator(query, alpha)
+                    : storage().iterator(query, alpha, horizon());
         }
 
         @Override
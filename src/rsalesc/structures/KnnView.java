@@ -24,7 +24,9 @@
 package rsalesc.structures;
 
 
+import rsalesc.baf2.core.annotations.Modified;
 import rsalesc.baf2.waves.BreakType;
+import rsalesc.mega.utils.Strategy;
 import rsalesc.mega.utils.TargetingLog;
 import rsalesc.mega.utils.Timestamped;
 
@@ -33,11 +35,30 @@ import java.util.List;
 
 /**
  * Created by Roberto Sales on 13/08/17.
+ *
+ * Queries are batched: each distinct strategy projects the
+ * TargetingLog only once, and members holding the same point
+ * set (see Knn.sharesPointSetWith) are answered by a single
+ * traversal with the largest K among them, each member taking
+ * its own prefix of the result.
+ *
+ * Knns added to the view may also be adopted by an earlier
+ * member (see Knn.adopt), e.g. KnnTrees that only differ in
+ * their limit: the points are then stored once, and the whole
+ * group is answered by one multi-horizon traversal.
  */
 public class KnnView<T extends Timestamped> {
     private List<Knn<T>> knns;
     private Knn.DistanceWeighter<T> weighter;
 
+    // scratch reused by the batched query path
+    private final Knn.Buffer<T> shared = new Knn.Buffer<>();
+    private final Knn.Buffer<T> collected = new Knn.Buffer<>();
+    private final List<Knn<T>> horizons = new ArrayList<>();
+    private Strategy[] projected = new Strategy[0];
+    private double[][] projections = new double[0][];
+    private int[] groups = new int[0];
+
     public KnnView() {
         knns = new ArrayList<>();
     }
@@ -55,49 +76,178 @@ public class KnnView<T extends Timestamped> {
     public KnnView<T> add(Knn<T> knn) {
         if (!knn.isBuilt())
             knn.build();
+
+        for (Knn<T> member : knns) {
+            if (member.adopt(knn))
+                break;
+        }
+
         knns.add(knn);
         return this;
     }
 
     public void add(TargetingLog f, T payload) {
+        ensureScratch(knns.size());
         for (Knn<T> knn : knns)
-            knn.add(f, payload);
+            knn.add(project(knn.getStrategy(), f), payload);
+
+        clearProjections();
     }
 
     public void add(TargetingLog f, T payload, BreakType type) {
+        ensureScratch(knns.size());
         for (Knn<T> knn : knns) {
             if (type == BreakType.BULLET_HIT && knn.logsOnHit())
-                knn.add(f, payload);
+                knn.add(project(knn.getStrategy(), f), payload);
             else if (type == BreakType.BULLET_BREAK && knn.logsOnBreak())
-                knn.add(f, payload);
+                knn.add(project(knn.getStrategy(), f), payload);
             else if (type == BreakType.VIRTUAL_BREAK && knn.logsOnVirtual())
-                knn.add(f, payload);
+                knn.add(project(knn.getStrategy(), f), payload);
         }
+
+        clearProjections();
     }
 
     public List<Knn.Entry<T>> query(TargetingLog f) {
-        List<Knn.Entry<T>> res = new ArrayList<>();
-        for (Knn<T> knn : knns) {
-            res.addAll(knn.query(f));
+        query(f, collected);
+        return collected.toEntries();
+    }
+
+    public List<Knn.Entry<T>> query(TargetingLog f, Object o) {
+        query(f, o, collected);
+        return collected.toEntries();
+    }
+
+    /**
+     * Allocation-free counterpart of query(f): out is cleared
+     * and filled with the neighbors of every knn in the view.
+     */
+    public void query(TargetingLog f, @Modified Knn.Buffer<T> out) {
+        batchQuery(f, null, false, out);
+    }
+
+    public void query(TargetingLog f, Object o, @Modified Knn.Buffer<T> out) {
+        batchQuery(f, o, true, out);
+    }
+
+    private void batchQuery(TargetingLog f, Object o, boolean filtered, @Modified Knn.Buffer<T> out) {
+        out.clear();
+        int n = knns.size();
+        groupMembers(n);
+
+        for (int i = 0; i < n; i++) {
+            if (!isQueried(i, o, filtered) || !leadsGroup(i, o, filtered))
+                continue;
+
+            Knn<T> knn = knns.get(i);
+            double[] query = project(knn.getStrategy(), f);
+
+            int members = 0;
+            int maxK = 0;
+            boolean samePoints = true;
+            boolean sameHistory = true;
+            horizons.clear();
+            for (int j = i; j < n; j++) {
+                if (groups[j] == groups[i] && isQueried(j, o, filtered)) {
+                    Knn<T> member = knns.get(j);
+                    members++;
+                    maxK = Math.max(maxK, member.getQueryK());
+                    samePoints &= j == i || knn.sharesPointSetWith(member);
+                    sameHistory &= j == i || knn.sharesHistoryWith(member);
+                    horizons.add(member);
+                }
+            }
+
+            if (members == 1) {
+                horizons.clear();
+                knn.query(query, out);
+                continue;
+            }
+
+            if (!samePoints) {
+                if (sameHistory) {
+                    knn.queryHorizons(query, horizons, out);
+                } else {
+                    for (Knn<T> member : horizons)
+                        member.query(query, out);
+                }
+
+                horizons.clear();
+                continue;
+            }
+
+            horizons.clear();
+
+            shared.clear();
+            knn.query(query, maxK, 1.0, shared);
+
+            for (int j = i; j < n; j++) {
+                if (groups[j] == groups[i] && isQueried(j, o, filtered))
+                    knns.get(j).queryFrom(shared, out);
+            }
         }
 
+        shared.clear();
+        clearProjections();
+
         if (weighter != null)
-            res = weighter.getWeightedEntries(res);
+            weighter.weight(out, 0, out.size());
+    }
 
-        return res;
+    private boolean isQueried(int i, Object o, boolean filtered) {
+        return !filtered || knns.get(i).isEnabled(o);
     }
 
-    public List<Knn.Entry<T>> query(TargetingLog f, Object o) {
-        List<Knn.Entry<T>> res = new ArrayList<>();
-        for (Knn<T> knn : knns) {
-            if (knn.isEnabled(o))
-                res.addAll(knn.query(f));
+    private boolean leadsGroup(int i, Object o, boolean filtered) {
+        for (int j = 0; j < i; j++) {
+            if (groups[j] == groups[i] && isQueried(j, o, filtered))
+                return false;
         }
 
-        if (weighter != null)
-            res = weighter.getWeightedEntries(res);
+        return true;
+    }
 
-        return res;
+    private void ensureScratch(int n) {
+        if (groups.length < n) {
+            groups = new int[n];
+            projected = new Strategy[n];
+            projections = new double[n][];
+        }
+    }
+
+    private void groupMembers(int n) {
+        ensureScratch(n);
+
+        for (int i = 0; i < n; i++) {
+            groups[i] = i;
+            for (int j = 0; j < i; j++) {
+                if (knns.get(j).sharesPointSetWith(knns.get(i))
+                        || knns.get(j).sharesHistoryWith(knns.get(i))) {
+                    groups[i] = groups[j];
+                    break;
+                }
+            }
+        }
+    }
+
+    private double[] project(Strategy strategy, TargetingLog f) {
+        int i = 0;
+        for (; i < projected.length && projected[i] != null; i++) {
+            if (projected[i] == strategy)
+                return projections[i];
+        }
+
+        projected[i] = strategy;
+        projections[i] = strategy.getQuery(f);
+        return projections[i];
+    }
+
+    private void clearProjections() {
+        for (int i = 0; i < projected.length; i++) {
+            // GC
+            projected[i] = null;
+            projections[i] = null;
+        }
     }
 
     public List<Knn.Entry<T>> query(TargetingLog f, int K) {
@@ -57,10 +57,10 @@ public class WeightedEuclideanKdTree<T> extends WeightedKdTree<T> {
     }
 
     @Override
-    public double minkowskiDistance(double[] a, double[] b) {
+    public double minkowskiDistance(double[] a, double[] b, int offset) {
         double res = 0;
         for (int i = 0; i < this.dim; i++) {
-            double acc = (a[i] - b[i]) * weights[i];
+            double acc = (a[i] - b[offset + i]) * weights[i];
             if (!Double.isNaN(acc))
                 res += acc * acc;
         }
@@ -56,10 +56,10 @@ public class WeightedManhattanKdTree<T> extends WeightedKdTree<T> {
     }
 
     @Override
-    public double minkowskiDistance(double[] a, double[] b) {
+    public double minkowskiDistance(double[] a, double[] b, int offset) {
         double res = 0;
         for (int i = 0; i < this.dim; i++) {
-            double acc = Math.abs(a[i] - b[i]) * weights[i];
+            double acc = Math.abs(a[i] - b[offset + i]) * weights[i];
             if (!Double.isNaN(acc))
                 res += acc;
         }